@@ -6,10 +6,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -20,9 +19,14 @@ import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
 import org.xml.sax.SAXException;
 
-import edu.uci.ics.jung.algorithms.scoring.PageRank;
 import edu.uci.ics.jung.graph.Graph;
 import edu.uci.ics.jung.graph.UndirectedGraph;
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.graph.CsrPageRank;
+import io.github.pleyte.gmis.graph.GeneDictionary;
+import io.github.pleyte.gmis.graph.GeneSet;
+import io.github.pleyte.gmis.graph.GeneSymbolResolver;
+import io.github.pleyte.gmis.instrumentation.StageTimer;
 import io.github.pleyte.gmis.intermediate.NetworkLoader;
 
 /**
@@ -46,18 +50,32 @@ public class NetworkAnalysis {
 		}
 	}	
 
+	private final GeneSymbolResolver resolver;
+
+	public NetworkAnalysis() {
+		this(GeneSymbolResolver.NONE);
+	}
+
 	/**
 	 * 
-	 * @param args
+	 * @param resolver used to match genes to vertices by their approved symbols
+	 */
+	public NetworkAnalysis(GeneSymbolResolver resolver) {
+		this.resolver = resolver;
+	}
+
+	/**
+	 * 
+	 * @param args optional HGNC style alias file
 	 * @throws ParserConfigurationException
 	 * @throws SAXException
 	 * @throws IOException
 	 */
 	public static void main(String[] args) throws ParserConfigurationException, SAXException, IOException {
-		NetworkAnalysis analysis = new NetworkAnalysis();
+		NetworkAnalysis analysis = args.length > 0 ? new NetworkAnalysis(GeneSymbolResolver.load(args[0])) : new NetworkAnalysis();
 
 		URL geneNetworkSifFile = NetworkAnalysis.class.getClassLoader().getResource("gene_network.sif");
-		Graph<String, String> graph = NetworkLoader.loadSifGraph(geneNetworkSifFile.getFile());
+		Graph<String, String> graph = NetworkLoader.loadSifNetwork(geneNetworkSifFile.getFile(), ForkJoinPool.commonPool()).asJungGraph();
 		analysis.show(graph);
 	}
 
@@ -77,44 +95,54 @@ public class NetworkAnalysis {
 		log.info(directedOrUndirected + " graph has " + graph.getVertexCount() + " vertices and " + graph.getEdgeCount() + " edges");
 		log.info("Average page rank score is " + getAveragePageRank(graph));
 
-		Set<String> schizophreniaGeneSet1 = loadGeneSetFromScoreFile("hotnet_network/scores_1.tsv");
-		Set<String> unlinkedSchizophreniaGeneSet1 = getUnlinkedGenes(graph, schizophreniaGeneSet1);
-		log.info(unlinkedSchizophreniaGeneSet1.size() + " of the genes in the first schizophrenia gene set are not in the final network.");
-		log.fine("Unlinked sch1=" + quoteAndCommaSeparate(unlinkedSchizophreniaGeneSet1));
+		GeneDictionary genes = new GeneDictionary(graph.getVertexCount(), resolver);
+		GeneSet vertices = GeneSet.of(genes, graph.getVertices());
+
+		GeneSet schizophreniaGeneSet1 = loadGeneSetFromScoreFile("hotnet_network/scores_1.tsv", genes);
+		GeneSet unlinkedSchizophreniaGeneSet1 = getUnlinkedGenes(vertices, schizophreniaGeneSet1);
+		log.info(unlinkedSchizophreniaGeneSet1.cardinality() + " of the genes in the first schizophrenia gene set are not in the final network.");
+		if (log.isLoggable(Level.FINE)) {
+			log.fine("Unlinked sch1=" + quoteAndCommaSeparate(unlinkedSchizophreniaGeneSet1));
+		}
 
-		Set<String> schizophreniaGeneSet2 = loadGeneSetFromScoreFile("hotnet_network/scores_2.tsv");
-		Set<String> unlinkedSchizophreniaGeneSet2 = getUnlinkedGenes(graph, schizophreniaGeneSet2);
-		log.info(unlinkedSchizophreniaGeneSet2.size() + " of the genes in the second schizophrenia gene set are not in the final network.");
-		log.fine("Unlinked sch2=" + quoteAndCommaSeparate(unlinkedSchizophreniaGeneSet2));
+		GeneSet schizophreniaGeneSet2 = loadGeneSetFromScoreFile("hotnet_network/scores_2.tsv", genes);
+		GeneSet unlinkedSchizophreniaGeneSet2 = getUnlinkedGenes(vertices, schizophreniaGeneSet2);
+		log.info(unlinkedSchizophreniaGeneSet2.cardinality() + " of the genes in the second schizophrenia gene set are not in the final network.");
+		if (log.isLoggable(Level.FINE)) {
+			log.fine("Unlinked sch2=" + quoteAndCommaSeparate(unlinkedSchizophreniaGeneSet2));
+		}
 
-		Set<String> schizophreniaGeneSet3 = loadGeneSetFromScoreFile("hotnet_network/scores_3.tsv");
-		Set<String> unlinkedSchizophreniaGeneSet3 = getUnlinkedGenes(graph, schizophreniaGeneSet3);
-		log.info(unlinkedSchizophreniaGeneSet3.size() + " of the genes in the SFARI gene set are not in the final network.");
-		log.fine("Unlinked SFARI=" + quoteAndCommaSeparate(unlinkedSchizophreniaGeneSet3));
+		GeneSet schizophreniaGeneSet3 = loadGeneSetFromScoreFile("hotnet_network/scores_3.tsv", genes);
+		GeneSet unlinkedSchizophreniaGeneSet3 = getUnlinkedGenes(vertices, schizophreniaGeneSet3);
+		log.info(unlinkedSchizophreniaGeneSet3.cardinality() + " of the genes in the SFARI gene set are not in the final network.");
+		if (log.isLoggable(Level.FINE)) {
+			log.fine("Unlinked SFARI=" + quoteAndCommaSeparate(unlinkedSchizophreniaGeneSet3));
+		}
 
-		log.info("There are " + getLinkerGeneCount(graph, schizophreniaGeneSet1, schizophreniaGeneSet2, schizophreniaGeneSet3).size() + " linker genes in the network which are not in any of the gene sets");
+		log.info("There are " + getLinkerGeneCount(vertices, schizophreniaGeneSet1, schizophreniaGeneSet2, schizophreniaGeneSet3).cardinality() + " linker genes in the network which are not in any of the gene sets");
 	}
 
 	/**
-	 * Convert a list of elements to a quoted comma separated list (ie 'a','b','c')
+	 * Convert a set of genes to a quoted comma separated list (ie 'a','b','c')
 	 * 
-	 * @param unlinkedSchizophreniaGeneSet1
+	 * @param geneSet
 	 * @return
 	 */
-	private String quoteAndCommaSeparate(Set<String> unlinkedSchizophreniaGeneSet1) {
-		return String.join(", ", unlinkedSchizophreniaGeneSet1.stream().map(name -> ("'" + name + "'")).collect(Collectors.toSet()));
+	private String quoteAndCommaSeparate(GeneSet geneSet) {
+		return String.join(", ", geneSet.getSymbols().stream().map(name -> ("'" + name + "'")).collect(Collectors.toList()));
 	}
 
 	/**
 	 * Load the genes from a gene score file
 	 * 
 	 * @param geneScoreFile
+	 * @param genes         dictionary the genes are added to
 	 * @return
 	 * @throws IOException
 	 * @throws FileNotFoundException
 	 */
-	private Set<String> loadGeneSetFromScoreFile(String geneScoreFile) throws FileNotFoundException, IOException {
-		Set<String> geneSet = new HashSet<>();
+	private GeneSet loadGeneSetFromScoreFile(String geneScoreFile, GeneDictionary genes) throws FileNotFoundException, IOException {
+		GeneSet geneSet = new GeneSet(genes);
 		try (Reader in = new FileReader(this.getClass().getClassLoader().getResource(geneScoreFile).getFile())) {
 			Iterable<CSVRecord> records = CSVFormat.TDF.parse(in);
 			for (CSVRecord record : records) {
@@ -128,46 +156,27 @@ public class NetworkAnalysis {
 
 
 	/**
-	 * Return a list of genes which are in the graph but are not in any of the gene
+	 * Return the genes which are in the graph but are not in any of the gene
 	 * score files
 	 * 
-	 * @param graph
-	 * @param schizophrenia1Genes
-	 * @param schizophrenia2Genes
-	 * @param sfariGenes
+	 * @param vertices the graph's vertices
+	 * @param geneSets
 	 * @return
-	 * @throws IOException
-	 * @throws FileNotFoundException
 	 */
-	@SafeVarargs
-	private Set<String> getLinkerGeneCount(Graph<String, String> graph, Set<String>... geneSets) throws FileNotFoundException, IOException {
-		Set<String> genes = new HashSet<>(graph.getVertices());
-
-		for (Set<String> geneSet : geneSets) {
-			genes.removeAll(geneSet);
-		}
-
-		return genes;
+	private GeneSet getLinkerGeneCount(GeneSet vertices, GeneSet... geneSets) {
+		return vertices.difference(GeneSet.unionOf(vertices.getDictionary(), Arrays.asList(geneSets)));
 	}
 
 	/**
-	 * Return a list of the genes which are in the scores file but are not in the
-	 * graph
+	 * Return the genes which are in the scores file but are not in the graph.
+	 * Genes are matched by their approved symbols, which the dictionary interns.
 	 * 
-	 * @param graph
-	 * @param hotNetScoreFile
+	 * @param vertices the graph's vertices
+	 * @param geneSet
 	 * @return
-	 * @throws FileNotFoundException
-	 * @throws IOException
 	 */
-	private Set<String> getUnlinkedGenes(Graph<String, String> graph, Set<String> geneSet) throws FileNotFoundException, IOException {
-		Set<String> unlinkedGenes = new HashSet<>();
-		for (String gene : geneSet) {
-			if (!graph.containsVertex(gene)) {
-				unlinkedGenes.add(gene);
-			}
-		}
-		return unlinkedGenes;
+	private GeneSet getUnlinkedGenes(GeneSet vertices, GeneSet geneSet) {
+		return geneSet.difference(vertices);
 	}
 
 	/**
@@ -175,20 +184,31 @@ public class NetworkAnalysis {
 	 * unconnected vertices
 	 * 
 	 * @param graph
-	 * @return
+	 * @return the average, or 0 if no vertex has a neighbour
 	 */
-	private Double getAveragePageRank(Graph<String, String> graph) {
-		PageRank<String, String> pageRank = new PageRank<>(graph,0.1);
-		pageRank.evaluate();
-		List<Double> pageRankVertexScore = new ArrayList<>();
-		for(String node: graph.getVertices()) {
-			log.fine(node + " with " + graph.getNeighborCount(node) + " neighbours has page rank " + pageRank.getVertexScore(node));
-			if (graph.getNeighborCount(node) > 0) {
-				pageRankVertexScore.add(pageRank.getVertexScore(node));
+	private double getAveragePageRank(Graph<String, String> graph) {
+		CsrGraph network = CsrGraph.of(graph);
+		CsrPageRank.Result pageRank;
+		try (StageTimer timer = StageTimer.start("NetworkAnalysis.pageRank")) {
+			pageRank = new CsrPageRank(network, ForkJoinPool.commonPool()).rank();
+			timer.addRecords(network.getVertexCount());
+		}
+		log.fine("PageRank " + pageRank);
+
+		double[] scores = pageRank.getScores();
+		double sum = 0;
+		int connected = 0;
+		for (int v = 0; v < network.getVertexCount(); v++) {
+			if (log.isLoggable(Level.FINE)) {
+				log.fine(network.getGenes().getSymbol(v) + " with " + network.degree(v) + " neighbours has page rank " + scores[v]);
+			}
+			if (network.degree(v) > 0) {
+				sum += scores[v];
+				++connected;
 			}
 		}
 
-		return pageRankVertexScore.stream().mapToDouble(x -> x.doubleValue()).average().getAsDouble();
+		return connected == 0 ? 0 : sum / connected;
 	}
 
 }
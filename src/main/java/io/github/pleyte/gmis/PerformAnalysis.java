@@ -3,6 +3,11 @@ package io.github.pleyte.gmis;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
@@ -16,8 +21,16 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
+import io.github.pleyte.gmis.batch.BatchJob;
+import io.github.pleyte.gmis.batch.BatchManifest;
+import io.github.pleyte.gmis.batch.BatchRunner;
 import io.github.pleyte.gmis.chain.AnalysisChain;
 import io.github.pleyte.gmis.chain.AnalysisContext;
+import io.github.pleyte.gmis.chain.ProcessPool;
+import io.github.pleyte.gmis.chain.StageManifest;
+import io.github.pleyte.gmis.graph.GeneSymbolResolver;
+import io.github.pleyte.gmis.instrumentation.StageReport;
+import io.github.pleyte.gmis.result.OverlapSignificance;
 
 /**
  * This class contains the main method which launches the processing pipeline.
@@ -29,6 +42,13 @@ public class PerformAnalysis {
 
 	private static Logger log;
 	private Context context;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private boolean force;
+	private int cores = Runtime.getRuntime().availableProcessors();
+	private long timeoutSeconds = AnalysisChain.DEFAULT_HOTNET_TIMEOUT_SECONDS;
+	private File batchManifest;
+	private File aliasFile;
+	private File hotNetScript;
 
 	static {
 		InputStream stream = PerformAnalysis.class.getClassLoader().getResourceAsStream("logging.properties");
@@ -49,11 +69,78 @@ public class PerformAnalysis {
 	}
 
 	private void execute() throws Exception {
-		Command analysisChain = new AnalysisChain();
-		analysisChain.execute(context);
+		File outputDirectory = (File) context.get(AnalysisContext.OUTPUT_DIRECTORY);
+		try {
+			if (aliasFile != null) {
+				AnalysisContext.put(context, AnalysisContext.GENE_SYMBOL_RESOLVER, GeneSymbolResolver.load(aliasFile.getPath()));
+			}
+			if (batchManifest != null) {
+				executeBatch(outputDirectory);
+			} else {
+				AnalysisContext.put(context, AnalysisContext.HOTNET_SCRIPT, hotNetScript != null ? hotNetScript : getBundledHotNetScript(outputDirectory));
+				StageManifest manifest = force ? null : new StageManifest(new File(outputDirectory, StageManifest.FILE_NAME).toPath());
+				Command analysisChain = new AnalysisChain(threads, manifest, new ProcessPool(cores, timeoutSeconds));
+				analysisChain.execute(context);
+			}
+		} finally {
+			File reportFile = new File(outputDirectory, StageReport.FILE_NAME);
+			outputDirectory.mkdirs();
+			StageReport.save(reportFile.toPath());
+			log.info("Stage resource use, written to " + reportFile + ":" + StageReport.toSummary());
+		}
+	}
+
+	/**
+	 * Run every job in the batch manifest with the in-process Hierarchical HotNet
+	 * implementation
+	 * 
+	 * @param outputDirectory
+	 * @throws Exception
+	 */
+	private void executeBatch(File outputDirectory) throws Exception {
+		int permutations = (Integer) context.get(AnalysisContext.HOTNET_PERMUTATIONS);
+		List<BatchJob> jobs = BatchManifest.load(batchManifest, permutations);
+		log.info("Running " + jobs.size() + " batch jobs from " + batchManifest);
+
+		ForkJoinPool pool = new ForkJoinPool(cores);
+		try {
+			new BatchRunner(threads, pool, outputDirectory).run(jobs);
+		} finally {
+			pool.shutdown();
+		}
 	}
 
 
+	/**
+	 * Return the bundled run_hotnet.sh. When the classes are packaged in a jar the
+	 * script is not a file, so it is copied to the output directory and made
+	 * executable.
+	 * 
+	 * @param outputDirectory
+	 * @return
+	 * @throws IOException
+	 */
+	private static File getBundledHotNetScript(File outputDirectory) throws IOException {
+		URL bundledScript = PerformAnalysis.class.getClassLoader().getResource("run_hotnet.sh");
+		if (bundledScript == null) {
+			throw new IllegalStateException("Unable to locate the bundled run_hotnet.sh");
+		}
+		if ("file".equals(bundledScript.getProtocol())) {
+			return new File(bundledScript.getFile());
+		}
+
+		File script = new File(outputDirectory, "run_hotnet.sh");
+		outputDirectory.mkdirs();
+		try (InputStream in = bundledScript.openStream()) {
+			Files.copy(in, script.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		if (!script.setExecutable(true)) {
+			log.warning("Unable to make " + script + " executable");
+		}
+		log.fine("Copied the bundled HotNet script from " + bundledScript + " to " + script);
+		return script;
+	}
+
 	/**
 	 * Parse and pre-process command line parameters
 	 * 
@@ -68,19 +155,114 @@ public class PerformAnalysis {
 					.desc("Hierarchichal HotNet installation directory")
 					.hasArg()
 					.longOpt("hotnet")
-					.required()
+					.build());
+			options.addOption(Option.builder("b")
+					.argName("manifest")
+					.desc("Run the network and score file combinations listed in the manifest with the in-process HotNet implementation instead of the pipeline")
+					.hasArg()
+					.longOpt("batch")
+					.build());
+			options.addOption(Option.builder("d")
+					.argName("data-dir")
+					.desc("Directory containing the study data files (default: data)")
+					.hasArg()
+					.longOpt("data")
+					.build());
+			options.addOption(Option.builder("o")
+					.argName("output-dir")
+					.desc("Directory the network index and edge list are written to (default: current directory)")
+					.hasArg()
+					.longOpt("output")
+					.build());
+			options.addOption(Option.builder("t")
+					.argName("count")
+					.desc("Maximum number of analysis stages or batch jobs to run at once (default: number of processors)")
+					.hasArg()
+					.longOpt("threads")
+					.build());
+			options.addOption(Option.builder("c")
+					.argName("count")
+					.desc("Number of cores the HotNet processes or batch jobs may use between them (default: number of processors)")
+					.hasArg()
+					.longOpt("cores")
+					.build());
+			options.addOption(Option.builder("m")
+					.argName("minutes")
+					.desc("Kill a HotNet run which takes longer than this (default: 1440)")
+					.hasArg()
+					.longOpt("timeout")
+					.build());
+			options.addOption(Option.builder("p")
+					.argName("count")
+					.desc("Number of score permutations HotNet uses for its statistics (default: 100)")
+					.hasArg()
+					.longOpt("permutations")
+					.build());
+			options.addOption(Option.builder()
+					.argName("count")
+					.desc("Number of permutations used to test the overlap between the score sets' clusters (default: 10000)")
+					.hasArg()
+					.longOpt("overlap-permutations")
+					.build());
+			options.addOption(Option.builder("s")
+					.argName("script")
+					.desc("Script which runs HotNet on one score file (default: the bundled run_hotnet.sh)")
+					.hasArg()
+					.longOpt("hotnet-script")
+					.build());
+			options.addOption(Option.builder("a")
+					.argName("alias-file")
+					.desc("HGNC style alias file used to resolve gene symbols to their approved symbols")
+					.hasArg()
+					.longOpt("aliases")
+					.build());
+			options.addOption(Option.builder("f")
+					.desc("Run every stage even if its inputs have not changed since the last run")
+					.longOpt("force")
 					.build());
 
 			CommandLineParser parser = new DefaultParser();
 			cmd = parser.parse(options, args);
+			if (!cmd.hasOption("hotnet") && !cmd.hasOption("batch")) {
+				throw new ParseException("Either --hotnet or --batch is required");
+			}
 		} catch (ParseException e) {
 			HelpFormatter formatter = new HelpFormatter();
 			formatter.printHelp(PerformAnalysis.class.getName(), null, options, "Foot");
 			System.exit(-1);
 		}
 
+		force = cmd.hasOption("force");
+		if (cmd.hasOption("batch")) {
+			batchManifest = new File(cmd.getOptionValue("batch"));
+		}
+		if (cmd.hasOption("aliases")) {
+			aliasFile = new File(cmd.getOptionValue("aliases"));
+		}
+		if (cmd.hasOption("threads")) {
+			threads = Integer.parseInt(cmd.getOptionValue("threads"));
+		}
+		if (cmd.hasOption("cores")) {
+			cores = Integer.parseInt(cmd.getOptionValue("cores"));
+		}
+		if (cmd.hasOption("timeout")) {
+			timeoutSeconds = Long.parseLong(cmd.getOptionValue("timeout")) * 60;
+		}
+
+		if (cmd.hasOption("hotnet-script")) {
+			hotNetScript = new File(cmd.getOptionValue("hotnet-script"));
+		}
+
 		context = new AnalysisContext();
-		context.put("hotnet", new File(cmd.getOptionValue("hotnet")));
+		if (cmd.hasOption("hotnet")) {
+			AnalysisContext.put(context, AnalysisContext.HOTNET_DIRECTORY, new File(cmd.getOptionValue("hotnet")));
+		}
+		AnalysisContext.put(context, AnalysisContext.DATA_DIRECTORY, new File(cmd.getOptionValue("data", "data")));
+		AnalysisContext.put(context, AnalysisContext.OUTPUT_DIRECTORY, new File(cmd.getOptionValue("output", ".")));
+		AnalysisContext.put(context, AnalysisContext.HOTNET_PERMUTATIONS, Integer.valueOf(cmd.getOptionValue("permutations", "100")));
+		AnalysisContext.put(context, AnalysisContext.OVERLAP_PERMUTATIONS,
+				Integer.valueOf(cmd.getOptionValue("overlap-permutations", String.valueOf(OverlapSignificance.DEFAULT_PERMUTATIONS))));
+		AnalysisContext.put(context, AnalysisContext.GENE_SYMBOL_RESOLVER, GeneSymbolResolver.NONE);
 	}
 
 }
@@ -0,0 +1,151 @@
+package io.github.pleyte.gmis.batch;
+
+import java.io.File;
+
+import io.github.pleyte.gmis.hotnet.RandomWalkWithRestart;
+
+/**
+ * One network and score file combination to run through Hierarchical HotNet in a batch
+ *
+ * @author pleyte
+ *
+ */
+public class BatchJob {
+	private String name;
+	private File networkFile;
+	private File edgeListFile;
+	private File scoreFile;
+	private double restartProbability = RandomWalkWithRestart.DEFAULT_RESTART_PROBABILITY;
+	private int permutations = 100;
+	private int degreeBinSize = 10;
+	private long seed = 1;
+	private double minimumSimilarity = 0;
+
+	/**
+	 * Return the name of the job, which is also used to name its output files
+	 *
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Return the SIF file of the network, or the HotNet gene index file if there is
+	 * an edge list file
+	 *
+	 * @return
+	 */
+	public File getNetworkFile() {
+		return networkFile;
+	}
+
+	public void setNetworkFile(File networkFile) {
+		this.networkFile = networkFile;
+	}
+
+	/**
+	 * Return the HotNet edge list file, or null if the network is a SIF file
+	 *
+	 * @return
+	 */
+	public File getEdgeListFile() {
+		return edgeListFile;
+	}
+
+	public void setEdgeListFile(File edgeListFile) {
+		this.edgeListFile = edgeListFile;
+	}
+
+	public File getScoreFile() {
+		return scoreFile;
+	}
+
+	public void setScoreFile(File scoreFile) {
+		this.scoreFile = scoreFile;
+	}
+
+	public double getRestartProbability() {
+		return restartProbability;
+	}
+
+	public void setRestartProbability(double restartProbability) {
+		this.restartProbability = restartProbability;
+	}
+
+	public int getPermutations() {
+		return permutations;
+	}
+
+	public void setPermutations(int permutations) {
+		this.permutations = permutations;
+	}
+
+	/**
+	 * Return the minimum number of genes per degree bin when permuting heat, or 0
+	 * to permute heat across all genes
+	 *
+	 * @return
+	 */
+	public int getDegreeBinSize() {
+		return degreeBinSize;
+	}
+
+	public void setDegreeBinSize(int degreeBinSize) {
+		this.degreeBinSize = degreeBinSize;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Return the smallest similarity the cluster hierarchies are built from, or 0
+	 * to use every positive similarity
+	 *
+	 * @return
+	 */
+	public double getMinimumSimilarity() {
+		return minimumSimilarity;
+	}
+
+	public void setMinimumSimilarity(double minimumSimilarity) {
+		this.minimumSimilarity = minimumSimilarity;
+	}
+
+	/**
+	 * Return the key of the network, which is shared by jobs that use the same
+	 * network files
+	 *
+	 * @return
+	 */
+	String getNetworkKey() {
+		String key = networkFile.getAbsolutePath();
+		return edgeListFile == null ? key : key + File.pathSeparator + edgeListFile.getAbsolutePath();
+	}
+
+	/**
+	 * Return the key of the similarity matrix, which is shared by jobs that use the
+	 * same network and restart probability
+	 *
+	 * @return
+	 */
+	String getSimilarityKey() {
+		return getNetworkKey() + File.pathSeparator + restartProbability;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchJob [name=" + name + ", networkFile=" + networkFile + ", edgeListFile=" + edgeListFile + ", scoreFile=" + scoreFile + ", restartProbability="
+				+ restartProbability + ", permutations=" + permutations + ", degreeBinSize=" + degreeBinSize + ", seed=" + seed + ", minimumSimilarity="
+				+ minimumSimilarity + "]";
+	}
+}
@@ -0,0 +1,132 @@
+package io.github.pleyte.gmis.batch;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Reads the list of jobs for a batch run. The manifest is a tab delimited file with a header row and one job per row;
+ * lines beginning with "#" are ignored. The columns are:
+ *
+ * <pre>
+ * name                 name of the job, used to name its output files (required)
+ * network              SIF file, or HotNet gene index file if edge_list is given (required)
+ * edge_list            HotNet edge list file
+ * scores               HotNet score file (required)
+ * restart_probability  random walk restart probability (default 0.4)
+ * permutations         number of heat permutations (default from the command line)
+ * degree_bin_size      minimum genes per degree bin, or 0 to permute across all genes (default 10)
+ * seed                 random seed for the permutations (default 1)
+ * minimum_similarity   smallest similarity the cluster hierarchies are built from, to bound memory for large
+ *                      networks (default 0, every positive similarity)
+ * </pre>
+ *
+ * Optional columns may be left out or left empty. Relative file names are resolved against the manifest's directory.
+ *
+ * @author pleyte
+ *
+ */
+public class BatchManifest {
+
+	private BatchManifest() {
+	}
+
+	/**
+	 * Load the jobs in a manifest
+	 *
+	 * @param manifestFile
+	 * @param defaultPermutations number of permutations for jobs which do not give
+	 *                            one
+	 * @return the jobs in file order
+	 * @throws IOException if the manifest cannot be read or has an invalid row
+	 */
+	public static List<BatchJob> load(File manifestFile, int defaultPermutations) throws IOException {
+		File directory = manifestFile.getAbsoluteFile().getParentFile();
+		List<BatchJob> jobs = new ArrayList<>();
+		Set<String> names = new HashSet<>();
+
+		try (Reader in = new FileReader(manifestFile);
+				CSVParser parser = CSVFormat.TDF.withFirstRecordAsHeader().withCommentMarker('#').withIgnoreEmptyLines().parse(in)) {
+			for (String column : new String[] { "name", "network", "scores" }) {
+				if (!parser.getHeaderMap().containsKey(column)) {
+					throw new IOException("Batch manifest " + manifestFile + " has no " + column + " column");
+				}
+			}
+
+			for (CSVRecord record : parser) {
+				String position = "Batch manifest " + manifestFile + " record number " + record.getRecordNumber();
+				BatchJob job = new BatchJob();
+				job.setName(getRequired(record, "name", position));
+				job.setNetworkFile(resolve(directory, getRequired(record, "network", position)));
+				String edgeList = get(record, "edge_list");
+				if (edgeList != null) {
+					job.setEdgeListFile(resolve(directory, edgeList));
+				}
+				job.setScoreFile(resolve(directory, getRequired(record, "scores", position)));
+				job.setPermutations(defaultPermutations);
+
+				try {
+					String value = get(record, "restart_probability");
+					if (value != null) {
+						job.setRestartProbability(Double.parseDouble(value));
+					}
+					value = get(record, "permutations");
+					if (value != null) {
+						job.setPermutations(Integer.parseInt(value));
+					}
+					value = get(record, "degree_bin_size");
+					if (value != null) {
+						job.setDegreeBinSize(Integer.parseInt(value));
+					}
+					value = get(record, "seed");
+					if (value != null) {
+						job.setSeed(Long.parseLong(value));
+					}
+					value = get(record, "minimum_similarity");
+					if (value != null) {
+						job.setMinimumSimilarity(Double.parseDouble(value));
+					}
+				} catch (NumberFormatException e) {
+					throw new IOException(position + " has a non-numeric value: " + e.getMessage());
+				}
+
+				if (!names.add(job.getName())) {
+					throw new IOException(position + " repeats the job name " + job.getName());
+				}
+				jobs.add(job);
+			}
+		}
+
+		return jobs;
+	}
+
+	private static String get(CSVRecord record, String column) {
+		if (!record.isMapped(column) || !record.isSet(column)) {
+			return null;
+		}
+		return StringUtils.trimToNull(record.get(column));
+	}
+
+	private static String getRequired(CSVRecord record, String column, String position) throws IOException {
+		String value = get(record, column);
+		if (value == null) {
+			throw new IOException(position + " has no " + column);
+		}
+		return value;
+	}
+
+	private static File resolve(File directory, String fileName) {
+		File file = new File(fileName);
+		return file.isAbsolute() ? file : new File(directory, fileName);
+	}
+}
@@ -0,0 +1,242 @@
+package io.github.pleyte.gmis.batch;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import io.github.pleyte.gmis.bean.ClusterStatistics;
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.graph.GeneDictionary;
+import io.github.pleyte.gmis.hotnet.Dendrogram;
+import io.github.pleyte.gmis.hotnet.DenseMatrix;
+import io.github.pleyte.gmis.hotnet.HeatVector;
+import io.github.pleyte.gmis.hotnet.PermutationTest;
+import io.github.pleyte.gmis.hotnet.RandomWalkWithRestart;
+import io.github.pleyte.gmis.instrumentation.StageTimer;
+import io.github.pleyte.gmis.intermediate.NetworkLoader;
+
+/**
+ * Runs many network and score file combinations through the in-process Hierarchical HotNet implementation in one JVM.
+ * Each network is loaded once and each similarity matrix is computed once, however many jobs use them, and both are
+ * released when the last job that needs them has finished. Jobs run concurrently on their own threads while the
+ * network loads, matrix computations and permutation tests share one fork-join pool, which limits the number of cores
+ * used.
+ *
+ * Each job writes <code>clusters_&lt;name&gt;.tsv</code>, in the format of the HotNet clusters file, and
+ * <code>sizes_&lt;name&gt;.tsv</code>, the largest cluster size and cluster count at every cut height, to the output
+ * directory. A job that fails does not stop the others.
+ *
+ * @author pleyte
+ *
+ */
+public class BatchRunner {
+	private static Logger log;
+
+	static {
+		InputStream stream = BatchRunner.class.getClassLoader().getResourceAsStream("logging.properties");
+		try {
+			LogManager.getLogManager().readConfiguration(stream);
+			log = Logger.getLogger(BatchRunner.class.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private final int parallelism;
+	private final ForkJoinPool pool;
+	private final File outputDirectory;
+
+	// Networks and similarity matrices shared between jobs, with the number of jobs
+	// still to use each one
+	private final Map<String, FutureTask<CsrGraph>> networks = new ConcurrentHashMap<>();
+	private final Map<String, FutureTask<DenseMatrix>> similarities = new ConcurrentHashMap<>();
+	private final Map<String, AtomicInteger> remainingUsers = new ConcurrentHashMap<>();
+
+	/**
+	 *
+	 * @param parallelism     maximum number of jobs to run at once
+	 * @param pool            threads shared by the jobs' computations
+	 * @param outputDirectory
+	 */
+	public BatchRunner(int parallelism, ForkJoinPool pool, File outputDirectory) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("At least one job must be able to run: " + parallelism);
+		}
+		this.parallelism = parallelism;
+		this.pool = pool;
+		this.outputDirectory = outputDirectory;
+	}
+
+	/**
+	 * Run the jobs and wait for them all to finish
+	 *
+	 * @param jobs
+	 * @throws Exception the first job failure, with any others attached as
+	 *                   suppressed exceptions
+	 */
+	public void run(List<BatchJob> jobs) throws Exception {
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IOException("Unable to create output directory " + outputDirectory);
+		}
+		for (BatchJob job : jobs) {
+			remainingUsers.computeIfAbsent(job.getNetworkKey(), key -> new AtomicInteger()).incrementAndGet();
+			remainingUsers.computeIfAbsent(job.getSimilarityKey(), key -> new AtomicInteger()).incrementAndGet();
+		}
+
+		AtomicInteger threadNumber = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, jobs.size())),
+				runnable -> new Thread(runnable, "batch-job-" + threadNumber.incrementAndGet()));
+		CompletionService<BatchJob> completionService = new ExecutorCompletionService<>(executor);
+		long start = System.nanoTime();
+		List<Exception> failures = new ArrayList<>();
+		try {
+			for (BatchJob job : jobs) {
+				completionService.submit(() -> {
+					runJob(job);
+					return job;
+				});
+			}
+			for (int finished = 0; finished < jobs.size(); finished++) {
+				try {
+					completionService.take().get();
+				} catch (ExecutionException e) {
+					Exception failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					log.severe(failure.getMessage());
+					failures.add(failure);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		log.info("Ran " + (jobs.size() - failures.size()) + " of " + jobs.size() + " batch jobs in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+		if (!failures.isEmpty()) {
+			Exception failure = new Exception(failures.size() + " of " + jobs.size() + " batch jobs failed: " + failures.get(0).getMessage(), failures.get(0));
+			for (Exception other : failures.subList(1, failures.size())) {
+				failure.addSuppressed(other);
+			}
+			throw failure;
+		}
+	}
+
+	private void runJob(BatchJob job) throws Exception {
+		log.info("Starting batch job " + job.getName());
+		try (StageTimer timer = StageTimer.start("BatchJob " + job.getName())) {
+			CsrGraph graph = getShared(networks, job.getNetworkKey(), () -> loadNetwork(job));
+			DenseMatrix similarity = getShared(similarities, job.getSimilarityKey(),
+					() -> new RandomWalkWithRestart(job.getRestartProbability(), pool).computeSimilarityMatrix(graph));
+
+			double[] heat = HeatVector.load(graph, job.getScoreFile().getPath());
+			PermutationTest test = new PermutationTest(graph, similarity, job.getPermutations(), job.getDegreeBinSize(), job.getSeed(), pool);
+			test.setMinimumSimilarity(job.getMinimumSimilarity());
+			ClusterStatistics statistics = test.run(heat);
+			// Reuses the builder the test built the observed hierarchy with on this thread
+			Dendrogram dendrogram = test.buildHierarchy(heat);
+
+			File clustersFile = new File(outputDirectory, "clusters_" + job.getName() + ".tsv");
+			saveClusters(dendrogram, statistics, graph.getGenes(), heat, clustersFile);
+			dendrogram.getLargestClusterCurve().save(new File(outputDirectory, "sizes_" + job.getName() + ".tsv").getPath());
+			timer.addRecords(graph.getVertexCount());
+			log.info("Batch job " + job.getName() + " wrote " + clustersFile + "\n" + statistics);
+		} catch (Exception e) {
+			throw new Exception("Batch job " + job.getName() + " failed: " + e.getMessage(), e);
+		} finally {
+			release(networks, job.getNetworkKey());
+			release(similarities, job.getSimilarityKey());
+		}
+	}
+
+	private CsrGraph loadNetwork(BatchJob job) throws IOException {
+		if (job.getEdgeListFile() == null) {
+			return NetworkLoader.loadSifNetwork(job.getNetworkFile().getPath(), pool);
+		}
+		return NetworkLoader.loadHotNetNetwork(job.getNetworkFile().getPath(), job.getEdgeListFile().getPath(), pool);
+	}
+
+	/**
+	 * Write the statistics and the clusters at the observed cut height the way
+	 * HotNet writes a clusters file. Genes without heat which are not in a cluster
+	 * with other genes are left out.
+	 *
+	 * @param dendrogram
+	 * @param statistics
+	 * @param genes
+	 * @param heat
+	 * @param clustersFile
+	 * @throws IOException
+	 */
+	private static void saveClusters(Dendrogram dendrogram, ClusterStatistics statistics, GeneDictionary genes, double[] heat, File clustersFile) throws IOException {
+		try (Writer out = new FileWriter(clustersFile)) {
+			out.write(statistics.toString());
+			out.write("\n# Clusters:\n");
+			for (int[] cluster : dendrogram.getClusters(statistics.getObservedCutHeight(), 1)) {
+				if (cluster.length == 1 && heat[cluster[0]] == 0) {
+					continue;
+				}
+				String[] symbols = new String[cluster.length];
+				for (int i = 0; i < cluster.length; i++) {
+					symbols[i] = genes.getSymbol(cluster[i]);
+				}
+				Arrays.sort(symbols);
+				out.write(String.join("\t", symbols));
+				out.write("\n");
+			}
+		}
+	}
+
+	/**
+	 * Return the cached value, computing it on this thread if no other job has
+	 * started to. Jobs that need a value another job is computing wait for it.
+	 *
+	 * @param <T>
+	 * @param cache
+	 * @param key
+	 * @param loader
+	 * @return
+	 * @throws Exception
+	 */
+	private static <T> T getShared(Map<String, FutureTask<T>> cache, String key, Callable<T> loader) throws Exception {
+		FutureTask<T> task = new FutureTask<>(loader);
+		FutureTask<T> existing = cache.putIfAbsent(key, task);
+		if (existing == null) {
+			existing = task;
+			task.run();
+		}
+		try {
+			return existing.get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * Drop a cached value once the last job that uses it has finished
+	 *
+	 * @param cache
+	 * @param key
+	 */
+	private void release(Map<String, ? extends FutureTask<?>> cache, String key) {
+		if (remainingUsers.get(key).decrementAndGet() == 0) {
+			cache.remove(key);
+			log.fine("Released " + key);
+		}
+	}
+}
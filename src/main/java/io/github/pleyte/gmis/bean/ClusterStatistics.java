@@ -0,0 +1,79 @@
+package io.github.pleyte.gmis.bean;
+
+/**
+ * The statistics Hierarchical HotNet reports at the top of a clusters file: the cut height chosen by the maximum ratio
+ * of observed to expected largest cluster size, and how that ratio compares with permuted scores.
+ *
+ * @author pleyte
+ *
+ */
+public class ClusterStatistics {
+	private double observedCutHeight;
+	private int observedLargestClusterSize;
+	private double expectedLargestClusterSize;
+	private double observedMaximumRatio;
+	private double expectedMaximumRatio;
+	private double pValue;
+
+	public double getObservedCutHeight() {
+		return observedCutHeight;
+	}
+
+	public void setObservedCutHeight(double observedCutHeight) {
+		this.observedCutHeight = observedCutHeight;
+	}
+
+	public int getObservedLargestClusterSize() {
+		return observedLargestClusterSize;
+	}
+
+	public void setObservedLargestClusterSize(int observedLargestClusterSize) {
+		this.observedLargestClusterSize = observedLargestClusterSize;
+	}
+
+	public double getExpectedLargestClusterSize() {
+		return expectedLargestClusterSize;
+	}
+
+	public void setExpectedLargestClusterSize(double expectedLargestClusterSize) {
+		this.expectedLargestClusterSize = expectedLargestClusterSize;
+	}
+
+	public double getObservedMaximumRatio() {
+		return observedMaximumRatio;
+	}
+
+	public void setObservedMaximumRatio(double observedMaximumRatio) {
+		this.observedMaximumRatio = observedMaximumRatio;
+	}
+
+	public double getExpectedMaximumRatio() {
+		return expectedMaximumRatio;
+	}
+
+	public void setExpectedMaximumRatio(double expectedMaximumRatio) {
+		this.expectedMaximumRatio = expectedMaximumRatio;
+	}
+
+	public double getPValue() {
+		return pValue;
+	}
+
+	public void setPValue(double pValue) {
+		this.pValue = pValue;
+	}
+
+	/**
+	 * Format the statistics the way HotNet writes them in the header of a clusters
+	 * file
+	 */
+	@Override
+	public String toString() {
+		return "# Observed cut height: " + observedCutHeight + "\n"
+				+ "# Observed size of largest cluster at observed cut height: " + observedLargestClusterSize + "\n"
+				+ "# Expected size of largest cluster at observed cut height: " + expectedLargestClusterSize + "\n"
+				+ "# Observed maximum ratio statistic: " + observedMaximumRatio + "\n"
+				+ "# Expected maximum ratio statistic: " + expectedMaximumRatio + "\n"
+				+ "# p-value: " + pValue;
+	}
+}
@@ -0,0 +1,41 @@
+package io.github.pleyte.gmis.bean;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * The consensus of several Hierarchical HotNet runs: the subnetworks found by the runs, one per line of
+ * <code>consensus_nodes.tsv</code>, and the edges between their genes from <code>consensus_edges.tsv</code>.
+ *
+ * @author pleyte
+ *
+ */
+public class ConsensusNetwork {
+	private List<Set<String>> subnetworks = new ArrayList<>();
+	private List<Pair<String, String>> edges = new ArrayList<>();
+
+	public void addSubnetwork(String[] genes) {
+		Set<String> subnetwork = new HashSet<>();
+		for (String gene : genes) {
+			subnetwork.add(gene);
+		}
+
+		subnetworks.add(subnetwork);
+	}
+
+	public void addEdge(String source, String target) {
+		edges.add(Pair.of(source, target));
+	}
+
+	public List<Set<String>> getSubnetworks() {
+		return subnetworks;
+	}
+
+	public List<Pair<String, String>> getEdges() {
+		return edges;
+	}
+}
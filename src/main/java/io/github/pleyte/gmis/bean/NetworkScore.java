@@ -7,6 +7,8 @@ import java.util.Set;
 
 public class NetworkScore {
 
+	private String name;
+	private ClusterStatistics statistics;
 	private List<Set<String>> clusters = new ArrayList<>();
 
 	public void addCluster(String[] genes) {
@@ -22,4 +24,32 @@ public class NetworkScore {
 		return clusters;
 	}
 
+	/**
+	 * Return the name of the HotNet run, e.g. <code>network_1_scores_1</code> for
+	 * <code>clusters_network_1_scores_1.tsv</code>
+	 * 
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Return the statistics from the header of the clusters file, or null if it
+	 * had none
+	 * 
+	 * @return
+	 */
+	public ClusterStatistics getStatistics() {
+		return statistics;
+	}
+
+	public void setStatistics(ClusterStatistics statistics) {
+		this.statistics = statistics;
+	}
+
 }
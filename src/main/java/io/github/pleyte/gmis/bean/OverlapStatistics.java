@@ -0,0 +1,191 @@
+package io.github.pleyte.gmis.bean;
+
+/**
+ * The overlap between the clustered genes of two HotNet runs and its significance: an exact hypergeometric p-value
+ * for the number of shared genes, and the expected overlaps and empirical p-values under two permutation nulls, one
+ * relabelling genes at random and one relabelling them only among genes of similar degree. Overlap is measured both
+ * as the number of shared genes and as the number of pairs of clusters which share a gene.
+ *
+ * @author pleyte
+ *
+ */
+public class OverlapStatistics {
+	private String firstRun;
+	private String secondRun;
+	private int geneCount;
+	private int firstGeneCount;
+	private int secondGeneCount;
+	private int geneOverlap;
+	private int clusterOverlap;
+	private double hypergeometricLog10PValue;
+	private int permutationCount;
+	private PermutationNull labelPermutation;
+	private PermutationNull degreePreservingPermutation;
+
+	public String getFirstRun() {
+		return firstRun;
+	}
+
+	public void setFirstRun(String firstRun) {
+		this.firstRun = firstRun;
+	}
+
+	public String getSecondRun() {
+		return secondRun;
+	}
+
+	public void setSecondRun(String secondRun) {
+		this.secondRun = secondRun;
+	}
+
+	/**
+	 * Return the number of genes in the network, the population both runs' genes
+	 * are drawn from
+	 *
+	 * @return
+	 */
+	public int getGeneCount() {
+		return geneCount;
+	}
+
+	public void setGeneCount(int geneCount) {
+		this.geneCount = geneCount;
+	}
+
+	public int getFirstGeneCount() {
+		return firstGeneCount;
+	}
+
+	public void setFirstGeneCount(int firstGeneCount) {
+		this.firstGeneCount = firstGeneCount;
+	}
+
+	public int getSecondGeneCount() {
+		return secondGeneCount;
+	}
+
+	public void setSecondGeneCount(int secondGeneCount) {
+		this.secondGeneCount = secondGeneCount;
+	}
+
+	public int getGeneOverlap() {
+		return geneOverlap;
+	}
+
+	public void setGeneOverlap(int geneOverlap) {
+		this.geneOverlap = geneOverlap;
+	}
+
+	/**
+	 * Return the number of pairs of a cluster of the first run and a cluster of
+	 * the second run which share at least one gene
+	 *
+	 * @return
+	 */
+	public int getClusterOverlap() {
+		return clusterOverlap;
+	}
+
+	public void setClusterOverlap(int clusterOverlap) {
+		this.clusterOverlap = clusterOverlap;
+	}
+
+	/**
+	 * Return the log10 of the probability of at least the observed gene overlap
+	 * between sets of the same sizes drawn at random from the network
+	 *
+	 * @return
+	 */
+	public double getHypergeometricLog10PValue() {
+		return hypergeometricLog10PValue;
+	}
+
+	public void setHypergeometricLog10PValue(double hypergeometricLog10PValue) {
+		this.hypergeometricLog10PValue = hypergeometricLog10PValue;
+	}
+
+	public double getHypergeometricPValue() {
+		return Math.pow(10, hypergeometricLog10PValue);
+	}
+
+	public int getPermutationCount() {
+		return permutationCount;
+	}
+
+	public void setPermutationCount(int permutationCount) {
+		this.permutationCount = permutationCount;
+	}
+
+	public PermutationNull getLabelPermutation() {
+		return labelPermutation;
+	}
+
+	public void setLabelPermutation(PermutationNull labelPermutation) {
+		this.labelPermutation = labelPermutation;
+	}
+
+	public PermutationNull getDegreePreservingPermutation() {
+		return degreePreservingPermutation;
+	}
+
+	public void setDegreePreservingPermutation(PermutationNull degreePreservingPermutation) {
+		this.degreePreservingPermutation = degreePreservingPermutation;
+	}
+
+	@Override
+	public String toString() {
+		return firstRun + " and " + secondRun + " share " + geneOverlap + " of " + firstGeneCount + " and " + secondGeneCount + " genes in a network of "
+				+ geneCount + " (hypergeometric p-value " + getHypergeometricPValue() + ") and " + clusterOverlap + " pairs of clusters share genes\n"
+				+ "Label permutation: " + labelPermutation + "\n" + "Degree preserving permutation: " + degreePreservingPermutation;
+	}
+
+	/**
+	 * Expected overlaps and empirical p-values from the permutations of one null
+	 * model. A p-value is (1 + permutations with at least the observed overlap) /
+	 * (1 + permutations), so it is never zero.
+	 */
+	public static class PermutationNull {
+		private double expectedGeneOverlap;
+		private double geneOverlapPValue;
+		private double expectedClusterOverlap;
+		private double clusterOverlapPValue;
+
+		public double getExpectedGeneOverlap() {
+			return expectedGeneOverlap;
+		}
+
+		public void setExpectedGeneOverlap(double expectedGeneOverlap) {
+			this.expectedGeneOverlap = expectedGeneOverlap;
+		}
+
+		public double getGeneOverlapPValue() {
+			return geneOverlapPValue;
+		}
+
+		public void setGeneOverlapPValue(double geneOverlapPValue) {
+			this.geneOverlapPValue = geneOverlapPValue;
+		}
+
+		public double getExpectedClusterOverlap() {
+			return expectedClusterOverlap;
+		}
+
+		public void setExpectedClusterOverlap(double expectedClusterOverlap) {
+			this.expectedClusterOverlap = expectedClusterOverlap;
+		}
+
+		public double getClusterOverlapPValue() {
+			return clusterOverlapPValue;
+		}
+
+		public void setClusterOverlapPValue(double clusterOverlapPValue) {
+			this.clusterOverlapPValue = clusterOverlapPValue;
+		}
+
+		@Override
+		public String toString() {
+			return "expected gene overlap " + expectedGeneOverlap + " (p-value " + geneOverlapPValue + "), expected cluster overlap " + expectedClusterOverlap
+					+ " (p-value " + clusterOverlapPValue + ")";
+		}
+	}
+}
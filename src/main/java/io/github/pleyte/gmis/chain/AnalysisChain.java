@@ -2,9 +2,48 @@ package io.github.pleyte.gmis.chain;
 
 import org.apache.commons.chain.impl.ChainBase;
 
+/**
+ * Checks the parameters and then runs the analysis stages. The stages form a {@link StageGraph} so the score
+ * conversions and the network export run at the same time, followed by one HotNet run per score file and a test of the
+ * overlap between the score sets' clusters. Stages whose inputs are unchanged since the last run are skipped.
+ * 
+ * @author pleyte
+ *
+ */
 public class AnalysisChain extends ChainBase {
+	public static final long DEFAULT_HOTNET_TIMEOUT_SECONDS = 24 * 60 * 60;
+
 	public AnalysisChain() {
+		this(Runtime.getRuntime().availableProcessors(), null, new ProcessPool(Runtime.getRuntime().availableProcessors(), DEFAULT_HOTNET_TIMEOUT_SECONDS));
+	}
+
+	/**
+	 * 
+	 * @param parallelism maximum number of stages to run at once
+	 * @param manifest    fingerprints of earlier runs used to skip unchanged
+	 *                    stages, or null to run every stage
+	 * @param processPool runs the external HotNet processes
+	 */
+	public AnalysisChain(int parallelism, StageManifest manifest, ProcessPool processPool) {
 		super();
-		addCommand(new ParameterCheck());
+		addCommand(new ParameterCheck(processPool));
+		addCommand(createStageGraph(parallelism, manifest, processPool));
+	}
+
+	private static StageGraph createStageGraph(int parallelism, StageManifest manifest, ProcessPool processPool) {
+		StageGraph stageGraph = new StageGraph(parallelism);
+		stageGraph.setManifest(manifest);
+		stageGraph.addStage(new IntegratedPostGwasScoreStage());
+		stageGraph.addStage(new PolygenicRiskScoreStage());
+		stageGraph.addStage(new SfariScoreStage());
+		stageGraph.addStage(new NetworkExportStage());
+
+		// The three score sets share the process pool's cores
+		int hotNetCores = Math.max(1, processPool.getCores() / 3);
+		for (int scoreSet = 1; scoreSet <= 3; scoreSet++) {
+			stageGraph.addStage(new HotNetStage(scoreSet, processPool, hotNetCores));
+		}
+		stageGraph.addStage(new OverlapStatisticsStage());
+		return stageGraph;
 	}
 }
@@ -2,8 +2,104 @@ package io.github.pleyte.gmis.chain;
 
 import java.io.File;
 
+import org.apache.commons.chain.Context;
 import org.apache.commons.chain.impl.ContextBase;
 
+/**
+ * Values shared by the analysis stages. Stages of a {@link StageGraph} may run at the same time so access to the
+ * context is synchronized.
+ * 
+ * @author pleyte
+ *
+ */
 public class AnalysisContext extends ContextBase {
+	private static final long serialVersionUID = 1L;
+
+	/** Hierarchical HotNet installation directory (File) */
+	public static final String HOTNET_DIRECTORY = "hotnet";
+	/** Directory containing the study data files (File) */
+	public static final String DATA_DIRECTORY = "data";
+	/** Directory the network index and edge list are written to (File) */
+	public static final String OUTPUT_DIRECTORY = "output";
+	/** Gene score file from the integrated post-GWAS analysis (File) */
+	public static final String SCORES_1_FILE = "scores1";
+	/** Gene score file from the polygenic risk score study (File) */
+	public static final String SCORES_2_FILE = "scores2";
+	/** Gene score file from SFARI (File) */
+	public static final String SCORES_3_FILE = "scores3";
+	/** HotNet gene index file (File) */
+	public static final String NETWORK_INDEX_FILE = "networkIndex";
+	/** HotNet edge list file (File) */
+	public static final String NETWORK_EDGE_LIST_FILE = "networkEdgeList";
+	/** Script which runs Hierarchical HotNet on one score file (File) */
+	public static final String HOTNET_SCRIPT = "hotnetScript";
+	/** Resolves gene symbols to their approved symbols, or GeneSymbolResolver.NONE (GeneSymbolResolver) */
+	public static final String GENE_SYMBOL_RESOLVER = "geneSymbolResolver";
+	/** Number of score permutations HotNet uses for its statistics (Integer) */
+	public static final String HOTNET_PERMUTATIONS = "hotnetPermutations";
+	/** HotNet clusters file for scores_1 (File) */
+	public static final String CLUSTERS_1_FILE = "clusters1";
+	/** HotNet clusters file for scores_2 (File) */
+	public static final String CLUSTERS_2_FILE = "clusters2";
+	/** HotNet clusters file for scores_3 (File) */
+	public static final String CLUSTERS_3_FILE = "clusters3";
+	/** Number of permutations used to test the overlap between score sets (Integer) */
+	public static final String OVERLAP_PERMUTATIONS = "overlapPermutations";
+	/** Overlap statistics of each pair of score sets (File) */
+	public static final String OVERLAP_STATISTICS_FILE = "overlapStatistics";
+
 	File hierarchicalHotNetDirectory;
+
+	/**
+	 * Return the context key of a score file
+	 * 
+	 * @param scoreSet 1, 2 or 3
+	 * @return
+	 */
+	public static String scoresFileKey(int scoreSet) {
+		return "scores" + scoreSet;
+	}
+
+	/**
+	 * Return the context key of the HotNet clusters file of a score file
+	 * 
+	 * @param scoreSet 1, 2 or 3
+	 * @return
+	 */
+	public static String clustersFileKey(int scoreSet) {
+		return "clusters" + scoreSet;
+	}
+
+	/**
+	 * Put a value in a context. {@link Context} is a raw map, so every value is put
+	 * through here to keep the unchecked call in one place.
+	 * 
+	 * @param context
+	 * @param key
+	 * @param value
+	 */
+	@SuppressWarnings("unchecked")
+	public static void put(Context context, String key, Object value) {
+		context.put(key, value);
+	}
+
+	@Override
+	public synchronized Object get(Object key) {
+		return super.get(key);
+	}
+
+	@Override
+	public synchronized Object put(Object key, Object value) {
+		return super.put(key, value);
+	}
+
+	@Override
+	public synchronized Object remove(Object key) {
+		return super.remove(key);
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return super.containsKey(key);
+	}
 }
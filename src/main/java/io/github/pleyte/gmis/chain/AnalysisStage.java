@@ -0,0 +1,123 @@
+package io.github.pleyte.gmis.chain;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.apache.commons.chain.Command;
+import org.apache.commons.chain.Context;
+
+import io.github.pleyte.gmis.instrumentation.StageTimer;
+
+/**
+ * A step of the analysis which declares the context values it reads and the files it writes, which it puts into the
+ * context. A {@link StageGraph} uses the declarations to run stages as soon as their inputs are available, and a
+ * {@link StageManifest} uses them, along with the source files and version, to skip stages whose results are current.
+ * 
+ * @author pleyte
+ *
+ */
+public abstract class AnalysisStage implements Command {
+	private static Logger log = Logger.getLogger(AnalysisStage.class.getName());
+
+	private final String[] inputs;
+	private final String[] outputs;
+
+	/**
+	 * 
+	 * @param inputs  context keys the stage reads
+	 * @param outputs context keys the stage puts into the context
+	 */
+	protected AnalysisStage(String[] inputs, String[] outputs) {
+		this.inputs = inputs;
+		this.outputs = outputs;
+	}
+
+	public String[] getInputs() {
+		return inputs;
+	}
+
+	public String[] getOutputs() {
+		return outputs;
+	}
+
+	public String getName() {
+		return getClass().getSimpleName();
+	}
+
+	/**
+	 * Return the version of the stage's processing. Change it when the stage would
+	 * produce different output from the same inputs so earlier results are not
+	 * reused.
+	 * 
+	 * @return
+	 */
+	public String getVersion() {
+		return "1";
+	}
+
+	/**
+	 * Return the files the stage reads which are not already inputs in the context
+	 * 
+	 * @param context
+	 * @return
+	 * @throws Exception
+	 */
+	public List<File> getSourceFiles(Context context) throws Exception {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Return the file the stage writes for each of its outputs
+	 * 
+	 * @param context
+	 * @return
+	 */
+	public abstract Map<String, File> getOutputFiles(Context context);
+
+	@Override
+	public boolean execute(Context context) throws Exception {
+		log.fine(getName() + ".execute");
+
+		try (StageTimer timer = StageTimer.start(getName())) {
+			run(context);
+
+			for (File file : getOutputFiles(context).values()) {
+				if (!file.isFile()) {
+					throw new Exception(getName() + " did not write " + file);
+				}
+			}
+			putOutputs(context);
+			log.info(getName() + " finished in " + timer.getElapsedNanos() / 1_000_000 + " ms");
+		}
+		return CONTINUE_PROCESSING;
+	}
+
+	/**
+	 * Put the output files into the context, either after running or when the
+	 * files from an earlier run are reused
+	 * 
+	 * @param context
+	 * @throws Exception if an output is missing
+	 */
+	public void putOutputs(Context context) throws Exception {
+		Map<String, File> outputFiles = getOutputFiles(context);
+		for (String output : outputs) {
+			File file = outputFiles.get(output);
+			if (file == null) {
+				throw new Exception(getName() + " has no file for output " + output);
+			}
+			AnalysisContext.put(context, output, file);
+		}
+	}
+
+	/**
+	 * Perform the stage, writing each of the output files
+	 * 
+	 * @param context
+	 * @throws Exception
+	 */
+	protected abstract void run(Context context) throws Exception;
+}
@@ -0,0 +1,79 @@
+package io.github.pleyte.gmis.chain;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.chain.Context;
+
+/**
+ * Runs Hierarchical HotNet on one score file as an external process. There is one stage per score file, so the three
+ * score sets are processed at the same time; the {@link ProcessPool} splits its cores between them and kills a run
+ * that does not finish in time.
+ * 
+ * @author pleyte
+ *
+ */
+public class HotNetStage extends AnalysisStage {
+	private final int scoreSet;
+	private final ProcessPool processPool;
+	private final int cores;
+
+	/**
+	 * 
+	 * @param scoreSet    which score file to run: 1, 2 or 3
+	 * @param processPool
+	 * @param cores       number of the pool's cores this run uses
+	 */
+	public HotNetStage(int scoreSet, ProcessPool processPool, int cores) {
+		super(new String[] { AnalysisContext.scoresFileKey(scoreSet), AnalysisContext.NETWORK_INDEX_FILE, AnalysisContext.NETWORK_EDGE_LIST_FILE,
+				AnalysisContext.HOTNET_DIRECTORY, AnalysisContext.HOTNET_SCRIPT, AnalysisContext.HOTNET_PERMUTATIONS, AnalysisContext.OUTPUT_DIRECTORY },
+				new String[] { AnalysisContext.clustersFileKey(scoreSet) });
+		this.scoreSet = scoreSet;
+		this.processPool = processPool;
+		this.cores = cores;
+	}
+
+	@Override
+	public String getName() {
+		return super.getName() + scoreSet;
+	}
+
+	@Override
+	public Map<String, File> getOutputFiles(Context context) {
+		return Collections.singletonMap(AnalysisContext.clustersFileKey(scoreSet), new File(getOutputDirectory(context), "clusters_" + getRunName() + ".tsv"));
+	}
+
+	@Override
+	protected void run(Context context) throws Exception {
+		File outputDirectory = getOutputDirectory(context);
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new Exception("Unable to create HotNet output directory " + outputDirectory);
+		}
+
+		// The process runs in the output directory so every path is made absolute
+		List<String> command = Arrays.asList("bash", getPath(context, AnalysisContext.HOTNET_SCRIPT), getPath(context, AnalysisContext.HOTNET_DIRECTORY),
+				getPath(context, AnalysisContext.NETWORK_INDEX_FILE), getPath(context, AnalysisContext.NETWORK_EDGE_LIST_FILE),
+				getPath(context, AnalysisContext.scoresFileKey(scoreSet)), outputDirectory.getAbsolutePath(),
+				String.valueOf(context.get(AnalysisContext.HOTNET_PERMUTATIONS)), String.valueOf(cores), getRunName());
+
+		ProcessResult result = processPool.run(getName(), command, outputDirectory, cores);
+		if (!result.isSuccess()) {
+			throw new Exception(result.toString());
+		}
+	}
+
+	private static String getPath(Context context, String key) {
+		return ((File) context.get(key)).getAbsolutePath();
+	}
+
+	private String getRunName() {
+		return "network_1_scores_" + scoreSet;
+	}
+
+	private File getOutputDirectory(Context context) {
+		return new File((File) context.get(AnalysisContext.OUTPUT_DIRECTORY), "hotnet");
+	}
+}
@@ -0,0 +1,47 @@
+package io.github.pleyte.gmis.chain;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.chain.Context;
+
+import io.github.pleyte.gmis.graph.GeneSymbolResolver;
+import io.github.pleyte.gmis.intermediate.IntegratedPostGwasToGeneScore;
+
+/**
+ * Converts the integrated post-GWAS analysis tables to <code>scores_1.tsv</code>
+ * 
+ * @author pleyte
+ *
+ */
+public class IntegratedPostGwasScoreStage extends AnalysisStage {
+
+	public IntegratedPostGwasScoreStage() {
+		super(new String[] { AnalysisContext.DATA_DIRECTORY, AnalysisContext.GENE_SYMBOL_RESOLVER }, new String[] { AnalysisContext.SCORES_1_FILE });
+	}
+
+	@Override
+	public List<File> getSourceFiles(Context context) {
+		File directory = getDirectory(context);
+		return Arrays.asList(new File(directory, "Table1.csv"), new File(directory, "tabula-TableS2.csv"), new File(directory, "tabula-TableS4.csv"));
+	}
+
+	@Override
+	public Map<String, File> getOutputFiles(Context context) {
+		return Collections.singletonMap(AnalysisContext.SCORES_1_FILE, new File(getDirectory(context), "scores_1.tsv"));
+	}
+
+	@Override
+	protected void run(Context context) throws Exception {
+		List<File> sourceFiles = getSourceFiles(context);
+		IntegratedPostGwasToGeneScore.convert(sourceFiles.get(0).getPath(), sourceFiles.get(1).getPath(), sourceFiles.get(2).getPath(),
+				getOutputFiles(context).get(AnalysisContext.SCORES_1_FILE).getPath(), (GeneSymbolResolver) context.get(AnalysisContext.GENE_SYMBOL_RESOLVER));
+	}
+
+	private File getDirectory(Context context) {
+		return new File((File) context.get(AnalysisContext.DATA_DIRECTORY), "IntegratedPost-GWASAnalysis_files");
+	}
+}
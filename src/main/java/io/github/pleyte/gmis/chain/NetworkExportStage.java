@@ -0,0 +1,51 @@
+package io.github.pleyte.gmis.chain;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.chain.Context;
+
+import io.github.pleyte.gmis.graph.GeneSymbolResolver;
+import io.github.pleyte.gmis.intermediate.NetworkIndexAndEdgeCreator;
+
+/**
+ * Writes the HotNet gene index and edge list of <code>gene_network.sif</code> to the output directory
+ * 
+ * @author pleyte
+ *
+ */
+public class NetworkExportStage extends AnalysisStage {
+
+	public NetworkExportStage() {
+		super(new String[] { AnalysisContext.OUTPUT_DIRECTORY, AnalysisContext.GENE_SYMBOL_RESOLVER }, new String[] { AnalysisContext.NETWORK_INDEX_FILE, AnalysisContext.NETWORK_EDGE_LIST_FILE });
+	}
+
+	@Override
+	public List<File> getSourceFiles(Context context) throws Exception {
+		URL geneNetworkSifFile = NetworkExportStage.class.getClassLoader().getResource("gene_network.sif");
+		if (geneNetworkSifFile == null) {
+			throw new Exception("Unable to locate input file: gene_network.sif");
+		}
+		return Collections.singletonList(new File(geneNetworkSifFile.getFile()));
+	}
+
+	@Override
+	public Map<String, File> getOutputFiles(Context context) {
+		File directory = (File) context.get(AnalysisContext.OUTPUT_DIRECTORY);
+		Map<String, File> outputFiles = new LinkedHashMap<>();
+		outputFiles.put(AnalysisContext.NETWORK_INDEX_FILE, new File(directory, "network_1_index_gene.tsv"));
+		outputFiles.put(AnalysisContext.NETWORK_EDGE_LIST_FILE, new File(directory, "network_1_edge_list.tsv"));
+		return outputFiles;
+	}
+
+	@Override
+	protected void run(Context context) throws Exception {
+		Map<String, File> outputFiles = getOutputFiles(context);
+		NetworkIndexAndEdgeCreator.export(getSourceFiles(context).get(0).getPath(), outputFiles.get(AnalysisContext.NETWORK_INDEX_FILE).getPath(),
+				outputFiles.get(AnalysisContext.NETWORK_EDGE_LIST_FILE).getPath(), (GeneSymbolResolver) context.get(AnalysisContext.GENE_SYMBOL_RESOLVER));
+	}
+}
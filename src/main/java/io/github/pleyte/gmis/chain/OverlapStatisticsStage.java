@@ -0,0 +1,62 @@
+package io.github.pleyte.gmis.chain;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+
+import org.apache.commons.chain.Context;
+
+import io.github.pleyte.gmis.bean.NetworkScore;
+import io.github.pleyte.gmis.bean.OverlapStatistics;
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.intermediate.NetworkLoader;
+import io.github.pleyte.gmis.result.OverlapSignificance;
+import io.github.pleyte.gmis.result.ResultsLoader;
+
+/**
+ * Tests the overlap between the clusters of every pair of score sets once HotNet has run on all three, and writes the
+ * statistics to <code>overlap_statistics.tsv</code> in the output directory
+ * 
+ * @author pleyte
+ *
+ */
+public class OverlapStatisticsStage extends AnalysisStage {
+	private static Logger log = Logger.getLogger(OverlapStatisticsStage.class.getName());
+
+	private static final long SEED = 1;
+
+	public OverlapStatisticsStage() {
+		super(new String[] { AnalysisContext.CLUSTERS_1_FILE, AnalysisContext.CLUSTERS_2_FILE, AnalysisContext.CLUSTERS_3_FILE,
+				AnalysisContext.NETWORK_INDEX_FILE, AnalysisContext.NETWORK_EDGE_LIST_FILE, AnalysisContext.OVERLAP_PERMUTATIONS,
+				AnalysisContext.OUTPUT_DIRECTORY }, new String[] { AnalysisContext.OVERLAP_STATISTICS_FILE });
+	}
+
+	@Override
+	public Map<String, File> getOutputFiles(Context context) {
+		return Collections.singletonMap(AnalysisContext.OVERLAP_STATISTICS_FILE,
+				new File((File) context.get(AnalysisContext.OUTPUT_DIRECTORY), "overlap_statistics.tsv"));
+	}
+
+	@Override
+	protected void run(Context context) throws Exception {
+		CsrGraph graph = NetworkLoader.loadHotNetNetwork(((File) context.get(AnalysisContext.NETWORK_INDEX_FILE)).getPath(),
+				((File) context.get(AnalysisContext.NETWORK_EDGE_LIST_FILE)).getPath(), ForkJoinPool.commonPool());
+		List<NetworkScore> runs = new ArrayList<>();
+		for (int scoreSet = 1; scoreSet <= 3; scoreSet++) {
+			runs.add(ResultsLoader.load((File) context.get(AnalysisContext.clustersFileKey(scoreSet))));
+		}
+
+		int permutations = (Integer) context.get(AnalysisContext.OVERLAP_PERMUTATIONS);
+		OverlapSignificance significance = new OverlapSignificance(graph, permutations, OverlapSignificance.DEFAULT_DEGREE_BIN_SIZE, SEED,
+				ForkJoinPool.commonPool());
+		List<OverlapStatistics> statistics = significance.testAllPairs(runs);
+		for (OverlapStatistics s : statistics) {
+			log.info(s.toString());
+		}
+		OverlapSignificance.save(statistics, getOutputFiles(context).get(AnalysisContext.OVERLAP_STATISTICS_FILE));
+	}
+}
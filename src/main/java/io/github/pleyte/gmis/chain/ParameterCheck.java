@@ -1,10 +1,6 @@
 package io.github.pleyte.gmis.chain;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
@@ -15,6 +11,14 @@ import org.apache.commons.chain.Context;
 public class ParameterCheck implements Command {
 	private static Logger log = Logger.getLogger(ParameterCheck.class.getName());
 
+	private static final String PYTHON = System.getenv().getOrDefault("PYTHON", "python3");
+
+	private final ProcessPool processPool;
+
+	public ParameterCheck(ProcessPool processPool) {
+		this.processPool = processPool;
+	}
+
 	@Override
 	public boolean execute(Context context) throws Exception {
 		log.fine(ParameterCheck.class.getSimpleName() + ".execute");
@@ -27,38 +31,22 @@ public class ParameterCheck implements Command {
 	}
 
 	/**
-	 * Make sure python is installed
+	 * Make sure python is installed along with the packages Hierarchical HotNet
+	 * uses
 	 * 
 	 * @param context
-	 * @throws IOException
-	 * @throws InterruptedException
+	 * @throws Exception
 	 */
-	private void verifyPythonEnvironment(Context context) throws IOException, InterruptedException {
-		URL testScript = ParameterCheck.class.getClassLoader().getResource("test.sh");
-		if (testScript == null) {
-			log.severe("Unable to locate test script");
-		}
-
-		log.fine("Found resource: " + testScript.getFile());
-
+	private void verifyPythonEnvironment(Context context) throws Exception {
 		List<String> testCommand = new ArrayList<>();
-		testCommand.add("bash");
-		testCommand.add(testScript.getFile());
-
-		ProcessBuilder build = new ProcessBuilder();
-		build.directory(new File("/tmp"));
-		build.command(testCommand);
-		Process process = build.start();
+		testCommand.add(PYTHON);
+		testCommand.add("-c");
+		testCommand.add("import numpy, scipy, h5py, networkx, matplotlib; print('Python packages for HotNet are installed')");
 
-		try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-			String line;
-			while ((line = reader.readLine()) != null) {
-				log.info(line);
-			}
+		ProcessResult result = processPool.run("python-check", testCommand, new File(System.getProperty("java.io.tmpdir")), 1);
+		if (!result.isSuccess()) {
+			throw new Exception("The python environment is not able to run HotNet: " + result);
 		}
-
-//		process.waitFor(); 
-
 	}
 
 	/**
@@ -69,7 +57,7 @@ public class ParameterCheck implements Command {
 	 */
 	private void verifyHotNetInstallation(Context context) throws Exception {
 
-		File hotnetDirectory = (File) context.get("hotnet");
+		File hotnetDirectory = (File) context.get(AnalysisContext.HOTNET_DIRECTORY);
 		if (!hotnetDirectory.isDirectory()) {
 			log.severe("HotNet directory does not exist: " + hotnetDirectory);
 			throw new Exception("HotNet directory does not exist: " + hotnetDirectory);
@@ -0,0 +1,44 @@
+package io.github.pleyte.gmis.chain;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.chain.Context;
+
+import io.github.pleyte.gmis.graph.GeneSymbolResolver;
+import io.github.pleyte.gmis.intermediate.PolyPValueToGeneScore;
+
+/**
+ * Converts the polygenic risk score study p-values to <code>scores_2.tsv</code>
+ * 
+ * @author pleyte
+ *
+ */
+public class PolygenicRiskScoreStage extends AnalysisStage {
+
+	public PolygenicRiskScoreStage() {
+		super(new String[] { AnalysisContext.DATA_DIRECTORY, AnalysisContext.GENE_SYMBOL_RESOLVER }, new String[] { AnalysisContext.SCORES_2_FILE });
+	}
+
+	@Override
+	public List<File> getSourceFiles(Context context) {
+		return Collections.singletonList(new File(getDirectory(context), "table3_data.csv"));
+	}
+
+	@Override
+	public Map<String, File> getOutputFiles(Context context) {
+		return Collections.singletonMap(AnalysisContext.SCORES_2_FILE, new File(getDirectory(context), "scores_2.tsv"));
+	}
+
+	@Override
+	protected void run(Context context) throws Exception {
+		PolyPValueToGeneScore.convert(getSourceFiles(context).get(0).getPath(), getOutputFiles(context).get(AnalysisContext.SCORES_2_FILE).getPath(),
+				(GeneSymbolResolver) context.get(AnalysisContext.GENE_SYMBOL_RESOLVER));
+	}
+
+	private File getDirectory(Context context) {
+		return new File((File) context.get(AnalysisContext.DATA_DIRECTORY), "PolygenicRiskScore_files");
+	}
+}
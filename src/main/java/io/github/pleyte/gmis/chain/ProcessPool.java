@@ -0,0 +1,189 @@
+package io.github.pleyte.gmis.chain;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Runs external processes, such as the Hierarchical HotNet Python scripts, with a limit on the number of cores they
+ * use between them. Each process asks for a number of cores and waits until they are free, so several processes can
+ * run at once without oversubscribing the machine.
+ *
+ * The output and error streams are read on their own threads as the process writes them, and each line is logged
+ * under the process name so progress shows up in the pipeline log. A process that runs past its timeout is killed
+ * along with any processes it started.
+ *
+ * @author pleyte
+ *
+ */
+public class ProcessPool {
+	private static Logger log = Logger.getLogger(ProcessPool.class.getName());
+
+	private static final int ERROR_TAIL_LINES = 20;
+
+	/**
+	 * How long to wait for the output to be read after a process has ended
+	 */
+	private static final long DRAIN_SECONDS = 10;
+
+	private final int cores;
+	private final long timeoutSeconds;
+	private final Semaphore available;
+	private final ExecutorService streamReaders;
+
+	/**
+	 *
+	 * @param cores          number of cores the processes may use between them
+	 * @param timeoutSeconds how long a process may run before it is killed
+	 */
+	public ProcessPool(int cores, long timeoutSeconds) {
+		if (cores < 1) {
+			throw new IllegalArgumentException("At least one core is needed: " + cores);
+		}
+		this.cores = cores;
+		this.timeoutSeconds = timeoutSeconds;
+		this.available = new Semaphore(cores, true);
+		this.streamReaders = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "process-output");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public int getCores() {
+		return cores;
+	}
+
+	public long getTimeoutSeconds() {
+		return timeoutSeconds;
+	}
+
+	/**
+	 * Run a process once the cores it needs are free and wait for it to finish
+	 *
+	 * @param name      name to log the process's output under
+	 * @param command
+	 * @param directory working directory
+	 * @param cores     number of cores the process uses; more than the pool has
+	 *                  is reduced to the pool's size
+	 * @return
+	 * @throws IOException          if the process cannot be started
+	 * @throws InterruptedException
+	 */
+	public ProcessResult run(String name, List<String> command, File directory, int cores) throws IOException, InterruptedException {
+		int permits = Math.max(1, Math.min(cores, this.cores));
+		available.acquire(permits);
+		try {
+			return execute(name, command, directory);
+		} finally {
+			available.release(permits);
+		}
+	}
+
+	private ProcessResult execute(String name, List<String> command, File directory) throws IOException, InterruptedException {
+		log.info("Starting " + name + ": " + String.join(" ", command));
+		long start = System.nanoTime();
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.directory(directory);
+		Process process = builder.start();
+		process.getOutputStream().close();
+
+		Deque<String> errorTail = new ArrayDeque<>();
+		Future<?> output = streamReaders.submit(() -> drain(process.getInputStream(), name, null));
+		Future<?> error = streamReaders.submit(() -> drain(process.getErrorStream(), name + " (stderr)", errorTail));
+
+		boolean timedOut = false;
+		try {
+			if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+				timedOut = true;
+				log.severe(name + " did not finish within " + timeoutSeconds + " seconds and will be killed");
+				kill(process);
+			}
+		} catch (InterruptedException e) {
+			kill(process);
+			throw e;
+		}
+
+		finishDraining(output, name);
+		finishDraining(error, name);
+
+		long elapsed = (System.nanoTime() - start) / 1_000_000;
+		List<String> tail;
+		synchronized (errorTail) {
+			tail = new ArrayList<>(errorTail);
+		}
+		ProcessResult result = new ProcessResult(name, timedOut ? -1 : process.exitValue(), timedOut, elapsed, tail);
+		if (result.isSuccess()) {
+			log.info(result.toString());
+		} else {
+			log.severe(result.toString());
+		}
+		return result;
+	}
+
+	/**
+	 * Log each line of a stream, keeping the last few if a tail is given
+	 *
+	 * @param stream
+	 * @param name
+	 * @param tail
+	 */
+	private static void drain(InputStream stream, String name, Deque<String> tail) {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				log.info("[" + name + "] " + line);
+				if (tail != null) {
+					synchronized (tail) {
+						if (tail.size() == ERROR_TAIL_LINES) {
+							tail.removeFirst();
+						}
+						tail.addLast(line);
+					}
+				}
+			}
+		} catch (IOException e) {
+			log.warning("Stopped reading output of " + name + ": " + e.getMessage());
+		}
+	}
+
+	private static void finishDraining(Future<?> reader, String name) throws InterruptedException {
+		try {
+			reader.get(DRAIN_SECONDS, TimeUnit.SECONDS);
+		} catch (TimeoutException e) {
+			// A child process may still hold the stream open
+			reader.cancel(true);
+			log.warning("Gave up reading the output of " + name);
+		} catch (ExecutionException e) {
+			log.warning("Failed to read the output of " + name + ": " + e.getCause());
+		}
+	}
+
+	/**
+	 * Kill a process and everything it started
+	 *
+	 * @param process
+	 * @throws InterruptedException
+	 */
+	private static void kill(Process process) throws InterruptedException {
+		process.descendants().forEach(ProcessHandle::destroyForcibly);
+		process.destroyForcibly();
+		process.waitFor(DRAIN_SECONDS, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,70 @@
+package io.github.pleyte.gmis.chain;
+
+import java.util.List;
+
+/**
+ * The outcome of an external process run by a {@link ProcessPool}
+ *
+ * @author pleyte
+ *
+ */
+public class ProcessResult {
+	private final String name;
+	private final int exitCode;
+	private final boolean timedOut;
+	private final long elapsedMillis;
+	private final List<String> errorTail;
+
+	/**
+	 *
+	 * @param name          name the process was run under
+	 * @param exitCode      exit code, or -1 if the process timed out
+	 * @param timedOut
+	 * @param elapsedMillis
+	 * @param errorTail     the last lines the process wrote to stderr
+	 */
+	public ProcessResult(String name, int exitCode, boolean timedOut, long elapsedMillis, List<String> errorTail) {
+		this.name = name;
+		this.exitCode = exitCode;
+		this.timedOut = timedOut;
+		this.elapsedMillis = elapsedMillis;
+		this.errorTail = errorTail;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getExitCode() {
+		return exitCode;
+	}
+
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public List<String> getErrorTail() {
+		return errorTail;
+	}
+
+	public boolean isSuccess() {
+		return !timedOut && exitCode == 0;
+	}
+
+	@Override
+	public String toString() {
+		String outcome = timedOut ? "timed out" : "exited with code " + exitCode;
+		StringBuilder text = new StringBuilder(name + " " + outcome + " after " + elapsedMillis + " ms");
+		if (!isSuccess() && !errorTail.isEmpty()) {
+			text.append("; last lines of stderr:");
+			for (String line : errorTail) {
+				text.append("\n\t").append(line);
+			}
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,45 @@
+package io.github.pleyte.gmis.chain;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.chain.Context;
+
+import io.github.pleyte.gmis.graph.GeneSymbolResolver;
+import io.github.pleyte.gmis.intermediate.SfariToGeneScore;
+
+/**
+ * Converts the SFARI gene export to <code>scores_3.tsv</code>
+ * 
+ * @author pleyte
+ *
+ */
+public class SfariScoreStage extends AnalysisStage {
+	private static final String SFARI_EXPORT_FILE = "SFARI-Gene_genes_03-04-2020release_03-06-2020export.csv";
+
+	public SfariScoreStage() {
+		super(new String[] { AnalysisContext.DATA_DIRECTORY, AnalysisContext.GENE_SYMBOL_RESOLVER }, new String[] { AnalysisContext.SCORES_3_FILE });
+	}
+
+	@Override
+	public List<File> getSourceFiles(Context context) {
+		return Collections.singletonList(new File(getDirectory(context), SFARI_EXPORT_FILE));
+	}
+
+	@Override
+	public Map<String, File> getOutputFiles(Context context) {
+		return Collections.singletonMap(AnalysisContext.SCORES_3_FILE, new File(getDirectory(context), "scores_3.tsv"));
+	}
+
+	@Override
+	protected void run(Context context) throws Exception {
+		SfariToGeneScore.convert(getSourceFiles(context).get(0).getPath(), getOutputFiles(context).get(AnalysisContext.SCORES_3_FILE).getPath(),
+				(GeneSymbolResolver) context.get(AnalysisContext.GENE_SYMBOL_RESOLVER));
+	}
+
+	private File getDirectory(Context context) {
+		return new File((File) context.get(AnalysisContext.DATA_DIRECTORY), "SFARI");
+	}
+}
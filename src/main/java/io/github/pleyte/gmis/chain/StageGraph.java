@@ -0,0 +1,208 @@
+package io.github.pleyte.gmis.chain;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.apache.commons.chain.Command;
+import org.apache.commons.chain.Context;
+
+/**
+ * Runs a set of {@link AnalysisStage}s in dependency order. A stage depends on the stages that produce its inputs and
+ * is started as soon as they have all finished, so independent stages run at the same time on a fixed number of
+ * threads. Inputs which no stage produces must already be in the context.
+ * 
+ * If a stage fails no further stages are started; the stages already running are allowed to finish and the first
+ * failure is thrown.
+ * 
+ * With a {@link StageManifest} a stage whose fingerprint matches its last successful run is not run again; its
+ * earlier output files are put into the context instead.
+ * 
+ * @author pleyte
+ *
+ */
+public class StageGraph implements Command {
+	private static Logger log = Logger.getLogger(StageGraph.class.getName());
+
+	private final List<AnalysisStage> stages = new ArrayList<>();
+	private final int parallelism;
+	private StageManifest manifest;
+
+	/**
+	 * 
+	 * @param parallelism maximum number of stages to run at once
+	 */
+	public StageGraph(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	public void addStage(AnalysisStage stage) {
+		stages.add(stage);
+	}
+
+	public List<AnalysisStage> getStages() {
+		return stages;
+	}
+
+	/**
+	 * Skip stages whose inputs are unchanged since they were recorded in the
+	 * manifest
+	 * 
+	 * @param manifest the manifest, or null to run every stage
+	 */
+	public void setManifest(StageManifest manifest) {
+		this.manifest = manifest;
+	}
+
+	@Override
+	public boolean execute(Context context) throws Exception {
+		log.fine(StageGraph.class.getSimpleName() + ".execute");
+		if (stages.isEmpty()) {
+			return CONTINUE_PROCESSING;
+		}
+
+		int[] waitingOn = new int[stages.size()];
+		List<List<Integer>> dependents = createDependencies(context, waitingOn);
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, stages.size()));
+		try {
+			CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+			int running = 0;
+			for (int s = 0; s < stages.size(); s++) {
+				if (waitingOn[s] == 0) {
+					submit(completion, s, context);
+					++running;
+				}
+			}
+
+			Exception failure = null;
+			while (running > 0) {
+				Future<Integer> finished = completion.take();
+				--running;
+				try {
+					int s = finished.get();
+					if (failure == null) {
+						for (int dependent : dependents.get(s)) {
+							if (--waitingOn[dependent] == 0) {
+								submit(completion, dependent, context);
+								++running;
+							}
+						}
+					}
+				} catch (ExecutionException e) {
+					Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					if (failure == null) {
+						failure = cause;
+					} else {
+						failure.addSuppressed(cause);
+					}
+				}
+			}
+
+			if (failure != null) {
+				throw failure;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return CONTINUE_PROCESSING;
+	}
+
+	private void submit(CompletionService<Integer> completion, int s, Context context) {
+		AnalysisStage stage = stages.get(s);
+		completion.submit(() -> {
+			if (manifest == null) {
+				log.info("Starting " + stage.getName());
+				stage.execute(context);
+				return s;
+			}
+
+			String fingerprint = manifest.fingerprint(stage, context);
+			if (manifest.isCurrent(stage, fingerprint, context)) {
+				log.info("Skipping " + stage.getName() + " because its inputs have not changed");
+				stage.putOutputs(context);
+			} else {
+				log.info("Starting " + stage.getName());
+				manifest.remove(stage);
+				stage.execute(context);
+				manifest.record(stage, fingerprint);
+			}
+			return s;
+		});
+	}
+
+	/**
+	 * Link each stage to the stages that produce its inputs and check that the
+	 * stages can be ordered
+	 * 
+	 * @param context
+	 * @param waitingOn receives the number of stages each stage depends on
+	 * @return the stages that depend on each stage
+	 * @throws Exception if an output has two producers, an input is not available,
+	 *                   or the stages depend on each other in a cycle
+	 */
+	private List<List<Integer>> createDependencies(Context context, int[] waitingOn) throws Exception {
+		Map<String, Integer> producers = new HashMap<>();
+		for (int s = 0; s < stages.size(); s++) {
+			for (String output : stages.get(s).getOutputs()) {
+				Integer previous = producers.put(output, s);
+				if (previous != null) {
+					throw new Exception(output + " is produced by both " + stages.get(previous).getName() + " and " + stages.get(s).getName());
+				}
+			}
+		}
+
+		List<List<Integer>> dependents = new ArrayList<>();
+		for (int s = 0; s < stages.size(); s++) {
+			dependents.add(new ArrayList<>());
+		}
+		for (int s = 0; s < stages.size(); s++) {
+			for (String input : stages.get(s).getInputs()) {
+				Integer producer = producers.get(input);
+				if (producer != null) {
+					dependents.get(producer).add(s);
+					++waitingOn[s];
+				} else if (context.get(input) == null) {
+					throw new Exception(stages.get(s).getName() + " needs " + input + " but it is not in the context and no stage produces it");
+				}
+			}
+		}
+
+		// Kahn's algorithm: every stage must become ready once its producers are done
+		int[] remaining = waitingOn.clone();
+		List<Integer> ready = new ArrayList<>();
+		for (int s = 0; s < stages.size(); s++) {
+			if (remaining[s] == 0) {
+				ready.add(s);
+			}
+		}
+		for (int i = 0; i < ready.size(); i++) {
+			for (int dependent : dependents.get(ready.get(i))) {
+				if (--remaining[dependent] == 0) {
+					ready.add(dependent);
+				}
+			}
+		}
+		if (ready.size() < stages.size()) {
+			List<String> cycle = new ArrayList<>();
+			for (int s = 0; s < stages.size(); s++) {
+				if (remaining[s] > 0) {
+					cycle.add(stages.get(s).getName());
+				}
+			}
+			throw new Exception("Stages depend on each other in a cycle: " + cycle);
+		}
+		return dependents;
+	}
+}
@@ -0,0 +1,185 @@
+package io.github.pleyte.gmis.chain;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.apache.commons.chain.Context;
+
+import io.github.pleyte.gmis.graph.CsrGraphSnapshot;
+
+/**
+ * Records a fingerprint of each stage's inputs after it runs so that a later run can skip the stage and reuse its
+ * output files when nothing it depends on has changed. The fingerprint is a SHA-256 hash of the stage's name and
+ * version, its input values (hashing the contents of input files), the contents of its source files and the paths of
+ * its output files.
+ *
+ * The manifest is a properties file of stage name to fingerprint. It is rewritten after every stage so an
+ * interrupted run keeps the stages that finished, and a stage's entry is removed before it runs so a stage that fails
+ * part way is never reused.
+ *
+ * @author pleyte
+ *
+ */
+public class StageManifest {
+	private static Logger log = Logger.getLogger(StageManifest.class.getName());
+
+	public static final String FILE_NAME = "stage-manifest.properties";
+
+	private final Path manifestFile;
+	private final Properties fingerprints = new Properties();
+
+	// File content hashes already computed in this run, keyed by path, size and modification time
+	private final Map<String, String> fileHashes = new ConcurrentHashMap<>();
+
+	/**
+	 * Load the manifest, or start an empty one if the file does not exist
+	 *
+	 * @param manifestFile
+	 * @throws IOException
+	 */
+	public StageManifest(Path manifestFile) throws IOException {
+		this.manifestFile = manifestFile;
+		if (Files.isRegularFile(manifestFile)) {
+			try (Reader in = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+				fingerprints.load(in);
+			}
+		}
+	}
+
+	/**
+	 * Compute the fingerprint of a stage from the current context and files
+	 *
+	 * @param stage
+	 * @param context
+	 * @return
+	 * @throws Exception
+	 */
+	public String fingerprint(AnalysisStage stage, Context context) throws Exception {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("SHA-256 is not available", e);
+		}
+
+		update(digest, "stage", stage.getName());
+		update(digest, "version", stage.getVersion());
+		for (String input : stage.getInputs()) {
+			Object value = context.get(input);
+			update(digest, "input " + input, String.valueOf(value));
+			if (value instanceof File && ((File) value).isFile()) {
+				update(digest, "content", hash((File) value));
+			}
+		}
+		for (File sourceFile : stage.getSourceFiles(context)) {
+			update(digest, "source", sourceFile.getPath());
+			update(digest, "content", sourceFile.isFile() ? hash(sourceFile) : "missing");
+		}
+		for (Map.Entry<String, File> output : stage.getOutputFiles(context).entrySet()) {
+			update(digest, "output " + output.getKey(), output.getValue().getPath());
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Return true if the stage last finished with the same fingerprint and all of
+	 * its output files still exist
+	 *
+	 * @param stage
+	 * @param fingerprint
+	 * @param context
+	 * @return
+	 */
+	public boolean isCurrent(AnalysisStage stage, String fingerprint, Context context) {
+		if (!fingerprint.equals(fingerprints.getProperty(stage.getName()))) {
+			return false;
+		}
+		for (File outputFile : stage.getOutputFiles(context).values()) {
+			if (!outputFile.isFile()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Forget a stage before it runs
+	 *
+	 * @param stage
+	 * @throws IOException
+	 */
+	public synchronized void remove(AnalysisStage stage) throws IOException {
+		if (fingerprints.remove(stage.getName()) != null) {
+			save();
+		}
+	}
+
+	/**
+	 * Record the fingerprint of a stage that finished
+	 *
+	 * @param stage
+	 * @param fingerprint
+	 * @throws IOException
+	 */
+	public synchronized void record(AnalysisStage stage, String fingerprint) throws IOException {
+		fingerprints.setProperty(stage.getName(), fingerprint);
+		save();
+	}
+
+	/**
+	 * Write the manifest to a temporary file and move it into place
+	 *
+	 * @throws IOException
+	 */
+	private void save() throws IOException {
+		Path directory = manifestFile.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temporaryFile = Files.createTempFile(directory, manifestFile.getFileName().toString(), ".tmp");
+		try {
+			try (Writer out = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+				fingerprints.store(out, "Fingerprints of the analysis stages which last completed");
+			}
+			Files.move(temporaryFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporaryFile);
+		}
+	}
+
+	private String hash(File file) throws IOException {
+		String key = file.getAbsolutePath() + "\0" + file.length() + "\0" + file.lastModified();
+		String hash = fileHashes.get(key);
+		if (hash == null) {
+			log.fine("Hashing " + file);
+			hash = toHex(CsrGraphSnapshot.hash(file.toPath()));
+			fileHashes.put(key, hash);
+		}
+		return hash;
+	}
+
+	private static void update(MessageDigest digest, String name, String value) {
+		digest.update(name.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
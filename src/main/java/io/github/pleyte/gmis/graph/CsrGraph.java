@@ -0,0 +1,377 @@
+package io.github.pleyte.gmis.graph;
+
+import java.util.Arrays;
+
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * An immutable undirected gene network stored in compressed sparse row (CSR) form. Genes are interned into a
+ * {@link GeneDictionary} and referred to by their integer id. The neighbours of vertex <code>v</code> are
+ * <code>getNeighbours()[getOffsets()[v]]</code> up to (but excluding)
+ * <code>getNeighbours()[getOffsets()[v + 1]]</code>, sorted in ascending order.
+ *
+ * Like JUNG's <code>UndirectedSparseGraph</code>, parallel edges are collapsed into one edge and a self loop is a
+ * single edge which appears once in its vertex's neighbour list. Use {@link #asJungGraph()} where a JUNG
+ * {@link Graph} is required.
+ *
+ * @author pleyte
+ *
+ */
+public class CsrGraph {
+	private final GeneDictionary genes;
+
+	private final int[] offsets;
+	private final int[] neighbours;
+	private final int[] incidentEdges;
+
+	private final int[] edgeSource;
+	private final int[] edgeTarget;
+
+	/**
+	 * Create a graph from arrays which have already been laid out in CSR form.
+	 *
+	 * @param genes
+	 * @param offsets       vertexCount + 1 offsets into the neighbour array
+	 * @param neighbours    the sorted neighbours of each vertex
+	 * @param incidentEdges the edge id of each entry in the neighbour array
+	 * @param edgeSource    the lower vertex id of each edge
+	 * @param edgeTarget    the higher vertex id of each edge
+	 */
+	CsrGraph(GeneDictionary genes, int[] offsets, int[] neighbours, int[] incidentEdges, int[] edgeSource, int[] edgeTarget) {
+		this.genes = genes;
+		this.offsets = offsets;
+		this.neighbours = neighbours;
+		this.incidentEdges = incidentEdges;
+		this.edgeSource = edgeSource;
+		this.edgeTarget = edgeTarget;
+	}
+
+	/**
+	 * Create a graph from its CSR offsets and sorted neighbour rows, numbering the
+	 * edges the same way {@link Builder#build()} does
+	 *
+	 * @param genes
+	 * @param offsets
+	 * @param neighbours
+	 * @return
+	 */
+	static CsrGraph fromAdjacency(GeneDictionary genes, int[] offsets, int[] neighbours) {
+		int vertexCount = offsets.length - 1;
+
+		// Each edge appears once in the row of its lower vertex with a neighbour >= the
+		// row's vertex; a self loop appears only there
+		int edgeCount = 0;
+		for (int v = 0; v < vertexCount; v++) {
+			for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+				if (neighbours[i] >= v) {
+					++edgeCount;
+				}
+			}
+		}
+
+		int[] edgeSource = new int[edgeCount];
+		int[] edgeTarget = new int[edgeCount];
+		int[] incidentEdges = new int[neighbours.length];
+
+		// Rows list their lower neighbours first, in ascending order, so visiting the
+		// lower vertices in ascending order fills those slots from the start of each row
+		int[] lowerPosition = Arrays.copyOf(offsets, vertexCount);
+		int edge = 0;
+		for (int v = 0; v < vertexCount; v++) {
+			for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+				int neighbour = neighbours[i];
+				if (neighbour < v) {
+					continue;
+				}
+				edgeSource[edge] = v;
+				edgeTarget[edge] = neighbour;
+				incidentEdges[i] = edge;
+				if (neighbour != v) {
+					incidentEdges[lowerPosition[neighbour]++] = edge;
+				}
+				++edge;
+			}
+		}
+
+		return new CsrGraph(genes, offsets, neighbours, incidentEdges, edgeSource, edgeTarget);
+	}
+
+	public GeneDictionary getGenes() {
+		return genes;
+	}
+
+	public int getVertexCount() {
+		return offsets.length - 1;
+	}
+
+	public int getEdgeCount() {
+		return edgeSource.length;
+	}
+
+	/**
+	 * Return the CSR row offsets. The array must not be modified.
+	 *
+	 * @return
+	 */
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	/**
+	 * Return the CSR neighbour array. The array must not be modified.
+	 *
+	 * @return
+	 */
+	public int[] getNeighbours() {
+		return neighbours;
+	}
+
+	/**
+	 * Return the edge id of each entry in the neighbour array. The array must not
+	 * be modified.
+	 *
+	 * @return
+	 */
+	public int[] getIncidentEdges() {
+		return incidentEdges;
+	}
+
+	/**
+	 * Return the number of distinct neighbours of a vertex (a self loop counts as
+	 * one neighbour)
+	 *
+	 * @param vertex
+	 * @return
+	 */
+	public int degree(int vertex) {
+		return offsets[vertex + 1] - offsets[vertex];
+	}
+
+	/**
+	 * Return the lower vertex id of an edge
+	 *
+	 * @param edge
+	 * @return
+	 */
+	public int getEdgeSource(int edge) {
+		return edgeSource[edge];
+	}
+
+	/**
+	 * Return the higher vertex id of an edge
+	 *
+	 * @param edge
+	 * @return
+	 */
+	public int getEdgeTarget(int edge) {
+		return edgeTarget[edge];
+	}
+
+	/**
+	 * Return the id of the edge joining two vertices, or -1 if they are not
+	 * neighbours
+	 *
+	 * @param vertex1
+	 * @param vertex2
+	 * @return
+	 */
+	public int findEdge(int vertex1, int vertex2) {
+		int position = Arrays.binarySearch(neighbours, offsets[vertex1], offsets[vertex1 + 1], vertex2);
+		return position < 0 ? -1 : incidentEdges[position];
+	}
+
+	public boolean isNeighbour(int vertex1, int vertex2) {
+		return findEdge(vertex1, vertex2) >= 0;
+	}
+
+	/**
+	 * Return a read-only JUNG view of this graph. Vertices are gene symbols and
+	 * edges are the string form of the edge id.
+	 *
+	 * @return
+	 */
+	public Graph<String, String> asJungGraph() {
+		return new CsrJungGraph(this);
+	}
+
+	/**
+	 * Return the CSR form of a JUNG graph: the graph itself if it is a view
+	 * returned by {@link #asJungGraph()}, otherwise a copy laid out with a
+	 * {@link Builder}
+	 *
+	 * @param graph
+	 * @return
+	 */
+	public static CsrGraph of(Graph<String, String> graph) {
+		if (graph instanceof CsrJungGraph) {
+			return ((CsrJungGraph) graph).getCsrGraph();
+		}
+		Builder builder = new Builder(new GeneDictionary(graph.getVertexCount()));
+		for (String vertex : graph.getVertices()) {
+			builder.addVertex(vertex);
+		}
+		for (String edge : graph.getEdges()) {
+			Pair<String> endpoints = graph.getEndpoints(edge);
+			builder.addEdge(endpoints.getFirst(), endpoints.getSecond());
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Accumulates vertices and edges and lays them out as a {@link CsrGraph}. Edges
+	 * are held in primitive buffers until {@link #build()} is called.
+	 *
+	 * This class is not thread-safe.
+	 *
+	 * @author pleyte
+	 *
+	 */
+	public static class Builder {
+		private final GeneDictionary genes;
+		private long[] edges = new long[1024];
+		private int edgeCount;
+
+		public Builder() {
+			this(new GeneDictionary());
+		}
+
+		public Builder(GeneDictionary genes) {
+			this.genes = genes;
+		}
+
+		public GeneDictionary getGenes() {
+			return genes;
+		}
+
+		/**
+		 * Add a vertex which may not have any edges
+		 *
+		 * @param gene
+		 * @return the vertex id
+		 */
+		public int addVertex(String gene) {
+			return genes.intern(gene);
+		}
+
+		public void addEdge(String gene1, String gene2) {
+			int vertex1 = genes.intern(gene1);
+			int vertex2 = genes.intern(gene2);
+			addEdge(vertex1, vertex2);
+		}
+
+		/**
+		 * Add an edge between two vertices which have already been interned in the
+		 * dictionary
+		 *
+		 * @param vertex1
+		 * @param vertex2
+		 */
+		public void addEdge(int vertex1, int vertex2) {
+			if (edgeCount == edges.length) {
+				edges = Arrays.copyOf(edges, edgeCount * 2);
+			}
+			edges[edgeCount++] = pack(vertex1, vertex2);
+		}
+
+		/**
+		 * Add all the vertices and edges of another builder to this one. If the other
+		 * builder has its own dictionary its genes are interned here in id order, so
+		 * merging builders in file order assigns the same ids a single sequential pass
+		 * would.
+		 *
+		 * @param other
+		 */
+		public void addAll(Builder other) {
+			if (edgeCount + other.edgeCount > edges.length) {
+				edges = Arrays.copyOf(edges, Math.max(edges.length * 2, edgeCount + other.edgeCount));
+			}
+
+			if (other.genes == genes) {
+				System.arraycopy(other.edges, 0, edges, edgeCount, other.edgeCount);
+				edgeCount += other.edgeCount;
+				return;
+			}
+
+			int[] vertexMap = new int[other.genes.size()];
+			for (int id = 0; id < vertexMap.length; id++) {
+				vertexMap[id] = genes.intern(other.genes.getSymbol(id));
+			}
+			for (int i = 0; i < other.edgeCount; i++) {
+				long edge = other.edges[i];
+				edges[edgeCount++] = pack(vertexMap[(int) (edge >>> 32)], vertexMap[(int) edge]);
+			}
+		}
+
+		/**
+		 * Number of edges added so far, including duplicates
+		 *
+		 * @return
+		 */
+		public int getAddedEdgeCount() {
+			return edgeCount;
+		}
+
+		/**
+		 * Lay the edges out in CSR form. Duplicate edges are dropped.
+		 *
+		 * @return
+		 */
+		public CsrGraph build() {
+			int vertexCount = genes.size();
+
+			// Sorting the (lower, higher) packed pairs groups duplicates together and
+			// yields edge ids in a stable order
+			long[] sorted = Arrays.copyOf(edges, edgeCount);
+			Arrays.parallelSort(sorted);
+			int uniqueCount = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if (i == 0 || sorted[i] != sorted[i - 1]) {
+					sorted[uniqueCount++] = sorted[i];
+				}
+			}
+
+			int[] edgeSource = new int[uniqueCount];
+			int[] edgeTarget = new int[uniqueCount];
+			int[] offsets = new int[vertexCount + 1];
+			for (int e = 0; e < uniqueCount; e++) {
+				int source = (int) (sorted[e] >>> 32);
+				int target = (int) sorted[e];
+				edgeSource[e] = source;
+				edgeTarget[e] = target;
+				offsets[source + 1]++;
+				if (source != target) {
+					offsets[target + 1]++;
+				}
+			}
+			for (int v = 0; v < vertexCount; v++) {
+				offsets[v + 1] += offsets[v];
+			}
+
+			// Because the edges are ordered by (lower, higher), each row is filled in
+			// ascending neighbour order: first the lower neighbours, then the higher
+			// ones. No per-row sort is needed.
+			int[] neighbours = new int[offsets[vertexCount]];
+			int[] incidentEdges = new int[neighbours.length];
+			int[] position = Arrays.copyOf(offsets, vertexCount);
+			for (int e = 0; e < uniqueCount; e++) {
+				int source = edgeSource[e];
+				int target = edgeTarget[e];
+				neighbours[position[source]] = target;
+				incidentEdges[position[source]++] = e;
+				if (source != target) {
+					neighbours[position[target]] = source;
+					incidentEdges[position[target]++] = e;
+				}
+			}
+
+			return new CsrGraph(genes, offsets, neighbours, incidentEdges, edgeSource, edgeTarget);
+		}
+
+		private static long pack(int vertex1, int vertex2) {
+			int lower = Math.min(vertex1, vertex2);
+			int higher = Math.max(vertex1, vertex2);
+			return ((long) lower << 32) | (higher & 0xFFFFFFFFL);
+		}
+	}
+}
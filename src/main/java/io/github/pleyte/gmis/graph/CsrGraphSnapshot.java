@@ -0,0 +1,245 @@
+package io.github.pleyte.gmis.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Reads and writes a {@link CsrGraph} as a binary snapshot so a network can be reloaded without parsing its source
+ * file again. The snapshot is little endian and laid out as:
+ *
+ * <pre>
+ * int    magic ("GMIS")
+ * int    format version
+ * byte[32] SHA-256 hash of the source file
+ * int    vertex count
+ * int    neighbour array length
+ * int    symbol byte count
+ * int[]  end of each gene symbol in the symbol bytes (vertex count entries)
+ * int[]  CSR offsets (vertex count + 1 entries)
+ * int[]  CSR neighbours
+ * byte[] UTF-8 gene symbols
+ * </pre>
+ *
+ * Edge ids are not stored; they are renumbered from the neighbour rows in the same order the builder assigns them.
+ *
+ * @author pleyte
+ *
+ */
+public class CsrGraphSnapshot {
+	private static final int MAGIC = 0x53494D47;
+	static final int VERSION = 1;
+	private static final int HASH_LENGTH = 32;
+	private static final int HEADER_LENGTH = 4 + 4 + HASH_LENGTH + 4 + 4 + 4;
+
+	private CsrGraphSnapshot() {
+	}
+
+	/**
+	 * Return the SHA-256 hash of a file's contents
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static byte[] hash(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("SHA-256 is not available", e);
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+			while (channel.read(buffer) > 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Write a snapshot of the graph. The snapshot is written to a temporary file
+	 * and moved into place so readers never see a partial snapshot.
+	 *
+	 * @param graph
+	 * @param snapshotFile
+	 * @param sourceHash   hash of the file the graph was loaded from
+	 * @throws IOException
+	 */
+	public static void write(CsrGraph graph, Path snapshotFile, byte[] sourceHash) throws IOException {
+		int vertexCount = graph.getVertexCount();
+		GeneDictionary genes = graph.getGenes();
+
+		int[] symbolEnds = new int[vertexCount];
+		byte[][] symbols = new byte[vertexCount][];
+		int symbolLength = 0;
+		for (int v = 0; v < vertexCount; v++) {
+			symbols[v] = genes.getSymbol(v).getBytes(StandardCharsets.UTF_8);
+			symbolLength += symbols[v].length;
+			symbolEnds[v] = symbolLength;
+		}
+
+		long size = HEADER_LENGTH + 4L * (vertexCount + vertexCount + 1 + graph.getNeighbours().length) + symbolLength;
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Graph is too large for a snapshot: " + size + " bytes");
+		}
+
+		Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+		Path temporaryFile = Files.createTempFile(snapshotFile.toAbsolutePath().getParent(), snapshotFile.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				buffer.putInt(MAGIC).putInt(VERSION).put(sourceHash, 0, HASH_LENGTH);
+				buffer.putInt(vertexCount).putInt(graph.getNeighbours().length).putInt(symbolLength);
+
+				IntBuffer ints = buffer.asIntBuffer();
+				ints.put(symbolEnds).put(graph.getOffsets()).put(graph.getNeighbours());
+				buffer.position(buffer.position() + 4 * ints.position());
+				for (byte[] symbol : symbols) {
+					buffer.put(symbol);
+				}
+				buffer.force();
+			}
+			Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporaryFile);
+		}
+	}
+
+	/**
+	 * Memory map a snapshot and load the graph from it
+	 *
+	 * @param snapshotFile
+	 * @param sourceHash   hash of the source file the snapshot must have been made
+	 *                     from
+	 * @return the graph, or null if the snapshot does not exist, is from a
+	 *         different format version, or was made from a different source file
+	 * @throws IOException if the snapshot is damaged
+	 */
+	public static CsrGraph read(Path snapshotFile, byte[] sourceHash) throws IOException {
+		if (!Files.isRegularFile(snapshotFile)) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_LENGTH || size > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot " + snapshotFile + " has an invalid size: " + size);
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("File is not a network snapshot: " + snapshotFile);
+			}
+			if (buffer.getInt() != VERSION) {
+				return null;
+			}
+			byte[] storedHash = new byte[HASH_LENGTH];
+			buffer.get(storedHash);
+			if (!Arrays.equals(storedHash, sourceHash)) {
+				return null;
+			}
+
+			int vertexCount = buffer.getInt();
+			int neighbourCount = buffer.getInt();
+			int symbolLength = buffer.getInt();
+			if (vertexCount < 0 || neighbourCount < 0 || symbolLength < 0
+					|| size != HEADER_LENGTH + 4L * (vertexCount + vertexCount + 1 + neighbourCount) + symbolLength) {
+				throw new IOException("Snapshot " + snapshotFile + " is damaged");
+			}
+
+			int[] symbolEnds = new int[vertexCount];
+			int[] offsets = new int[vertexCount + 1];
+			int[] neighbours = new int[neighbourCount];
+			IntBuffer ints = buffer.asIntBuffer();
+			ints.get(symbolEnds).get(offsets).get(neighbours);
+			buffer.position(buffer.position() + 4 * ints.position());
+			validate(snapshotFile, symbolEnds, symbolLength, offsets, neighbours);
+
+			GeneDictionary genes = new GeneDictionary(vertexCount);
+			int symbolStart = buffer.position();
+			for (int v = 0; v < vertexCount; v++) {
+				int start = symbolStart + (v == 0 ? 0 : symbolEnds[v - 1]);
+				int end = symbolStart + symbolEnds[v];
+				if (genes.intern(buffer, start, end) != v) {
+					throw new IOException("Snapshot " + snapshotFile + " has a duplicate gene at vertex " + v);
+				}
+			}
+
+			return CsrGraph.fromAdjacency(genes, offsets, neighbours);
+		}
+	}
+
+	/**
+	 * Check the arrays of a snapshot describe a graph, so that a snapshot damaged
+	 * without changing its size fails here rather than inside an algorithm later.
+	 * Each row must be sorted with its neighbours in range, and each vertex must
+	 * have as many lower neighbours as there are lower rows which list it.
+	 *
+	 * @param snapshotFile
+	 * @param symbolEnds
+	 * @param symbolLength
+	 * @param offsets
+	 * @param neighbours
+	 * @throws IOException
+	 */
+	private static void validate(Path snapshotFile, int[] symbolEnds, int symbolLength, int[] offsets, int[] neighbours) throws IOException {
+		int vertexCount = symbolEnds.length;
+		int previousEnd = 0;
+		for (int v = 0; v < vertexCount; v++) {
+			if (symbolEnds[v] < previousEnd || symbolEnds[v] > symbolLength) {
+				throw new IOException("Snapshot " + snapshotFile + " is damaged: gene symbol " + v + " is out of range");
+			}
+			previousEnd = symbolEnds[v];
+		}
+
+		if (offsets[0] != 0 || offsets[vertexCount] != neighbours.length) {
+			throw new IOException("Snapshot " + snapshotFile + " is damaged: the offsets do not span the neighbours");
+		}
+		for (int v = 0; v < vertexCount; v++) {
+			if (offsets[v + 1] < offsets[v]) {
+				throw new IOException("Snapshot " + snapshotFile + " is damaged: the offsets of vertex " + v + " decrease");
+			}
+		}
+
+		int[] higherReferences = new int[vertexCount];
+		for (int v = 0; v < vertexCount; v++) {
+			int lowerCount = 0;
+			for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+				int neighbour = neighbours[i];
+				if (neighbour < 0 || neighbour >= vertexCount) {
+					throw new IOException("Snapshot " + snapshotFile + " is damaged: vertex " + v + " has an unknown neighbour " + neighbour);
+				}
+				if (i > offsets[v] && neighbour <= neighbours[i - 1]) {
+					throw new IOException("Snapshot " + snapshotFile + " is damaged: the neighbours of vertex " + v + " are not sorted");
+				}
+				if (neighbour < v) {
+					++lowerCount;
+				} else if (neighbour > v) {
+					++higherReferences[neighbour];
+				}
+			}
+			// Lower rows come first, so every row listing v has been seen
+			if (lowerCount != higherReferences[v]) {
+				throw new IOException("Snapshot " + snapshotFile + " is damaged: the edges of vertex " + v + " are not symmetric");
+			}
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package io.github.pleyte.gmis.graph;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import edu.uci.ics.jung.graph.AbstractTypedGraph;
+import edu.uci.ics.jung.graph.UndirectedGraph;
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * Read-only JUNG adapter over a {@link CsrGraph}. Vertex collections are views over the gene dictionary and the CSR
+ * arrays; edge names are created on demand from the edge id so the graph does not hold a String per edge.
+ *
+ * @author pleyte
+ *
+ */
+class CsrJungGraph extends AbstractTypedGraph<String, String> implements UndirectedGraph<String, String> {
+	private static final long serialVersionUID = 1L;
+
+	private final transient CsrGraph graph;
+	private final transient GeneDictionary genes;
+
+	CsrJungGraph(CsrGraph graph) {
+		super(EdgeType.UNDIRECTED);
+		this.graph = graph;
+		this.genes = graph.getGenes();
+	}
+
+	CsrGraph getCsrGraph() {
+		return graph;
+	}
+
+	/**
+	 * Return the vertex id of a gene, or -1 if the gene is not in the graph
+	 *
+	 * @param vertex
+	 * @return
+	 */
+	private int vertexId(Object vertex) {
+		if (!(vertex instanceof String)) {
+			return -1;
+		}
+		int id = genes.getId((String) vertex);
+		// The dictionary may be shared with a builder that has since seen more genes
+		return id < graph.getVertexCount() ? id : -1;
+	}
+
+	/**
+	 * Return the edge id of an edge name, or -1 if the edge is not in the graph
+	 *
+	 * @param edge
+	 * @return
+	 */
+	private int edgeId(Object edge) {
+		if (!(edge instanceof String)) {
+			return -1;
+		}
+		try {
+			int id = Integer.parseInt((String) edge);
+			return id >= 0 && id < graph.getEdgeCount() ? id : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private List<String> neighbourView(int vertex) {
+		final int start = graph.getOffsets()[vertex];
+		final int size = graph.degree(vertex);
+		final int[] neighbours = graph.getNeighbours();
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				return genes.getSymbol(neighbours[start + rangeCheck(index, size)]);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	private List<String> incidentEdgeView(int vertex) {
+		final int start = graph.getOffsets()[vertex];
+		final int size = graph.degree(vertex);
+		final int[] incidentEdges = graph.getIncidentEdges();
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				return String.valueOf(incidentEdges[start + rangeCheck(index, size)]);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	private static int rangeCheck(int index, int size) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " is out of range for size " + size);
+		}
+		return index;
+	}
+
+	@Override
+	public Collection<String> getVertices() {
+		final int size = graph.getVertexCount();
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				return genes.getSymbol(rangeCheck(index, size));
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return vertexId(o) >= 0;
+			}
+		};
+	}
+
+	@Override
+	public Collection<String> getEdges() {
+		final int size = graph.getEdgeCount();
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				return String.valueOf(rangeCheck(index, size));
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return edgeId(o) >= 0;
+			}
+		};
+	}
+
+	@Override
+	public boolean containsVertex(String vertex) {
+		return vertexId(vertex) >= 0;
+	}
+
+	@Override
+	public boolean containsEdge(String edge) {
+		return edgeId(edge) >= 0;
+	}
+
+	@Override
+	public int getEdgeCount() {
+		return graph.getEdgeCount();
+	}
+
+	@Override
+	public int getVertexCount() {
+		return graph.getVertexCount();
+	}
+
+	@Override
+	public Collection<String> getNeighbors(String vertex) {
+		int id = vertexId(vertex);
+		return id < 0 ? null : neighbourView(id);
+	}
+
+	@Override
+	public int getNeighborCount(String vertex) {
+		int id = vertexId(vertex);
+		return id < 0 ? 0 : graph.degree(id);
+	}
+
+	@Override
+	public int degree(String vertex) {
+		return getNeighborCount(vertex);
+	}
+
+	@Override
+	public Collection<String> getIncidentEdges(String vertex) {
+		int id = vertexId(vertex);
+		return id < 0 ? null : incidentEdgeView(id);
+	}
+
+	@Override
+	public Collection<String> getInEdges(String vertex) {
+		return getIncidentEdges(vertex);
+	}
+
+	@Override
+	public Collection<String> getOutEdges(String vertex) {
+		return getIncidentEdges(vertex);
+	}
+
+	@Override
+	public Collection<String> getPredecessors(String vertex) {
+		return getNeighbors(vertex);
+	}
+
+	@Override
+	public Collection<String> getSuccessors(String vertex) {
+		return getNeighbors(vertex);
+	}
+
+	@Override
+	public String findEdge(String vertex1, String vertex2) {
+		int id1 = vertexId(vertex1);
+		int id2 = vertexId(vertex2);
+		if (id1 < 0 || id2 < 0) {
+			return null;
+		}
+		int edge = graph.findEdge(id1, id2);
+		return edge < 0 ? null : String.valueOf(edge);
+	}
+
+	@Override
+	public Collection<String> findEdgeSet(String vertex1, String vertex2) {
+		String edge = findEdge(vertex1, vertex2);
+		return edge == null ? Collections.emptyList() : Collections.singletonList(edge);
+	}
+
+	@Override
+	public boolean isNeighbor(String vertex1, String vertex2) {
+		return findEdge(vertex1, vertex2) != null;
+	}
+
+	@Override
+	public Pair<String> getEndpoints(String edge) {
+		int id = edgeId(edge);
+		if (id < 0) {
+			return null;
+		}
+		return new Pair<>(genes.getSymbol(graph.getEdgeSource(id)), genes.getSymbol(graph.getEdgeTarget(id)));
+	}
+
+	@Override
+	public String getSource(String directedEdge) {
+		return null;
+	}
+
+	@Override
+	public String getDest(String directedEdge) {
+		return null;
+	}
+
+	@Override
+	public boolean isSource(String vertex, String edge) {
+		return false;
+	}
+
+	@Override
+	public boolean isDest(String vertex, String edge) {
+		return false;
+	}
+
+	@Override
+	public boolean addVertex(String vertex) {
+		throw new UnsupportedOperationException("CSR graphs are immutable");
+	}
+
+	@Override
+	public boolean addEdge(String edge, Pair<? extends String> endpoints, EdgeType edgeType) {
+		throw new UnsupportedOperationException("CSR graphs are immutable");
+	}
+
+	@Override
+	public boolean removeVertex(String vertex) {
+		throw new UnsupportedOperationException("CSR graphs are immutable");
+	}
+
+	@Override
+	public boolean removeEdge(String edge) {
+		throw new UnsupportedOperationException("CSR graphs are immutable");
+	}
+}
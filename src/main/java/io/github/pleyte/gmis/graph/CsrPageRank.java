@@ -0,0 +1,370 @@
+package io.github.pleyte.gmis.graph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import io.github.pleyte.gmis.hotnet.HeatVector;
+import io.github.pleyte.gmis.intermediate.NetworkLoader;
+
+/**
+ * PageRank and personalised PageRank of a {@link CsrGraph} by power iteration on primitive arrays. At each step a walker
+ * follows one of its vertex's edges chosen at random, or with probability <code>alpha</code> jumps to a vertex drawn
+ * from the restart distribution. The restart distribution is uniform for PageRank, or proportional to a vector such as
+ * the heat of a <code>scores_N.tsv</code> file (see {@link HeatVector}) for personalised PageRank. The score of a
+ * vertex with no edges is redistributed by the restart distribution, as JUNG's <code>PageRank</code> does, so the
+ * scores always sum to one. A self loop keeps the walker where it is.
+ *
+ * Iteration stops when the L1 norm of the change in the scores falls below the tolerance, or after the maximum number
+ * of iterations; the change at every iteration is kept in the {@link Result}. Each iteration pulls the scores of each
+ * vertex's neighbours, so vertices are updated independently. On a pool the vertices are split into fixed chunks which
+ * are updated in parallel, and the results are the same for any number of threads.
+ *
+ * An instance holds no state between calls, so it can be used by several threads at once, such as the workers of a
+ * permutation test. Such callers should pass no pool so each ranking runs on the calling thread.
+ *
+ * @author pleyte
+ *
+ */
+public class CsrPageRank {
+	private static Logger log;
+
+	static {
+		InputStream stream = CsrPageRank.class.getClassLoader().getResourceAsStream("logging.properties");
+		try {
+			LogManager.getLogManager().readConfiguration(stream);
+			log = Logger.getLogger(CsrPageRank.class.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * The random jump probability NetworkAnalysis has always used with JUNG's
+	 * <code>PageRank</code>
+	 */
+	public static final double DEFAULT_ALPHA = 0.1;
+	public static final double DEFAULT_TOLERANCE = 1e-10;
+	public static final int DEFAULT_MAXIMUM_ITERATIONS = 1000;
+
+	/**
+	 * Vertices updated together by one task
+	 */
+	private static final int CHUNK_SIZE = 4096;
+
+	private final CsrGraph graph;
+	private final ForkJoinPool pool;
+	private final double[] inverseDegree;
+
+	private double alpha = DEFAULT_ALPHA;
+	private double tolerance = DEFAULT_TOLERANCE;
+	private int maximumIterations = DEFAULT_MAXIMUM_ITERATIONS;
+
+	/**
+	 * Rank on the calling thread
+	 *
+	 * @param graph
+	 */
+	public CsrPageRank(CsrGraph graph) {
+		this(graph, null);
+	}
+
+	/**
+	 *
+	 * @param graph
+	 * @param pool  threads used for each iteration, or null to rank on the calling
+	 *              thread
+	 */
+	public CsrPageRank(CsrGraph graph, ForkJoinPool pool) {
+		this.graph = graph;
+		this.pool = pool;
+		inverseDegree = new double[graph.getVertexCount()];
+		for (int v = 0; v < inverseDegree.length; v++) {
+			int degree = graph.degree(v);
+			inverseDegree[v] = degree == 0 ? 0 : 1.0 / degree;
+		}
+	}
+
+	/**
+	 * Rank the genes of the HotNet network, then rank them again with restarts
+	 * from each score file given
+	 *
+	 * @param args score files, e.g. <code>scores_1.tsv</code>
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		URL indexFile = CsrPageRank.class.getClassLoader().getResource("hotnet_network/network_1_index_gene.tsv");
+		URL edgeListFile = CsrPageRank.class.getClassLoader().getResource("hotnet_network/network_1_edge_list.tsv");
+		CsrGraph graph = NetworkLoader.loadHotNetNetwork(indexFile.getFile(), edgeListFile.getFile());
+		CsrPageRank pageRank = new CsrPageRank(graph, ForkJoinPool.commonPool());
+
+		Result result = pageRank.rank();
+		log.info("PageRank of " + graph.getVertexCount() + " genes: " + result + "; top genes " + Arrays.toString(getTopGenes(graph, result.getScores(), 10)));
+		for (String scoreFile : args) {
+			result = pageRank.rank(HeatVector.load(graph, scoreFile));
+			log.info("PageRank from " + scoreFile + ": " + result + "; top genes " + Arrays.toString(getTopGenes(graph, result.getScores(), 10)));
+		}
+	}
+
+	public double getAlpha() {
+		return alpha;
+	}
+
+	/**
+	 * Set the probability of jumping to the restart distribution at each step
+	 *
+	 * @param alpha in (0, 1]
+	 */
+	public void setAlpha(double alpha) {
+		if (!(alpha > 0 && alpha <= 1)) {
+			throw new IllegalArgumentException("Alpha must be in (0, 1]: " + alpha);
+		}
+		this.alpha = alpha;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Set the L1 change in the scores below which iteration stops
+	 *
+	 * @param tolerance
+	 */
+	public void setTolerance(double tolerance) {
+		if (!(tolerance >= 0)) {
+			throw new IllegalArgumentException("Tolerance must not be negative: " + tolerance);
+		}
+		this.tolerance = tolerance;
+	}
+
+	public int getMaximumIterations() {
+		return maximumIterations;
+	}
+
+	public void setMaximumIterations(int maximumIterations) {
+		if (maximumIterations < 1) {
+			throw new IllegalArgumentException("At least one iteration is needed: " + maximumIterations);
+		}
+		this.maximumIterations = maximumIterations;
+	}
+
+	/**
+	 * Compute PageRank with uniform restarts
+	 *
+	 * @return
+	 */
+	public Result rank() {
+		double[] restart = new double[graph.getVertexCount()];
+		Arrays.fill(restart, 1.0 / restart.length);
+		return iterate(restart);
+	}
+
+	/**
+	 * Compute personalised PageRank with restarts in proportion to the weights,
+	 * e.g. the heat of each gene
+	 *
+	 * @param weights one non-negative weight per vertex, not all zero
+	 * @return
+	 */
+	public Result rank(double[] weights) {
+		if (weights.length != graph.getVertexCount()) {
+			throw new IllegalArgumentException("Expected " + graph.getVertexCount() + " restart weights but got " + weights.length);
+		}
+		double total = 0;
+		for (double weight : weights) {
+			if (!(weight >= 0) || Double.isInfinite(weight)) {
+				throw new IllegalArgumentException("Restart weights must be finite and non-negative: " + weight);
+			}
+			total += weight;
+		}
+		if (total == 0) {
+			throw new IllegalArgumentException("At least one restart weight must be positive");
+		}
+
+		double[] restart = new double[weights.length];
+		for (int v = 0; v < weights.length; v++) {
+			restart[v] = weights[v] / total;
+		}
+		return iterate(restart);
+	}
+
+	private Result iterate(double[] restart) {
+		long start = System.nanoTime();
+		int n = graph.getVertexCount();
+		int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		double[] scores = restart.clone();
+		double[] next = new double[n];
+		double[] flow = new double[n];
+		double[] partial = new double[chunks];
+		double[] residuals = new double[maximumIterations];
+		int iterations = 0;
+		boolean converged = false;
+
+		while (iterations < maximumIterations && !converged) {
+			// The share of each vertex's score sent along each edge, and the score of
+			// vertices with no edges, which is redistributed
+			double[] current = scores;
+			double[] updated = next;
+			forEachChunk(chunks, c -> partial[c] = spread(current, flow, c * CHUNK_SIZE, Math.min(n, (c + 1) * CHUNK_SIZE)));
+			double dangling = sum(partial);
+
+			forEachChunk(chunks, c -> partial[c] = gather(current, flow, updated, restart, dangling, c * CHUNK_SIZE, Math.min(n, (c + 1) * CHUNK_SIZE)));
+			double residual = sum(partial);
+
+			residuals[iterations++] = residual;
+			converged = residual < tolerance;
+			double[] swap = scores;
+			scores = next;
+			next = swap;
+		}
+
+		Result result = new Result(scores, Arrays.copyOf(residuals, iterations), converged, System.nanoTime() - start);
+		if (!converged) {
+			log.warning("PageRank did not converge: " + result);
+		} else {
+			log.fine("PageRank " + result);
+		}
+		return result;
+	}
+
+	/**
+	 * Compute the flow along each edge of vertices from to to
+	 *
+	 * @return the score of the vertices without edges
+	 */
+	private double spread(double[] scores, double[] flow, int from, int to) {
+		double dangling = 0;
+		for (int v = from; v < to; v++) {
+			flow[v] = scores[v] * inverseDegree[v];
+			if (inverseDegree[v] == 0) {
+				dangling += scores[v];
+			}
+		}
+		return dangling;
+	}
+
+	/**
+	 * Compute the next scores of vertices from to to
+	 *
+	 * @return the L1 change in their scores
+	 */
+	private double gather(double[] scores, double[] flow, double[] next, double[] restart, double dangling, int from, int to) {
+		int[] offsets = graph.getOffsets();
+		int[] neighbours = graph.getNeighbours();
+		double damping = 1 - alpha;
+		double residual = 0;
+		for (int v = from; v < to; v++) {
+			double inflow = 0;
+			for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+				inflow += flow[neighbours[i]];
+			}
+			double score = damping * (inflow + dangling * restart[v]) + alpha * restart[v];
+			residual += Math.abs(score - scores[v]);
+			next[v] = score;
+		}
+		return residual;
+	}
+
+	private void forEachChunk(int chunks, IntConsumer action) {
+		if (pool == null || chunks == 1) {
+			for (int c = 0; c < chunks; c++) {
+				action.accept(c);
+			}
+		} else {
+			pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(action)).join();
+		}
+	}
+
+	/**
+	 * Sum the chunks' values in chunk order, so the total does not depend on which
+	 * thread finished first
+	 */
+	private static double sum(double[] values) {
+		double sum = 0;
+		for (double value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	/**
+	 * Return the symbols of the highest scoring genes, in descending order of score
+	 *
+	 * @param graph
+	 * @param scores
+	 * @param count
+	 * @return
+	 */
+	public static String[] getTopGenes(CsrGraph graph, double[] scores, int count) {
+		Integer[] vertices = new Integer[scores.length];
+		for (int v = 0; v < vertices.length; v++) {
+			vertices[v] = v;
+		}
+		Arrays.sort(vertices, (a, b) -> Double.compare(scores[b], scores[a]));
+		String[] genes = new String[Math.min(count, vertices.length)];
+		for (int i = 0; i < genes.length; i++) {
+			genes[i] = graph.getGenes().getSymbol(vertices[i]);
+		}
+		return genes;
+	}
+
+	/**
+	 * The scores of a ranking and how the iteration converged
+	 */
+	public static class Result {
+		private final double[] scores;
+		private final double[] residuals;
+		private final boolean converged;
+		private final long elapsedNanos;
+
+		Result(double[] scores, double[] residuals, boolean converged, long elapsedNanos) {
+			this.scores = scores;
+			this.residuals = residuals;
+			this.converged = converged;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * Return the score of each vertex, indexed by vertex id
+		 *
+		 * @return
+		 */
+		public double[] getScores() {
+			return scores;
+		}
+
+		/**
+		 * Return the L1 change in the scores at each iteration
+		 *
+		 * @return
+		 */
+		public double[] getResiduals() {
+			return residuals;
+		}
+
+		public int getIterations() {
+			return residuals.length;
+		}
+
+		public boolean isConverged() {
+			return converged;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return (converged ? "converged" : "stopped") + " after " + residuals.length + " iterations with residual " + residuals[residuals.length - 1]
+					+ " in " + elapsedNanos / 1_000_000.0 + " ms";
+		}
+	}
+}
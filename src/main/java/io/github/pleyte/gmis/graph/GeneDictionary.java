@@ -0,0 +1,234 @@
+package io.github.pleyte.gmis.graph;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns gene symbols and assigns each distinct symbol a dense integer id, starting at zero, in the order the symbols
+ * are first seen. Lookups use an open addressing table of ids so no boxed keys or map entries are created per gene.
+ *
+ * A dictionary may be given a {@link GeneSymbolResolver}, in which case every symbol is resolved to its approved symbol
+ * before it is interned or looked up, so the different spellings of a gene share one id.
+ *
+ * This class is not thread-safe.
+ *
+ * @author pleyte
+ *
+ */
+public class GeneDictionary {
+	private static final int NOT_FOUND = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final GeneSymbolResolver resolver;
+
+	private String[] symbols;
+	private int size;
+
+	// Open addressing table holding id+1, where 0 marks an empty slot
+	private int[] table;
+	private int mask;
+
+	public GeneDictionary() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 *
+	 * @param expectedSize number of genes the dictionary is expected to hold
+	 */
+	public GeneDictionary(int expectedSize) {
+		this(expectedSize, GeneSymbolResolver.NONE);
+	}
+
+	/**
+	 *
+	 * @param resolver resolves each symbol to its approved symbol
+	 */
+	public GeneDictionary(GeneSymbolResolver resolver) {
+		this(INITIAL_CAPACITY, resolver);
+	}
+
+	/**
+	 *
+	 * @param expectedSize number of genes the dictionary is expected to hold
+	 * @param resolver     resolves each symbol to its approved symbol
+	 */
+	public GeneDictionary(int expectedSize, GeneSymbolResolver resolver) {
+		this.resolver = resolver;
+		int capacity = tableSizeFor(Math.max(expectedSize, 16));
+		symbols = new String[Math.max(expectedSize, 16)];
+		table = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Return the id of the gene, adding it to the dictionary if it has not been
+	 * seen before
+	 *
+	 * @param symbol
+	 * @return
+	 */
+	public int intern(String symbol) {
+		symbol = resolver.resolve(symbol);
+		int slot = mix(symbol.hashCode()) & mask;
+		int entry;
+		while ((entry = table[slot]) != 0) {
+			if (symbols[entry - 1].equals(symbol)) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		return add(symbol, slot);
+	}
+
+	/**
+	 * Return the id of the gene whose symbol is encoded in bytes
+	 * <code>start</code> (inclusive) to <code>end</code> (exclusive) of the
+	 * buffer, adding it to the dictionary if it has not been seen before. ASCII
+	 * symbols are hashed and compared directly against the buffer so a String is
+	 * only created the first time a gene is seen. With a resolver, a spelling which
+	 * is not already a symbol in the dictionary is decoded and resolved.
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public int intern(ByteBuffer buffer, int start, int end) {
+		// This is the same hash String.hashCode() computes for ASCII text
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b < 0) {
+				// Not ASCII; take the slow path
+				return intern(decode(buffer, start, end, StandardCharsets.UTF_8));
+			}
+			hash = 31 * hash + b;
+		}
+
+		int slot = mix(hash) & mask;
+		int entry;
+		while ((entry = table[slot]) != 0) {
+			if (matches(symbols[entry - 1], buffer, start, end)) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (resolver != GeneSymbolResolver.NONE) {
+			// The dictionary only holds resolved symbols, which resolve to themselves
+			return intern(decode(buffer, start, end, StandardCharsets.US_ASCII));
+		}
+		return add(decode(buffer, start, end, StandardCharsets.US_ASCII), slot);
+	}
+
+	private static boolean matches(String symbol, ByteBuffer buffer, int start, int end) {
+		if (symbol.length() != end - start) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (symbol.charAt(i - start) != buffer.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String decode(ByteBuffer buffer, int start, int end, Charset charset) {
+		byte[] bytes = new byte[end - start];
+		buffer.get(start, bytes);
+		return new String(bytes, charset);
+	}
+
+	/**
+	 * Return the id of the gene or -1 if the gene is not in the dictionary
+	 *
+	 * @param symbol
+	 * @return
+	 */
+	public int getId(String symbol) {
+		symbol = resolver.resolve(symbol);
+		int slot = mix(symbol.hashCode()) & mask;
+		int entry;
+		while ((entry = table[slot]) != 0) {
+			if (symbols[entry - 1].equals(symbol)) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return NOT_FOUND;
+	}
+
+	public boolean contains(String symbol) {
+		return getId(symbol) != NOT_FOUND;
+	}
+
+	public String getSymbol(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("Gene id " + id + " is not in the dictionary of " + size + " genes");
+		}
+		return symbols[id];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public GeneSymbolResolver getResolver() {
+		return resolver;
+	}
+
+	/**
+	 * Store a new symbol in the given (empty) table slot
+	 *
+	 * @param symbol
+	 * @param slot
+	 * @return
+	 */
+	private int add(String symbol, int slot) {
+		if (size == symbols.length) {
+			symbols = Arrays.copyOf(symbols, size * 2);
+		}
+		int id = size++;
+		symbols[id] = symbol;
+		table[slot] = id + 1;
+
+		// Keep the load factor at or below one half
+		if (size * 2 > table.length) {
+			rehash(table.length * 2);
+		}
+		return id;
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		mask = capacity - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = mix(symbols[id].hashCode()) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = id + 1;
+		}
+	}
+
+	/**
+	 * Spread the bits of a String hash code so that linear probing works well with
+	 * power of two table sizes
+	 *
+	 * @param hash
+	 * @return
+	 */
+	static int mix(int hash) {
+		int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		int capacity = Integer.highestOneBit(expectedSize * 2 - 1) << 1;
+		return Math.max(capacity, 32);
+	}
+}
@@ -0,0 +1,332 @@
+package io.github.pleyte.gmis.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of genes held as a bitset over the ids of a {@link GeneDictionary}, one bit per gene. Union, intersection,
+ * difference and their cardinalities work a 64 bit word at a time, and no Strings are created unless the symbols are
+ * asked for. Sets combined with each other must share a dictionary.
+ *
+ * The dictionary may grow after a set is created; genes added to it since are simply not in the set. Like the
+ * dictionary, a set which is being added to is not thread-safe, but any number of threads can read sets which are no
+ * longer changing.
+ *
+ * @author pleyte
+ *
+ */
+public class GeneSet {
+	private final GeneDictionary genes;
+	private long[] words;
+
+	/**
+	 * Create an empty set
+	 *
+	 * @param genes dictionary of the gene ids
+	 */
+	public GeneSet(GeneDictionary genes) {
+		this(genes, new long[wordCount(genes.size())]);
+	}
+
+	private GeneSet(GeneDictionary genes, long[] words) {
+		this.genes = genes;
+		this.words = words;
+	}
+
+	/**
+	 * Return the set of the genes, adding any the dictionary has not seen
+	 *
+	 * @param genes
+	 * @param symbols
+	 * @return
+	 */
+	public static GeneSet of(GeneDictionary genes, Iterable<String> symbols) {
+		GeneSet set = new GeneSet(genes);
+		for (String symbol : symbols) {
+			set.add(symbol);
+		}
+		return set;
+	}
+
+	public GeneDictionary getDictionary() {
+		return genes;
+	}
+
+	/**
+	 * Add the gene with the dictionary id
+	 *
+	 * @param id
+	 */
+	public void add(int id) {
+		if (id < 0) {
+			throw new IllegalArgumentException("Invalid gene id: " + id);
+		}
+		int word = id >>> 6;
+		if (word >= words.length) {
+			words = Arrays.copyOf(words, Math.max(word + 1, wordCount(genes.size())));
+		}
+		words[word] |= 1L << id;
+	}
+
+	/**
+	 * Add a gene, adding it to the dictionary if it has not been seen before
+	 *
+	 * @param symbol
+	 * @return the id of the gene
+	 */
+	public int add(String symbol) {
+		int id = genes.intern(symbol);
+		add(id);
+		return id;
+	}
+
+	public boolean contains(int id) {
+		int word = id >>> 6;
+		return id >= 0 && word < words.length && (words[word] & (1L << id)) != 0;
+	}
+
+	public boolean contains(String symbol) {
+		int id = genes.getId(symbol);
+		return id >= 0 && contains(id);
+	}
+
+	/**
+	 * Return the number of genes in the set
+	 *
+	 * @return
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (long word : words) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	public boolean isEmpty() {
+		for (long word : words) {
+			if (word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return the genes in this set or the other
+	 *
+	 * @param other
+	 * @return
+	 */
+	public GeneSet union(GeneSet other) {
+		checkDictionary(other);
+		long[] longer = words.length >= other.words.length ? words : other.words;
+		long[] shorter = longer == words ? other.words : words;
+		long[] result = longer.clone();
+		for (int i = 0; i < shorter.length; i++) {
+			result[i] |= shorter[i];
+		}
+		return new GeneSet(genes, result);
+	}
+
+	/**
+	 * Return the genes in both this set and the other
+	 *
+	 * @param other
+	 * @return
+	 */
+	public GeneSet intersection(GeneSet other) {
+		checkDictionary(other);
+		long[] result = new long[Math.min(words.length, other.words.length)];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = words[i] & other.words[i];
+		}
+		return new GeneSet(genes, result);
+	}
+
+	/**
+	 * Return the genes in this set which are not in the other
+	 *
+	 * @param other
+	 * @return
+	 */
+	public GeneSet difference(GeneSet other) {
+		checkDictionary(other);
+		long[] result = words.clone();
+		for (int i = 0; i < Math.min(result.length, other.words.length); i++) {
+			result[i] &= ~other.words[i];
+		}
+		return new GeneSet(genes, result);
+	}
+
+	/**
+	 * Return the number of genes in both this set and the other, without creating
+	 * their intersection
+	 *
+	 * @param other
+	 * @return
+	 */
+	public int intersectionCardinality(GeneSet other) {
+		checkDictionary(other);
+		int count = 0;
+		for (int i = 0; i < Math.min(words.length, other.words.length); i++) {
+			count += Long.bitCount(words[i] & other.words[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Pass the id of each gene in the set to the action, in ascending order
+	 *
+	 * @param action
+	 */
+	public void forEach(IntConsumer action) {
+		for (int i = 0; i < words.length; i++) {
+			long word = words[i];
+			while (word != 0) {
+				action.accept((i << 6) + Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+	}
+
+	/**
+	 * Return the symbols of the genes in the set, in the order of their ids
+	 *
+	 * @return
+	 */
+	public List<String> getSymbols() {
+		List<String> symbols = new ArrayList<>(cardinality());
+		forEach(id -> symbols.add(genes.getSymbol(id)));
+		return symbols;
+	}
+
+	/**
+	 * Return the union of the sets
+	 *
+	 * @param genes dictionary of the sets
+	 * @param sets
+	 * @return
+	 */
+	public static GeneSet unionOf(GeneDictionary genes, List<GeneSet> sets) {
+		GeneSet union = new GeneSet(genes);
+		for (GeneSet set : sets) {
+			union.checkDictionary(set);
+			if (set.words.length > union.words.length) {
+				union.words = Arrays.copyOf(union.words, set.words.length);
+			}
+			for (int i = 0; i < set.words.length; i++) {
+				union.words[i] |= set.words[i];
+			}
+		}
+		return union;
+	}
+
+	/**
+	 * Return the number of genes in every one of the sets
+	 *
+	 * @param sets at least one set
+	 * @return
+	 * @throws IllegalArgumentException if there are no sets
+	 */
+	public static int intersectionCardinality(List<GeneSet> sets) {
+		if (sets.isEmpty()) {
+			throw new IllegalArgumentException("At least one set is needed to intersect");
+		}
+		int length = Integer.MAX_VALUE;
+		for (GeneSet set : sets) {
+			sets.get(0).checkDictionary(set);
+			length = Math.min(length, set.words.length);
+		}
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			long word = -1L;
+			for (GeneSet set : sets) {
+				word &= set.words[i];
+			}
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Return the number of genes each row set shares with each column set, e.g.
+	 * the clusters of one study against the clusters of another. Pass the same
+	 * list twice for the pairwise overlaps of a list of sets.
+	 *
+	 * @param rows
+	 * @param columns
+	 * @return matrix where <code>[r][c]</code> is the size of the intersection of
+	 *         row set r and column set c
+	 */
+	public static int[][] overlapMatrix(List<GeneSet> rows, List<GeneSet> columns) {
+		int[][] overlaps = new int[rows.size()][columns.size()];
+		for (int r = 0; r < rows.size(); r++) {
+			for (int c = 0; c < columns.size(); c++) {
+				overlaps[r][c] = rows.get(r).intersectionCardinality(columns.get(c));
+			}
+		}
+		return overlaps;
+	}
+
+	/**
+	 * Return the number of genes in each region of the Venn diagram of the sets:
+	 * element <code>m</code> counts the genes which are in exactly the sets whose
+	 * bits are set in <code>m</code>, where set s is bit <code>1 &lt;&lt; s</code>.
+	 * Element 0 is always zero. The number of genes in all of a group of sets is
+	 * the sum of the regions whose masks include the group.
+	 *
+	 * @param sets at most 20 sets sharing a dictionary
+	 * @return
+	 */
+	public static int[] membershipCounts(List<GeneSet> sets) {
+		if (sets.size() > 20) {
+			throw new IllegalArgumentException("At most 20 sets can be compared at once: " + sets.size());
+		}
+		int length = 0;
+		for (GeneSet set : sets) {
+			sets.get(0).checkDictionary(set);
+			length = Math.max(length, set.words.length);
+		}
+
+		int[] counts = new int[1 << sets.size()];
+		long[] column = new long[sets.size()];
+		for (int i = 0; i < length; i++) {
+			long union = 0;
+			for (int s = 0; s < column.length; s++) {
+				long[] words = sets.get(s).words;
+				column[s] = i < words.length ? words[i] : 0;
+				union |= column[s];
+			}
+			while (union != 0) {
+				long bit = union & -union;
+				int mask = 0;
+				for (int s = 0; s < column.length; s++) {
+					if ((column[s] & bit) != 0) {
+						mask |= 1 << s;
+					}
+				}
+				counts[mask]++;
+				union &= union - 1;
+			}
+		}
+		return counts;
+	}
+
+	private void checkDictionary(GeneSet other) {
+		if (other.genes != genes) {
+			throw new IllegalArgumentException("Gene sets must share a dictionary");
+		}
+	}
+
+	private static int wordCount(int genes) {
+		return (genes + 63) >>> 6;
+	}
+
+	@Override
+	public String toString() {
+		return "GeneSet [cardinality=" + cardinality() + "]";
+	}
+}
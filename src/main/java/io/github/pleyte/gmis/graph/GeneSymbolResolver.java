@@ -0,0 +1,266 @@
+package io.github.pleyte.gmis.graph;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Resolves the many spellings of a gene to its approved symbol using an HGNC style alias file. The file is tab
+ * separated with a header and has a column of approved symbols and columns of alias and previous symbols, each holding
+ * a list separated by <code>|</code> or commas. The column names of the HGNC complete set (<code>symbol</code>,
+ * <code>alias_symbol</code>, <code>prev_symbol</code>), of the HGNC custom downloads (<code>Approved symbol</code>,
+ * <code>Alias symbols</code>, <code>Previous symbols</code>) and of NCBI gene_info (<code>Symbol</code>,
+ * <code>Synonyms</code>) are recognised. Withdrawn entries are ignored.
+ *
+ * Symbols are matched ignoring case after {@link #clean(String)}. An approved symbol always resolves to itself, a
+ * previous symbol takes precedence over an alias, and a spelling shared by different genes at the same level is
+ * ambiguous and left as it is.
+ *
+ * The index is built once and never changes, so one resolver can be shared by any number of threads. It is an open
+ * addressing table of upper case spellings, so a lookup costs one hash and usually one comparison.
+ *
+ * @author pleyte
+ *
+ */
+public class GeneSymbolResolver {
+	private static Logger log;
+
+	static {
+		InputStream stream = GeneSymbolResolver.class.getClassLoader().getResourceAsStream("logging.properties");
+		try {
+			LogManager.getLogManager().readConfiguration(stream);
+			log = Logger.getLogger(GeneSymbolResolver.class.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * A resolver which returns every symbol unchanged
+	 */
+	public static final GeneSymbolResolver NONE = new GeneSymbolResolver("none", new String[0], new String[0], new int[0], 0);
+
+	private static final int AMBIGUOUS = -1;
+	private static final int APPROVED = 0;
+	private static final int PREVIOUS = 1;
+	private static final int ALIAS = 2;
+
+	private static final String[] APPROVED_COLUMNS = { "symbol", "approved symbol", "approved_symbol" };
+	private static final String[] PREVIOUS_COLUMNS = { "prev_symbol", "previous symbols", "previous symbol", "previous_symbol" };
+	private static final String[] ALIAS_COLUMNS = { "alias_symbol", "alias symbols", "alias symbol", "synonyms" };
+	private static final String[] STATUS_COLUMNS = { "status" };
+
+	private final String source;
+	private final String[] approvedSymbols;
+
+	// Upper case spellings and the index of the approved symbol each resolves to, in an open addressing table
+	private final String[] spellings;
+	private final int[] targets;
+	private final int mask;
+	private final long checksum;
+
+	private GeneSymbolResolver(String source, String[] approvedSymbols, String[] spellings, int[] targets, long checksum) {
+		this.source = source;
+		this.approvedSymbols = approvedSymbols;
+		this.spellings = spellings;
+		this.targets = targets;
+		this.mask = spellings.length - 1;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * Load an alias file
+	 *
+	 * @param aliasFile
+	 * @return
+	 * @throws IOException if the file cannot be read or has no approved symbol
+	 *                     column
+	 */
+	public static GeneSymbolResolver load(String aliasFile) throws IOException {
+		Map<String, Integer> approvedIndex = new HashMap<>();
+		Map<String, long[]> entries = new HashMap<>();
+		CRC32 crc = new CRC32();
+
+		try (Reader in = new InputStreamReader(new CheckedInputStream(new FileInputStream(aliasFile), crc), StandardCharsets.UTF_8);
+				CSVParser parser = CSVFormat.TDF.withFirstRecordAsHeader().parse(in)) {
+			Map<String, Integer> header = parser.getHeaderMap();
+			String approvedColumn = findColumn(header, APPROVED_COLUMNS);
+			if (approvedColumn == null) {
+				throw new IOException(aliasFile + " has no approved symbol column");
+			}
+			String previousColumn = findColumn(header, PREVIOUS_COLUMNS);
+			String aliasColumn = findColumn(header, ALIAS_COLUMNS);
+			String statusColumn = findColumn(header, STATUS_COLUMNS);
+
+			for (CSVRecord record : parser) {
+				if (!record.isConsistent() || (statusColumn != null && record.get(statusColumn).contains("Withdrawn"))) {
+					continue;
+				}
+				String approved = clean(record.get(approvedColumn));
+				if (approved.isEmpty()) {
+					continue;
+				}
+				Integer target = approvedIndex.get(approved);
+				if (target == null) {
+					target = approvedIndex.size();
+					approvedIndex.put(approved, target);
+				}
+				addSpelling(entries, approved, target, APPROVED);
+				if (previousColumn != null) {
+					addSpellings(entries, record.get(previousColumn), target, PREVIOUS);
+				}
+				if (aliasColumn != null) {
+					addSpellings(entries, record.get(aliasColumn), target, ALIAS);
+				}
+			}
+		}
+
+		String[] approvedSymbols = new String[approvedIndex.size()];
+		for (Map.Entry<String, Integer> entry : approvedIndex.entrySet()) {
+			approvedSymbols[entry.getValue()] = entry.getKey();
+		}
+
+		int capacity = Integer.highestOneBit(Math.max(entries.size(), 8) * 2 - 1) << 1;
+		String[] spellings = new String[capacity];
+		int[] targets = new int[capacity];
+		int ambiguous = 0;
+		for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+			int slot = GeneDictionary.mix(entry.getKey().hashCode()) & (capacity - 1);
+			while (spellings[slot] != null) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			spellings[slot] = entry.getKey();
+			targets[slot] = (int) entry.getValue()[0];
+			if (targets[slot] == AMBIGUOUS) {
+				ambiguous++;
+			}
+		}
+
+		GeneSymbolResolver resolver = new GeneSymbolResolver(aliasFile, approvedSymbols, spellings, targets, crc.getValue());
+		log.info("Loaded " + approvedSymbols.length + " approved symbols and " + (entries.size() - approvedSymbols.length) + " other spellings from "
+				+ aliasFile + "; " + ambiguous + " spellings are ambiguous");
+		return resolver;
+	}
+
+	/**
+	 * Return the approved symbol of a gene, or the cleaned symbol if it is not a
+	 * known spelling or is ambiguous. {@link #NONE} returns the symbol unchanged.
+	 *
+	 * @param symbol
+	 * @return
+	 */
+	public String resolve(String symbol) {
+		if (this == NONE) {
+			return symbol;
+		}
+		String cleaned = clean(symbol);
+		String key = cleaned.toUpperCase(Locale.ROOT);
+		int slot = GeneDictionary.mix(key.hashCode()) & mask;
+		String spelling;
+		while ((spelling = spellings[slot]) != null) {
+			if (spelling.equals(key)) {
+				int target = targets[slot];
+				return target == AMBIGUOUS ? cleaned : approvedSymbols[target];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return cleaned;
+	}
+
+	/**
+	 * Return the number of approved symbols
+	 *
+	 * @return
+	 */
+	public int size() {
+		return approvedSymbols.length;
+	}
+
+	/**
+	 * Remove the decoration the study tables add to gene symbols: surrounding
+	 * whitespace and quotes, and trailing footnote marks such as <code>*</code>
+	 *
+	 * @param symbol
+	 * @return
+	 */
+	public static String clean(String symbol) {
+		int start = 0;
+		int end = symbol.length();
+		while (true) {
+			while (start < end && Character.isWhitespace(symbol.charAt(start))) {
+				start++;
+			}
+			while (end > start && (Character.isWhitespace(symbol.charAt(end - 1)) || isFootnoteMark(symbol.charAt(end - 1)))) {
+				end--;
+			}
+			if (end - start >= 2 && (symbol.charAt(start) == '"' || symbol.charAt(start) == '\'') && symbol.charAt(end - 1) == symbol.charAt(start)) {
+				start++;
+				end--;
+			} else {
+				break;
+			}
+		}
+		return symbol.substring(start, end);
+	}
+
+	private static boolean isFootnoteMark(char c) {
+		return c == '*' || c == '\u2020' || c == '\u2021' || c == '#';
+	}
+
+	private static void addSpellings(Map<String, long[]> entries, String list, int target, int level) {
+		for (String spelling : list.split("[|,]")) {
+			spelling = clean(spelling);
+			if (!spelling.isEmpty() && !spelling.equals("-")) {
+				addSpelling(entries, spelling, target, level);
+			}
+		}
+	}
+
+	/**
+	 * Record that a spelling resolves to an approved symbol, keeping the one with
+	 * the higher precedence. Each entry holds the target and its level.
+	 */
+	private static void addSpelling(Map<String, long[]> entries, String spelling, int target, int level) {
+		String key = spelling.toUpperCase(Locale.ROOT);
+		long[] entry = entries.get(key);
+		if (entry == null) {
+			entries.put(key, new long[] { target, level });
+		} else if (level < entry[1]) {
+			entry[0] = target;
+			entry[1] = level;
+		} else if (level == entry[1] && entry[0] != target && level != APPROVED) {
+			entry[0] = AMBIGUOUS;
+		}
+	}
+
+	private static String findColumn(Map<String, Integer> header, String[] candidates) {
+		for (String column : header.keySet()) {
+			String name = column.trim().toLowerCase(Locale.ROOT);
+			for (String candidate : candidates) {
+				if (name.equals(candidate)) {
+					return column;
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "GeneSymbolResolver [source=" + source + ", approvedSymbols=" + approvedSymbols.length + ", checksum=" + Long.toHexString(checksum) + "]";
+	}
+}
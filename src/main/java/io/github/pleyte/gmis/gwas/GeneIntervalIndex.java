@@ -0,0 +1,227 @@
+package io.github.pleyte.gmis.gwas;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import io.github.pleyte.gmis.graph.GeneDictionary;
+
+/**
+ * Finds the genes whose region, widened by a flank on each side, contains a chromosome position. The gene coordinates
+ * are read from a tab delimited file with a header row and the columns <code>gene</code>, <code>chromosome</code>,
+ * <code>start</code> and <code>end</code> (1-based and inclusive, in the same genome build as the positions looked up).
+ * A "chr" prefix on chromosome names is ignored.
+ *
+ * The regions of each chromosome are held in arrays sorted by start, alongside the running maximum of the ends. A
+ * lookup binary searches for the last region starting at or before the position and walks back until the running
+ * maximum shows that no earlier region can reach it. Lookups do not change any state so threads can share an index.
+ *
+ * @author pleyte
+ *
+ */
+public class GeneIntervalIndex {
+	private final Map<String, Integer> chromosomes;
+	private final long[][] starts;
+	private final long[][] ends;
+	private final long[][] maximumEnds;
+	private final int[][] genes;
+	private final int maximumOverlap;
+
+	private GeneIntervalIndex(Map<String, Integer> chromosomes, long[][] starts, long[][] ends, int[][] genes) {
+		this.chromosomes = chromosomes;
+		this.starts = starts;
+		this.ends = ends;
+		this.genes = genes;
+
+		maximumEnds = new long[ends.length][];
+		int overlap = 0;
+		for (int c = 0; c < ends.length; c++) {
+			maximumEnds[c] = new long[ends[c].length];
+			long maximum = Long.MIN_VALUE;
+			for (int i = 0; i < ends[c].length; i++) {
+				maximum = Math.max(maximum, ends[c][i]);
+				maximumEnds[c][i] = maximum;
+			}
+			overlap = Math.max(overlap, getMaximumOverlap(starts[c], ends[c]));
+		}
+		maximumOverlap = overlap;
+	}
+
+	/**
+	 * Load the gene coordinates, interning each gene in the dictionary
+	 *
+	 * @param coordinateFile
+	 * @param flank          number of bases added to each side of a gene
+	 * @param dictionary
+	 * @return
+	 * @throws IOException if the file cannot be read or has an invalid record
+	 */
+	public static GeneIntervalIndex load(String coordinateFile, long flank, GeneDictionary dictionary) throws IOException {
+		if (flank < 0) {
+			throw new IllegalArgumentException("Flank must not be negative: " + flank);
+		}
+		Map<String, Integer> chromosomes = new HashMap<>();
+		List<List<long[]>> regions = new ArrayList<>();
+
+		try (Reader in = new FileReader(coordinateFile); CSVParser parser = CSVFormat.TDF.withFirstRecordAsHeader().withCommentMarker('#').parse(in)) {
+			for (String column : new String[] { "gene", "chromosome", "start", "end" }) {
+				if (!parser.getHeaderMap().containsKey(column)) {
+					throw new IOException("Gene coordinate file " + coordinateFile + " has no " + column + " column");
+				}
+			}
+
+			for (CSVRecord record : parser) {
+				long start;
+				long end;
+				try {
+					start = Long.parseLong(record.get("start").trim());
+					end = Long.parseLong(record.get("end").trim());
+				} catch (NumberFormatException e) {
+					throw new IOException("Gene coordinate file " + coordinateFile + " record number " + record.getRecordNumber() + " has a non-numeric position");
+				}
+				if (end < start) {
+					throw new IOException("Gene coordinate file " + coordinateFile + " record number " + record.getRecordNumber() + " ends before it starts");
+				}
+
+				String chromosome = normalise(record.get("chromosome"));
+				Integer c = chromosomes.get(chromosome);
+				if (c == null) {
+					c = chromosomes.size();
+					chromosomes.put(chromosome, c);
+					regions.add(new ArrayList<>());
+				}
+				int gene = dictionary.intern(record.get("gene").trim());
+				regions.get(c).add(new long[] { start - flank, end + flank, gene });
+			}
+		}
+
+		int chromosomeCount = regions.size();
+		long[][] starts = new long[chromosomeCount][];
+		long[][] ends = new long[chromosomeCount][];
+		int[][] genes = new int[chromosomeCount][];
+		for (int c = 0; c < chromosomeCount; c++) {
+			List<long[]> chromosomeRegions = regions.get(c);
+			chromosomeRegions.sort(Comparator.comparingLong(region -> region[0]));
+			int n = chromosomeRegions.size();
+			starts[c] = new long[n];
+			ends[c] = new long[n];
+			genes[c] = new int[n];
+			for (int i = 0; i < n; i++) {
+				long[] region = chromosomeRegions.get(i);
+				starts[c][i] = region[0];
+				ends[c][i] = region[1];
+				genes[c][i] = (int) region[2];
+			}
+		}
+		return new GeneIntervalIndex(chromosomes, starts, ends, genes);
+	}
+
+	/**
+	 * Return the index of a chromosome, or -1 if no gene is on it
+	 *
+	 * @param name
+	 * @return
+	 */
+	public int getChromosome(String name) {
+		Integer chromosome = chromosomes.get(normalise(name));
+		return chromosome == null ? -1 : chromosome;
+	}
+
+	/**
+	 * Return the largest number of gene regions which contain any one position,
+	 * which is the most genes {@link #find(int, long, int[])} can return
+	 *
+	 * @return
+	 */
+	public int getMaximumOverlap() {
+		return maximumOverlap;
+	}
+
+	/**
+	 * Find the genes whose flanked region contains a position. A gene listed more
+	 * than once in the coordinate file is returned once.
+	 *
+	 * @param chromosome index from {@link #getChromosome(String)}
+	 * @param position
+	 * @param found      receives the gene ids; must hold at least
+	 *                   {@link #getMaximumOverlap()} genes
+	 * @return the number of genes found
+	 */
+	public int find(int chromosome, long position, int[] found) {
+		long[] chromosomeStarts = starts[chromosome];
+		long[] chromosomeEnds = ends[chromosome];
+		long[] chromosomeMaximumEnds = maximumEnds[chromosome];
+		int[] chromosomeGenes = genes[chromosome];
+
+		// Last region starting at or before the position
+		int low = 0;
+		int high = chromosomeStarts.length - 1;
+		int i = -1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (chromosomeStarts[middle] <= position) {
+				i = middle;
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		int count = 0;
+		for (; i >= 0 && chromosomeMaximumEnds[i] >= position; i--) {
+			if (chromosomeEnds[i] >= position && !contains(found, count, chromosomeGenes[i])) {
+				found[count++] = chromosomeGenes[i];
+			}
+		}
+		return count;
+	}
+
+	private static boolean contains(int[] values, int count, int value) {
+		for (int i = 0; i < count; i++) {
+			if (values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return the largest number of regions that contain one position, by sweeping
+	 * across the sorted starts and ends
+	 *
+	 * @param sortedStarts
+	 * @param ends
+	 * @return
+	 */
+	private static int getMaximumOverlap(long[] sortedStarts, long[] ends) {
+		long[] sortedEnds = ends.clone();
+		Arrays.sort(sortedEnds);
+		int open = 0;
+		int maximum = 0;
+		int e = 0;
+		for (long start : sortedStarts) {
+			while (sortedEnds[e] < start) {
+				e++;
+				open--;
+			}
+			maximum = Math.max(maximum, ++open);
+		}
+		return maximum;
+	}
+
+	static String normalise(String chromosome) {
+		String name = chromosome.trim().toUpperCase(Locale.ROOT);
+		return name.startsWith("CHR") ? name.substring(3) : name;
+	}
+}
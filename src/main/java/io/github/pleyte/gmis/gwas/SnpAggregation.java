@@ -0,0 +1,91 @@
+package io.github.pleyte.gmis.gwas;
+
+/**
+ * How the p-values of the SNPs mapped to a gene are combined into the gene's score. Every method gives the score as
+ * <code>-log10</code> of a gene p-value, the scale {@link io.github.pleyte.gmis.intermediate.PolyPValueToGeneScore}
+ * uses. The SNPs are given as <code>-log10</code> of their p-values too, so SNPs with p-values below the smallest double
+ * keep distinct scores.
+ *
+ * @author pleyte
+ *
+ */
+public enum SnpAggregation {
+	/**
+	 * The score of the most significant SNP
+	 */
+	MAXIMUM {
+		@Override
+		public double getScore(double maximumScore, double sumLogP, long count) {
+			return maximumScore;
+		}
+	},
+
+	/**
+	 * Fisher's method: <code>-2 sum ln p</code> follows a chi-squared distribution
+	 * with <code>2k</code> degrees of freedom. This assumes the SNPs are
+	 * independent, which linkage disequilibrium makes optimistic.
+	 *
+	 * With even degrees of freedom the upper tail at <code>2x</code> is
+	 * <code>e^-x sum_{i&lt;k} x^i / i!</code>, which is summed in log space so the
+	 * score stays exact for gene p-values far below the smallest double.
+	 */
+	FISHER {
+		@Override
+		public double getScore(double maximumScore, double sumLogP, long count) {
+			double x = -sumLogP;
+			if (x <= 0) {
+				return 0;
+			}
+			double logX = Math.log(x);
+
+			// Sum the terms relative to the largest one seen so far
+			double logTerm = 0;
+			double logLargest = 0;
+			double sum = 1;
+			for (long i = 1; i < count; i++) {
+				logTerm += logX - Math.log(i);
+				if (logTerm > logLargest) {
+					sum = sum * Math.exp(logLargest - logTerm) + 1;
+					logLargest = logTerm;
+				} else {
+					sum += Math.exp(logTerm - logLargest);
+				}
+			}
+			double logP = -x + logLargest + Math.log(sum);
+			return Math.max(0, -logP / LN_10);
+		}
+	},
+
+	/**
+	 * The most significant SNP with a Bonferroni correction for the number of SNPs
+	 * mapped to the gene
+	 */
+	MIN_P_BONFERRONI {
+		@Override
+		public double getScore(double maximumScore, double sumLogP, long count) {
+			return Math.max(0, maximumScore - Math.log10(count));
+		}
+	};
+
+	private static final double LN_10 = Math.log(10);
+
+	/**
+	 * Return the score of a gene
+	 *
+	 * @param maximumScore -log10 of the smallest SNP p-value
+	 * @param sumLogP      the sum of the natural logs of the SNP p-values
+	 * @param count        the number of SNPs
+	 * @return
+	 */
+	public abstract double getScore(double maximumScore, double sumLogP, long count);
+
+	/**
+	 * Return the natural log of a p-value from its -log10
+	 *
+	 * @param score
+	 * @return
+	 */
+	public static double toLogP(double score) {
+		return -score * LN_10;
+	}
+}
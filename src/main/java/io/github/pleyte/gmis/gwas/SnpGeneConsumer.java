@@ -0,0 +1,18 @@
+package io.github.pleyte.gmis.gwas;
+
+/**
+ * Receives the score of each SNP mapped to a gene by a {@link SummaryStatisticsReader}
+ *
+ * @author pleyte
+ *
+ */
+@FunctionalInterface
+public interface SnpGeneConsumer {
+
+	/**
+	 *
+	 * @param gene   id of the gene in the dictionary the index was loaded with
+	 * @param score  -log10 of the SNP's p-value
+	 */
+	void accept(int gene, double score);
+}
@@ -0,0 +1,488 @@
+package io.github.pleyte.gmis.gwas;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+import io.github.pleyte.gmis.score.DecimalParser;
+
+/**
+ * Streams a GWAS summary statistics file, plain or gzipped, and passes -log10 of the p-value of every SNP that falls in
+ * a gene to a consumer. The score is computed from the decimal digits and exponent of the p-value, so p-values too small
+ * for a double, such as <code>1e-400</code>, keep distinct scores. The file is delimited by tabs, commas or spaces and has a header row naming the chromosome, position
+ * and p-value columns; common names such as CHR, BP and P are recognised unless the columns are set. Lines before the
+ * header which begin with "##" are skipped, as are SNPs with a missing p-value (empty, "NA" or ".").
+ *
+ * One thread decompresses the file and cuts it into blocks of whole lines. The blocks are parsed and looked up in the
+ * {@link GeneIntervalIndex} in parallel, and the results are handed to the consumer in file order on the calling
+ * thread, so the consumer need not be thread-safe and the outcome does not depend on the number of threads. Only a few
+ * blocks are in memory at once, however large the file.
+ *
+ * @author pleyte
+ *
+ */
+public class SummaryStatisticsReader {
+	private static Logger log;
+
+	static {
+		InputStream stream = SummaryStatisticsReader.class.getClassLoader().getResourceAsStream("logging.properties");
+		try {
+			LogManager.getLogManager().readConfiguration(stream);
+			log = Logger.getLogger(SummaryStatisticsReader.class.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static final String[] CHROMOSOME_COLUMNS = { "CHR", "CHROM", "#CHROM", "CHROMOSOME", "HG19CHRC" };
+	private static final String[] POSITION_COLUMNS = { "BP", "POS", "POSITION", "BASE_PAIR_LOCATION" };
+	private static final String[] P_VALUE_COLUMNS = { "P", "PVAL", "P_VALUE", "PVALUE", "P-VALUE" };
+
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	private final GeneIntervalIndex index;
+	private final ExecutorService pool;
+	private final int parallelism;
+	private String chromosomeColumn;
+	private String positionColumn;
+	private String pValueColumn;
+
+	private long snpCount;
+	private long mappedSnpCount;
+	private long missingCount;
+
+	/**
+	 *
+	 * @param index
+	 * @param pool        threads which parse the blocks
+	 * @param parallelism number of threads in the pool
+	 */
+	public SummaryStatisticsReader(GeneIntervalIndex index, ExecutorService pool, int parallelism) {
+		this.index = index;
+		this.pool = pool;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public void setChromosomeColumn(String chromosomeColumn) {
+		this.chromosomeColumn = chromosomeColumn;
+	}
+
+	public void setPositionColumn(String positionColumn) {
+		this.positionColumn = positionColumn;
+	}
+
+	public void setPValueColumn(String pValueColumn) {
+		this.pValueColumn = pValueColumn;
+	}
+
+	/**
+	 * Return the number of SNPs with a p-value in the last file read
+	 *
+	 * @return
+	 */
+	public long getSnpCount() {
+		return snpCount;
+	}
+
+	/**
+	 * Return the number of SNPs in the last file read which fell in at least one
+	 * gene
+	 *
+	 * @return
+	 */
+	public long getMappedSnpCount() {
+		return mappedSnpCount;
+	}
+
+	/**
+	 * Return the number of SNPs in the last file read without a p-value
+	 *
+	 * @return
+	 */
+	public long getMissingCount() {
+		return missingCount;
+	}
+
+	/**
+	 * Read the file, passing -log10 of each SNP p-value to the consumer once for
+	 * every gene the SNP falls in
+	 *
+	 * @param file
+	 * @param consumer
+	 * @throws IOException if the file cannot be read or has an invalid line
+	 */
+	public void read(Path file, SnpGeneConsumer consumer) throws IOException {
+		snpCount = 0;
+		mappedSnpCount = 0;
+		missingCount = 0;
+
+		try (InputStream in = open(file)) {
+			long lineNumber = 0;
+			String header;
+			do {
+				header = readLine(in);
+				lineNumber++;
+				if (header == null) {
+					throw new IOException("Summary statistics file " + file + " has no header");
+				}
+			} while (header.startsWith("##") || header.trim().isEmpty());
+
+			Columns columns = new Columns(header, file);
+			long firstLine = lineNumber + 1;
+			Deque<Future<Block>> pending = new ArrayDeque<>();
+			try {
+				byte[] carry = new byte[0];
+				boolean endOfFile = false;
+				while (!endOfFile) {
+					byte[] bytes = Arrays.copyOf(carry, Math.max(BLOCK_SIZE, carry.length * 2));
+					int length = carry.length;
+					int read;
+					while (length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) > 0) {
+						length += read;
+					}
+					endOfFile = length < bytes.length;
+
+					int blockLength = length;
+					if (!endOfFile) {
+						blockLength = lastIndexOf(bytes, length, (byte) '\n') + 1;
+					}
+					carry = Arrays.copyOfRange(bytes, blockLength, length);
+					if (blockLength == 0) {
+						// A line longer than the block; read on with a larger buffer
+						continue;
+					}
+
+					int parseLength = blockLength;
+					pending.add(pool.submit(() -> parse(bytes, parseLength, columns)));
+					while (pending.size() > parallelism * 2) {
+						firstLine = apply(pending.removeFirst(), firstLine, file, consumer);
+					}
+				}
+				while (!pending.isEmpty()) {
+					firstLine = apply(pending.removeFirst(), firstLine, file, consumer);
+				}
+			} finally {
+				for (Future<Block> block : pending) {
+					block.cancel(true);
+				}
+			}
+		}
+
+		log.fine("Read " + snpCount + " SNPs from " + file + ", " + mappedSnpCount + " in genes and " + missingCount + " without a p-value");
+	}
+
+	/**
+	 * Wait for a block and pass its SNPs to the consumer
+	 *
+	 * @param future
+	 * @param firstLine line number of the block's first line
+	 * @param file
+	 * @param consumer
+	 * @return the line number of the next block's first line
+	 * @throws IOException
+	 */
+	private long apply(Future<Block> future, long firstLine, Path file, SnpGeneConsumer consumer) throws IOException {
+		Block block;
+		try {
+			block = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading " + file, e);
+		} catch (ExecutionException e) {
+			throw new IOException("Unable to parse " + file + ": " + e.getCause(), e.getCause());
+		}
+
+		if (block.error != null) {
+			throw new IOException("Summary statistics file " + file + " line " + (firstLine + block.errorLine) + " " + block.error);
+		}
+		for (int i = 0; i < block.hitCount; i++) {
+			consumer.accept(block.genes[i], block.scores[i]);
+		}
+		snpCount += block.snpCount;
+		mappedSnpCount += block.mappedSnpCount;
+		missingCount += block.missingCount;
+		return firstLine + block.lineCount;
+	}
+
+	/**
+	 * Parse the lines of a block and look up the genes of each SNP
+	 *
+	 * @param bytes
+	 * @param length
+	 * @param columns
+	 * @return
+	 */
+	private Block parse(byte[] bytes, int length, Columns columns) {
+		Block block = new Block(length / 32);
+		int[] found = new int[Math.max(1, index.getMaximumOverlap())];
+		int[] fieldStarts = new int[columns.lastColumn + 1];
+		int[] fieldEnds = new int[columns.lastColumn + 1];
+
+		// The chromosome of the previous line, which is usually the same
+		int lastChromosomeStart = 0;
+		int lastChromosomeLength = -1;
+		int lastChromosome = -1;
+
+		int lineStart = 0;
+		int line = 0;
+		while (lineStart < length) {
+			int lineEnd = lineStart;
+			while (lineEnd < length && bytes[lineEnd] != '\n') {
+				lineEnd++;
+			}
+			int end = lineEnd > lineStart && bytes[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+
+			if (end > lineStart) {
+				if (!split(bytes, lineStart, end, columns, fieldStarts, fieldEnds)) {
+					return block.fail(line, "has fewer than " + (columns.lastColumn + 1) + " fields");
+				}
+
+				int pStart = fieldStarts[columns.pValue];
+				int pEnd = fieldEnds[columns.pValue];
+				if (isMissing(bytes, pStart, pEnd)) {
+					block.missingCount++;
+				} else {
+					double score;
+					long position;
+					try {
+						score = DecimalParser.parseNegativeLog10(bytes, pStart, pEnd);
+						position = parsePosition(bytes, fieldStarts[columns.position], fieldEnds[columns.position]);
+					} catch (NumberFormatException e) {
+						return block.fail(line, "has an invalid position or p-value");
+					}
+					// A p-value above one has a negative score and a negative p-value has NaN
+					if (!(score >= 0)) {
+						return block.fail(line, "has a p-value outside [0, 1]: " + new String(bytes, pStart, pEnd - pStart, StandardCharsets.US_ASCII));
+					}
+					block.snpCount++;
+
+					int chromosomeStart = fieldStarts[columns.chromosome];
+					int chromosomeLength = fieldEnds[columns.chromosome] - chromosomeStart;
+					if (lastChromosomeLength < 0
+							|| !Arrays.equals(bytes, chromosomeStart, chromosomeStart + chromosomeLength, bytes, lastChromosomeStart, lastChromosomeStart + lastChromosomeLength)) {
+						lastChromosome = index.getChromosome(new String(bytes, chromosomeStart, chromosomeLength, StandardCharsets.US_ASCII));
+					}
+					lastChromosomeStart = chromosomeStart;
+					lastChromosomeLength = chromosomeLength;
+
+					if (lastChromosome >= 0) {
+						int count = index.find(lastChromosome, position, found);
+						if (count > 0) {
+							block.mappedSnpCount++;
+							for (int i = 0; i < count; i++) {
+								block.add(found[i], score);
+							}
+						}
+					}
+				}
+			}
+
+			line++;
+			lineStart = lineEnd + 1;
+		}
+
+		block.lineCount = line;
+		return block;
+	}
+
+	/**
+	 * Find the fields of a line up to the last column needed
+	 *
+	 * @return false if the line has too few fields
+	 */
+	private static boolean split(byte[] bytes, int start, int end, Columns columns, int[] fieldStarts, int[] fieldEnds) {
+		int field = 0;
+		int i = start;
+		if (columns.whitespace) {
+			while (i < end && isWhitespace(bytes[i])) {
+				i++;
+			}
+		}
+		while (field <= columns.lastColumn) {
+			if (i > end || (columns.whitespace && i == end)) {
+				return false;
+			}
+			int fieldStart = i;
+			if (columns.whitespace) {
+				while (i < end && !isWhitespace(bytes[i])) {
+					i++;
+				}
+			} else {
+				while (i < end && bytes[i] != columns.delimiter) {
+					i++;
+				}
+			}
+			fieldStarts[field] = fieldStart;
+			fieldEnds[field] = i;
+			field++;
+			i++;
+			if (columns.whitespace) {
+				while (i < end && isWhitespace(bytes[i])) {
+					i++;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	private static boolean isMissing(byte[] bytes, int start, int end) {
+		int length = end - start;
+		return length == 0 || (length == 1 && bytes[start] == '.')
+				|| (length == 2 && (bytes[start] == 'N' || bytes[start] == 'n') && (bytes[start + 1] == 'A' || bytes[start + 1] == 'a'));
+	}
+
+	private static long parsePosition(byte[] bytes, int start, int end) {
+		if (start == end) {
+			throw new NumberFormatException();
+		}
+		long position = 0;
+		for (int i = start; i < end; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException();
+			}
+			position = position * 10 + digit;
+		}
+		return position;
+	}
+
+	private static int lastIndexOf(byte[] bytes, int length, byte value) {
+		for (int i = length - 1; i >= 0; i--) {
+			if (bytes[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Open a file, decompressing it if it starts with the gzip magic number
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static InputStream open(Path file) throws IOException {
+		InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+		in.mark(2);
+		int first = in.read();
+		int second = in.read();
+		in.reset();
+		if (first == 0x1f && second == 0x8b) {
+			return new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16);
+		}
+		return in;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) >= 0 && b != '\n') {
+			line.write(b);
+		}
+		if (b < 0 && line.size() == 0) {
+			return null;
+		}
+		String text = line.toString(StandardCharsets.UTF_8.name());
+		return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+	}
+
+	/**
+	 * The delimiter and the positions of the columns read from the header
+	 */
+	private class Columns {
+		final boolean whitespace;
+		final byte delimiter;
+		final int chromosome;
+		final int position;
+		final int pValue;
+		final int lastColumn;
+
+		Columns(String header, Path file) throws IOException {
+			String[] names;
+			if (header.indexOf('\t') >= 0) {
+				whitespace = false;
+				delimiter = '\t';
+				names = header.split("\t", -1);
+			} else if (header.indexOf(',') >= 0) {
+				whitespace = false;
+				delimiter = ',';
+				names = header.split(",", -1);
+			} else {
+				whitespace = true;
+				delimiter = ' ';
+				names = header.trim().split("\\s+");
+			}
+
+			chromosome = find(names, chromosomeColumn, CHROMOSOME_COLUMNS, "chromosome", file);
+			position = find(names, positionColumn, POSITION_COLUMNS, "position", file);
+			pValue = find(names, pValueColumn, P_VALUE_COLUMNS, "p-value", file);
+			lastColumn = Math.max(chromosome, Math.max(position, pValue));
+		}
+
+		private int find(String[] names, String configured, String[] candidates, String description, Path file) throws IOException {
+			String[] wanted = configured == null ? candidates : new String[] { configured };
+			for (String name : wanted) {
+				for (int i = 0; i < names.length; i++) {
+					if (names[i].trim().toUpperCase(Locale.ROOT).equals(name.toUpperCase(Locale.ROOT))) {
+						return i;
+					}
+				}
+			}
+			throw new IOException("Summary statistics file " + file + " has no " + description + " column (looked for " + String.join(", ", wanted) + ")");
+		}
+	}
+
+	/**
+	 * The SNP to gene hits of one block of lines
+	 */
+	private static class Block {
+		int[] genes;
+		double[] scores;
+		int hitCount;
+		int lineCount;
+		long snpCount;
+		long mappedSnpCount;
+		long missingCount;
+		int errorLine;
+		String error;
+
+		Block(int expectedHits) {
+			genes = new int[Math.max(16, expectedHits)];
+			scores = new double[genes.length];
+		}
+
+		void add(int gene, double score) {
+			if (hitCount == genes.length) {
+				genes = Arrays.copyOf(genes, hitCount * 2);
+				scores = Arrays.copyOf(scores, hitCount * 2);
+			}
+			genes[hitCount] = gene;
+			scores[hitCount++] = score;
+		}
+
+		Block fail(int line, String message) {
+			errorLine = line;
+			error = message;
+			return this;
+		}
+	}
+}
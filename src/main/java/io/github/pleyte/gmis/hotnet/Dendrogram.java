@@ -0,0 +1,267 @@
+package io.github.pleyte.gmis.hotnet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.pleyte.gmis.bean.NetworkScore;
+import io.github.pleyte.gmis.graph.GeneDictionary;
+
+/**
+ * The cluster hierarchy built from a similarity matrix. Leaves <code>0</code> to <code>getLeafCount() - 1</code> are
+ * the genes (by vertex id). Each internal node is a cluster formed when its children became strongly connected; its
+ * height is the similarity threshold at which that happened. A node may have more than two children when several
+ * clusters join at the same height.
+ *
+ * A cluster is never higher than its children and is always added after them, so the hierarchy can be cut at any
+ * height in a single pass over the nodes without rebuilding it.
+ *
+ * @author pleyte
+ *
+ */
+public class Dendrogram {
+	private final int leafCount;
+	private int nodeCount;
+	private double[] heights;
+	private int[] parents;
+	private int[] sizes;
+
+	Dendrogram(int leafCount) {
+		this.leafCount = leafCount;
+		this.nodeCount = leafCount;
+		int capacity = Math.max(2 * leafCount - 1, 1);
+		heights = new double[capacity];
+		parents = new int[capacity];
+		sizes = new int[capacity];
+		Arrays.fill(heights, 0, leafCount, Double.POSITIVE_INFINITY);
+		Arrays.fill(parents, -1);
+		Arrays.fill(sizes, 0, leafCount, 1);
+	}
+
+	/**
+	 * Add a cluster made by joining existing nodes
+	 *
+	 * @param height
+	 * @param children
+	 * @param count    number of children to take from the start of the array
+	 * @return the new node
+	 */
+	int addNode(double height, int[] children, int count) {
+		int node = nodeCount++;
+		heights[node] = height;
+		for (int i = 0; i < count; i++) {
+			parents[children[i]] = node;
+			sizes[node] += sizes[children[i]];
+		}
+		return node;
+	}
+
+	public int getLeafCount() {
+		return leafCount;
+	}
+
+	/**
+	 * Number of leaves plus the number of clusters
+	 *
+	 * @return
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Return the height at which a cluster formed, or positive infinity for a leaf
+	 *
+	 * @param node
+	 * @return
+	 */
+	public double getHeight(int node) {
+		return heights[node];
+	}
+
+	/**
+	 * Return the parent cluster of a node, or -1 for a root
+	 *
+	 * @param node
+	 * @return
+	 */
+	public int getParent(int node) {
+		return parents[node];
+	}
+
+	/**
+	 * Return the number of genes in a node
+	 *
+	 * @param node
+	 * @return
+	 */
+	public int getSize(int node) {
+		return sizes[node];
+	}
+
+	/**
+	 * Cut the hierarchy at a height and return the cluster of each gene. The
+	 * clusters are the nodes formed at the height or above whose parent formed
+	 * below it; genes in no such cluster are singletons.
+	 *
+	 * @param height
+	 * @return the cluster number of each gene, from 0 to the number of clusters - 1
+	 */
+	public int[] cut(double height) {
+		int[] labels = new int[nodeCount];
+		int clusterCount = 0;
+		// Parents come after their children so a descending walk labels each parent first
+		for (int node = nodeCount - 1; node >= 0; node--) {
+			if (heights[node] < height) {
+				labels[node] = -1;
+			} else if (parents[node] >= 0 && labels[parents[node]] >= 0) {
+				labels[node] = labels[parents[node]];
+			} else {
+				labels[node] = clusterCount++;
+			}
+		}
+		return Arrays.copyOf(labels, leafCount);
+	}
+
+	/**
+	 * Cut the hierarchy at a height and return the genes in each cluster. Clusters
+	 * are ordered by descending size and the genes within a cluster by id.
+	 *
+	 * @param height
+	 * @param minimumSize smallest cluster to return
+	 * @return
+	 */
+	public List<int[]> getClusters(double height, int minimumSize) {
+		int[] labels = cut(height);
+		int clusterCount = 0;
+		for (int label : labels) {
+			clusterCount = Math.max(clusterCount, label + 1);
+		}
+
+		int[] start = new int[clusterCount + 1];
+		for (int label : labels) {
+			++start[label + 1];
+		}
+		double[] clusterSizes = new double[clusterCount];
+		for (int c = 0; c < clusterCount; c++) {
+			clusterSizes[c] = start[c + 1];
+			start[c + 1] += start[c];
+		}
+		int[] members = new int[leafCount];
+		int[] next = Arrays.copyOf(start, clusterCount);
+		for (int gene = 0; gene < leafCount; gene++) {
+			members[next[labels[gene]]++] = gene;
+		}
+
+		List<int[]> clusters = new ArrayList<>();
+		for (int c : sortDescending(clusterSizes)) {
+			if (clusterSizes[c] < minimumSize) {
+				break;
+			}
+			clusters.add(Arrays.copyOfRange(members, start[c], start[c + 1]));
+		}
+		return clusters;
+	}
+
+	/**
+	 * Cut the hierarchy at a height and return the clusters the way they are
+	 * loaded from a HotNet clusters file, largest first with the gene symbols of
+	 * each cluster in alphabetical order
+	 *
+	 * @param height
+	 * @param genes       the dictionary of the network the hierarchy was built from
+	 * @param minimumSize smallest cluster to include
+	 * @return
+	 */
+	public NetworkScore toNetworkScore(double height, GeneDictionary genes, int minimumSize) {
+		NetworkScore networkScore = new NetworkScore();
+		for (int[] cluster : getClusters(height, minimumSize)) {
+			String[] symbols = new String[cluster.length];
+			for (int i = 0; i < cluster.length; i++) {
+				symbols[i] = genes.getSymbol(cluster[i]);
+			}
+			Arrays.sort(symbols);
+			networkScore.addCluster(symbols);
+		}
+		return networkScore;
+	}
+
+	/**
+	 * Return the size of the largest cluster and the number of clusters as
+	 * functions of cut height. The clusters are visited once in descending height;
+	 * each one replaces its children, so the count drops by the number of children
+	 * less one.
+	 *
+	 * @return
+	 */
+	public LargestClusterCurve getLargestClusterCurve() {
+		int clusterCount = nodeCount - leafCount;
+		int[] childCounts = new int[clusterCount];
+		for (int node = 0; node < nodeCount; node++) {
+			if (parents[node] >= 0) {
+				++childCounts[parents[node] - leafCount];
+			}
+		}
+		double[] clusterHeights = Arrays.copyOfRange(heights, leafCount, nodeCount);
+		int[] byHeight = sortDescending(clusterHeights);
+
+		double[] curveHeights = new double[clusterCount];
+		int[] curveSizes = new int[clusterCount];
+		int[] curveCounts = new int[clusterCount];
+		int points = 0;
+		int singleton = leafCount > 0 ? 1 : 0;
+		int largest = singleton;
+		int clusters = leafCount;
+		for (int i : byHeight) {
+			double height = clusterHeights[i];
+			largest = Math.max(largest, sizes[leafCount + i]);
+			clusters -= childCounts[i] - 1;
+			if (points == 0 || curveHeights[points - 1] != height) {
+				curveHeights[points++] = height;
+			}
+			curveSizes[points - 1] = largest;
+			curveCounts[points - 1] = clusters;
+		}
+
+		return new LargestClusterCurve(Arrays.copyOf(curveHeights, points), Arrays.copyOf(curveSizes, points), Arrays.copyOf(curveCounts, points), singleton, leafCount);
+	}
+
+	/**
+	 * Return the indexes of the values ordered by descending value. Equal values
+	 * keep their index order.
+	 *
+	 * @param values
+	 * @return
+	 */
+	static int[] sortDescending(double[] values) {
+		int[] order = new int[values.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		mergeSort(order, new int[order.length], 0, order.length, values);
+		return order;
+	}
+
+	private static void mergeSort(int[] order, int[] buffer, int from, int to, double[] values) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(order, buffer, from, middle, values);
+		mergeSort(order, buffer, middle, to, values);
+
+		int left = from;
+		int right = middle;
+		int out = from;
+		while (left < middle && right < to) {
+			buffer[out++] = values[order[right]] > values[order[left]] ? order[right++] : order[left++];
+		}
+		while (left < middle) {
+			buffer[out++] = order[left++];
+		}
+		while (right < to) {
+			buffer[out++] = order[right++];
+		}
+		System.arraycopy(buffer, from, order, from, to - from);
+	}
+}
@@ -0,0 +1,56 @@
+package io.github.pleyte.gmis.hotnet;
+
+/**
+ * A dense, row-major matrix of doubles held in a single array
+ *
+ * @author pleyte
+ *
+ */
+public class DenseMatrix implements SimilarityMatrix {
+	private final int rows;
+	private final int columns;
+	private final double[] values;
+
+	public DenseMatrix(int rows, int columns) {
+		if ((long) rows * columns > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("A " + rows + " x " + columns + " matrix is too large to hold in one array");
+		}
+		this.rows = rows;
+		this.columns = columns;
+		this.values = new double[rows * columns];
+	}
+
+	@Override
+	public int getRows() {
+		return rows;
+	}
+
+	@Override
+	public int getColumns() {
+		return columns;
+	}
+
+	@Override
+	public double get(int row, int column) {
+		return values[row * columns + column];
+	}
+
+	public void set(int row, int column, double value) {
+		values[row * columns + column] = value;
+	}
+
+	@Override
+	public void getRows(int firstRow, int rowCount, double[] buffer) {
+		System.arraycopy(values, firstRow * columns, buffer, 0, rowCount * columns);
+	}
+
+	/**
+	 * Return the backing array. Element (row, column) is at
+	 * <code>row * getColumns() + column</code>.
+	 *
+	 * @return
+	 */
+	public double[] getValues() {
+		return values;
+	}
+}
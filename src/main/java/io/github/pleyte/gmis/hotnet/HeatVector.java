@@ -0,0 +1,59 @@
+package io.github.pleyte.gmis.hotnet;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.graph.GeneDictionary;
+
+/**
+ * Loads a HotNet gene score file (<code>scores_N.tsv</code>) as a heat vector indexed by vertex id
+ *
+ * @author pleyte
+ *
+ */
+public class HeatVector {
+
+	private HeatVector() {
+	}
+
+	/**
+	 * Return the heat of each vertex in the graph. Genes in the network which are
+	 * not in the score file have no heat, and scored genes which are not in the
+	 * network are ignored.
+	 *
+	 * @param graph
+	 * @param scoreFileName
+	 * @return
+	 * @throws IOException
+	 */
+	public static double[] load(CsrGraph graph, String scoreFileName) throws IOException {
+		GeneDictionary genes = graph.getGenes();
+		double[] heat = new double[graph.getVertexCount()];
+
+		try (Reader in = new FileReader(scoreFileName)) {
+			for (CSVRecord record : CSVFormat.TDF.parse(in)) {
+				if (record.size() != 2) {
+					throw new IOException("Score file " + scoreFileName + " record number " + record.getRecordNumber() + " has an unexpected number of fields: " + record.size());
+				}
+
+				int vertex = genes.getId(record.get(0));
+				if (vertex < 0 || vertex >= heat.length) {
+					continue;
+				}
+
+				try {
+					heat[vertex] = Double.parseDouble(record.get(1));
+				} catch (NumberFormatException e) {
+					throw new IOException("Score file " + scoreFileName + " record number " + record.getRecordNumber() + " has a non-numeric score: " + record.get(1));
+				}
+			}
+		}
+
+		return heat;
+	}
+}
@@ -0,0 +1,558 @@
+package io.github.pleyte.gmis.hotnet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import io.github.pleyte.gmis.bean.NetworkScore;
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.intermediate.NetworkLoader;
+
+/**
+ * Builds the Hierarchical HotNet cluster hierarchy of a similarity matrix using Tarjan's (1983) hierarchical strong
+ * components algorithm. Entry <code>(i, j)</code> of the matrix is a directed edge from gene <code>i</code> to gene
+ * <code>j</code>; cutting at height <code>h</code> keeps the edges whose weight is at least <code>h</code>, and the
+ * clusters are the strongly connected components of what remains.
+ *
+ * Instead of finding the components once per distinct weight, the edges are sorted by descending weight and the
+ * algorithm binary searches for the prefix at which components form. Components found at the midpoint are decomposed
+ * recursively using only their internal edges, and the graph of components (the condensation) is decomposed using the
+ * remaining edges. Every edge takes part in one subproblem per level and there are O(log m) levels, so the running
+ * time is O(m log m) rather than O(m) per distinct height.
+ *
+ * The sorted edge list takes 28 bytes per edge on the heap, plus working space while it is decomposed. A dense
+ * similarity matrix has an edge for nearly every pair of genes, so for large networks set a minimum similarity: only
+ * edges at least that heavy are collected, and the hierarchy is exact when cut at that height or above. Clusters which
+ * would form below it are left unjoined.
+ *
+ * The sort buffers are reused between calls so a builder can be kept per thread and used for many score
+ * permutations. This class is not thread-safe.
+ *
+ * @author pleyte
+ *
+ */
+public class HierarchyBuilder {
+	private static Logger log;
+
+	static {
+		InputStream stream = HierarchyBuilder.class.getClassLoader().getResourceAsStream("logging.properties");
+		try {
+			LogManager.getLogManager().readConfiguration(stream);
+			log = Logger.getLogger(HierarchyBuilder.class.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static final int RADIX_BITS = 16;
+	private static final int RADIX = 1 << RADIX_BITS;
+
+	/**
+	 * Largest edge list the buffers can hold
+	 */
+	private static final int MAXIMUM_EDGES = Integer.MAX_VALUE - 8;
+
+	private final int n;
+
+	private long[] keys = new long[0];
+	private long[] keyBuffer = new long[0];
+	private int[] edges = new int[0];
+	private int[] edgeBuffer = new int[0];
+	private int[] radixCounts = new int[RADIX + 1];
+	private int[] ranks = new int[0];
+	private final double[] rowBuffer;
+
+	private double minimumSimilarity = 0;
+
+	/**
+	 *
+	 * @param n number of genes (rows and columns of the similarity matrix)
+	 */
+	public HierarchyBuilder(int n) {
+		if ((long) n * n > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many genes for a dense similarity matrix: " + n);
+		}
+		this.n = n;
+		this.rowBuffer = new double[n];
+	}
+
+	/**
+	 * Build the hierarchy of a score file on the HotNet network once and print the
+	 * clusters at each of the cut heights given after the score file name. With no
+	 * cut heights the largest cluster size and cluster count at every height are
+	 * written to <code>sizes_&lt;score file name&gt;</code> in the working directory
+	 * instead.
+	 *
+	 * @param args score file followed by zero or more cut heights
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			throw new IllegalArgumentException("Usage: HierarchyBuilder <scores file> [cut height ...]");
+		}
+
+		URL indexFile = HierarchyBuilder.class.getClassLoader().getResource("hotnet_network/network_1_index_gene.tsv");
+		URL edgeListFile = HierarchyBuilder.class.getClassLoader().getResource("hotnet_network/network_1_edge_list.tsv");
+		CsrGraph graph = NetworkLoader.loadHotNetNetwork(indexFile.getFile(), edgeListFile.getFile());
+		DenseMatrix pageRank = new RandomWalkWithRestart(RandomWalkWithRestart.DEFAULT_RESTART_PROBABILITY).computeSimilarityMatrix(graph);
+		double[] heat = HeatVector.load(graph, args[0]);
+
+		Dendrogram dendrogram = new HierarchyBuilder(graph.getVertexCount()).build(pageRank, heat);
+		if (args.length == 1) {
+			String sizesFile = "sizes_" + Paths.get(args[0]).getFileName();
+			dendrogram.getLargestClusterCurve().save(sizesFile);
+			log.info("Wrote cluster sizes at every cut height to " + sizesFile);
+		}
+		for (int i = 1; i < args.length; i++) {
+			double height = Double.parseDouble(args[i]);
+			NetworkScore networkScore = dendrogram.toNetworkScore(height, graph.getGenes(), 2);
+			StringBuilder clusters = new StringBuilder("Clusters of two or more genes at cut height " + height + ":");
+			for (Set<String> cluster : networkScore.getClusters()) {
+				clusters.append("\n").append(String.join("\t", cluster));
+			}
+			log.info(clusters.toString());
+		}
+	}
+
+	public double getMinimumSimilarity() {
+		return minimumSimilarity;
+	}
+
+	/**
+	 * Set the smallest similarity collected as an edge. The hierarchy is exact when
+	 * cut at this height or above.
+	 *
+	 * @param minimumSimilarity 0 to collect every positive similarity
+	 */
+	public void setMinimumSimilarity(double minimumSimilarity) {
+		if (!(minimumSimilarity >= 0)) {
+			throw new IllegalArgumentException("The minimum similarity must not be negative: " + minimumSimilarity);
+		}
+		this.minimumSimilarity = minimumSimilarity;
+	}
+
+	/**
+	 * Build the hierarchy of a similarity matrix
+	 *
+	 * @param similarity
+	 * @return
+	 */
+	public Dendrogram build(SimilarityMatrix similarity) {
+		return build(similarity, null);
+	}
+
+	/**
+	 * Build the hierarchy of the similarity matrix <code>P diag(heat)</code>
+	 * without forming it
+	 *
+	 * @param pageRank the random walk with restart matrix
+	 * @param heat     the heat of each gene, or null to use the matrix as is
+	 * @return
+	 */
+	public Dendrogram build(SimilarityMatrix pageRank, double[] heat) {
+		if (pageRank.getRows() != n || pageRank.getColumns() != n) {
+			throw new IllegalArgumentException("Expected a " + n + " x " + n + " matrix");
+		}
+
+		int m = collectEdges(pageRank, heat);
+		sortEdges(m);
+		// The sort is finished with its buffers, so the sources go in edgeBuffer and
+		// the targets replace the edges
+		int[] sources = edgeBuffer;
+		int[] targets = edges;
+		for (int e = 0; e < m; e++) {
+			sources[e] = edges[e] / n;
+			targets[e] = edges[e] % n;
+			ranks[e] = e;
+		}
+
+		Dendrogram dendrogram = new Dendrogram(n);
+		int[] leaves = new int[n];
+		for (int v = 0; v < n; v++) {
+			leaves[v] = v;
+		}
+		decompose(dendrogram, n, leaves, sources, targets, ranks, m, 0);
+		return dendrogram;
+	}
+
+	/**
+	 * Gather the positive off-diagonal entries of at least the minimum similarity
+	 * as edges, keyed so that an ascending unsigned sort orders them by descending
+	 * weight. The edges are counted first so the buffers only grow to the number
+	 * there are.
+	 *
+	 * @param pageRank
+	 * @param heat
+	 * @return the number of edges
+	 */
+	private int collectEdges(SimilarityMatrix pageRank, double[] heat) {
+		long count = 0;
+		for (int i = 0; i < n; i++) {
+			pageRank.getRows(i, 1, rowBuffer);
+			for (int j = 0; j < n; j++) {
+				if (i != j && isEdge(heat == null ? rowBuffer[j] : rowBuffer[j] * heat[j])) {
+					++count;
+				}
+			}
+		}
+		if (count > MAXIMUM_EDGES) {
+			throw new IllegalArgumentException(count + " similarities are at least " + minimumSimilarity + ", more than the " + MAXIMUM_EDGES
+					+ " edges a hierarchy can be built from. Raise the minimum similarity.");
+		}
+
+		int capacity = (int) count;
+		if (keys.length < capacity) {
+			keys = new long[capacity];
+			keyBuffer = new long[capacity];
+			edges = new int[capacity];
+			edgeBuffer = new int[capacity];
+			ranks = new int[capacity];
+		}
+
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			pageRank.getRows(i, 1, rowBuffer);
+			int row = i * n;
+			for (int j = 0; j < n; j++) {
+				double weight = heat == null ? rowBuffer[j] : rowBuffer[j] * heat[j];
+				if (i != j && isEdge(weight)) {
+					// Positive doubles order the same way as their bits
+					keys[m] = ~Double.doubleToRawLongBits(weight);
+					edges[m++] = row + j;
+				}
+			}
+		}
+		return m;
+	}
+
+	private boolean isEdge(double weight) {
+		return weight > 0 && weight >= minimumSimilarity;
+	}
+
+	/**
+	 * Return the weight of an edge from its position in the sorted edge list
+	 *
+	 * @param rank
+	 * @return
+	 */
+	private double getWeight(int rank) {
+		return Double.longBitsToDouble(~keys[rank]);
+	}
+
+	/**
+	 * Stable least significant digit radix sort of the first m keys, carrying the
+	 * edges along
+	 *
+	 * @param m
+	 */
+	private void sortEdges(int m) {
+		for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+			Arrays.fill(radixCounts, 0);
+			for (int i = 0; i < m; i++) {
+				++radixCounts[(int) ((keys[i] >>> shift) & (RADIX - 1)) + 1];
+			}
+
+			// Skip the pass if every key has the same digit
+			boolean allSame = false;
+			for (int d = 1; d <= RADIX && !allSame; d++) {
+				allSame = radixCounts[d] == m;
+			}
+			if (allSame) {
+				continue;
+			}
+
+			for (int d = 0; d < RADIX; d++) {
+				radixCounts[d + 1] += radixCounts[d];
+			}
+			for (int i = 0; i < m; i++) {
+				int position = radixCounts[(int) ((keys[i] >>> shift) & (RADIX - 1))]++;
+				keyBuffer[position] = keys[i];
+				edgeBuffer[position] = edges[i];
+			}
+
+			long[] swapKeys = keys;
+			keys = keyBuffer;
+			keyBuffer = swapKeys;
+			int[] swapEdges = edges;
+			edges = edgeBuffer;
+			edgeBuffer = swapEdges;
+		}
+	}
+
+	/**
+	 * Decompose a graph whose first <code>lo</code> edges are known not to form any
+	 * strongly connected component with more than one vertex.
+	 *
+	 * @param dendrogram receives the clusters that are formed
+	 * @param k          number of vertices
+	 * @param node       the dendrogram node each vertex stands for
+	 * @param src        edge sources, ordered by descending weight
+	 * @param dst        edge targets
+	 * @param rank       position of each edge in the full sorted edge list
+	 * @param m          number of edges
+	 * @param lo         length of the prefix known to have no components
+	 * @return the dendrogram node each vertex belongs to once all the edges are
+	 *         included
+	 */
+	private int[] decompose(Dendrogram dendrogram, int k, int[] node, int[] src, int[] dst, int[] rank, int m, int lo) {
+		int[] comp = new int[k];
+		int componentCount;
+		int j;
+		while (true) {
+			if (k <= 1 || lo >= m) {
+				return node;
+			}
+			j = (lo + m + 1) >>> 1;
+			componentCount = strongComponents(k, src, dst, j, comp);
+			if (componentCount < k) {
+				break;
+			}
+			// Nothing has formed within the first j edges
+			lo = j;
+		}
+		final int c = componentCount;
+
+		// Group the vertices by component
+		int[] compStart = new int[c + 1];
+		for (int v = 0; v < k; v++) {
+			++compStart[comp[v] + 1];
+		}
+		for (int cc = 0; cc < c; cc++) {
+			compStart[cc + 1] += compStart[cc];
+		}
+		int[] members = new int[k];
+		int[] position = Arrays.copyOf(compStart, c);
+		for (int v = 0; v < k; v++) {
+			members[position[comp[v]]++] = v;
+		}
+
+		int[] compNode = new int[c];
+		if (j == lo + 1) {
+			// Edge j - 1 closed every cycle so the components all form at its weight
+			double height = getWeight(rank[j - 1]);
+			int[] children = new int[k];
+			for (int cc = 0; cc < c; cc++) {
+				int size = compStart[cc + 1] - compStart[cc];
+				for (int t = 0; t < size; t++) {
+					children[t] = node[members[compStart[cc] + t]];
+				}
+				compNode[cc] = size == 1 ? children[0] : dendrogram.addNode(height, children, size);
+			}
+		} else {
+			decomposeComponents(dendrogram, node, src, dst, rank, lo, j, comp, c, compStart, members, compNode);
+		}
+
+		// Decompose the condensation using the edges between components. Only the
+		// heaviest edge between a pair of components matters.
+		int condensedCount = 0;
+		for (int e = 0; e < m; e++) {
+			if (comp[src[e]] != comp[dst[e]]) {
+				++condensedCount;
+			}
+		}
+		LongSet seen = new LongSet(condensedCount);
+		int[] condensedSrc = new int[condensedCount];
+		int[] condensedDst = new int[condensedCount];
+		int[] condensedRank = new int[condensedCount];
+		int condensedM = 0;
+		int condensedLo = 0;
+		for (int e = 0; e < m; e++) {
+			int a = comp[src[e]];
+			int b = comp[dst[e]];
+			if (a != b && seen.add((long) a * c + b)) {
+				condensedSrc[condensedM] = a;
+				condensedDst[condensedM] = b;
+				condensedRank[condensedM++] = rank[e];
+				if (e < j) {
+					// The condensation of the first j edges is acyclic
+					++condensedLo;
+				}
+			}
+		}
+
+		int[] condensedNode = decompose(dendrogram, c, compNode, condensedSrc, condensedDst, condensedRank, condensedM, condensedLo);
+		int[] result = new int[k];
+		for (int v = 0; v < k; v++) {
+			result[v] = condensedNode[comp[v]];
+		}
+		return result;
+	}
+
+	/**
+	 * Decompose each component found among the first j edges using the edges
+	 * inside it. Each one is strongly connected so it ends up as a single cluster.
+	 */
+	private void decomposeComponents(Dendrogram dendrogram, int[] node, int[] src, int[] dst, int[] rank, int lo, int j, int[] comp, int c,
+			int[] compStart, int[] members, int[] compNode) {
+		int[] local = new int[comp.length];
+		for (int cc = 0; cc < c; cc++) {
+			for (int t = compStart[cc]; t < compStart[cc + 1]; t++) {
+				local[members[t]] = t - compStart[cc];
+			}
+		}
+
+		int[] edgeStart = new int[c + 1];
+		for (int e = 0; e < j; e++) {
+			if (comp[src[e]] == comp[dst[e]]) {
+				++edgeStart[comp[src[e]] + 1];
+			}
+		}
+		for (int cc = 0; cc < c; cc++) {
+			edgeStart[cc + 1] += edgeStart[cc];
+		}
+		int total = edgeStart[c];
+		int[] subSrc = new int[total];
+		int[] subDst = new int[total];
+		int[] subRank = new int[total];
+		int[] subLo = new int[c];
+		int[] position = Arrays.copyOf(edgeStart, c);
+		for (int e = 0; e < j; e++) {
+			int cc = comp[src[e]];
+			if (cc == comp[dst[e]]) {
+				int p = position[cc]++;
+				subSrc[p] = local[src[e]];
+				subDst[p] = local[dst[e]];
+				subRank[p] = rank[e];
+				if (e < lo) {
+					++subLo[cc];
+				}
+			}
+		}
+
+		for (int cc = 0; cc < c; cc++) {
+			int size = compStart[cc + 1] - compStart[cc];
+			if (size == 1) {
+				compNode[cc] = node[members[compStart[cc]]];
+				continue;
+			}
+			int[] subNode = new int[size];
+			for (int t = 0; t < size; t++) {
+				subNode[t] = node[members[compStart[cc] + t]];
+			}
+			int from = edgeStart[cc];
+			int to = edgeStart[cc + 1];
+			int[] result = decompose(dendrogram, size, subNode, Arrays.copyOfRange(subSrc, from, to), Arrays.copyOfRange(subDst, from, to),
+					Arrays.copyOfRange(subRank, from, to), to - from, subLo[cc]);
+			compNode[cc] = result[0];
+		}
+	}
+
+	/**
+	 * Find the strongly connected components of the graph made of the first j
+	 * edges using an iterative version of Tarjan's algorithm
+	 *
+	 * @param k    number of vertices
+	 * @param src
+	 * @param dst
+	 * @param j    number of edges to use
+	 * @param comp receives the component of each vertex
+	 * @return the number of components
+	 */
+	static int strongComponents(int k, int[] src, int[] dst, int j, int[] comp) {
+		int[] offsets = new int[k + 1];
+		for (int e = 0; e < j; e++) {
+			++offsets[src[e] + 1];
+		}
+		for (int v = 0; v < k; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		int[] adjacent = new int[j];
+		int[] next = Arrays.copyOf(offsets, k);
+		for (int e = 0; e < j; e++) {
+			adjacent[next[src[e]]++] = dst[e];
+		}
+
+		int[] index = new int[k];
+		Arrays.fill(index, -1);
+		int[] low = new int[k];
+		int[] stack = new int[k];
+		int[] callStack = new int[k];
+		boolean[] onStack = new boolean[k];
+		// next[v] is reused as the position of v's edge iterator
+		int counter = 0;
+		int componentCount = 0;
+		int stackSize = 0;
+
+		for (int start = 0; start < k; start++) {
+			if (index[start] >= 0) {
+				continue;
+			}
+			int callSize = 0;
+			index[start] = low[start] = counter++;
+			stack[stackSize++] = start;
+			onStack[start] = true;
+			callStack[callSize++] = start;
+			next[start] = offsets[start];
+
+			while (callSize > 0) {
+				int v = callStack[callSize - 1];
+				if (next[v] < offsets[v + 1]) {
+					int w = adjacent[next[v]++];
+					if (index[w] < 0) {
+						index[w] = low[w] = counter++;
+						stack[stackSize++] = w;
+						onStack[w] = true;
+						callStack[callSize++] = w;
+						next[w] = offsets[w];
+					} else if (onStack[w]) {
+						low[v] = Math.min(low[v], index[w]);
+					}
+				} else {
+					--callSize;
+					if (low[v] == index[v]) {
+						int w;
+						do {
+							w = stack[--stackSize];
+							onStack[w] = false;
+							comp[w] = componentCount;
+						} while (w != v);
+						++componentCount;
+					}
+					if (callSize > 0) {
+						int u = callStack[callSize - 1];
+						low[u] = Math.min(low[u], low[v]);
+					}
+				}
+			}
+		}
+		return componentCount;
+	}
+
+	/**
+	 * Minimal open addressing set of non-negative longs
+	 */
+	private static class LongSet {
+		private final long[] slots;
+		private final int mask;
+
+		LongSet(int expectedSize) {
+			int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+			slots = new long[capacity];
+			Arrays.fill(slots, -1);
+			mask = capacity - 1;
+		}
+
+		/**
+		 *
+		 * @param value
+		 * @return true if the value was not already in the set
+		 */
+		boolean add(long value) {
+			long h = value * 0x9E3779B97F4A7C15L;
+			int slot = (int) (h ^ (h >>> 32)) & mask;
+			while (slots[slot] != -1) {
+				if (slots[slot] == value) {
+					return false;
+				}
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = value;
+			return true;
+		}
+	}
+}
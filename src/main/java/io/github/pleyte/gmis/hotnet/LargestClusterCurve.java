@@ -0,0 +1,142 @@
+package io.github.pleyte.gmis.hotnet;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * The size of the largest cluster and the number of clusters as step functions of the cut height. Cutting the
+ * hierarchy at height <code>h</code> keeps the clusters which formed at a height of <code>h</code> or more; genes in
+ * none of them count as clusters of one.
+ *
+ * @author pleyte
+ *
+ */
+public class LargestClusterCurve {
+	private final double[] heights;
+	private final int[] sizes;
+	private final int[] clusterCounts;
+	private final int sizeAboveAllHeights;
+	private final int clusterCountAboveAllHeights;
+
+	/**
+	 *
+	 * @param heights                     distinct heights in descending order
+	 * @param sizes                       largest cluster size when cut at each
+	 *                                    height
+	 * @param clusterCounts               number of clusters when cut at each
+	 *                                    height
+	 * @param sizeAboveAllHeights         largest cluster size when cut above
+	 *                                    every height
+	 * @param clusterCountAboveAllHeights number of clusters when cut above every
+	 *                                    height
+	 */
+	public LargestClusterCurve(double[] heights, int[] sizes, int[] clusterCounts, int sizeAboveAllHeights, int clusterCountAboveAllHeights) {
+		this.heights = heights;
+		this.sizes = sizes;
+		this.clusterCounts = clusterCounts;
+		this.sizeAboveAllHeights = sizeAboveAllHeights;
+		this.clusterCountAboveAllHeights = clusterCountAboveAllHeights;
+	}
+
+	/**
+	 * Return the heights at which the curve changes, in descending order. The
+	 * array must not be modified.
+	 *
+	 * @return
+	 */
+	public double[] getHeights() {
+		return heights;
+	}
+
+	/**
+	 * Return the largest cluster size at each of the heights. The array must not
+	 * be modified.
+	 *
+	 * @return
+	 */
+	public int[] getSizes() {
+		return sizes;
+	}
+
+	/**
+	 * Return the number of clusters at each of the heights. The array must not be
+	 * modified.
+	 *
+	 * @return
+	 */
+	public int[] getClusterCounts() {
+		return clusterCounts;
+	}
+
+	/**
+	 * Return the size of the largest cluster when the hierarchy is cut at a height
+	 *
+	 * @param height
+	 * @return
+	 */
+	public int sizeAt(double height) {
+		int index = indexOf(height);
+		return index < 0 ? sizeAboveAllHeights : sizes[index];
+	}
+
+	/**
+	 * Return the number of clusters when the hierarchy is cut at a height
+	 *
+	 * @param height
+	 * @return
+	 */
+	public int clusterCountAt(double height) {
+		int index = indexOf(height);
+		return index < 0 ? clusterCountAboveAllHeights : clusterCounts[index];
+	}
+
+	/**
+	 * Write the curve as a tab separated file with a header and one row per height:
+	 * height, size of the largest cluster and number of clusters
+	 *
+	 * @param outFile
+	 * @throws IOException
+	 */
+	public void save(String outFile) throws IOException {
+		try (Writer out = new FileWriter(outFile)) {
+			CSVPrinter printer = CSVFormat.TDF.print(out);
+			printer.printRecord("height", "largest_cluster_size", "cluster_count");
+			for (int h = 0; h < heights.length; h++) {
+				printer.printRecord(heights[h], sizes[h], clusterCounts[h]);
+			}
+		}
+	}
+
+	/**
+	 * Return the index of the last (lowest) height that is still >= the cut height,
+	 * or -1 if the cut is above every height
+	 *
+	 * @param height
+	 * @return
+	 */
+	private int indexOf(double height) {
+		int low = 0;
+		int high = heights.length - 1;
+		int found = -1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (heights[middle] >= height) {
+				found = middle;
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return found;
+	}
+
+	@Override
+	public String toString() {
+		return "LargestClusterCurve [heights=" + Arrays.toString(heights) + ", sizes=" + Arrays.toString(sizes) + ", clusterCounts=" + Arrays.toString(clusterCounts) + "]";
+	}
+}
@@ -0,0 +1,256 @@
+package io.github.pleyte.gmis.hotnet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A similarity matrix stored in a memory-mapped file instead of on the heap, so that genome-scale matrices (3.2 GB of
+ * doubles for 20,000 genes) do not need a large heap. The file is little endian and laid out as:
+ *
+ * <pre>
+ * int    magic ("GMSM")
+ * int    format version
+ * int    rows
+ * int    columns
+ * int    bytes per value (4 for float32, 8 for float64)
+ * int    rows per tile
+ * ...    padding to 64 bytes
+ * tiles  consecutive row-major blocks of up to 1 GB, each holding whole rows
+ * </pre>
+ *
+ * Each tile is mapped separately, which keeps every index within the int range of a NIO buffer and keeps rows
+ * contiguous for {@link #getRows(int, int, double[])}. Reads and writes use absolute positions so threads can work on
+ * different row ranges at the same time. Values stored as float32 are rounded on write.
+ *
+ * The mapping stays valid until the buffers are garbage collected; {@link #close()} flushes writes and closes the file.
+ *
+ * @author pleyte
+ *
+ */
+public class MappedSimilarityMatrix implements SimilarityMatrix, Closeable {
+	private static final int MAGIC = 0x4D534D47;
+	static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 64;
+	private static final long MAXIMUM_TILE_BYTES = 1L << 30;
+
+	/**
+	 * How each value is stored
+	 */
+	public enum Precision {
+		FLOAT32(4), FLOAT64(8);
+
+		private final int bytes;
+
+		Precision(int bytes) {
+			this.bytes = bytes;
+		}
+
+		public int getBytes() {
+			return bytes;
+		}
+	}
+
+	private final FileChannel channel;
+	private final boolean writable;
+	private final int rows;
+	private final int columns;
+	private final Precision precision;
+	private final int rowsPerTile;
+	private final MappedByteBuffer[] tiles;
+	private final DoubleBuffer[] doubleTiles;
+	private final FloatBuffer[] floatTiles;
+
+	private MappedSimilarityMatrix(FileChannel channel, boolean writable, int rows, int columns, Precision precision, int rowsPerTile) throws IOException {
+		this.channel = channel;
+		this.writable = writable;
+		this.rows = rows;
+		this.columns = columns;
+		this.precision = precision;
+		this.rowsPerTile = rowsPerTile;
+
+		int tileCount = rows == 0 ? 0 : (rows - 1) / rowsPerTile + 1;
+		long rowBytes = (long) columns * precision.getBytes();
+		tiles = new MappedByteBuffer[tileCount];
+		doubleTiles = new DoubleBuffer[tileCount];
+		floatTiles = new FloatBuffer[tileCount];
+		FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		for (int t = 0; t < tileCount; t++) {
+			int tileRows = Math.min(rowsPerTile, rows - t * rowsPerTile);
+			tiles[t] = channel.map(mode, HEADER_LENGTH + t * rowsPerTile * rowBytes, tileRows * rowBytes);
+			tiles[t].order(ByteOrder.LITTLE_ENDIAN);
+			if (precision == Precision.FLOAT64) {
+				doubleTiles[t] = tiles[t].asDoubleBuffer();
+			} else {
+				floatTiles[t] = tiles[t].asFloatBuffer();
+			}
+		}
+	}
+
+	/**
+	 * Create a matrix file of zeros, replacing any existing file
+	 *
+	 * @param file
+	 * @param rows
+	 * @param columns
+	 * @param precision
+	 * @return the matrix, open for reading and writing
+	 * @throws IOException
+	 */
+	public static MappedSimilarityMatrix create(Path file, int rows, int columns, Precision precision) throws IOException {
+		if (rows < 0 || columns < 0) {
+			throw new IllegalArgumentException("Invalid matrix size: " + rows + " x " + columns);
+		}
+		long rowBytes = (long) columns * precision.getBytes();
+		if (rowBytes > MAXIMUM_TILE_BYTES) {
+			throw new IllegalArgumentException("A row of " + columns + " columns does not fit in one tile");
+		}
+		int rowsPerTile = (int) Math.min(Math.max(rows, 1), rowBytes == 0 ? Integer.MAX_VALUE : MAXIMUM_TILE_BYTES / rowBytes);
+
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(columns).putInt(precision.getBytes()).putInt(rowsPerTile);
+			header.rewind();
+			channel.write(header, 0);
+			return new MappedSimilarityMatrix(channel, true, rows, columns, precision, rowsPerTile);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open an existing matrix file
+	 *
+	 * @param file
+	 * @param writable
+	 * @return
+	 * @throws IOException if the file is not a similarity matrix or is damaged
+	 */
+	public static MappedSimilarityMatrix open(Path file, boolean writable) throws IOException {
+		FileChannel channel = writable ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE) : FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+			if (channel.read(header, 0) != HEADER_LENGTH || header.getInt(0) != MAGIC) {
+				throw new IOException("File is not a similarity matrix: " + file);
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new IOException("Similarity matrix " + file + " has unsupported format version " + header.getInt(4));
+			}
+
+			int rows = header.getInt(8);
+			int columns = header.getInt(12);
+			int bytes = header.getInt(16);
+			int rowsPerTile = header.getInt(20);
+			Precision precision = bytes == 4 ? Precision.FLOAT32 : bytes == 8 ? Precision.FLOAT64 : null;
+			if (precision == null || rows < 0 || columns < 0 || rowsPerTile < 1
+					|| channel.size() != HEADER_LENGTH + (long) rows * columns * bytes) {
+				throw new IOException("Similarity matrix " + file + " is damaged");
+			}
+			return new MappedSimilarityMatrix(channel, writable, rows, columns, precision, rowsPerTile);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public int getRows() {
+		return rows;
+	}
+
+	@Override
+	public int getColumns() {
+		return columns;
+	}
+
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	@Override
+	public double get(int row, int column) {
+		int tile = row / rowsPerTile;
+		int index = (row - tile * rowsPerTile) * columns + column;
+		return precision == Precision.FLOAT64 ? doubleTiles[tile].get(index) : floatTiles[tile].get(index);
+	}
+
+	public void set(int row, int column, double value) {
+		int tile = row / rowsPerTile;
+		int index = (row - tile * rowsPerTile) * columns + column;
+		if (precision == Precision.FLOAT64) {
+			doubleTiles[tile].put(index, value);
+		} else {
+			floatTiles[tile].put(index, (float) value);
+		}
+	}
+
+	@Override
+	public void getRows(int firstRow, int rowCount, double[] buffer) {
+		for (int r = 0; r < rowCount; r++) {
+			int row = firstRow + r;
+			int tile = row / rowsPerTile;
+			int index = (row - tile * rowsPerTile) * columns;
+			if (precision == Precision.FLOAT64) {
+				doubleTiles[tile].get(index, buffer, r * columns, columns);
+			} else {
+				FloatBuffer floats = floatTiles[tile];
+				int offset = r * columns;
+				for (int j = 0; j < columns; j++) {
+					buffer[offset + j] = floats.get(index + j);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Overwrite consecutive rows. Threads may write different rows at the same
+	 * time.
+	 *
+	 * @param firstRow
+	 * @param rowCount
+	 * @param values   <code>rowCount * getColumns()</code> values, one row after
+	 *                 another
+	 */
+	public void setRows(int firstRow, int rowCount, double[] values) {
+		for (int r = 0; r < rowCount; r++) {
+			int row = firstRow + r;
+			int tile = row / rowsPerTile;
+			int index = (row - tile * rowsPerTile) * columns;
+			if (precision == Precision.FLOAT64) {
+				doubleTiles[tile].put(index, values, r * columns, columns);
+			} else {
+				FloatBuffer floats = floatTiles[tile];
+				int offset = r * columns;
+				for (int j = 0; j < columns; j++) {
+					floats.put(index + j, (float) values[offset + j]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write any changes to the file
+	 */
+	public void force() {
+		if (writable) {
+			for (MappedByteBuffer tile : tiles) {
+				tile.force();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		force();
+		channel.close();
+	}
+}
@@ -0,0 +1,297 @@
+package io.github.pleyte.gmis.hotnet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import io.github.pleyte.gmis.bean.ClusterStatistics;
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.intermediate.NetworkLoader;
+
+/**
+ * Computes the Hierarchical HotNet cluster significance statistics by comparing the hierarchy of the observed heat
+ * with the hierarchies of permuted heat. Heat can be permuted across all genes or only among genes of similar degree.
+ *
+ * For each cut height the expected size of the largest cluster is the mean over the permutations. The observed cut
+ * height is the one that maximises the ratio of observed to expected largest cluster size; the same maximum ratio is
+ * computed for each permutation to give the expected maximum ratio and the p-value. Ratios are evaluated at the
+ * heights where the observed hierarchy changes. With a minimum similarity the hierarchies are only built from the
+ * similarities of at least that height, and lower heights are not evaluated.
+ *
+ * Permutations run on a fork-join pool. Each run shares the permutations between as many workers as the pool has
+ * threads, and each worker allocates its own {@link HierarchyBuilder} and heat buffer for the run, so no buffers are
+ * left on the pool's threads afterwards. Each permutation draws from its own random stream derived from the seed, so
+ * results do not depend on the number of threads.
+ *
+ * @author pleyte
+ *
+ */
+public class PermutationTest {
+	private static Logger log;
+
+	static {
+		InputStream stream = PermutationTest.class.getClassLoader().getResourceAsStream("logging.properties");
+		try {
+			LogManager.getLogManager().readConfiguration(stream);
+			log = Logger.getLogger(PermutationTest.class.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private final SimilarityMatrix pageRank;
+	private final int permutationCount;
+	private final long seed;
+	private final ForkJoinPool pool;
+
+	// Genes grouped into bins within which heat is permuted
+	private final int[] binStart;
+	private final int[] binMembers;
+
+	private final int geneCount;
+
+	private double minimumSimilarity = 0;
+
+	/**
+	 *
+	 * @param graph            the network the matrix was computed from
+	 * @param pageRank         the random walk with restart matrix of the graph
+	 * @param permutationCount
+	 * @param degreeBinSize    minimum number of genes per degree bin, or 0 to
+	 *                         permute heat across all genes
+	 * @param seed
+	 * @param pool
+	 */
+	public PermutationTest(CsrGraph graph, SimilarityMatrix pageRank, int permutationCount, int degreeBinSize, long seed, ForkJoinPool pool) {
+		if (permutationCount < 1) {
+			throw new IllegalArgumentException("At least one permutation is needed: " + permutationCount);
+		}
+		this.pageRank = pageRank;
+		this.permutationCount = permutationCount;
+		this.seed = seed;
+		this.pool = pool;
+
+		geneCount = graph.getVertexCount();
+		binMembers = new int[geneCount];
+		binStart = createBins(graph, degreeBinSize, binMembers);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int permutations = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+
+		URL indexFile = PermutationTest.class.getClassLoader().getResource("hotnet_network/network_1_index_gene.tsv");
+		URL edgeListFile = PermutationTest.class.getClassLoader().getResource("hotnet_network/network_1_edge_list.tsv");
+		CsrGraph graph = NetworkLoader.loadHotNetNetwork(indexFile.getFile(), edgeListFile.getFile());
+		DenseMatrix pageRank = new RandomWalkWithRestart(RandomWalkWithRestart.DEFAULT_RESTART_PROBABILITY).computeSimilarityMatrix(graph);
+		PermutationTest test = new PermutationTest(graph, pageRank, permutations, 10, 1, ForkJoinPool.commonPool());
+
+		for (int i = 1; i <= 3; i++) {
+			URL scoreFile = PermutationTest.class.getClassLoader().getResource("hotnet_network/scores_" + i + ".tsv");
+			long start = System.nanoTime();
+			ClusterStatistics statistics = test.run(HeatVector.load(graph, scoreFile.getFile()));
+			log.info("scores_" + i + " with " + permutations + " permutations took " + (System.nanoTime() - start) / 1_000_000 + " ms\n" + statistics);
+		}
+	}
+
+	public double getMinimumSimilarity() {
+		return minimumSimilarity;
+	}
+
+	/**
+	 * Set the smallest similarity the hierarchies are built from, which bounds the
+	 * memory each worker needs for a large network (see {@link HierarchyBuilder})
+	 *
+	 * @param minimumSimilarity 0 to use every positive similarity
+	 */
+	public void setMinimumSimilarity(double minimumSimilarity) {
+		if (!(minimumSimilarity >= 0)) {
+			throw new IllegalArgumentException("The minimum similarity must not be negative: " + minimumSimilarity);
+		}
+		this.minimumSimilarity = minimumSimilarity;
+	}
+
+	/**
+	 * Build the hierarchy of a heat vector with the test's minimum similarity, so
+	 * the hierarchy of the observed heat can be had after {@link #run}
+	 *
+	 * @param heat
+	 * @return
+	 */
+	public Dendrogram buildHierarchy(double[] heat) {
+		return buildHierarchy(new HierarchyBuilder(geneCount), heat);
+	}
+
+	private Dendrogram buildHierarchy(HierarchyBuilder builder, double[] heat) {
+		builder.setMinimumSimilarity(minimumSimilarity);
+		return builder.build(pageRank, heat);
+	}
+
+	/**
+	 * Compute the cluster statistics of the heat vector
+	 *
+	 * @param heat
+	 * @return
+	 */
+	public ClusterStatistics run(double[] heat) {
+		LargestClusterCurve observed = buildHierarchy(heat).getLargestClusterCurve();
+		double[] heights = observed.getHeights();
+		if (heights.length == 0) {
+			throw new IllegalArgumentException("The observed heat does not form any clusters");
+		}
+
+		// Largest cluster size of each permutation at each observed height. Worker w
+		// runs permutations w, w + workers, ... with buffers that only live for this run
+		int[][] permutedSizes = new int[permutationCount][];
+		int workers = Math.min(pool.getParallelism(), permutationCount);
+		pool.submit(() -> IntStream.range(0, workers).parallel().forEach(w -> {
+			Workspace workspace = new Workspace(geneCount);
+			for (int p = w; p < permutationCount; p += workers) {
+				permute(heat, workspace.heat, new SplittableRandom(seed + p * GOLDEN_GAMMA));
+				LargestClusterCurve permuted = buildHierarchy(workspace.builder, workspace.heat).getLargestClusterCurve();
+
+				int[] sizes = new int[heights.length];
+				for (int h = 0; h < heights.length; h++) {
+					sizes[h] = permuted.sizeAt(heights[h]);
+				}
+				permutedSizes[p] = sizes;
+			}
+		})).join();
+
+		double[] expectedSizes = new double[heights.length];
+		for (int[] sizes : permutedSizes) {
+			for (int h = 0; h < heights.length; h++) {
+				expectedSizes[h] += sizes[h];
+			}
+		}
+		for (int h = 0; h < heights.length; h++) {
+			expectedSizes[h] /= permutationCount;
+		}
+
+		int cut = 0;
+		for (int h = 1; h < heights.length; h++) {
+			if (observed.getSizes()[h] / expectedSizes[h] > observed.getSizes()[cut] / expectedSizes[cut]) {
+				cut = h;
+			}
+		}
+		double observedMaximumRatio = observed.getSizes()[cut] / expectedSizes[cut];
+
+		double expectedMaximumRatio = 0;
+		int atLeastObserved = 0;
+		for (int[] sizes : permutedSizes) {
+			double maximumRatio = 0;
+			for (int h = 0; h < heights.length; h++) {
+				maximumRatio = Math.max(maximumRatio, sizes[h] / expectedSizes[h]);
+			}
+			expectedMaximumRatio += maximumRatio;
+			if (maximumRatio >= observedMaximumRatio) {
+				++atLeastObserved;
+			}
+		}
+
+		ClusterStatistics statistics = new ClusterStatistics();
+		statistics.setObservedCutHeight(heights[cut]);
+		statistics.setObservedLargestClusterSize(observed.getSizes()[cut]);
+		statistics.setExpectedLargestClusterSize(expectedSizes[cut]);
+		statistics.setObservedMaximumRatio(observedMaximumRatio);
+		statistics.setExpectedMaximumRatio(expectedMaximumRatio / permutationCount);
+		statistics.setPValue((double) atLeastObserved / permutationCount);
+		return statistics;
+	}
+
+	/**
+	 * Copy the heat into the buffer, shuffling it within each bin
+	 *
+	 * @param heat
+	 * @param permuted
+	 * @param random
+	 */
+	private void permute(double[] heat, double[] permuted, SplittableRandom random) {
+		System.arraycopy(heat, 0, permuted, 0, heat.length);
+		for (int b = 0; b + 1 < binStart.length; b++) {
+			int from = binStart[b];
+			for (int i = binStart[b + 1] - 1; i > from; i--) {
+				int j = from + random.nextInt(i - from + 1);
+				int vi = binMembers[i];
+				int vj = binMembers[j];
+				double swap = permuted[vi];
+				permuted[vi] = permuted[vj];
+				permuted[vj] = swap;
+			}
+		}
+	}
+
+	/**
+	 * Group the genes into bins of similar degree. Genes are ordered by degree and a
+	 * bin is closed once it has at least the minimum number of genes and the next
+	 * gene has a different degree. A final bin that is too small joins the one
+	 * before it.
+	 *
+	 * @param graph
+	 * @param minimumBinSize 0 to put every gene in one bin
+	 * @param members        receives the genes in bin order
+	 * @return the start of each bin in members, followed by the gene count
+	 */
+	public static int[] createBins(CsrGraph graph, int minimumBinSize, int[] members) {
+		int n = graph.getVertexCount();
+		if (minimumBinSize <= 0 || minimumBinSize >= n) {
+			for (int v = 0; v < n; v++) {
+				members[v] = v;
+			}
+			return new int[] { 0, n };
+		}
+
+		// Sort genes by degree (ignoring self loops) with a stable counting sort
+		int[] degree = new int[n];
+		int maximumDegree = 0;
+		for (int v = 0; v < n; v++) {
+			degree[v] = graph.degree(v) - (graph.isNeighbour(v, v) ? 1 : 0);
+			maximumDegree = Math.max(maximumDegree, degree[v]);
+		}
+		int[] start = new int[maximumDegree + 2];
+		for (int v = 0; v < n; v++) {
+			++start[degree[v] + 1];
+		}
+		for (int d = 0; d <= maximumDegree; d++) {
+			start[d + 1] += start[d];
+		}
+		for (int v = 0; v < n; v++) {
+			members[start[degree[v]]++] = v;
+		}
+
+		int[] bins = new int[n + 1];
+		int binCount = 0;
+		bins[binCount++] = 0;
+		for (int i = 1; i < n; i++) {
+			boolean full = i - bins[binCount - 1] >= minimumBinSize;
+			if (full && degree[members[i]] != degree[members[i - 1]]) {
+				bins[binCount++] = i;
+			}
+		}
+		if (binCount > 1 && n - bins[binCount - 1] < minimumBinSize) {
+			--binCount;
+		}
+		bins[binCount] = n;
+		return Arrays.copyOf(bins, binCount + 1);
+	}
+
+	/**
+	 * Buffers reused by one worker for the permutations of a run
+	 */
+	private static class Workspace {
+		private final HierarchyBuilder builder;
+		private final double[] heat;
+
+		Workspace(int n) {
+			builder = new HierarchyBuilder(n);
+			heat = new double[n];
+		}
+	}
+}
@@ -0,0 +1,398 @@
+package io.github.pleyte.gmis.hotnet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.intermediate.NetworkLoader;
+
+/**
+ * Computes the random walk with restart (personalised PageRank) similarity matrix that Hierarchical HotNet uses for
+ * network diffusion:
+ *
+ * <pre>
+ * P = beta * (I - (1 - beta) * W)^-1
+ * </pre>
+ *
+ * where <code>beta</code> is the restart probability and <code>W = A D^-1</code> is the column normalised adjacency
+ * matrix. Column <code>j</code> of <code>P</code> is the stationary distribution of a walk that restarts at gene
+ * <code>j</code>. Multiplying each column by the gene's heat (see {@link #applyHeat(DenseMatrix, double[])}) gives the
+ * similarity matrix that HotNet clusters.
+ *
+ * The inverse is computed with a blocked LU factorisation followed by blocked triangular solves, and each step is
+ * spread across the threads of a fork-join pool. <code>I - (1 - beta) W</code> is column diagonally dominant so no
+ * pivoting is needed.
+ *
+ * For networks too large for a dense matrix on the heap,
+ * {@link #computeSimilarityMatrix(CsrGraph, MappedSimilarityMatrix)} computes each row of <code>P</code> from the
+ * series <code>beta * sum (1 - beta)^k W^k</code> on the sparse graph and writes it straight to a memory-mapped
+ * matrix, so the heap only holds a few vectors per thread.
+ *
+ * @author pleyte
+ *
+ */
+public class RandomWalkWithRestart {
+	private static Logger log;
+
+	static {
+		InputStream stream = RandomWalkWithRestart.class.getClassLoader().getResourceAsStream("logging.properties");
+		try {
+			LogManager.getLogManager().readConfiguration(stream);
+			log = Logger.getLogger(RandomWalkWithRestart.class.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static final double DEFAULT_RESTART_PROBABILITY = 0.4;
+
+	/**
+	 * Rows and columns per block. 64 x 64 doubles is 32 KB which fits in L1/L2.
+	 */
+	private static final int BLOCK_SIZE = 64;
+
+	private final double restartProbability;
+	private final ForkJoinPool pool;
+
+	public RandomWalkWithRestart(double restartProbability) {
+		this(restartProbability, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 *
+	 * @param restartProbability probability (beta) that the walk returns to its
+	 *                           starting gene at each step; must be in (0, 1]
+	 * @param pool               threads used for the linear algebra
+	 */
+	public RandomWalkWithRestart(double restartProbability, ForkJoinPool pool) {
+		if (!(restartProbability > 0 && restartProbability <= 1)) {
+			throw new IllegalArgumentException("Restart probability must be in (0, 1]: " + restartProbability);
+		}
+		this.restartProbability = restartProbability;
+		this.pool = pool;
+	}
+
+	public static void main(String[] args) throws IOException {
+		double beta = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_RESTART_PROBABILITY;
+		String matrixFileName = args.length > 1 ? args[1] : null;
+
+		URL indexFile = RandomWalkWithRestart.class.getClassLoader().getResource("hotnet_network/network_1_index_gene.tsv");
+		URL edgeListFile = RandomWalkWithRestart.class.getClassLoader().getResource("hotnet_network/network_1_edge_list.tsv");
+		CsrGraph graph = NetworkLoader.loadHotNetNetwork(indexFile.getFile(), edgeListFile.getFile());
+
+		long start = System.nanoTime();
+		if (matrixFileName == null) {
+			DenseMatrix similarity = new RandomWalkWithRestart(beta).computeSimilarityMatrix(graph);
+			log.info("Computed " + similarity.getRows() + " x " + similarity.getColumns() + " similarity matrix with beta=" + beta + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+		} else {
+			int n = graph.getVertexCount();
+			try (MappedSimilarityMatrix similarity = MappedSimilarityMatrix.create(Paths.get(matrixFileName), n, n, MappedSimilarityMatrix.Precision.FLOAT32)) {
+				new RandomWalkWithRestart(beta).computeSimilarityMatrix(graph, similarity);
+			}
+			log.info("Wrote " + n + " x " + n + " similarity matrix with beta=" + beta + " to " + matrixFileName + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+		}
+	}
+
+	public double getRestartProbability() {
+		return restartProbability;
+	}
+
+	/**
+	 * Compute the personalised PageRank matrix <code>P</code> of the graph. Self
+	 * loops are ignored, as they are in the HotNet edge list.
+	 *
+	 * @param graph
+	 * @return
+	 */
+	public DenseMatrix computeSimilarityMatrix(CsrGraph graph) {
+		int n = graph.getVertexCount();
+		DenseMatrix system = createSystemMatrix(graph);
+		factor(system.getValues(), n);
+		return invert(system.getValues(), n);
+	}
+
+	/**
+	 * Compute the personalised PageRank matrix <code>P</code> of the graph one row
+	 * at a time into a memory-mapped matrix. Row <code>i</code> is
+	 * <code>beta * sum e_i' ((1 - beta) W)^k</code>; each term only needs the
+	 * previous one and is found by averaging over the neighbours of each gene. Rows
+	 * are computed in parallel blocks.
+	 *
+	 * @param graph
+	 * @param similarity an n x n matrix to receive <code>P</code>
+	 */
+	public void computeSimilarityMatrix(CsrGraph graph, MappedSimilarityMatrix similarity) {
+		int n = graph.getVertexCount();
+		if (similarity.getRows() != n || similarity.getColumns() != n) {
+			throw new IllegalArgumentException("Expected a " + n + " x " + n + " matrix");
+		}
+		int[] offsets = graph.getOffsets();
+		int[] neighbours = graph.getNeighbours();
+
+		// (1 - beta) / degree, or 0 for an isolated gene which keeps its own heat
+		double[] walkWeights = new double[n];
+		for (int j = 0; j < n; j++) {
+			int degree = graph.degree(j) - (graph.isNeighbour(j, j) ? 1 : 0);
+			walkWeights[j] = degree == 0 ? 0 : (1 - restartProbability) / degree;
+		}
+
+		parallelFor(blockCount(n), task -> {
+			double[] row = new double[n];
+			double[] term = new double[n];
+			double[] next = new double[n];
+			int i1 = Math.min((task + 1) * BLOCK_SIZE, n);
+			for (int i = task * BLOCK_SIZE; i < i1; i++) {
+				Arrays.fill(term, 0);
+				term[i] = restartProbability;
+				System.arraycopy(term, 0, row, 0, n);
+
+				// Sum terms until adding one no longer changes the row at double precision
+				boolean changed = true;
+				while (changed) {
+					changed = false;
+					for (int j = 0; j < n; j++) {
+						double sum = 0;
+						for (int k = offsets[j]; k < offsets[j + 1]; k++) {
+							if (neighbours[k] != j) {
+								sum += term[neighbours[k]];
+							}
+						}
+						next[j] = sum * walkWeights[j];
+						double updated = row[j] + next[j];
+						changed |= updated != row[j];
+						row[j] = updated;
+					}
+					double[] swap = term;
+					term = next;
+					next = swap;
+				}
+				similarity.setRows(i, 1, row);
+			}
+		});
+	}
+
+	/**
+	 * Multiply each column of the similarity matrix by the heat of its gene, in
+	 * place
+	 *
+	 * @param similarity
+	 * @param heat
+	 * @return the similarity matrix
+	 */
+	public static DenseMatrix applyHeat(DenseMatrix similarity, double[] heat) {
+		if (heat.length != similarity.getColumns()) {
+			throw new IllegalArgumentException("Heat vector has " + heat.length + " genes but the matrix has " + similarity.getColumns());
+		}
+		double[] values = similarity.getValues();
+		int columns = similarity.getColumns();
+		for (int i = 0; i < similarity.getRows(); i++) {
+			int row = i * columns;
+			for (int j = 0; j < columns; j++) {
+				values[row + j] *= heat[j];
+			}
+		}
+		return similarity;
+	}
+
+	/**
+	 * Build <code>I - (1 - beta) A D^-1</code>
+	 *
+	 * @param graph
+	 * @return
+	 */
+	private DenseMatrix createSystemMatrix(CsrGraph graph) {
+		int n = graph.getVertexCount();
+		int[] offsets = graph.getOffsets();
+		int[] neighbours = graph.getNeighbours();
+
+		DenseMatrix system = new DenseMatrix(n, n);
+		double[] a = system.getValues();
+		double walk = 1 - restartProbability;
+		for (int j = 0; j < n; j++) {
+			a[j * n + j] = 1;
+
+			int degree = 0;
+			for (int k = offsets[j]; k < offsets[j + 1]; k++) {
+				if (neighbours[k] != j) {
+					++degree;
+				}
+			}
+			if (degree == 0) {
+				// An isolated gene keeps all of its own heat
+				continue;
+			}
+
+			// The graph is undirected so column j of A is row j
+			double weight = walk / degree;
+			for (int k = offsets[j]; k < offsets[j + 1]; k++) {
+				int i = neighbours[k];
+				if (i != j) {
+					a[i * n + j] -= weight;
+				}
+			}
+		}
+		return system;
+	}
+
+	/**
+	 * Blocked right-looking LU factorisation without pivoting, in place. The unit
+	 * lower triangle L is stored below the diagonal and U on and above it.
+	 *
+	 * @param a
+	 * @param n
+	 */
+	private void factor(double[] a, int n) {
+		int blocks = blockCount(n);
+		for (int kb = 0; kb < blocks; kb++) {
+			final int k0 = kb * BLOCK_SIZE;
+			final int k1 = Math.min(k0 + BLOCK_SIZE, n);
+
+			// Factor the diagonal block
+			for (int k = k0; k < k1; k++) {
+				double pivot = a[k * n + k];
+				if (Math.abs(pivot) < 1e-300) {
+					throw new ArithmeticException("Zero pivot at row " + k + "; the walk matrix is singular");
+				}
+				for (int i = k + 1; i < k1; i++) {
+					double l = a[i * n + k] /= pivot;
+					for (int j = k + 1; j < k1; j++) {
+						a[i * n + j] -= l * a[k * n + j];
+					}
+				}
+			}
+
+			// L panel below the diagonal block and U panel to its right
+			int remaining = blocks - kb - 1;
+			parallelFor(2 * remaining, task -> {
+				int b0 = k1 + (task % remaining) * BLOCK_SIZE;
+				int b1 = Math.min(b0 + BLOCK_SIZE, n);
+				if (task < remaining) {
+					for (int i = b0; i < b1; i++) {
+						int row = i * n;
+						for (int k = k0; k < k1; k++) {
+							double l = a[row + k] /= a[k * n + k];
+							for (int j = k + 1; j < k1; j++) {
+								a[row + j] -= l * a[k * n + j];
+							}
+						}
+					}
+				} else {
+					for (int k = k0; k < k1; k++) {
+						for (int i = k + 1; i < k1; i++) {
+							double l = a[i * n + k];
+							int row = i * n;
+							int pivotRow = k * n;
+							for (int j = b0; j < b1; j++) {
+								a[row + j] -= l * a[pivotRow + j];
+							}
+						}
+					}
+				}
+			});
+
+			// Update the trailing matrix one block of rows at a time
+			parallelFor(remaining, task -> {
+				int i0 = k1 + task * BLOCK_SIZE;
+				int i1 = Math.min(i0 + BLOCK_SIZE, n);
+				for (int j0 = k1; j0 < n; j0 += 4 * BLOCK_SIZE) {
+					int j1 = Math.min(j0 + 4 * BLOCK_SIZE, n);
+					for (int i = i0; i < i1; i++) {
+						int row = i * n;
+						for (int k = k0; k < k1; k++) {
+							double l = a[row + k];
+							if (l == 0) {
+								continue;
+							}
+							int pivotRow = k * n;
+							for (int j = j0; j < j1; j++) {
+								a[row + j] -= l * a[pivotRow + j];
+							}
+						}
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Solve <code>LU X = beta I</code> one block of columns at a time
+	 *
+	 * @param lu
+	 * @param n
+	 * @return
+	 */
+	private DenseMatrix invert(double[] lu, int n) {
+		DenseMatrix result = new DenseMatrix(n, n);
+		double[] x = result.getValues();
+
+		parallelFor(blockCount(n), task -> {
+			int c0 = task * BLOCK_SIZE;
+			int c1 = Math.min(c0 + BLOCK_SIZE, n);
+			for (int c = c0; c < c1; c++) {
+				x[c * n + c] = restartProbability;
+			}
+
+			// Forward substitution with unit lower L. Rows above c0 stay zero.
+			for (int i = c0 + 1; i < n; i++) {
+				int row = i * n;
+				for (int k = c0; k < i; k++) {
+					double l = lu[row + k];
+					if (l == 0) {
+						continue;
+					}
+					int kRow = k * n;
+					for (int c = c0; c < c1; c++) {
+						x[row + c] -= l * x[kRow + c];
+					}
+				}
+			}
+
+			// Back substitution with U
+			for (int i = n - 1; i >= 0; i--) {
+				int row = i * n;
+				for (int k = i + 1; k < n; k++) {
+					double u = lu[row + k];
+					if (u == 0) {
+						continue;
+					}
+					int kRow = k * n;
+					for (int c = c0; c < c1; c++) {
+						x[row + c] -= u * x[kRow + c];
+					}
+				}
+				double pivot = lu[row + i];
+				for (int c = c0; c < c1; c++) {
+					x[row + c] /= pivot;
+				}
+			}
+		});
+
+		return result;
+	}
+
+	private static int blockCount(int n) {
+		return (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	}
+
+	/**
+	 * Run tasks 0 to count - 1 on the pool and wait for them to finish
+	 *
+	 * @param count
+	 * @param task
+	 */
+	private void parallelFor(int count, IntConsumer task) {
+		if (count == 1) {
+			task.accept(0);
+		} else if (count > 1) {
+			pool.submit(() -> IntStream.range(0, count).parallel().forEach(task)).join();
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package io.github.pleyte.gmis.hotnet;
+
+/**
+ * A square or rectangular matrix of similarities that is read by row. Implementations may keep the values on the heap
+ * ({@link DenseMatrix}) or in a memory-mapped file ({@link MappedSimilarityMatrix}). Reads do not change any state so
+ * several threads can read different row ranges at the same time.
+ *
+ * @author pleyte
+ *
+ */
+public interface SimilarityMatrix {
+
+	int getRows();
+
+	int getColumns();
+
+	double get(int row, int column);
+
+	/**
+	 * Copy consecutive rows into a buffer, one row after another
+	 *
+	 * @param firstRow
+	 * @param rowCount
+	 * @param buffer   receives <code>rowCount * getColumns()</code> values
+	 */
+	void getRows(int firstRow, int rowCount, double[] buffer);
+}
@@ -0,0 +1,50 @@
+package io.github.pleyte.gmis.instrumentation;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event for one timed stage of the analysis. The event's duration is the stage's wall time. The
+ * events are only recorded while a flight recording is running, e.g. with
+ * <code>-XX:StartFlightRecording=filename=analysis.jfr</code>.
+ *
+ * @author pleyte
+ *
+ */
+@Name("io.github.pleyte.gmis.Stage")
+@Label("Analysis Stage")
+@Category("Genetic Overlap Analysis")
+@Description("A pipeline command, network load, score conversion or network computation")
+@StackTrace(false)
+class StageEvent extends Event {
+	@Label("Stage")
+	String stage;
+
+	@Label("Thread CPU Time")
+	@Timespan
+	long threadCpuTime;
+
+	@Label("Process CPU Time")
+	@Description("CPU time of the whole process during the stage, including other threads")
+	@Timespan
+	long processCpuTime;
+
+	@Label("Allocated")
+	@Description("Bytes allocated by the thread which ran the stage")
+	@DataAmount
+	long allocated;
+
+	@Label("Peak Heap")
+	@Description("Highest heap use of the process so far")
+	@DataAmount
+	long peakHeap;
+
+	@Label("Records")
+	long records;
+}
@@ -0,0 +1,128 @@
+package io.github.pleyte.gmis.instrumentation;
+
+/**
+ * The resources used by one timed stage
+ *
+ * @author pleyte
+ *
+ */
+public class StageMeasurement {
+	private String name;
+	private String thread;
+	private long startMillis;
+	private long wallNanos;
+	private long threadCpuNanos;
+	private long processCpuNanos;
+	private long allocatedBytes;
+	private long peakHeapBytes;
+	private long records;
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Return the name of the thread the stage ran on
+	 *
+	 * @return
+	 */
+	public String getThread() {
+		return thread;
+	}
+
+	public void setThread(String thread) {
+		this.thread = thread;
+	}
+
+	/**
+	 * Return the time the stage started in milliseconds since the epoch
+	 *
+	 * @return
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	public void setStartMillis(long startMillis) {
+		this.startMillis = startMillis;
+	}
+
+	public long getWallNanos() {
+		return wallNanos;
+	}
+
+	public void setWallNanos(long wallNanos) {
+		this.wallNanos = wallNanos;
+	}
+
+	/**
+	 * Return the CPU time of the thread the stage ran on. Work the stage handed to
+	 * other threads is not included.
+	 *
+	 * @return
+	 */
+	public long getThreadCpuNanos() {
+		return threadCpuNanos;
+	}
+
+	public void setThreadCpuNanos(long threadCpuNanos) {
+		this.threadCpuNanos = threadCpuNanos;
+	}
+
+	/**
+	 * Return the CPU time of the whole process while the stage ran, which includes
+	 * any stages running at the same time
+	 *
+	 * @return
+	 */
+	public long getProcessCpuNanos() {
+		return processCpuNanos;
+	}
+
+	public void setProcessCpuNanos(long processCpuNanos) {
+		this.processCpuNanos = processCpuNanos;
+	}
+
+	/**
+	 * Return the bytes allocated by the thread the stage ran on
+	 *
+	 * @return
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	public void setAllocatedBytes(long allocatedBytes) {
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	/**
+	 * Return the highest heap use of the process up to the end of the stage
+	 *
+	 * @return
+	 */
+	public long getPeakHeapBytes() {
+		return peakHeapBytes;
+	}
+
+	public void setPeakHeapBytes(long peakHeapBytes) {
+		this.peakHeapBytes = peakHeapBytes;
+	}
+
+	/**
+	 * Return the number of records (genes, edges, vertices) the stage processed
+	 *
+	 * @return
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	public void setRecords(long records) {
+		this.records = records;
+	}
+}
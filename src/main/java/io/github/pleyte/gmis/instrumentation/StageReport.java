@@ -0,0 +1,156 @@
+package io.github.pleyte.gmis.instrumentation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the measurements of every {@link StageTimer} in the process and writes them as a JSON report at the end of
+ * a run. Stages may finish on several threads at once.
+ *
+ * @author pleyte
+ *
+ */
+public class StageReport {
+	public static final String FILE_NAME = "stage-report.json";
+
+	private static final List<StageMeasurement> measurements = new ArrayList<>();
+
+	private StageReport() {
+	}
+
+	static void add(StageMeasurement measurement) {
+		synchronized (measurements) {
+			measurements.add(measurement);
+		}
+	}
+
+	/**
+	 * Return the measurements so far in the order the stages finished
+	 *
+	 * @return
+	 */
+	public static List<StageMeasurement> getMeasurements() {
+		synchronized (measurements) {
+			return new ArrayList<>(measurements);
+		}
+	}
+
+	/**
+	 * Forget all measurements
+	 */
+	public static void clear() {
+		synchronized (measurements) {
+			measurements.clear();
+		}
+	}
+
+	/**
+	 * Write the measurements as JSON. Times are in milliseconds and memory in
+	 * bytes.
+	 *
+	 * @param outFile
+	 * @throws IOException
+	 */
+	public static void save(Path outFile) throws IOException {
+		try (Writer out = Files.newBufferedWriter(outFile, StandardCharsets.UTF_8)) {
+			out.write(toJson());
+		}
+	}
+
+	/**
+	 * Return the measurements as a JSON document
+	 *
+	 * @return
+	 */
+	public static String toJson() {
+		Runtime runtime = Runtime.getRuntime();
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"created\": \"").append(Instant.now()).append("\",\n");
+		json.append("  \"processors\": ").append(runtime.availableProcessors()).append(",\n");
+		json.append("  \"maxHeapBytes\": ").append(runtime.maxMemory()).append(",\n");
+		json.append("  \"peakHeapBytes\": ").append(StageTimer.peakHeapBytes()).append(",\n");
+		json.append("  \"stages\": [");
+
+		List<StageMeasurement> stages = getMeasurements();
+		for (int i = 0; i < stages.size(); i++) {
+			StageMeasurement stage = stages.get(i);
+			json.append(i == 0 ? "\n" : ",\n");
+			json.append("    {");
+			json.append("\"name\": \"").append(escapeJson(stage.getName())).append("\", ");
+			json.append("\"thread\": \"").append(escapeJson(stage.getThread())).append("\", ");
+			json.append("\"start\": \"").append(Instant.ofEpochMilli(stage.getStartMillis())).append("\", ");
+			json.append("\"wallMillis\": ").append(toMillis(stage.getWallNanos())).append(", ");
+			json.append("\"threadCpuMillis\": ").append(toMillis(stage.getThreadCpuNanos())).append(", ");
+			json.append("\"processCpuMillis\": ").append(toMillis(stage.getProcessCpuNanos())).append(", ");
+			json.append("\"allocatedBytes\": ").append(stage.getAllocatedBytes()).append(", ");
+			json.append("\"peakHeapBytes\": ").append(stage.getPeakHeapBytes()).append(", ");
+			json.append("\"records\": ").append(stage.getRecords());
+			json.append("}");
+		}
+		json.append(stages.isEmpty() ? "]\n" : "\n  ]\n");
+		json.append("}\n");
+		return json.toString();
+	}
+
+	/**
+	 * Return one line per stage for the log
+	 *
+	 * @return
+	 */
+	public static String toSummary() {
+		StringBuilder summary = new StringBuilder();
+		for (StageMeasurement stage : getMeasurements()) {
+			summary.append(String.format("%n\t%-40s %10.1f ms wall %10.1f ms cpu %,15d bytes allocated %,10d records", stage.getName(),
+					toMillis(stage.getWallNanos()), toMillis(stage.getThreadCpuNanos()), stage.getAllocatedBytes(), stage.getRecords()));
+		}
+		return summary.toString();
+	}
+
+	/**
+	 * Escape a string for use inside a JSON string literal
+	 *
+	 * @param value
+	 * @return
+	 */
+	private static String escapeJson(String value) {
+		StringBuilder escaped = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				escaped.append("\\\"");
+				break;
+			case '\\':
+				escaped.append("\\\\");
+				break;
+			case '\n':
+				escaped.append("\\n");
+				break;
+			case '\r':
+				escaped.append("\\r");
+				break;
+			case '\t':
+				escaped.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					escaped.append(String.format("\\u%04x", (int) c));
+				} else {
+					escaped.append(c);
+				}
+			}
+		}
+		return escaped.toString();
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos < 0 ? -1 : Math.round(nanos / 1_000.0) / 1_000.0;
+	}
+}
@@ -0,0 +1,149 @@
+package io.github.pleyte.gmis.instrumentation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Measures the wall time, CPU time, allocation and heap use of one stage of the analysis. Start a timer in a
+ * try-with-resources block around the stage; when it closes the measurement is emitted as a JFR {@link StageEvent} and
+ * added to the {@link StageReport}.
+ *
+ * <pre>
+ * try (StageTimer timer = StageTimer.start("NetworkLoader.loadSifNetwork")) {
+ * 	...
+ * 	timer.addRecords(edgeCount);
+ * }
+ * </pre>
+ *
+ * CPU time and allocation are measured on the thread that started the timer, so the timer must be closed on the same
+ * thread. Measurements the JVM does not support are reported as -1.
+ *
+ * @author pleyte
+ *
+ */
+public class StageTimer implements AutoCloseable {
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private static final List<MemoryPoolMXBean> memoryPools = ManagementFactory.getMemoryPoolMXBeans();
+
+	private final String name;
+	private final StageEvent event = new StageEvent();
+	private final long threadId;
+	private final long startMillis;
+	private final long startNanos;
+	private final long startThreadCpu;
+	private final long startProcessCpu;
+	private final long startAllocated;
+	private long records;
+
+	private StageTimer(String name) {
+		this.name = name;
+		this.threadId = Thread.currentThread().getId();
+		this.startMillis = System.currentTimeMillis();
+		this.startThreadCpu = threadCpuTime();
+		this.startProcessCpu = processCpuTime();
+		this.startAllocated = allocatedBytes(threadId);
+		event.begin();
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Start timing a stage on the current thread
+	 *
+	 * @param name
+	 * @return
+	 */
+	public static StageTimer start(String name) {
+		return new StageTimer(name);
+	}
+
+	/**
+	 * Count records processed by the stage, such as genes converted or edges
+	 * loaded
+	 *
+	 * @param count
+	 */
+	public void addRecords(long count) {
+		records += count;
+	}
+
+	/**
+	 * Return the wall time since the timer started
+	 *
+	 * @return
+	 */
+	public long getElapsedNanos() {
+		return System.nanoTime() - startNanos;
+	}
+
+	@Override
+	public void close() {
+		long wallNanos = System.nanoTime() - startNanos;
+		event.end();
+
+		StageMeasurement measurement = new StageMeasurement();
+		measurement.setName(name);
+		measurement.setThread(Thread.currentThread().getName());
+		measurement.setStartMillis(startMillis);
+		measurement.setWallNanos(wallNanos);
+		measurement.setThreadCpuNanos(difference(startThreadCpu, threadCpuTime()));
+		measurement.setProcessCpuNanos(difference(startProcessCpu, processCpuTime()));
+		measurement.setAllocatedBytes(difference(startAllocated, allocatedBytes(threadId)));
+		measurement.setPeakHeapBytes(peakHeapBytes());
+		measurement.setRecords(records);
+
+		if (event.shouldCommit()) {
+			event.stage = name;
+			event.threadCpuTime = measurement.getThreadCpuNanos();
+			event.processCpuTime = measurement.getProcessCpuNanos();
+			event.allocated = measurement.getAllocatedBytes();
+			event.peakHeap = measurement.getPeakHeapBytes();
+			event.records = records;
+			event.commit();
+		}
+		StageReport.add(measurement);
+	}
+
+	/**
+	 * Return the highest heap use of the process so far, summed over the heap
+	 * memory pools
+	 *
+	 * @return
+	 */
+	static long peakHeapBytes() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : memoryPools) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	private static long difference(long start, long end) {
+		return start < 0 || end < 0 ? -1 : end - start;
+	}
+
+	private static long threadCpuTime() {
+		return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+	}
+
+	private static long processCpuTime() {
+		if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+		}
+		return -1;
+	}
+
+	private static long allocatedBytes(long threadId) {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+			if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+				return sunThreads.getThreadAllocatedBytes(threadId);
+			}
+		}
+		return -1;
+	}
+}
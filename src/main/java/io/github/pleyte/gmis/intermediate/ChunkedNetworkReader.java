@@ -0,0 +1,137 @@
+package io.github.pleyte.gmis.intermediate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import io.github.pleyte.gmis.graph.CsrGraph;
+
+/**
+ * Reads a line oriented network file in parallel. The memory mapped file is split into chunks at line boundaries, each
+ * chunk is parsed on a fork-join pool into its own graph builder, and the chunk builders are then merged into the
+ * destination builder in file order. Because genes are merged in the order they first appear, the result is the same
+ * graph (including vertex ids) that a sequential read produces.
+ *
+ * @author pleyte
+ *
+ */
+class ChunkedNetworkReader {
+
+	/**
+	 * Files smaller than this are not split up
+	 */
+	private static final int MIN_CHUNK_SIZE = 1 << 20;
+	private static final int WINDOW_SIZE = 1 << 30;
+
+	/**
+	 * Parses the lines in a range of a buffer into a builder
+	 */
+	interface ChunkParser {
+		/**
+		 *
+		 * @param buffer
+		 * @param start
+		 * @param end
+		 * @param builder
+		 * @param recordNumber number of records read before this range
+		 * @return the number of records read before and within this range
+		 * @throws IOException
+		 */
+		long parse(ByteBuffer buffer, int start, int end, CsrGraph.Builder builder, long recordNumber) throws IOException;
+	}
+
+	private ChunkedNetworkReader() {
+	}
+
+	/**
+	 * Parse a file in parallel into the builder
+	 *
+	 * @param file
+	 * @param builder       destination builder
+	 * @param chunkBuilders creates the builder each chunk is parsed into
+	 * @param parser
+	 * @param pool
+	 * @throws IOException
+	 */
+	static void read(Path file, CsrGraph.Builder builder, Supplier<CsrGraph.Builder> chunkBuilders, ChunkParser parser, ForkJoinPool pool) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+
+			while (position < size) {
+				int length = (int) Math.min(WINDOW_SIZE, size - position);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int end = position + length == size ? length : MappedSifReader.afterLastNewline(buffer, 0, length);
+				if (end == 0) {
+					throw new IOException("File " + file + " has a line longer than " + WINDOW_SIZE + " bytes at offset " + position);
+				}
+
+				List<Callable<CsrGraph.Builder>> tasks = new ArrayList<>();
+				for (int[] chunk : split(buffer, end, pool.getParallelism())) {
+					tasks.add(() -> {
+						CsrGraph.Builder chunkBuilder = chunkBuilders.get();
+						parser.parse(buffer, chunk[0], chunk[1], chunkBuilder, 0);
+						return chunkBuilder;
+					});
+				}
+
+				for (Future<CsrGraph.Builder> future : pool.invokeAll(tasks)) {
+					builder.addAll(getChunk(future));
+				}
+				position += end;
+			}
+		}
+	}
+
+	/**
+	 * Split the first <code>end</code> bytes of the buffer into ranges that start
+	 * and end on line boundaries
+	 *
+	 * @param buffer
+	 * @param end
+	 * @param parallelism
+	 * @return
+	 */
+	private static List<int[]> split(ByteBuffer buffer, int end, int parallelism) {
+		// A few chunks per thread evens out the work when lines vary in length
+		int chunkCount = (int) Math.max(1, Math.min(parallelism * 4L, end / MIN_CHUNK_SIZE));
+		List<int[]> chunks = new ArrayList<>(chunkCount);
+
+		int start = 0;
+		for (int k = 1; k <= chunkCount && start < end; k++) {
+			int chunkEnd = k == chunkCount ? end : (int) ((long) end * k / chunkCount);
+			while (chunkEnd < end && chunkEnd > start && buffer.get(chunkEnd - 1) != '\n') {
+				++chunkEnd;
+			}
+			if (chunkEnd > start) {
+				chunks.add(new int[] { start, chunkEnd });
+				start = chunkEnd;
+			}
+		}
+		return chunks;
+	}
+
+	private static CsrGraph.Builder getChunk(Future<CsrGraph.Builder> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading network", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed to read network chunk", e.getCause());
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package io.github.pleyte.gmis.intermediate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import io.github.pleyte.gmis.graph.GeneDictionary;
+import io.github.pleyte.gmis.graph.GeneSymbolResolver;
+import io.github.pleyte.gmis.gwas.GeneIntervalIndex;
+import io.github.pleyte.gmis.gwas.SnpAggregation;
+import io.github.pleyte.gmis.gwas.SummaryStatisticsReader;
+import io.github.pleyte.gmis.instrumentation.StageTimer;
+import io.github.pleyte.gmis.score.ConflictPolicy;
+import io.github.pleyte.gmis.score.GeneScoreConsumer;
+import io.github.pleyte.gmis.score.GeneScoreMap;
+import io.github.pleyte.gmis.score.GeneScoreSource;
+import io.github.pleyte.gmis.score.GeneScoreWriter;
+
+/**
+ * This class turns full GWAS summary statistics into a scores file suitable for use with Hierarchical HotNet. Each SNP
+ * is mapped to the genes whose region, widened by a flank, contains it, and the p-values of a gene's SNPs are combined
+ * into one score (see {@link SnpAggregation}). Only genes with at least one SNP are scored.
+ * 
+ * The summary statistics are read in one pass, so memory depends on the number of genes and not the number of SNPs.
+ * 
+ * @author pleyte
+ *
+ */
+public class GwasSummaryToGeneScore implements GeneScoreSource {
+	private static Logger log;
+
+	static {
+		InputStream stream = GwasSummaryToGeneScore.class.getClassLoader().getResourceAsStream("logging.properties");
+		try {
+			LogManager.getLogManager().readConfiguration(stream);
+			log = Logger.getLogger(GwasSummaryToGeneScore.class.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static final long DEFAULT_FLANK = 10_000;
+
+	private final String summaryStatisticsFile;
+	private final String geneCoordinateFile;
+	private final long flank;
+	private final SnpAggregation aggregation;
+	private final ForkJoinPool pool;
+
+	/**
+	 * 
+	 * @param summaryStatisticsFile SNP summary statistics, plain or gzipped
+	 * @param geneCoordinateFile    gene regions for {@link GeneIntervalIndex}
+	 * @param flank                 bases added to each side of a gene
+	 * @param aggregation
+	 * @param pool                  threads which parse the summary statistics
+	 */
+	public GwasSummaryToGeneScore(String summaryStatisticsFile, String geneCoordinateFile, long flank, SnpAggregation aggregation, ForkJoinPool pool) {
+		this.summaryStatisticsFile = summaryStatisticsFile;
+		this.geneCoordinateFile = geneCoordinateFile;
+		this.flank = flank;
+		this.aggregation = aggregation;
+		this.pool = pool;
+	}
+
+	/**
+	 * 
+	 * @param args summary statistics file, gene coordinate file, score file,
+	 *             optional flank in bases (default 10000) and optional
+	 *             aggregation: MAXIMUM (default), FISHER or MIN_P_BONFERRONI
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			throw new IllegalArgumentException("Usage: GwasSummaryToGeneScore <summary statistics> <gene coordinates> <scores file> [flank] [aggregation]");
+		}
+		long flank = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_FLANK;
+		SnpAggregation aggregation = args.length > 4 ? SnpAggregation.valueOf(args[4]) : SnpAggregation.MAXIMUM;
+		convert(args[0], args[1], args[2], flank, aggregation);
+	}
+
+	/**
+	 * Convert the summary statistics to gene scores and write them to a HotNet
+	 * score file
+	 * 
+	 * @param summaryStatisticsFile
+	 * @param geneCoordinateFile
+	 * @param outFile
+	 * @param flank
+	 * @param aggregation
+	 * @throws IOException
+	 */
+	public static void convert(String summaryStatisticsFile, String geneCoordinateFile, String outFile, long flank, SnpAggregation aggregation) throws IOException {
+		convert(summaryStatisticsFile, geneCoordinateFile, outFile, flank, aggregation, GeneSymbolResolver.NONE);
+	}
+
+	/**
+	 * Convert the summary statistics to gene scores, resolving the genes of the
+	 * coordinate file to their approved symbols, and write them to a HotNet score
+	 * file
+	 * 
+	 * @param summaryStatisticsFile
+	 * @param geneCoordinateFile
+	 * @param outFile
+	 * @param flank
+	 * @param aggregation
+	 * @param resolver
+	 * @throws IOException
+	 */
+	public static void convert(String summaryStatisticsFile, String geneCoordinateFile, String outFile, long flank, SnpAggregation aggregation,
+			GeneSymbolResolver resolver) throws IOException {
+		try (StageTimer timer = StageTimer.start("GwasSummaryToGeneScore.convert")) {
+			GwasSummaryToGeneScore source = new GwasSummaryToGeneScore(summaryStatisticsFile, geneCoordinateFile, flank, aggregation, ForkJoinPool.commonPool());
+			GeneScoreMap geneScore = GeneScoreMap.load(source, new GeneDictionary(resolver), ConflictPolicy.FAIL);
+			GeneScoreWriter.save(geneScore, outFile);
+			log.info("Wrote " + geneScore.size() + " gene scores to " + outFile);
+			timer.addRecords(geneScore.size());
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "GWAS summary statistics " + summaryStatisticsFile;
+	}
+
+	/**
+	 * Map the SNPs to genes and pass on the score of each gene with at least one
+	 * SNP, in the order the genes are listed in the coordinate file
+	 * 
+	 * @param genes
+	 * @param consumer
+	 * @throws IOException
+	 */
+	@Override
+	public void read(GeneDictionary genes, GeneScoreConsumer consumer) throws IOException {
+		GeneIntervalIndex index = GeneIntervalIndex.load(geneCoordinateFile, flank, genes);
+
+		// Running statistics of the SNPs in each gene
+		int geneCount = genes.size();
+		double[] maximumScore = new double[geneCount];
+		double[] sumLogP = new double[geneCount];
+		long[] snpCount = new long[geneCount];
+
+		SummaryStatisticsReader reader = new SummaryStatisticsReader(index, pool, pool.getParallelism());
+		reader.read(Paths.get(summaryStatisticsFile), (gene, score) -> {
+			maximumScore[gene] = Math.max(maximumScore[gene], score);
+			sumLogP[gene] += SnpAggregation.toLogP(score);
+			snpCount[gene]++;
+		});
+		log.info("Read " + reader.getSnpCount() + " SNPs from " + summaryStatisticsFile + " of which " + reader.getMappedSnpCount() + " are within "
+				+ flank + " bases of a gene; " + reader.getMissingCount() + " had no p-value");
+
+		for (int gene = 0; gene < geneCount; gene++) {
+			if (snpCount[gene] > 0) {
+				consumer.accept(gene, aggregation.getScore(maximumScore[gene], sumLogP[gene], snpCount[gene]));
+			}
+		}
+	}
+}
@@ -1,24 +1,27 @@
 package io.github.pleyte.gmis.intermediate;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
-import java.io.Writer;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.lang3.StringUtils;
 
 import io.github.pleyte.gmis.PerformAnalysis;
+import io.github.pleyte.gmis.graph.GeneDictionary;
+import io.github.pleyte.gmis.graph.GeneSymbolResolver;
+import io.github.pleyte.gmis.instrumentation.StageTimer;
+import io.github.pleyte.gmis.score.ConflictPolicy;
+import io.github.pleyte.gmis.score.GeneScoreConsumer;
+import io.github.pleyte.gmis.score.GeneScoreMap;
+import io.github.pleyte.gmis.score.GeneScoreSource;
+import io.github.pleyte.gmis.score.GeneScoreWriter;
+import io.github.pleyte.gmis.score.ScoreConsolidator;
+import io.github.pleyte.gmis.score.StandardConsolidationPolicy;
 
 /**
  * Tthis class loads gene scores from three tables exported from the PDF paper (Integrated Post-GWAS Analysis Sheds New
@@ -46,183 +49,164 @@ public class IntegratedPostGwasToGeneScore {
 	 * @throws Exception
 	 */
 	public static void main(String[] args) throws Exception {
-		IntegratedPostGwasToGeneScore ipToGs = new IntegratedPostGwasToGeneScore();
-
-		Map<String, Double> putativeGeneScores = ipToGs
-				.loadGenesWithPutativeSupport("data/IntegratedPost-GWASAnalysis_files/Table1.csv");
-		Map<String, Double> literatureGeneScores = ipToGs
-				.loadGenesWithLiteratureSupport("data/IntegratedPost-GWASAnalysis_files/tabula-TableS2.csv");
-		Map<String, Double> regulatoryGeneScores = ipToGs
-				.loadGenesWithRegulatorySupport("data/IntegratedPost-GWASAnalysis_files/tabula-TableS4.csv");
-
-		Map<String, Double> geneScoreConsolidated = consolidateGeneScores(putativeGeneScores, literatureGeneScores, regulatoryGeneScores);
-		ipToGs.save(geneScoreConsolidated, "data/IntegratedPost-GWASAnalysis_files/scores_1.tsv");
-
+		convert("data/IntegratedPost-GWASAnalysis_files/Table1.csv", "data/IntegratedPost-GWASAnalysis_files/tabula-TableS2.csv",
+				"data/IntegratedPost-GWASAnalysis_files/tabula-TableS4.csv", "data/IntegratedPost-GWASAnalysis_files/scores_1.tsv");
 	}
 
 	/**
-	 * Load the gene scores for the 132 putative genes in Table 1
+	 * Load the putative, literature and regulatory gene scores, consolidate them
+	 * and write them to a HotNet score file
 	 * 
 	 * @param table1CsvFile
-	 * @return
-	 * @throws FileNotFoundException
-	 * @throws IOException
+	 * @param tableS2CsvFile
+	 * @param tableS4CsvFile
+	 * @param geneScoreFile
+	 * @throws Exception
 	 */
-	private Map<String, Double> loadGenesWithPutativeSupport(String table1CsvFile) throws FileNotFoundException, IOException {
-		Map<String, Double> geneScore = new HashMap<String, Double>();
-		try (Reader in = new FileReader(table1CsvFile)) {
-			Iterable<CSVRecord> records = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in);
-			for (CSVRecord record : records) {
-				String gene = record.get("Gene symbol");
-				String score = record.get("Score");
-
-				if (StringUtils.isBlank(score)) {
-					throw new IOException("Table1: Encountered blank score for record number " + record.getRecordNumber());
-				} else if (geneScore.get(gene) != null && !geneScore.get(gene).equals(Double.valueOf(score))) {
-					throw new IOException("Table1: Encountered duplicate gene " + gene + " with differing score in input file at record number " + record.getRecordNumber());
-				} else {
-					geneScore.put(gene, Double.valueOf(score));
-				}
-			}
-		}
-
-		return geneScore;
+	public static void convert(String table1CsvFile, String tableS2CsvFile, String tableS4CsvFile, String geneScoreFile) throws Exception {
+		convert(table1CsvFile, tableS2CsvFile, tableS4CsvFile, geneScoreFile, GeneSymbolResolver.NONE);
 	}
 
 	/**
-	 * Save the gene score map to file
+	 * Load the putative, literature and regulatory gene scores, resolving each
+	 * gene to its approved symbol, consolidate them and write them to a HotNet
+	 * score file
 	 * 
-	 * @param geneScoreConsolidated
-	 * @param string
-	 * @throws IOException
+	 * @param table1CsvFile
+	 * @param tableS2CsvFile
+	 * @param tableS4CsvFile
+	 * @param geneScoreFile
+	 * @param resolver
+	 * @throws Exception
 	 */
-	private void save(Map<String, Double> geneScoreConsolidated, String geneScoreFile) throws IOException {
-		try (Writer out = new FileWriter(geneScoreFile)) {
-			CSVPrinter printer = CSVFormat.TDF.print(out);
-			for (Entry<String, Double> entry : geneScoreConsolidated.entrySet()) {
-				printer.printRecord(entry.getKey(), entry.getValue());
-			}
+	public static void convert(String table1CsvFile, String tableS2CsvFile, String tableS4CsvFile, String geneScoreFile, GeneSymbolResolver resolver)
+			throws Exception {
+		try (StageTimer timer = StageTimer.start("IntegratedPostGwasToGeneScore.convert")) {
+			GeneDictionary genes = new GeneDictionary(resolver);
+			GeneScoreMap putativeGeneScores = GeneScoreMap.load(getPutativeSupport(table1CsvFile), genes, ConflictPolicy.FAIL_IF_DIFFERENT);
+			GeneScoreMap literatureGeneScores = GeneScoreMap.load(getLiteratureSupport(tableS2CsvFile), genes, ConflictPolicy.FAIL);
+			GeneScoreMap regulatoryGeneScores = GeneScoreMap.load(getRegulatorySupport(tableS4CsvFile), genes, ConflictPolicy.FAIL_IF_DIFFERENT);
+
+			GeneScoreMap geneScoreConsolidated = consolidateGeneScores(putativeGeneScores, literatureGeneScores, regulatoryGeneScores);
+			GeneScoreWriter.save(geneScoreConsolidated, geneScoreFile);
+			log.info("Wrote gene scores to " + geneScoreFile);
+			timer.addRecords(geneScoreConsolidated.size());
 		}
-
-		log.info("Wrote gene scores to " + geneScoreFile);
 	}
 
 	/**
-	 * Extract gene scores from the CSV version of the Table S4 from the paper
+	 * Return the source of the gene scores for the 132 putative genes in Table 1
 	 * 
-	 * @param tableS4CsvFile
+	 * @param table1CsvFile
 	 * @return
-	 * @throws FileNotFoundException
-	 * @throws IOException
 	 */
-	private Map<String, Double> loadGenesWithRegulatorySupport(String tableS4CsvFile) throws FileNotFoundException, IOException {
-		Map<String, Double> geneScore = new HashMap<String, Double>();
-		try (Reader in = new FileReader(tableS4CsvFile)) {
-			Iterable<CSVRecord> records = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in);
-			for (CSVRecord record : records) {
-				String gene = record.get("Gene symbol");
-				String score = record.get("Score");
-
-				if (StringUtils.isBlank(gene)) {
-					// the rows with missing gene can be ignored
-					continue;
-				} else if (StringUtils.isBlank(score)) {
-					throw new IOException("S4: Encountered blank score for record number " + record.getRecordNumber());
-				} else if (geneScore.get(gene) != null && !geneScore.get(gene).equals(Double.valueOf(score))) {
-					throw new IOException("S4: Encountered duplicate gene " + gene + " with differing score in input file at record number " + record.getRecordNumber());
-				} else {
-					geneScore.put(gene, Double.valueOf(score));
-				}
-			}
-		}
-
-		return geneScore;
+	public static GeneScoreSource getPutativeSupport(String table1CsvFile) {
+		return new TableSource("Table1", table1CsvFile, "Gene symbol", false);
 	}
 
 	/**
-	 * Trim a trailing '*' from the gene name
+	 * Return the source of the gene scores in the CSV version of Table S2 from the
+	 * paper. Footnote marks such as a trailing '*' are removed from the gene names.
 	 * 
-	 * @param gene
+	 * @param tableS2CsvFile
 	 * @return
 	 */
-	private String trim(String gene) {
-		if (gene.endsWith("*")) {
-			return gene.substring(0, gene.length() - 1);
-		} else {
-			return gene;
-		}
+	public static GeneScoreSource getLiteratureSupport(String tableS2CsvFile) {
+		return new TableSource("S2", tableS2CsvFile, "Gene symbol1", false) {
+			@Override
+			protected String getGene(String gene) {
+				return GeneSymbolResolver.clean(gene);
+			}
+		};
 	}
 
 	/**
-	 * Extract gene scores from the CSV version of the Table S2 from the paper
+	 * Return the source of the gene scores in the CSV version of Table S4 from the
+	 * paper. The rows with a missing gene are ignored.
 	 * 
-	 * @param string
+	 * @param tableS4CsvFile
 	 * @return
-	 * @throws IOException
-	 * @throws FileNotFoundException
 	 */
-	private Map<String, Double> loadGenesWithLiteratureSupport(String tableS2CsvFile) throws FileNotFoundException, IOException {
-		Map<String, Double> geneScore = new HashMap<String, Double>();
-		try (Reader in = new FileReader(tableS2CsvFile)) {
-			Iterable<CSVRecord> records = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in);
-			for (CSVRecord record : records) {
-				String gene = record.get("Gene symbol1");
-				String score = record.get("Score");
-
-				if (StringUtils.isBlank(gene)) {
-					throw new IOException("S2: Encountered blank gene on for record number " + record.getRecordNumber());
-				} else if (StringUtils.isBlank(score)) {
-					throw new IOException("S2: Encountered blank score for " + gene + " record number " + record.getRecordNumber());
-				} else if (geneScore.get(gene) != null) {
-					throw new IOException("S2: Encountered duplicate gene in input file at record number " + record.getRecordNumber());
-				} else {
-					//					if (!trim(gene).equals(gene)) {
-					//						log.severe("jDebug: trimming " + gene + " to " + trim(gene));
-					//					}
-					geneScore.put(trim(gene), Double.valueOf(score));
-				}
-			}
-		}
-
-		return geneScore;
+	public static GeneScoreSource getRegulatorySupport(String tableS4CsvFile) {
+		return new TableSource("S4", tableS4CsvFile, "Gene symbol", true);
 	}
 
 	/**
-	 * Merge two gene score maps
+	 * Merge the three gene score maps, keeping the higher score when the sets
+	 * disagree
 	 * 
+	 * @param putativeGeneScores
 	 * @param literatureGeneScores
 	 * @param regulatoryGeneScores
-	 * @param regulatoryGeneScores2
 	 * @return
-	 * @throws Exception
+	 * @throws IOException
 	 */
-	private static Map<String, Double> consolidateGeneScores(Map<String, Double> putativeGeneScores,
-			Map<String, Double> literatureGeneScores, Map<String, Double> regulatoryGeneScores) throws Exception {
-
-		// Create a new map with all the genes from the first gene set
-		Map<String, Double> geneSet = new HashMap<>(putativeGeneScores);
-
-		// Add genes from the second gene set
-		for (Entry<String, Double> entry : regulatoryGeneScores.entrySet()) {
-			if (geneSet.containsKey(entry.getKey()) && Double.compare(geneSet.get(entry.getKey()), entry.getValue()) != 0) {
-				log.info("Regulatory set encountered conflictict with " + entry.getKey() + ": " + geneSet.get(entry.getKey()) + " vs " + entry.getValue());
-				geneSet.put(entry.getKey(), Math.max(geneSet.get(entry.getKey()), entry.getValue()));
-			} else {
-				geneSet.put(entry.getKey(), entry.getValue());
-			}
+	private static GeneScoreMap consolidateGeneScores(GeneScoreMap putativeGeneScores, GeneScoreMap literatureGeneScores, GeneScoreMap regulatoryGeneScores)
+			throws IOException {
+		ScoreConsolidator consolidator = new ScoreConsolidator(StandardConsolidationPolicy.MAXIMUM);
+		consolidator.add("Putative", putativeGeneScores);
+		consolidator.add("Regulatory", regulatoryGeneScores);
+		consolidator.add("Literature", literatureGeneScores);
+		return consolidator.consolidate();
+	}
+
+	/**
+	 * Reads the gene symbol and score columns of one of the tables exported from the
+	 * paper
+	 */
+	private static class TableSource implements GeneScoreSource {
+		private final String name;
+		private final String csvFile;
+		private final String geneColumn;
+		private final boolean skipBlankGenes;
+
+		TableSource(String name, String csvFile, String geneColumn, boolean skipBlankGenes) {
+			this.name = name;
+			this.csvFile = csvFile;
+			this.geneColumn = geneColumn;
+			this.skipBlankGenes = skipBlankGenes;
 		}
 
-		// Add genes from the third gene set
-		for (Entry<String, Double> entry : literatureGeneScores.entrySet()) {
-			if (geneSet.containsKey(entry.getKey()) && Double.compare(geneSet.get(entry.getKey()), entry.getValue()) != 0) {
-				log.info("Literature set encountered conflictict with " + entry.getKey() + ": " + geneSet.get(entry.getKey()) + " vs " + entry.getValue());
-				geneSet.put(entry.getKey(), Math.max(geneSet.get(entry.getKey()), entry.getValue()));
-			} else {
-				geneSet.put(entry.getKey(), entry.getValue());
-			}
+		@Override
+		public String getName() {
+			return name;
 		}
 
-		return geneSet;
-	}
+		/**
+		 * Return the symbol to use for a gene as it is written in the table
+		 * 
+		 * @param gene
+		 * @return
+		 */
+		protected String getGene(String gene) {
+			return gene;
+		}
 
+		@Override
+		public void read(GeneDictionary genes, GeneScoreConsumer consumer) throws IOException {
+			try (Reader in = new FileReader(csvFile)) {
+				Iterable<CSVRecord> records = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in);
+
+				for (CSVRecord record : records) {
+					String gene = record.get(geneColumn);
+					String score = record.get("Score");
+
+					if (StringUtils.isBlank(gene)) {
+						if (skipBlankGenes) {
+							continue;
+						}
+						throw new IOException("Encountered blank gene for record number " + record.getRecordNumber());
+					} else if (StringUtils.isBlank(score)) {
+						throw new IOException("Encountered blank score for " + gene + " record number " + record.getRecordNumber());
+					}
+
+					try {
+						consumer.accept(genes.intern(getGene(gene)), Double.parseDouble(score));
+					} catch (NumberFormatException e) {
+						throw new IOException("Encountered non-numeric score for " + gene + " record number " + record.getRecordNumber() + ": " + score);
+					}
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,131 @@
+package io.github.pleyte.gmis.intermediate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import io.github.pleyte.gmis.graph.CsrGraph;
+
+/**
+ * Reads a HotNet edge list file (<code>network_1_edge_list.tsv</code>) by memory mapping it. Each line holds two gene
+ * indexes separated by a tab; the indexes are the ones written to the gene index file by
+ * {@link NetworkIndexAndEdgeCreator}.
+ *
+ * @author pleyte
+ *
+ */
+public class MappedEdgeListReader {
+	private static final int WINDOW_SIZE = 1 << 30;
+
+	private final int[] indexToVertex;
+
+	/**
+	 *
+	 * @param indexToVertex maps a HotNet gene index to a vertex id, or to -1 if the
+	 *                      index is not in the gene index file
+	 */
+	public MappedEdgeListReader(int[] indexToVertex) {
+		this.indexToVertex = indexToVertex;
+	}
+
+	/**
+	 * Add the edges of an edge list file to the graph builder
+	 *
+	 * @param edgeListFile
+	 * @param builder
+	 * @throws IOException
+	 */
+	public void read(Path edgeListFile, CsrGraph.Builder builder) throws IOException {
+		try (FileChannel channel = FileChannel.open(edgeListFile, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			long recordNumber = 0;
+
+			while (position < size) {
+				int length = (int) Math.min(WINDOW_SIZE, size - position);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int end = position + length == size ? length : MappedSifReader.afterLastNewline(buffer, 0, length);
+				if (end == 0) {
+					throw new IOException("Edge list " + edgeListFile + " has a line longer than " + WINDOW_SIZE + " bytes at offset " + position);
+				}
+
+				recordNumber = parse(buffer, 0, end, builder, recordNumber);
+				position += end;
+			}
+		}
+	}
+
+	/**
+	 * Parse the edge list lines in bytes <code>start</code> (inclusive) to
+	 * <code>end</code> (exclusive) of the buffer into the graph builder
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @param builder
+	 * @param recordNumber number of records read before this range, used in error
+	 *                     messages
+	 * @return the number of records read before and within this range
+	 * @throws IOException
+	 */
+	long parse(ByteBuffer buffer, int start, int end, CsrGraph.Builder builder, long recordNumber) throws IOException {
+		int position = start;
+		while (position < end) {
+			int fieldCount = 0;
+			long index1 = 0;
+			long index2 = 0;
+			boolean inField = false;
+			byte b;
+			while (position < end && (b = buffer.get(position)) != '\n') {
+				if (b >= '0' && b <= '9') {
+					if (!inField) {
+						if (fieldCount == 2) {
+							throw new IOException("Edge list record number " + (recordNumber + 1) + " has more than two fields");
+						}
+						inField = true;
+						++fieldCount;
+					}
+					long index;
+					if (fieldCount == 1) {
+						index = index1 = index1 * 10 + (b - '0');
+					} else {
+						index = index2 = index2 * 10 + (b - '0');
+					}
+					// Checked per digit so the long never overflows either
+					if (index > Integer.MAX_VALUE) {
+						throw new IOException("Edge list record number " + (recordNumber + 1) + " has a gene index larger than " + Integer.MAX_VALUE);
+					}
+				} else if (b == '\t' || b == ' ' || b == '\r') {
+					inField = false;
+				} else {
+					throw new IOException("Edge list record number " + (recordNumber + 1) + " has a non-numeric gene index");
+				}
+				++position;
+			}
+			++position;
+
+			if (fieldCount == 0) {
+				// Empty line
+				continue;
+			}
+
+			++recordNumber;
+			if (fieldCount != 2) {
+				throw new IOException("Edge list record number " + recordNumber + " has an unexpected number of fields: " + fieldCount);
+			}
+			builder.addEdge(toVertex((int) index1, recordNumber), toVertex((int) index2, recordNumber));
+		}
+
+		return recordNumber;
+	}
+
+	private int toVertex(int index, long recordNumber) throws IOException {
+		if (index < 0 || index >= indexToVertex.length || indexToVertex[index] < 0) {
+			throw new IOException("Edge list record number " + recordNumber + " refers to unknown gene index " + index);
+		}
+		return indexToVertex[index];
+	}
+}
@@ -0,0 +1,176 @@
+package io.github.pleyte.gmis.intermediate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.graph.GeneDictionary;
+
+/**
+ * Reads a tab delimited SIF file by memory mapping it and scanning the bytes for tabs and newlines. Gene symbols are
+ * interned straight from the mapped buffer so no String or record object is created per line.
+ *
+ * The file is read the same way <code>CSVFormat.TDF</code> reads it: empty lines are ignored, spaces around fields are
+ * trimmed and lines may end in LF or CRLF. Quoted fields are not supported since SIF files don't use them.
+ *
+ * @author pleyte
+ *
+ */
+public class MappedSifReader {
+
+	/**
+	 * Files larger than this are mapped one window at a time
+	 */
+	private static final int WINDOW_SIZE = 1 << 30;
+
+	private MappedSifReader() {
+	}
+
+	/**
+	 * Add the vertices and edges of a SIF file to the graph builder
+	 *
+	 * @param sifFile
+	 * @param builder
+	 * @throws IOException
+	 */
+	public static void read(Path sifFile, CsrGraph.Builder builder) throws IOException {
+		try (FileChannel channel = FileChannel.open(sifFile, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			long recordNumber = 0;
+
+			while (position < size) {
+				int length = (int) Math.min(WINDOW_SIZE, size - position);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+				// Only parse whole lines; a line cut by the end of the window is read again
+				// at the start of the next one
+				int end = position + length == size ? length : afterLastNewline(buffer, 0, length);
+				if (end == 0) {
+					throw new IOException("SIF file " + sifFile + " has a line longer than " + WINDOW_SIZE + " bytes at offset " + position);
+				}
+
+				recordNumber = parse(buffer, 0, end, builder, recordNumber);
+				position += end;
+			}
+		}
+	}
+
+	/**
+	 * Return the index just past the last newline in the range, or
+	 * <code>start</code> if the range has no newline
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	static int afterLastNewline(ByteBuffer buffer, int start, int end) {
+		for (int i = end - 1; i >= start; i--) {
+			if (buffer.get(i) == '\n') {
+				return i + 1;
+			}
+		}
+		return start;
+	}
+
+	/**
+	 * Parse the SIF lines in bytes <code>start</code> (inclusive) to
+	 * <code>end</code> (exclusive) of the buffer into the graph builder.
+	 * <code>start</code> must be at the beginning of a line.
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @param builder
+	 * @param recordNumber number of records read before this range, used in error
+	 *                     messages
+	 * @return the number of records read before and within this range
+	 * @throws IOException
+	 */
+	static long parse(ByteBuffer buffer, int start, int end, CsrGraph.Builder builder, long recordNumber) throws IOException {
+		GeneDictionary genes = builder.getGenes();
+
+		// Start and end of each of the three fields; a fourth field only needs counting
+		int[] fieldStart = new int[3];
+		int[] fieldEnd = new int[3];
+
+		int lineStart = start;
+		while (lineStart < end) {
+			int lineEnd = lineStart;
+			int fieldCount = 0;
+			fieldStart[0] = lineStart;
+			byte b = 0;
+			while (lineEnd < end && (b = buffer.get(lineEnd)) != '\n') {
+				if (b == '\t') {
+					if (fieldCount < 3) {
+						fieldEnd[fieldCount] = lineEnd;
+					}
+					++fieldCount;
+					if (fieldCount < 3) {
+						fieldStart[fieldCount] = lineEnd + 1;
+					}
+				}
+				++lineEnd;
+			}
+			if (fieldCount < 3) {
+				fieldEnd[fieldCount] = lineEnd;
+			}
+			++fieldCount;
+			int nextLineStart = lineEnd < end ? lineEnd + 1 : end;
+
+			// Trim surrounding spaces (and a trailing carriage return) from each field
+			for (int f = 0; f < Math.min(fieldCount, 3); f++) {
+				while (fieldStart[f] < fieldEnd[f] && isSpace(buffer.get(fieldStart[f]))) {
+					++fieldStart[f];
+				}
+				while (fieldEnd[f] > fieldStart[f] && isSpace(buffer.get(fieldEnd[f] - 1))) {
+					--fieldEnd[f];
+				}
+			}
+
+			if (fieldCount == 1 && fieldStart[0] == fieldEnd[0]) {
+				// Empty line
+				lineStart = nextLineStart;
+				continue;
+			}
+
+			++recordNumber;
+			if (fieldCount == 1) {
+				genes.intern(buffer, fieldStart[0], fieldEnd[0]);
+			} else if (fieldCount != 3) {
+				throw new IOException("SIF record number " + recordNumber + " has an unexpected number of fields: " + fieldCount);
+			} else if (!isBlankOrDash(buffer, fieldStart[1], fieldEnd[1])) {
+				// It seems the middle value can be "", " ", or "-".
+				throw new IOException("SIF record number " + recordNumber + " should have a dash in the middle instead of: " + decode(buffer, fieldStart[1], fieldEnd[1]));
+			} else {
+				int vertex1 = genes.intern(buffer, fieldStart[0], fieldEnd[0]);
+				int vertex2 = genes.intern(buffer, fieldStart[2], fieldEnd[2]);
+				builder.addEdge(vertex1, vertex2);
+			}
+
+			lineStart = nextLineStart;
+		}
+
+		return recordNumber;
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\r' || b == 0x0B || b == '\f';
+	}
+
+	private static boolean isBlankOrDash(ByteBuffer buffer, int start, int end) {
+		return start == end || (end - start == 1 && buffer.get(start) == '-');
+	}
+
+	private static String decode(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		buffer.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -5,17 +5,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Writer;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 
-import edu.uci.ics.jung.graph.Graph;
 import io.github.pleyte.gmis.NetworkAnalysis;
 import io.github.pleyte.gmis.PerformAnalysis;
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.graph.GeneDictionary;
+import io.github.pleyte.gmis.graph.GeneSymbolResolver;
 
 /**
  * This class generates the HotNet network index and edge list tab delimited
@@ -45,39 +48,77 @@ public class NetworkIndexAndEdgeCreator {
 	 * @throws Exception
 	 */
 	public static void main(String[] args) throws Exception {
-		NetworkIndexAndEdgeCreator networkIndexAndEdgeCreator = new NetworkIndexAndEdgeCreator();
-
 		URL geneNetworkSifFile = NetworkAnalysis.class.getClassLoader().getResource("gene_network.sif");
+		export(geneNetworkSifFile.getFile(), "network_1_index_gene.tsv", "network_1_edge_list.tsv");
+	}
+
+	/**
+	 * Load a SIF network and write its HotNet gene index and edge list files
+	 * 
+	 * @param sifFileName
+	 * @param geneIndexFileName
+	 * @param geneEdgeFileName
+	 * @throws Exception
+	 */
+	public static void export(String sifFileName, String geneIndexFileName, String geneEdgeFileName) throws Exception {
+		export(sifFileName, geneIndexFileName, geneEdgeFileName, GeneSymbolResolver.NONE);
+	}
 
-		Graph<String, String> graph = NetworkLoader.loadSifGraph(geneNetworkSifFile.getFile());
-		NetworkLoader.removeLoneVertices(graph);
+	/**
+	 * Load a SIF network and write its HotNet gene index and edge list files,
+	 * writing each gene under its approved symbol so that it matches the score
+	 * files
+	 * 
+	 * @param sifFileName
+	 * @param geneIndexFileName
+	 * @param geneEdgeFileName
+	 * @param resolver
+	 * @throws Exception
+	 */
+	public static void export(String sifFileName, String geneIndexFileName, String geneEdgeFileName, GeneSymbolResolver resolver) throws Exception {
+		NetworkIndexAndEdgeCreator networkIndexAndEdgeCreator = new NetworkIndexAndEdgeCreator();
 
-		Map<String, Integer> geneIndexMap = networkIndexAndEdgeCreator.saveGeneIndex(graph, "network_1_index_gene.tsv");
-		networkIndexAndEdgeCreator.saveEdgeList(graph, geneIndexMap, "network_1_edge_list.tsv");
+		CsrGraph graph = NetworkLoader.loadSifNetwork(sifFileName, ForkJoinPool.commonPool());
+		NetworkLoader.removeLoneVertices(graph.asJungGraph());
+
+		networkIndexAndEdgeCreator.saveGeneIndex(graph, geneIndexFileName, resolver);
+		networkIndexAndEdgeCreator.saveEdgeList(graph, geneEdgeFileName);
 	}
 
 	/**
 	 * Create the network gene index. Each line contains a number and a gene name
-	 * separated by a tab.
+	 * separated by a tab. The HotNet index of a gene is its vertex id plus one. A
+	 * gene is written under its approved symbol unless another vertex already has
+	 * that name.
 	 * 
 	 * @param graph
 	 * @param string
+	 * @param resolver
 	 * @throws IOException
 	 */
-	private Map<String, Integer> saveGeneIndex(Graph<String, String> graph, String geneIndexFileName) throws IOException {
-		Map<String, Integer> geneIndexMap = new HashMap<>();
-		int index = 1;
+	private void saveGeneIndex(CsrGraph graph, String geneIndexFileName, GeneSymbolResolver resolver) throws IOException {
+		GeneDictionary genes = graph.getGenes();
+		Set<String> names = new HashSet<>();
+		int renamed = 0;
 		try (Writer out = new FileWriter(geneIndexFileName)) {
 			CSVPrinter printer = CSVFormat.TDF.print(out);
-			for (String vertex : graph.getVertices()) {
-				geneIndexMap.put(vertex, index);
-				printer.printRecord(index, vertex);
-				++index;
+			for (int vertex = 0; vertex < graph.getVertexCount(); vertex++) {
+				String symbol = genes.getSymbol(vertex);
+				String name = resolver.resolve(symbol);
+				if (!name.equals(symbol) && (genes.getId(name) >= 0 || !names.add(name))) {
+					name = symbol;
+				} else if (!name.equals(symbol)) {
+					renamed++;
+				}
+				printer.printRecord(vertex + 1, name);
 			}
 		}
 
-		log.info("Wrote " + geneIndexMap.size() + " genes to index file " + geneIndexFileName);
-		return geneIndexMap;
+		if (renamed > 0) {
+			log.info("Wrote " + renamed + " genes under their approved symbols");
+		}
+
+		log.info("Wrote " + graph.getVertexCount() + " genes to index file " + geneIndexFileName);
 	}
 
 	/**
@@ -90,18 +131,21 @@ public class NetworkIndexAndEdgeCreator {
 	 * @param string
 	 * @throws IOException
 	 */
-	private void saveEdgeList(Graph<String, String> graph, Map<String, Integer> geneIndexMap, String geneEdgeFile) throws IOException {
+	private void saveEdgeList(CsrGraph graph, String geneEdgeFile) throws IOException {
 		int countVertexPairs = 0;
+		int[] offsets = graph.getOffsets();
+		int[] neighbours = graph.getNeighbours();
 
 		try (Writer out = new FileWriter(geneEdgeFile)) {
 			CSVPrinter printer = CSVFormat.TDF.print(out);
-			for (String sourceVertex : graph.getVertices()) {
-				for (String destinationVertex : graph.getNeighbors(sourceVertex)) {
-					if (destinationVertex.equals(sourceVertex)) {
-						log.severe("Ignoring self loop of " + destinationVertex);
+			for (int sourceVertex = 0; sourceVertex < graph.getVertexCount(); sourceVertex++) {
+				for (int i = offsets[sourceVertex]; i < offsets[sourceVertex + 1]; i++) {
+					int destinationVertex = neighbours[i];
+					if (destinationVertex == sourceVertex) {
+						log.severe("Ignoring self loop of " + graph.getGenes().getSymbol(destinationVertex));
 						continue;
 					}
-					printer.printRecord(geneIndexMap.get(sourceVertex), geneIndexMap.get(destinationVertex));
+					printer.printRecord(sourceVertex + 1, destinationVertex + 1);
 					++countVertexPairs;
 				}
 			}
@@ -1,34 +1,34 @@
 package io.github.pleyte.gmis.intermediate;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.apache.commons.collections15.Factory;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
-import org.xml.sax.SAXException;
 
-import edu.uci.ics.jung.algorithms.transformation.DirectionTransformer;
-import edu.uci.ics.jung.graph.DirectedSparseGraph;
 import edu.uci.ics.jung.graph.Graph;
-import edu.uci.ics.jung.graph.UndirectedGraph;
-import edu.uci.ics.jung.graph.UndirectedSparseGraph;
-import edu.uci.ics.jung.io.GraphMLReader;
 import io.github.pleyte.gmis.NetworkAnalysis;
 import io.github.pleyte.gmis.PerformAnalysis;
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.graph.CsrGraphSnapshot;
+import io.github.pleyte.gmis.instrumentation.StageTimer;
 
 public class NetworkLoader {
 
 	private static Logger log;
 
+	public static final String SNAPSHOT_ENABLED_PROPERTY = "gmis.snapshot";
+	public static final String SNAPSHOT_DIRECTORY_PROPERTY = "gmis.snapshot.dir";
+
 	static {
 		InputStream stream = PerformAnalysis.class.getClassLoader().getResourceAsStream("logging.properties");
 		try {
@@ -47,84 +47,270 @@ public class NetworkLoader {
 	 * @throws Exception
 	 */
 	public static Graph<String, String> loadSifGraph(String sifFileName) throws IOException {
-		Graph<String, String> graph = new UndirectedSparseGraph<>();
-
-		try (Reader in = new FileReader(sifFileName)) {
-			Iterable<CSVRecord> records = CSVFormat.TDF.parse(in);
-			int edgeNumber = 0;
-			for (CSVRecord record : records) {
-
-				// Individual nodes are placed at the top of the file; skip that section
-				//				if (record.size() < 3) {
-				//					continue;
-				if (record.size() == 1) {
-					graph.addVertex(record.get(0));
-				} else if (record.size() != 3) {
-					throw new IOException("SIF record number " + record.getRecordNumber() + " has an unexpected number of fields: " + record.size());
-				} else if (!"-".equals(record.get(1)) && !" ".equals(record.get(1)) && !"".equals(record.get(1))) {
-					// It seems the middle value can be "", " ", or "-".
-					throw new IOException("SIF record number " + record.getRecordNumber() + " should have a dash in the middle instead of: " + record.get(1));
-				} else {
-					graph.addEdge(String.valueOf(edgeNumber), record.get(0), record.get(2));
-				}
+		return loadSifNetwork(sifFileName).asJungGraph();
+	}
+
+	/**
+	 * Load an unidirected compressed sparse row graph from tab delimited SIF file.
+	 * The file is memory mapped and parsed without creating a String per line.
+	 * 
+	 * @param sifFileName
+	 * @return
+	 * @throws IOException
+	 */
+	public static CsrGraph loadSifNetwork(String sifFileName) throws IOException {
+		try (StageTimer timer = StageTimer.start("NetworkLoader.loadSifNetwork")) {
+			CsrGraph graph = loadWithSnapshot(sifFileName, () -> parseSifNetwork(sifFileName));
+			timer.addRecords(graph.getEdgeCount());
+			return graph;
+		}
+	}
 
-				++edgeNumber;
+	private static CsrGraph parseSifNetwork(String sifFileName) throws IOException {
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		MappedSifReader.read(Paths.get(sifFileName), builder);
+
+		CsrGraph graph = builder.build();
+		log.fine("Loaded " + graph.getVertexCount() + " vertices and " + graph.getEdgeCount() + " edges from " + sifFileName);
+		return graph;
+	}
+
+	/**
+	 * Load an unidirected compressed sparse row graph from tab delimited SIF file,
+	 * splitting the file into chunks which are parsed concurrently on the pool. The
+	 * graph is identical to the one {@link #loadSifNetwork(String)} returns.
+	 * 
+	 * @param sifFileName
+	 * @param pool
+	 * @return
+	 * @throws IOException
+	 */
+	public static CsrGraph loadSifNetwork(String sifFileName, ForkJoinPool pool) throws IOException {
+		try (StageTimer timer = StageTimer.start("NetworkLoader.loadSifNetwork")) {
+			CsrGraph graph = loadWithSnapshot(sifFileName, () -> parseSifNetwork(sifFileName, pool));
+			timer.addRecords(graph.getEdgeCount());
+			return graph;
+		}
+	}
+
+	private static CsrGraph parseSifNetwork(String sifFileName, ForkJoinPool pool) throws IOException {
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		try {
+			ChunkedNetworkReader.read(Paths.get(sifFileName), builder, CsrGraph.Builder::new, MappedSifReader::parse, pool);
+		} catch (IOException e) {
+			// Record numbers in chunk errors are relative to the chunk. Read the file
+			// sequentially so the error names the right record.
+			log.fine("Parallel read of " + sifFileName + " failed, reading it sequentially: " + e.getMessage());
+			return parseSifNetwork(sifFileName);
+		}
+
+		CsrGraph graph = builder.build();
+		log.fine("Loaded " + graph.getVertexCount() + " vertices and " + graph.getEdgeCount() + " edges from " + sifFileName);
+		return graph;
+	}
+
+	/**
+	 * Return the graph from the snapshot of the source file if there is an up to
+	 * date one, otherwise parse the source file and write a snapshot of it. The
+	 * snapshot is keyed by a hash of the source file's contents. Snapshots are
+	 * written to the directory named by the <code>gmis.snapshot.dir</code> system
+	 * property (default <code>${java.io.tmpdir}/gmis-snapshots</code>) and can be
+	 * turned off with <code>-Dgmis.snapshot=false</code>.
+	 * 
+	 * @param sourceFileName
+	 * @param parser
+	 * @return
+	 * @throws IOException
+	 */
+	private static CsrGraph loadWithSnapshot(String sourceFileName, NetworkParser parser) throws IOException {
+		if (!Boolean.parseBoolean(System.getProperty(SNAPSHOT_ENABLED_PROPERTY, "true"))) {
+			return parser.parse();
+		}
+
+		byte[] sourceHash = CsrGraphSnapshot.hash(Paths.get(sourceFileName));
+		Path snapshotFile = getSnapshotFile(sourceFileName, sourceHash);
+		try {
+			CsrGraph graph = CsrGraphSnapshot.read(snapshotFile, sourceHash);
+			if (graph != null) {
+				log.fine("Loaded " + graph.getVertexCount() + " vertices and " + graph.getEdgeCount() + " edges from snapshot " + snapshotFile);
+				return graph;
 			}
+		} catch (IOException e) {
+			log.warning("Ignoring unreadable network snapshot " + snapshotFile + ": " + e.getMessage());
 		}
 
+		CsrGraph graph = parser.parse();
+		try {
+			CsrGraphSnapshot.write(graph, snapshotFile, sourceHash);
+			log.fine("Wrote network snapshot " + snapshotFile);
+		} catch (IOException e) {
+			log.warning("Unable to write network snapshot " + snapshotFile + ": " + e.getMessage());
+		}
 		return graph;
 	}
 
+	private static Path getSnapshotFile(String sourceFileName, byte[] sourceHash) {
+		String directory = System.getProperty(SNAPSHOT_DIRECTORY_PROPERTY, Paths.get(System.getProperty("java.io.tmpdir"), "gmis-snapshots").toString());
+		StringBuilder name = new StringBuilder(Paths.get(sourceFileName).getFileName().toString()).append('.');
+		for (int i = 0; i < 8; i++) {
+			name.append(String.format("%02x", sourceHash[i]));
+		}
+		return Paths.get(directory, name.append(".csr").toString());
+	}
+
 	/**
-	 * Load a graph from a GraphML file
+	 * Parses a network from its source file
+	 */
+	private interface NetworkParser {
+		CsrGraph parse() throws IOException;
+	}
+
+	/**
+	 * Load the network from the HotNet gene index and edge list files written by
+	 * {@link NetworkIndexAndEdgeCreator}
 	 * 
-	 * @param graphMlFileName
+	 * @param indexFileName
+	 * @param edgeListFileName
 	 * @return
-	 * @throws ParserConfigurationException
-	 * @throws SAXException
 	 * @throws IOException
 	 */
-	public static Graph<String, String> loadGraphMl(String graphMlFileName) throws ParserConfigurationException, SAXException, IOException {
-		GraphMLReader<Graph<String, String>, String, String> gmlr = new GraphMLReader<>(null, new EdgeFactory());
+	public static CsrGraph loadHotNetNetwork(String indexFileName, String edgeListFileName) throws IOException {
+		try (StageTimer timer = StageTimer.start("NetworkLoader.loadHotNetNetwork")) {
+			CsrGraph graph = parseHotNetNetwork(indexFileName, edgeListFileName);
+			timer.addRecords(graph.getEdgeCount());
+			return graph;
+		}
+	}
+
+	private static CsrGraph parseHotNetNetwork(String indexFileName, String edgeListFileName) throws IOException {
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		MappedEdgeListReader reader = new MappedEdgeListReader(loadGeneIndex(indexFileName, builder));
+		reader.read(Paths.get(edgeListFileName), builder);
+
+		CsrGraph graph = builder.build();
+		log.fine("Loaded " + graph.getVertexCount() + " vertices and " + graph.getEdgeCount() + " edges from " + edgeListFileName);
+		return graph;
+	}
 
-		try (Reader reader = new BufferedReader(new InputStreamReader(NetworkAnalysis.class.getClassLoader().getResourceAsStream(graphMlFileName)))) {
-			// The graphml file defines a directed graph
-			Graph<String, String> graph = new DirectedSparseGraph<>();
-			gmlr.load(reader, graph);
+	/**
+	 * Load the network from the HotNet gene index and edge list files, parsing
+	 * chunks of the edge list concurrently on the pool. The graph is identical to
+	 * the one {@link #loadHotNetNetwork(String, String)} returns.
+	 * 
+	 * @param indexFileName
+	 * @param edgeListFileName
+	 * @param pool
+	 * @return
+	 * @throws IOException
+	 */
+	public static CsrGraph loadHotNetNetwork(String indexFileName, String edgeListFileName, ForkJoinPool pool) throws IOException {
+		try (StageTimer timer = StageTimer.start("NetworkLoader.loadHotNetNetwork")) {
+			CsrGraph graph = parseHotNetNetwork(indexFileName, edgeListFileName, pool);
+			timer.addRecords(graph.getEdgeCount());
+			return graph;
+		}
+	}
 
-			// convert to undirected and return
-			return DirectionTransformer.toUndirected(graph, new GraphFactory(), new EdgeFactory(), true);
+	private static CsrGraph parseHotNetNetwork(String indexFileName, String edgeListFileName, ForkJoinPool pool) throws IOException {
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		MappedEdgeListReader reader = new MappedEdgeListReader(loadGeneIndex(indexFileName, builder));
+		try {
+			// The genes are all known from the index so the chunks share the dictionary
+			// and only add edges
+			ChunkedNetworkReader.read(Paths.get(edgeListFileName), builder, () -> new CsrGraph.Builder(builder.getGenes()), reader::parse, pool);
+		} catch (IOException e) {
+			log.fine("Parallel read of " + edgeListFileName + " failed, reading it sequentially: " + e.getMessage());
+			return parseHotNetNetwork(indexFileName, edgeListFileName);
 		}
+
+		CsrGraph graph = builder.build();
+		log.fine("Loaded " + graph.getVertexCount() + " vertices and " + graph.getEdgeCount() + " edges from " + edgeListFileName);
+		return graph;
 	}
 
 	/**
-	 * static class that defines edge names because Cytsocape doesn't provide edge
-	 * ids
+	 * Read the HotNet gene index file, adding each gene to the builder in file
+	 * order
 	 * 
-	 * @author pleyte
-	 *
+	 * @param indexFileName
+	 * @param builder
+	 * @return an array that maps each HotNet index to a vertex id, or to -1 for
+	 *         unused indexes
+	 * @throws IOException
 	 */
-	static class EdgeFactory implements Factory<String> {
-		int i = 0;
+	private static int[] loadGeneIndex(String indexFileName, CsrGraph.Builder builder) throws IOException {
+		int[] indexToVertex = new int[1024];
+		Arrays.fill(indexToVertex, -1);
+
+		try (Reader in = new FileReader(indexFileName)) {
+			for (CSVRecord record : CSVFormat.TDF.parse(in)) {
+				if (record.size() != 2) {
+					throw new IOException("Gene index record number " + record.getRecordNumber() + " has an unexpected number of fields: " + record.size());
+				}
+
+				int index;
+				try {
+					index = Integer.parseInt(record.get(0));
+				} catch (NumberFormatException e) {
+					throw new IOException("Gene index record number " + record.getRecordNumber() + " has a non-numeric index: " + record.get(0));
+				}
+				if (index < 0) {
+					throw new IOException("Gene index record number " + record.getRecordNumber() + " has a negative index: " + index);
+				}
 
-		@Override
-		public String create() {
-			return String.valueOf(i++);
+				if (index >= indexToVertex.length) {
+					int oldLength = indexToVertex.length;
+					indexToVertex = Arrays.copyOf(indexToVertex, Math.max(oldLength * 2, index + 1));
+					Arrays.fill(indexToVertex, oldLength, indexToVertex.length, -1);
+				}
+				indexToVertex[index] = builder.addVertex(record.get(1));
+			}
 		}
+
+		return indexToVertex;
+	}
+
+	/**
+	 * Load a graph from a GraphML file
+	 * 
+	 * @param graphMlFileName
+	 * @return
+	 * @throws IOException
+	 */
+	public static Graph<String, String> loadGraphMl(String graphMlFileName) throws IOException {
+		return loadGraphMlNetwork(graphMlFileName).asJungGraph();
 	}
 
 	/**
+	 * Load an undirected compressed sparse row graph from a GraphML file on the
+	 * classpath. The file is streamed straight into the graph rather than being
+	 * read into a directed graph and then copied into an undirected one.
 	 * 
-	 * @author pleyte
-	 *
+	 * @param graphMlFileName
+	 * @return
+	 * @throws IOException
 	 */
-	static class GraphFactory implements Factory<UndirectedGraph<String, String>> {
+	public static CsrGraph loadGraphMlNetwork(String graphMlFileName) throws IOException {
+		try (StageTimer timer = StageTimer.start("NetworkLoader.loadGraphMlNetwork")) {
+			CsrGraph graph = parseGraphMlNetwork(graphMlFileName);
+			timer.addRecords(graph.getEdgeCount());
+			return graph;
+		}
+	}
 
-		@Override
-		public UndirectedGraph<String, String> create() {
-			return new UndirectedSparseGraph<>();
+	private static CsrGraph parseGraphMlNetwork(String graphMlFileName) throws IOException {
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+
+		try (InputStream in = NetworkAnalysis.class.getClassLoader().getResourceAsStream(graphMlFileName)) {
+			if (in == null) {
+				throw new IOException("Unable to locate GraphML file: " + graphMlFileName);
+			}
+			StaxGraphMlReader.read(new BufferedInputStream(in), builder);
 		}
 
+		CsrGraph graph = builder.build();
+		log.fine("Loaded " + graph.getVertexCount() + " vertices and " + graph.getEdgeCount() + " edges from " + graphMlFileName);
+		return graph;
 	}
 
 	public static Graph<String, String> removeLoneVertices(Graph<String, String> graph) throws Exception {
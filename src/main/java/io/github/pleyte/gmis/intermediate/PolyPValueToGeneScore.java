@@ -1,22 +1,21 @@
 package io.github.pleyte.gmis.intermediate;
 
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Reader;
-import java.io.Writer;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
-
 import io.github.pleyte.gmis.PerformAnalysis;
+import io.github.pleyte.gmis.graph.GeneDictionary;
+import io.github.pleyte.gmis.graph.GeneSymbolResolver;
+import io.github.pleyte.gmis.instrumentation.StageTimer;
+import io.github.pleyte.gmis.score.ConflictPolicy;
+import io.github.pleyte.gmis.score.GeneScoreConsumer;
+import io.github.pleyte.gmis.score.GeneScoreMap;
+import io.github.pleyte.gmis.score.GeneScoreSource;
+import io.github.pleyte.gmis.score.GeneScoreWriter;
+import io.github.pleyte.gmis.score.ScoreColumnReader;
+import io.github.pleyte.gmis.score.ScoreTransform;
 
 /**
  * This class takes the data extracted from Table 3 of "Polygenic Risk Score,
@@ -28,10 +27,13 @@ import io.github.pleyte.gmis.PerformAnalysis;
  * listed more than once. The p-values are converted to z-scores and they
  * highest z-score for each pvalue is selected.
  * 
+ * The class is a {@link GeneScoreSource} which passes on every p-value; the
+ * maximum is kept when the scores are collected.
+ * 
  * @author pleyte
  *
  */
-public class PolyPValueToGeneScore {
+public class PolyPValueToGeneScore implements GeneScoreSource {
 	private static Logger log;
 
 	static {
@@ -44,72 +46,79 @@ public class PolyPValueToGeneScore {
 		}
 	}
 
-	public static void main(String[] args) throws IOException {
-		PolyPValueToGeneScore ppvToZ = new PolyPValueToGeneScore();
-		Map<String, Double> geneScore = ppvToZ.load("/Users/pleyte/git/gene-modules-in-schizophreina/data/PolygenicRiskScore_files/table3_data.csv");
-		ppvToZ.save(geneScore, "/Users/pleyte/git/gene-modules-in-schizophreina/data/PolygenicRiskScore_files/scores_2.tsv");
+	private final String inFile;
+
+	/**
+	 * 
+	 * @param inFile CSV file of genes and p-values
+	 */
+	public PolyPValueToGeneScore(String inFile) {
+		this.inFile = inFile;
 	}
 
 	/**
-	 * Write the converted p-scores out to tab delimited file
 	 * 
-	 * @param outFile
+	 * @param args optional input file and score file, relative to the working
+	 *             directory (default: the files in data/PolygenicRiskScore_files)
 	 * @throws IOException
 	 */
-	private void save(Map<String, Double> geneScore, String outFile) throws IOException {
-		try (Writer out = new FileWriter(outFile)) {
-			CSVPrinter printer = CSVFormat.TDF.print(out);
-			for (Entry<String, Double> entry : geneScore.entrySet()) {
-				printer.printRecord(entry.getKey(), entry.getValue());
-			}
+	public static void main(String[] args) throws IOException {
+		if (args.length == 2) {
+			convert(args[0], args[1]);
+		} else {
+			convert("data/PolygenicRiskScore_files/table3_data.csv", "data/PolygenicRiskScore_files/scores_2.tsv");
 		}
-
-		log.info("Wrote gene scores to " + outFile);
 	}
 
 	/**
-	 * return -log10(value)
+	 * Convert the Table 3 p-values to gene scores and write them to a HotNet score
+	 * file
 	 * 
-	 * @param pValue
-	 * @return
+	 * @param inFile
+	 * @param outFile
+	 * @throws IOException
 	 */
-	private Double getScore(String pValue) {
-		return -1.0 * Math.log10(Double.valueOf(pValue));
+	public static void convert(String inFile, String outFile) throws IOException {
+		convert(inFile, outFile, GeneSymbolResolver.NONE);
 	}
 
 	/**
-	 * Read comma separate list of genes and p-values. Convert p-values to a score
-	 * by applying -log10(p-value).
+	 * Convert the Table 3 p-values to gene scores, resolving each gene to its
+	 * approved symbol, and write them to a HotNet score file
 	 * 
 	 * @param inFile
+	 * @param outFile
+	 * @param resolver
 	 * @throws IOException
 	 */
-	private Map<String, Double> load(String inFile) throws IOException {
-		Map<String, Double> geneScore = new HashMap<>();
-
-		try (Reader in = new FileReader(inFile)) {
-			Iterable<CSVRecord> records = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in);
-
-			for (CSVRecord record : records) {
-				String gene = record.get("gene");
-				String pValue = record.get("p_value");
-				Double score = getScore(pValue);
-
-				if (gene.contains(" ")) {
-					throw new IOException("Encountered space in gene named " + gene);
-				}
-
-				if (geneScore.get(gene) == null) {
-					log.info("Accepting default for " + gene + ": pValue=" + pValue + ", score=" + score);
-					geneScore.put(gene, score);
-				} else if (score > geneScore.get(gene)) {
-					log.info("Update score for " + gene + ": pValue=" + pValue + ", old score=" + geneScore.get(gene) + ", new score=" + score);
-					geneScore.put(gene, Double.valueOf(score));
-				}
-			}
+	public static void convert(String inFile, String outFile, GeneSymbolResolver resolver) throws IOException {
+		try (StageTimer timer = StageTimer.start("PolyPValueToGeneScore.convert")) {
+			GeneScoreMap geneScore = GeneScoreMap.load(new PolyPValueToGeneScore(inFile), new GeneDictionary(resolver), ConflictPolicy.MAXIMUM);
+			GeneScoreWriter.save(geneScore, outFile);
+			log.info("Wrote gene scores to " + outFile);
+			timer.addRecords(geneScore.size());
 		}
+	}
 
-		return geneScore;
+	@Override
+	public String getName() {
+		return "Polygenic risk score table 3 " + inFile;
+	}
+
+	/**
+	 * Read comma separate list of genes and p-values. Convert p-values to a score
+	 * by applying -log10(p-value). A gene listed more than once is passed on once
+	 * for each p-value.
+	 * 
+	 * @param genes
+	 * @param consumer
+	 * @throws IOException
+	 */
+	@Override
+	public void read(GeneDictionary genes, GeneScoreConsumer consumer) throws IOException {
+		ScoreColumnReader reader = new ScoreColumnReader(inFile, "gene", "p_value");
+		reader.setTransforms(ScoreTransform.NEGATIVE_LOG10);
+		reader.read(genes, consumer);
 	}
 
 }
@@ -1,22 +1,25 @@
 package io.github.pleyte.gmis.intermediate;
 
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
-import java.io.Writer;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.lang3.StringUtils;
 
+import io.github.pleyte.gmis.graph.GeneDictionary;
+import io.github.pleyte.gmis.graph.GeneSymbolResolver;
+import io.github.pleyte.gmis.instrumentation.StageTimer;
+import io.github.pleyte.gmis.score.ConflictPolicy;
+import io.github.pleyte.gmis.score.GeneScoreConsumer;
+import io.github.pleyte.gmis.score.GeneScoreMap;
+import io.github.pleyte.gmis.score.GeneScoreSource;
+import io.github.pleyte.gmis.score.GeneScoreWriter;
+
 
 
 /**
@@ -26,7 +29,7 @@ import org.apache.commons.lang3.StringUtils;
  * @author pleyte
  *
  */
-public class SfariToGeneScore {
+public class SfariToGeneScore implements GeneScoreSource {
 
 	private static Logger log;
 
@@ -40,35 +43,76 @@ public class SfariToGeneScore {
 		}
 	}
 
-	public static void main(String[] args) throws Exception {
-		SfariToGeneScore sfariToGs = new SfariToGeneScore();
-		Map<String, Integer> geneScoreMap = sfariToGs.load("/Users/pleyte/git/gene-modules-in-schizophreina/data/SFARI/SFARI-Gene_genes_03-04-2020release_03-06-2020export.csv");
-		sfariToGs.save(geneScoreMap, "/Users/pleyte/git/gene-modules-in-schizophreina/data/SFARI/scores_3.tsv");
+	private final String inFile;
+
+	/**
+	 * 
+	 * @param inFile SFARI gene export
+	 */
+	public SfariToGeneScore(String inFile) {
+		this.inFile = inFile;
 	}
 
-	private void save(Map<String, Integer> geneScoreMap, String outFile) throws IOException {
-		try (Writer out = new FileWriter(outFile)) {
-			CSVPrinter printer = CSVFormat.TDF.print(out);
-			for (Entry<String, Integer> entry : geneScoreMap.entrySet()) {
-				printer.printRecord(entry.getKey(), entry.getValue());
-			}
+	/**
+	 * 
+	 * @param args optional SFARI export and score file, relative to the working
+	 *             directory (default: the files in data/SFARI)
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length == 2) {
+			convert(args[0], args[1]);
+		} else {
+			convert("data/SFARI/SFARI-Gene_genes_03-04-2020release_03-06-2020export.csv", "data/SFARI/scores_3.tsv");
 		}
+	}
 
-		log.info("Wrote gene scores to " + outFile);
+	/**
+	 * Convert the SFARI gene export to gene scores and write them to a HotNet score
+	 * file
+	 * 
+	 * @param inFile
+	 * @param outFile
+	 * @throws Exception
+	 */
+	public static void convert(String inFile, String outFile) throws Exception {
+		convert(inFile, outFile, GeneSymbolResolver.NONE);
 	}
 
 	/**
-	 * Load the SFARI database
+	 * Convert the SFARI gene export to gene scores, resolving each gene to its
+	 * approved symbol, and write them to a HotNet score file
 	 * 
-	 * @param string
+	 * @param inFile
+	 * @param outFile
+	 * @param resolver
 	 * @throws Exception
 	 */
-	private Map<String, Integer> load(String inFile) throws Exception {
-		Map<String, Integer> geneScoreMap = new HashMap<>();
+	public static void convert(String inFile, String outFile, GeneSymbolResolver resolver) throws Exception {
+		try (StageTimer timer = StageTimer.start("SfariToGeneScore.convert")) {
+			GeneScoreMap geneScoreMap = GeneScoreMap.load(new SfariToGeneScore(inFile), new GeneDictionary(resolver), ConflictPolicy.FAIL);
+			GeneScoreWriter.save(geneScoreMap, outFile);
+			log.info("Wrote gene scores to " + outFile);
+			timer.addRecords(geneScoreMap.size());
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "SFARI " + inFile;
+	}
 
+	/**
+	 * Load the SFARI database
+	 * 
+	 * @param genes
+	 * @param consumer
+	 * @throws IOException
+	 */
+	@Override
+	public void read(GeneDictionary genes, GeneScoreConsumer consumer) throws IOException {
 		try (Reader in = new FileReader(inFile)) {
 			Iterable<CSVRecord> records = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in);
-			geneScoreMap = new HashMap<>();
 
 			for (CSVRecord record : records) {
 				String gene = record.get("gene-symbol");
@@ -76,21 +120,14 @@ public class SfariToGeneScore {
 				boolean isSyndromic = "1".equals(record.get("syndromic"));
 
 				if (geneScore == null && !isSyndromic) {
-					throw new Exception("No score or syndromic indicator for " + gene);
+					throw new IOException("No score or syndromic indicator for " + gene);
 				}
 
 				int score = getScore(geneScore, isSyndromic);
-
-				if (geneScoreMap.get(gene) == null) {
-					log.info(gene + ": geneScore=" + geneScore + ", syndromic=" + isSyndromic + ", finalScore=" + score);
-					geneScoreMap.put(gene, score);
-				} else {
-					throw new Exception("Found duplicate gene");
-				}
+				log.info(gene + ": geneScore=" + geneScore + ", syndromic=" + isSyndromic + ", finalScore=" + score);
+				consumer.accept(genes.intern(gene), score);
 			}
 		}
-
-		return geneScoreMap;
 	}
 
 	/**
@@ -100,9 +137,9 @@ public class SfariToGeneScore {
 	 * @param geneScoreMap
 	 * @param isSyndromic
 	 * @return
-	 * @throws Exception
+	 * @throws IOException
 	 */
-	private int getScore(String geneScore, boolean isSyndromic) throws Exception {
+	private int getScore(String geneScore, boolean isSyndromic) throws IOException {
 		if (StringUtils.isBlank(geneScore) && isSyndromic) {
 			return 100;
 		} else if ("1".equals(geneScore)) {
@@ -112,8 +149,7 @@ public class SfariToGeneScore {
 		} else if ("3".equals(geneScore)) {
 			return isSyndromic ? 50 : 40;
 		} else {
-			throw new Exception("Unrecognized score: " + geneScore + ", syndromic=" + isSyndromic);
+			throw new IOException("Unrecognized score: " + geneScore + ", syndromic=" + isSyndromic);
 		}
 	}
 }
-
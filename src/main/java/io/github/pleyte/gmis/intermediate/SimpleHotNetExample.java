@@ -3,8 +3,6 @@ package io.github.pleyte.gmis.intermediate;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Paint;
-import java.util.ArrayList;
-import java.util.List;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -14,11 +12,12 @@ import org.apache.commons.collections15.Transformer;
 
 import edu.uci.ics.jung.algorithms.layout.KKLayout;
 import edu.uci.ics.jung.algorithms.layout.Layout;
-import edu.uci.ics.jung.algorithms.scoring.PageRank;
 import edu.uci.ics.jung.graph.Graph;
 import edu.uci.ics.jung.graph.UndirectedSparseGraph;
 import edu.uci.ics.jung.visualization.VisualizationImageServer;
 import edu.uci.ics.jung.visualization.decorators.ToStringLabeller;
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.graph.CsrPageRank;
 
 public class SimpleHotNetExample {
 
@@ -66,17 +65,19 @@ public class SimpleHotNetExample {
 	}
 
 	private void showPageRanks(Graph<String, String> graph) {
-		PageRank<String, String> pageRank = new PageRank<>(graph, 0.1);
-		pageRank.evaluate();
-		List<Double> pageRankVertexScore = new ArrayList<>();
-		for (String node : graph.getVertices()) {
-			System.out.println(node + " with " + graph.getNeighborCount(node) + " neighbours has page rank " + pageRank.getVertexScore(node));
-			if (graph.getNeighborCount(node) > 0) {
-				pageRankVertexScore.add(pageRank.getVertexScore(node));
+		CsrGraph network = CsrGraph.of(graph);
+		double[] scores = new CsrPageRank(network).rank().getScores();
+		double sum = 0;
+		int connected = 0;
+		for (int v = 0; v < network.getVertexCount(); v++) {
+			System.out.println(network.getGenes().getSymbol(v) + " with " + network.degree(v) + " neighbours has page rank " + scores[v]);
+			if (network.degree(v) > 0) {
+				sum += scores[v];
+				++connected;
 			}
 		}
 
-		System.out.println("Average page rank=" + pageRankVertexScore.stream().mapToDouble(x -> x.doubleValue()).average().getAsDouble());
+		System.out.println("Average page rank=" + sum / connected);
 	}
 
 	private Graph<String, String> createGraph() {
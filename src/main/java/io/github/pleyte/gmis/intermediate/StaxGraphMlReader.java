@@ -0,0 +1,77 @@
+package io.github.pleyte.gmis.intermediate;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import io.github.pleyte.gmis.graph.CsrGraph;
+
+/**
+ * Streams a GraphML file (such as a Cytoscape export) into an undirected graph builder in a single pass. Only the
+ * <code>node</code> and <code>edge</code> elements are read; node ids become gene names just as they do with JUNG's
+ * <code>GraphMLReader</code>. Directed edges are treated as undirected, so reciprocal edges collapse into one when the
+ * graph is built.
+ *
+ * @author pleyte
+ *
+ */
+public class StaxGraphMlReader {
+	private static final String ELEMENT_NODE = "node";
+	private static final String ELEMENT_EDGE = "edge";
+
+	private StaxGraphMlReader() {
+	}
+
+	/**
+	 * Add the nodes and edges of a GraphML document to the graph builder
+	 *
+	 * @param in
+	 * @param builder
+	 * @throws IOException
+	 */
+	public static void read(InputStream in, CsrGraph.Builder builder) throws IOException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+
+		XMLStreamReader reader = null;
+		try {
+			reader = factory.createXMLStreamReader(in);
+			while (reader.hasNext()) {
+				if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+
+				String element = reader.getLocalName();
+				if (ELEMENT_NODE.equals(element)) {
+					builder.addVertex(getRequiredAttribute(reader, "id"));
+				} else if (ELEMENT_EDGE.equals(element)) {
+					builder.addEdge(getRequiredAttribute(reader, "source"), getRequiredAttribute(reader, "target"));
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Unable to parse GraphML: " + e.getMessage(), e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// The underlying stream is closed by the caller
+				}
+			}
+		}
+	}
+
+	private static String getRequiredAttribute(XMLStreamReader reader, String name) throws IOException {
+		String value = reader.getAttributeValue(null, name);
+		if (value == null) {
+			throw new IOException("GraphML " + reader.getLocalName() + " at line " + reader.getLocation().getLineNumber() + " has no " + name + " attribute");
+		}
+		return value;
+	}
+}
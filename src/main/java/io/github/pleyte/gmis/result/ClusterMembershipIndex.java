@@ -0,0 +1,187 @@
+package io.github.pleyte.gmis.result;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import io.github.pleyte.gmis.bean.NetworkScore;
+import io.github.pleyte.gmis.graph.GeneDictionary;
+import io.github.pleyte.gmis.graph.GeneSet;
+
+/**
+ * Inverted index of the HotNet clusters of several score sets: for each gene, the cluster it belongs to in each score
+ * set and a bitmask of the score sets it is clustered in. Genes are interned in a {@link GeneDictionary} and the index is
+ * held in primitive arrays keyed by gene id, so a membership query is one dictionary lookup and one array read.
+ *
+ * The index is built once and not changed afterwards, so it can be queried from any thread, such as the painting
+ * thread of a visualisation.
+ *
+ * @author pleyte
+ *
+ */
+public class ClusterMembershipIndex {
+	/**
+	 * Cluster index returned for a gene which is not in any cluster of a score set
+	 */
+	public static final int NO_CLUSTER = -1;
+
+	private static final int MAXIMUM_SCORE_SETS = Long.SIZE;
+
+	private final GeneDictionary genes;
+
+	// clusterOf[s][gene] is the index of the gene's cluster in score set s
+	private final int[][] clusterOf;
+	private final long[] scoreSetMasks;
+	private final int[] clusterCounts;
+
+	/**
+	 *
+	 * @param scoreSets clusters of each score set; the position of a score set in
+	 *                  the list is its number in the bitmask
+	 */
+	public ClusterMembershipIndex(List<NetworkScore> scoreSets) {
+		if (scoreSets.size() > MAXIMUM_SCORE_SETS) {
+			throw new IllegalArgumentException("At most " + MAXIMUM_SCORE_SETS + " score sets can be indexed: " + scoreSets.size());
+		}
+		genes = new GeneDictionary();
+		for (NetworkScore scoreSet : scoreSets) {
+			for (Set<String> cluster : scoreSet.getClusters()) {
+				for (String gene : cluster) {
+					genes.intern(gene);
+				}
+			}
+		}
+
+		clusterOf = new int[scoreSets.size()][genes.size()];
+		scoreSetMasks = new long[genes.size()];
+		clusterCounts = new int[scoreSets.size()];
+		for (int s = 0; s < scoreSets.size(); s++) {
+			Arrays.fill(clusterOf[s], NO_CLUSTER);
+			List<Set<String>> clusters = scoreSets.get(s).getClusters();
+			clusterCounts[s] = clusters.size();
+			for (int c = 0; c < clusters.size(); c++) {
+				for (String gene : clusters.get(c)) {
+					int id = genes.getId(gene);
+					clusterOf[s][id] = c;
+					scoreSetMasks[id] |= 1L << s;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the dictionary of the clustered genes. It must not be modified.
+	 *
+	 * @return
+	 */
+	public GeneDictionary getDictionary() {
+		return genes;
+	}
+
+	public int getScoreSetCount() {
+		return clusterOf.length;
+	}
+
+	/**
+	 * Return the index of the gene's cluster in a score set, or
+	 * {@link #NO_CLUSTER}
+	 *
+	 * @param gene
+	 * @param scoreSet position of the score set, from zero
+	 * @return
+	 */
+	public int getCluster(String gene, int scoreSet) {
+		int id = genes.getId(gene);
+		return id < 0 ? NO_CLUSTER : clusterOf[scoreSet][id];
+	}
+
+	/**
+	 * Return the bitmask of the score sets the gene is clustered in, where bit
+	 * <code>s</code> is set for score set <code>s</code>
+	 *
+	 * @param gene
+	 * @return
+	 */
+	public long getScoreSetMask(String gene) {
+		int id = genes.getId(gene);
+		return id < 0 ? 0 : scoreSetMasks[id];
+	}
+
+	/**
+	 * Return the bitmask of the score sets the gene with the dictionary id is
+	 * clustered in
+	 *
+	 * @param id
+	 * @return
+	 */
+	public long getScoreSetMask(int id) {
+		return scoreSetMasks[id];
+	}
+
+	/**
+	 * Return true if the gene is in a cluster of the score set
+	 *
+	 * @param gene
+	 * @param scoreSet position of the score set, from zero
+	 * @return
+	 */
+	public boolean isClustered(String gene, int scoreSet) {
+		return (getScoreSetMask(gene) & (1L << scoreSet)) != 0;
+	}
+
+	/**
+	 * Return the number of distinct genes clustered in a score set
+	 *
+	 * @param scoreSet position of the score set, from zero
+	 * @return
+	 */
+	public int getGeneCount(int scoreSet) {
+		long bit = 1L << scoreSet;
+		int count = 0;
+		for (long mask : scoreSetMasks) {
+			if ((mask & bit) != 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Return the genes clustered in a score set
+	 *
+	 * @param scoreSet position of the score set, from zero
+	 * @return set over {@link #getDictionary()}
+	 */
+	public GeneSet getGeneSet(int scoreSet) {
+		long bit = 1L << scoreSet;
+		GeneSet set = new GeneSet(genes);
+		for (int id = 0; id < scoreSetMasks.length; id++) {
+			if ((scoreSetMasks[id] & bit) != 0) {
+				set.add(id);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Return the genes of each cluster of a score set, in the order of the
+	 * clusters
+	 *
+	 * @param scoreSet position of the score set, from zero
+	 * @return sets over {@link #getDictionary()}
+	 */
+	public List<GeneSet> getClusterGeneSets(int scoreSet) {
+		List<GeneSet> clusters = new ArrayList<>(clusterCounts[scoreSet]);
+		for (int c = 0; c < clusterCounts[scoreSet]; c++) {
+			clusters.add(new GeneSet(genes));
+		}
+		int[] clusterOfGene = clusterOf[scoreSet];
+		for (int id = 0; id < clusterOfGene.length; id++) {
+			if (clusterOfGene[id] != NO_CLUSTER) {
+				clusters.get(clusterOfGene[id]).add(id);
+			}
+		}
+		return clusters;
+	}
+}
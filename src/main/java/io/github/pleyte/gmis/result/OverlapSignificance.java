@@ -0,0 +1,470 @@
+package io.github.pleyte.gmis.result;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.util.CombinatoricsUtils;
+
+import io.github.pleyte.gmis.bean.NetworkScore;
+import io.github.pleyte.gmis.bean.OverlapStatistics;
+import io.github.pleyte.gmis.bean.OverlapStatistics.PermutationNull;
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.graph.GeneSet;
+import io.github.pleyte.gmis.hotnet.PermutationTest;
+
+/**
+ * Tests whether the clusters of two HotNet runs, such as a schizophrenia and an autism score set, overlap more than
+ * expected by chance. The genes of both runs are taken to be drawn from the genes of the network. The number of shared
+ * genes is given an exact hypergeometric p-value, computed in log space so that very small p-values do not underflow.
+ * Both the shared genes and the number of pairs of clusters which share a gene are then compared with two permutation
+ * nulls which move the first run's clusters to other genes: one relabels genes at random and the other only among
+ * genes of similar degree (see {@link PermutationTest#createBins}), since hub genes are more likely to be in any
+ * cluster.
+ *
+ * Permutations run on a fork-join pool. A permutation is a partial shuffle of each degree bin which is undone
+ * afterwards, so it costs time in proportion to the number of clustered genes rather than the size of the network.
+ * Each test shares the permutations between as many workers as the pool has threads, and each worker clones the bins
+ * for that test only, so no buffers are left on the pool's threads afterwards. Each permutation draws from its own random stream derived from the seed, so results do not depend on the number of
+ * threads.
+ *
+ * @author pleyte
+ *
+ */
+public class OverlapSignificance {
+	private static Logger log;
+
+	static {
+		InputStream stream = OverlapSignificance.class.getClassLoader().getResourceAsStream("logging.properties");
+		try {
+			LogManager.getLogManager().readConfiguration(stream);
+			log = Logger.getLogger(OverlapSignificance.class.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static final int DEFAULT_PERMUTATIONS = 10_000;
+	public static final int DEFAULT_DEGREE_BIN_SIZE = 10;
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	private static final int NO_CLUSTER = -1;
+
+	private final CsrGraph graph;
+	private final int permutationCount;
+	private final long seed;
+	private final ForkJoinPool pool;
+
+	private final Bins labelBins;
+	private final Bins degreeBins;
+
+	/**
+	 *
+	 * @param graph            the network the runs' genes are drawn from
+	 * @param permutationCount
+	 * @param degreeBinSize    minimum number of genes per degree bin of the degree
+	 *                         preserving null
+	 * @param seed
+	 * @param pool
+	 */
+	public OverlapSignificance(CsrGraph graph, int permutationCount, int degreeBinSize, long seed, ForkJoinPool pool) {
+		if (permutationCount < 1) {
+			throw new IllegalArgumentException("At least one permutation is needed: " + permutationCount);
+		}
+		this.graph = graph;
+		this.permutationCount = permutationCount;
+		this.seed = seed;
+		this.pool = pool;
+
+		labelBins = new Bins(graph, 0);
+		degreeBins = new Bins(graph, Math.max(degreeBinSize, 1));
+	}
+
+	/**
+	 * Test the overlap of every pair of runs
+	 *
+	 * @param runs
+	 * @return
+	 */
+	public List<OverlapStatistics> testAllPairs(List<NetworkScore> runs) {
+		List<OverlapStatistics> statistics = new ArrayList<>();
+		for (int a = 0; a < runs.size(); a++) {
+			for (int b = a + 1; b < runs.size(); b++) {
+				statistics.add(test(runs.get(a), runs.get(b)));
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Test the overlap of two runs. Clustered genes which are not in the network
+	 * are ignored.
+	 *
+	 * @param first  the run whose clusters are permuted
+	 * @param second
+	 * @return
+	 */
+	public OverlapStatistics test(NetworkScore first, NetworkScore second) {
+		Clusters firstClusters = new Clusters(first);
+		Clusters secondClusters = new Clusters(second);
+		int[] secondClusterOf = new int[graph.getVertexCount()];
+		Arrays.fill(secondClusterOf, NO_CLUSTER);
+		for (int i = 0; i < secondClusters.genes.length; i++) {
+			secondClusterOf[secondClusters.genes[i]] = secondClusters.clusterOf[i];
+		}
+
+		Layout labelLayout = new Layout(labelBins, firstClusters.genes);
+		Layout degreeLayout = new Layout(degreeBins, firstClusters.genes);
+
+		// Overlapping genes and cluster pairs of each permutation. Worker w runs
+		// permutations w, w + workers, ... with buffers that only live for this test
+		int[] labelGeneOverlaps = new int[permutationCount];
+		int[] labelClusterOverlaps = new int[permutationCount];
+		int[] degreeGeneOverlaps = new int[permutationCount];
+		int[] degreeClusterOverlaps = new int[permutationCount];
+		int workers = Math.min(pool.getParallelism(), permutationCount);
+		pool.submit(() -> IntStream.range(0, workers).parallel().forEach(w -> {
+			Workspace workspace = new Workspace(labelBins, degreeBins);
+			workspace.prepare(firstClusters.genes.length, secondClusters.clusterCount);
+			for (int p = w; p < permutationCount; p += workers) {
+				SplittableRandom random = new SplittableRandom(seed + p * GOLDEN_GAMMA);
+
+				permute(labelLayout, workspace.labelMembers, workspace, random);
+				labelGeneOverlaps[p] = countGeneOverlap(workspace.mapped, secondClusterOf);
+				labelClusterOverlaps[p] = countClusterOverlap(workspace.mapped, firstClusters, secondClusterOf, workspace);
+
+				permute(degreeLayout, workspace.degreeMembers, workspace, random.split());
+				degreeGeneOverlaps[p] = countGeneOverlap(workspace.mapped, secondClusterOf);
+				degreeClusterOverlaps[p] = countClusterOverlap(workspace.mapped, firstClusters, secondClusterOf, workspace);
+			}
+		})).join();
+
+		Workspace workspace = new Workspace(labelBins, degreeBins);
+		workspace.prepare(firstClusters.genes.length, secondClusters.clusterCount);
+		int geneOverlap = countGeneOverlap(firstClusters.genes, secondClusterOf);
+		int clusterOverlap = countClusterOverlap(firstClusters.genes, firstClusters, secondClusterOf, workspace);
+
+		OverlapStatistics statistics = new OverlapStatistics();
+		statistics.setFirstRun(first.getName());
+		statistics.setSecondRun(second.getName());
+		statistics.setGeneCount(graph.getVertexCount());
+		statistics.setFirstGeneCount(firstClusters.genes.length);
+		statistics.setSecondGeneCount(secondClusters.genes.length);
+		statistics.setGeneOverlap(geneOverlap);
+		statistics.setClusterOverlap(clusterOverlap);
+		statistics.setHypergeometricLog10PValue(
+				hypergeometricLogUpperTail(graph.getVertexCount(), firstClusters.genes.length, secondClusters.genes.length, geneOverlap) / Math.log(10));
+		statistics.setPermutationCount(permutationCount);
+		statistics.setLabelPermutation(summarise(labelGeneOverlaps, geneOverlap, labelClusterOverlaps, clusterOverlap));
+		statistics.setDegreePreservingPermutation(summarise(degreeGeneOverlaps, geneOverlap, degreeClusterOverlaps, clusterOverlap));
+		return statistics;
+	}
+
+	/**
+	 * Return the natural log of the probability that a set of <code>draws</code>
+	 * genes drawn at random from <code>population</code> genes contains at least
+	 * <code>observed</code> of the <code>successes</code> genes of another set
+	 *
+	 * @param population
+	 * @param successes
+	 * @param draws
+	 * @param observed
+	 * @return a value of zero or less, or negative infinity if the overlap is
+	 *         impossible
+	 */
+	public static double hypergeometricLogUpperTail(int population, int successes, int draws, int observed) {
+		int lowest = Math.max(0, draws - (population - successes));
+		int highest = Math.min(successes, draws);
+		if (observed <= lowest) {
+			return 0;
+		} else if (observed > highest) {
+			return Double.NEGATIVE_INFINITY;
+		}
+
+		// Each term follows from the one before by the ratio of consecutive probabilities
+		double logTerm = CombinatoricsUtils.binomialCoefficientLog(successes, observed)
+				+ CombinatoricsUtils.binomialCoefficientLog(population - successes, draws - observed) - CombinatoricsUtils.binomialCoefficientLog(population, draws);
+		double logSum = logTerm;
+		for (int k = observed; k < highest; k++) {
+			logTerm += Math.log((double) (successes - k) * (draws - k)) - Math.log((double) (k + 1) * (population - successes - draws + k + 1));
+			double larger = Math.max(logSum, logTerm);
+			logSum = larger + Math.log1p(Math.exp(Math.min(logSum, logTerm) - larger));
+		}
+		return Math.min(logSum, 0);
+	}
+
+	/**
+	 * Write the statistics to a tab separated file with a header
+	 *
+	 * @param statistics
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void save(List<OverlapStatistics> statistics, File file) throws IOException {
+		try (Writer out = new FileWriter(file)) {
+			out.write(String.join("\t", "first_run", "second_run", "genes", "first_genes", "second_genes", "gene_overlap", "hypergeometric_log10_p",
+					"label_expected_gene_overlap", "label_gene_overlap_p", "degree_expected_gene_overlap", "degree_gene_overlap_p", "cluster_overlap",
+					"label_expected_cluster_overlap", "label_cluster_overlap_p", "degree_expected_cluster_overlap", "degree_cluster_overlap_p", "permutations"));
+			out.write("\n");
+			for (OverlapStatistics s : statistics) {
+				PermutationNull label = s.getLabelPermutation();
+				PermutationNull degree = s.getDegreePreservingPermutation();
+				out.write(String.join("\t", s.getFirstRun(), s.getSecondRun(), String.valueOf(s.getGeneCount()), String.valueOf(s.getFirstGeneCount()),
+						String.valueOf(s.getSecondGeneCount()), String.valueOf(s.getGeneOverlap()), String.valueOf(s.getHypergeometricLog10PValue()),
+						String.valueOf(label.getExpectedGeneOverlap()), String.valueOf(label.getGeneOverlapPValue()),
+						String.valueOf(degree.getExpectedGeneOverlap()), String.valueOf(degree.getGeneOverlapPValue()), String.valueOf(s.getClusterOverlap()),
+						String.valueOf(label.getExpectedClusterOverlap()), String.valueOf(label.getClusterOverlapPValue()),
+						String.valueOf(degree.getExpectedClusterOverlap()), String.valueOf(degree.getClusterOverlapPValue()),
+						String.valueOf(s.getPermutationCount())));
+				out.write("\n");
+			}
+		}
+	}
+
+	/**
+	 * Move each gene of the first run to a different gene of its bin, writing the
+	 * new genes to the workspace's mapped genes. The genes of each bin are chosen
+	 * by a partial Fisher-Yates shuffle of the bin's members, which is undone
+	 * before returning.
+	 */
+	private static void permute(Layout layout, int[] members, Workspace workspace, SplittableRandom random) {
+		int swaps = 0;
+		for (int b : layout.occupiedBins) {
+			int from = layout.bins.start[b];
+			int size = layout.bins.start[b + 1] - from;
+			int first = layout.firstStart[b];
+			int count = layout.firstStart[b + 1] - first;
+			for (int i = 0; i < count; i++) {
+				int j = from + i + random.nextInt(size - i);
+				swap(members, from + i, j);
+				workspace.swapFrom[swaps] = from + i;
+				workspace.swapTo[swaps++] = j;
+				workspace.mapped[layout.firstByBin[first + i]] = members[from + i];
+			}
+		}
+		while (swaps > 0) {
+			--swaps;
+			swap(members, workspace.swapFrom[swaps], workspace.swapTo[swaps]);
+		}
+	}
+
+	private static void swap(int[] values, int i, int j) {
+		int swap = values[i];
+		values[i] = values[j];
+		values[j] = swap;
+	}
+
+	private static int countGeneOverlap(int[] genes, int[] secondClusterOf) {
+		int overlap = 0;
+		for (int gene : genes) {
+			if (secondClusterOf[gene] != NO_CLUSTER) {
+				overlap++;
+			}
+		}
+		return overlap;
+	}
+
+	/**
+	 * Count the distinct pairs of a first run cluster and a second run cluster
+	 * which share a gene, where genes[i] is the gene now in the position of the
+	 * first run's i-th gene
+	 */
+	private static int countClusterOverlap(int[] genes, Clusters first, int[] secondClusterOf, Workspace workspace) {
+		int overlap = 0;
+		for (int c = 0; c < first.clusterCount; c++) {
+			int mark = workspace.nextMark();
+			for (int i = first.clusterStart[c]; i < first.clusterStart[c + 1]; i++) {
+				int secondCluster = secondClusterOf[genes[i]];
+				if (secondCluster != NO_CLUSTER && workspace.marks[secondCluster] != mark) {
+					workspace.marks[secondCluster] = mark;
+					overlap++;
+				}
+			}
+		}
+		return overlap;
+	}
+
+	private PermutationNull summarise(int[] geneOverlaps, int geneOverlap, int[] clusterOverlaps, int clusterOverlap) {
+		PermutationNull result = new PermutationNull();
+		result.setExpectedGeneOverlap(mean(geneOverlaps));
+		result.setGeneOverlapPValue(empiricalPValue(geneOverlaps, geneOverlap));
+		result.setExpectedClusterOverlap(mean(clusterOverlaps));
+		result.setClusterOverlapPValue(empiricalPValue(clusterOverlaps, clusterOverlap));
+		return result;
+	}
+
+	private static double mean(int[] values) {
+		long sum = 0;
+		for (int value : values) {
+			sum += value;
+		}
+		return (double) sum / values.length;
+	}
+
+	private static double empiricalPValue(int[] permuted, int observed) {
+		int atLeastObserved = 0;
+		for (int value : permuted) {
+			if (value >= observed) {
+				atLeastObserved++;
+			}
+		}
+		return (1.0 + atLeastObserved) / (1.0 + permuted.length);
+	}
+
+	/**
+	 * The clustered genes of a run which are in the network, as vertex ids grouped
+	 * by cluster. A gene in more than one cluster is kept in the first.
+	 */
+	private class Clusters {
+		private final int[] genes;
+		private final int[] clusterOf;
+		private final int[] clusterStart;
+		private final int clusterCount;
+
+		Clusters(NetworkScore run) {
+			List<Set<String>> clusters = run.getClusters();
+			GeneSet seen = new GeneSet(graph.getGenes());
+			int[] ids = new int[graph.getVertexCount()];
+			int[] clusterOfId = new int[graph.getVertexCount()];
+			int[] starts = new int[clusters.size() + 1];
+			int size = 0;
+			int missing = 0;
+			for (int c = 0; c < clusters.size(); c++) {
+				starts[c] = size;
+				for (String gene : clusters.get(c)) {
+					int id = graph.getGenes().getId(gene);
+					if (id < 0 || id >= graph.getVertexCount()) {
+						missing++;
+					} else if (!seen.contains(id)) {
+						seen.add(id);
+						ids[size] = id;
+						clusterOfId[size++] = c;
+					}
+				}
+			}
+			starts[clusters.size()] = size;
+			if (missing > 0) {
+				log.fine(missing + " clustered genes of " + run.getName() + " are not in the network");
+			}
+
+			genes = Arrays.copyOf(ids, size);
+			clusterOf = Arrays.copyOf(clusterOfId, size);
+			clusterStart = starts;
+			clusterCount = clusters.size();
+		}
+	}
+
+	/**
+	 * Groups of genes within which a null model moves genes: the network's degree
+	 * bins, or one bin of every gene
+	 */
+	private static class Bins {
+		private final int[] start;
+		private final int[] members;
+		private final int[] binOf;
+
+		Bins(CsrGraph graph, int minimumBinSize) {
+			members = new int[graph.getVertexCount()];
+			start = PermutationTest.createBins(graph, minimumBinSize, members);
+			binOf = new int[members.length];
+			for (int b = 0; b + 1 < start.length; b++) {
+				for (int i = start[b]; i < start[b + 1]; i++) {
+					binOf[members[i]] = b;
+				}
+			}
+		}
+
+		int count() {
+			return start.length - 1;
+		}
+	}
+
+	/**
+	 * The positions of the first run's genes grouped by bin, so that the genes of a
+	 * bin can be moved together
+	 */
+	private static class Layout {
+		private final Bins bins;
+		private final int[] firstByBin;
+		private final int[] firstStart;
+		private final int[] occupiedBins;
+
+		Layout(Bins bins, int[] firstGenes) {
+			this.bins = bins;
+			firstStart = new int[bins.count() + 1];
+			for (int gene : firstGenes) {
+				++firstStart[bins.binOf[gene] + 1];
+			}
+			int occupied = 0;
+			for (int b = 0; b < bins.count(); b++) {
+				if (firstStart[b + 1] > 0) {
+					occupied++;
+				}
+				firstStart[b + 1] += firstStart[b];
+			}
+
+			int[] next = Arrays.copyOf(firstStart, bins.count());
+			firstByBin = new int[firstGenes.length];
+			for (int i = 0; i < firstGenes.length; i++) {
+				firstByBin[next[bins.binOf[firstGenes[i]]]++] = i;
+			}
+			occupiedBins = new int[occupied];
+			for (int b = 0, o = 0; b < bins.count(); b++) {
+				if (firstStart[b + 1] > firstStart[b]) {
+					occupiedBins[o++] = b;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Buffers reused by one worker for the permutations of a test. The members
+	 * arrays are the worker's own copies of the bins, which each permutation
+	 * shuffles and restores.
+	 */
+	private static class Workspace {
+		private final int[] labelMembers;
+		private final int[] degreeMembers;
+		private int[] swapFrom = new int[0];
+		private int[] swapTo = new int[0];
+		private int[] mapped = new int[0];
+		private int[] marks = new int[0];
+		private int mark;
+
+		Workspace(Bins labelBins, Bins degreeBins) {
+			labelMembers = labelBins.members.clone();
+			degreeMembers = degreeBins.members.clone();
+		}
+
+		void prepare(int firstGeneCount, int secondClusterCount) {
+			if (mapped.length != firstGeneCount) {
+				swapFrom = new int[firstGeneCount];
+				swapTo = new int[firstGeneCount];
+				mapped = new int[firstGeneCount];
+			}
+			if (marks.length < secondClusterCount) {
+				marks = new int[secondClusterCount];
+				mark = 0;
+			}
+		}
+
+		int nextMark() {
+			if (mark == Integer.MAX_VALUE) {
+				Arrays.fill(marks, 0);
+				mark = 0;
+			}
+			return ++mark;
+		}
+	}
+}
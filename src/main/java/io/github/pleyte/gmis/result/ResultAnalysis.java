@@ -2,13 +2,19 @@ package io.github.pleyte.gmis.result;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
+
+import io.github.pleyte.gmis.bean.NetworkScore;
+import io.github.pleyte.gmis.bean.OverlapStatistics;
+import io.github.pleyte.gmis.graph.CsrGraph;
+import io.github.pleyte.gmis.graph.GeneSet;
+import io.github.pleyte.gmis.intermediate.NetworkLoader;
 
 public class ResultAnalysis {
 
@@ -25,44 +31,107 @@ public class ResultAnalysis {
 		}
 	}
 
+	private static final String[] STUDY_NAMES = { "Schizophrenia I", "Schizophrenia II", "Autism" };
+
 	public static void main(String[] args) throws IOException {
 		ResultAnalysis analysis = new ResultAnalysis();
 
 		ResultsLoader results = new ResultsLoader();
 		analysis.showClusterInfo(results);
+		analysis.showOverlapSignificance(results);
 
 	}
 
 	private void showClusterInfo(ResultsLoader results) throws IOException {
-		List<String> allGenesList = new ArrayList<>();
-		Set<String> allGenesSet = new HashSet<>();
-
-		List<String> l1 = results.getNetworkScores1().getClusters().stream().flatMap(Set::stream).collect(Collectors.toList());
-		List<String> l2 = results.getNetworkScores2().getClusters().stream().flatMap(Set::stream).collect(Collectors.toList());
-		List<String> l3 = results.getNetworkScores3().getClusters().stream().flatMap(Set::stream).collect(Collectors.toList());
-
-		allGenesList.addAll(l1);
-		allGenesList.addAll(l2);
-		allGenesList.addAll(l3);
-
-		allGenesSet.addAll(l1);
-		allGenesSet.addAll(l2);
-		allGenesSet.addAll(l3);
+		ClusterMembershipIndex membership = results.getMembershipIndex();
+		List<GeneSet> studies = new ArrayList<>();
+		for (int s = 0; s < STUDY_NAMES.length; s++) {
+			studies.add(membership.getGeneSet(s));
+		}
+		int genes1 = studies.get(0).cardinality();
+		int genes2 = studies.get(1).cardinality();
+		int genes3 = studies.get(2).cardinality();
 
 		// Schizophrenia I
 		log.info("Schizophrenia I results have " + results.getNetworkScores1().getClusters().size() + " clusters.");
-		log.info("Schizophrenia I results have " + l1.size() + " genes");
+		log.info("Schizophrenia I results have " + genes1 + " genes");
 
 		// Schizophrenia II
 		log.info("Schizophrenia II results have " + results.getNetworkScores2().getClusters().size() + " clusters.");
-		log.info("Schizophrenia II results have " + l2.size() + " genes");
+		log.info("Schizophrenia II results have " + genes2 + " genes");
 
 		// Autism
 		log.info("Autism results have " + results.getNetworkScores3().getClusters().size() + " clusters.");
-		log.info("Autism results have " + l3.size() + " genes");
+		log.info("Autism results have " + genes3 + " genes");
+
+		log.info("List of all genes has " + (genes1 + genes2 + genes3) + " elements");
+		log.info("Set of all distinct genes has " + membership.getDictionary().size() + " elements");
 
-		log.info("List of all genes has " + allGenesList.size() + " elements");
-		log.info("Set of all distinct genes has " + allGenesSet.size() + " elements");
+		showOverlaps(membership, studies);
+	}
+
+	/**
+	 * Show how likely the overlaps between each pair of studies are by chance
+	 * 
+	 * @param results
+	 * @throws IOException
+	 */
+	private void showOverlapSignificance(ResultsLoader results) throws IOException {
+		URL indexFile = ResultAnalysis.class.getClassLoader().getResource("hotnet_network/network_1_index_gene.tsv");
+		URL edgeListFile = ResultAnalysis.class.getClassLoader().getResource("hotnet_network/network_1_edge_list.tsv");
+		if (indexFile == null || edgeListFile == null) {
+			throw new IOException("Unable to locate the HotNet network files");
+		}
+		CsrGraph graph = NetworkLoader.loadHotNetNetwork(indexFile.getFile(), edgeListFile.getFile());
+
+		OverlapSignificance significance = new OverlapSignificance(graph, OverlapSignificance.DEFAULT_PERMUTATIONS,
+				OverlapSignificance.DEFAULT_DEGREE_BIN_SIZE, 1, ForkJoinPool.commonPool());
+		List<NetworkScore> studies = Arrays.asList(results.getNetworkScores1(), results.getNetworkScores2(), results.getNetworkScores3());
+		for (OverlapStatistics statistics : significance.testAllPairs(studies)) {
+			log.info(statistics.toString());
+		}
+	}
+
+	/**
+	 * Show the genes the studies share, both as whole results and cluster by
+	 * cluster
+	 * 
+	 * @param membership
+	 * @param studies    genes clustered in each study
+	 */
+	private void showOverlaps(ClusterMembershipIndex membership, List<GeneSet> studies) {
+		int[][] overlaps = GeneSet.overlapMatrix(studies, studies);
+		for (int a = 0; a < studies.size(); a++) {
+			for (int b = a + 1; b < studies.size(); b++) {
+				log.info(STUDY_NAMES[a] + " and " + STUDY_NAMES[b] + " results share " + overlaps[a][b] + " genes");
+			}
+		}
+
+		// Genes in exactly the studies of each bitmask
+		int[] regions = GeneSet.membershipCounts(studies);
+		log.info(regions[regions.length - 1] + " genes are in all of the results");
+		for (int s = 0; s < studies.size(); s++) {
+			log.info(regions[1 << s] + " genes are only in the " + STUDY_NAMES[s] + " results");
+		}
+
+		for (int a = 0; a < studies.size(); a++) {
+			List<GeneSet> clustersA = membership.getClusterGeneSets(a);
+			for (int b = a + 1; b < studies.size(); b++) {
+				int[][] clusterOverlaps = GeneSet.overlapMatrix(clustersA, membership.getClusterGeneSets(b));
+				int overlappingPairs = 0;
+				int largestOverlap = 0;
+				for (int[] row : clusterOverlaps) {
+					for (int overlap : row) {
+						if (overlap > 0) {
+							overlappingPairs++;
+							largestOverlap = Math.max(largestOverlap, overlap);
+						}
+					}
+				}
+				log.info(overlappingPairs + " pairs of " + STUDY_NAMES[a] + " and " + STUDY_NAMES[b] + " clusters share genes, at most "
+						+ largestOverlap);
+			}
+		}
 	}
 
 }
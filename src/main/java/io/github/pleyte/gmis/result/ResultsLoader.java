@@ -7,15 +7,34 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.FutureTask;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
 import io.github.pleyte.gmis.NetworkAnalysis;
+import io.github.pleyte.gmis.bean.ClusterStatistics;
+import io.github.pleyte.gmis.bean.ConsensusNetwork;
 import io.github.pleyte.gmis.bean.NetworkScore;
 
 /**
- * This class handles loading the results output files from HotNet
- * 
+ * This class handles loading the results output files from HotNet. Every <code>clusters_&lt;run&gt;.tsv</code> file in
+ * the results directory is a run, such as <code>network_1_scores_1</code>, and the consensus of the runs is read from
+ * <code>consensus_nodes.tsv</code> and <code>consensus_edges.tsv</code>.
+ *
+ * Each file is parsed once and the result is kept. One loader can be shared by any number of threads: a thread that
+ * asks for a result another thread is loading waits for it rather than loading it again.
+ *
  * @author pleyte
  *
  */
@@ -33,67 +52,357 @@ public class ResultsLoader {
 		}
 	}
 
-	public static final String FILE_CLUSTERS_SCORES_1 = "hotnet_network/results/clusters_network_1_scores_1.tsv";
-	public static final String FILE_CLUSTERS_SCORES_2 = "hotnet_network/results/clusters_network_1_scores_2.tsv";
-	public static final String FILE_CLUSTERS_SCORES_3 = "hotnet_network/results/clusters_network_1_scores_3.tsv";
+	public static final String RESULTS_DIRECTORY = "hotnet_network/results";
+	public static final String FILE_CONSENSUS_NODES = "consensus_nodes.tsv";
+	public static final String FILE_CONSENSUS_EDGES = "consensus_edges.tsv";
+
+	public static final String RUN_SCORES_1 = "network_1_scores_1";
+	public static final String RUN_SCORES_2 = "network_1_scores_2";
+	public static final String RUN_SCORES_3 = "network_1_scores_3";
+
+	private static final String CLUSTERS_PREFIX = "clusters_";
+	private static final String CLUSTERS_SUFFIX = ".tsv";
+
+	private final File resultsDirectory;
+
+	private final Map<String, FutureTask<NetworkScore>> networkScores = new ConcurrentHashMap<>();
+	private final Map<List<String>, FutureTask<ClusterMembershipIndex>> membershipIndexes = new ConcurrentHashMap<>();
+	private final Map<String, FutureTask<ConsensusNetwork>> consensus = new ConcurrentHashMap<>();
+
+	/**
+	 * Load the results in {@value #RESULTS_DIRECTORY} on the class path
+	 */
+	public ResultsLoader() {
+		this(null);
+	}
 
-	private NetworkScore networkScores1;
-	private NetworkScore networkScores2;
-	private NetworkScore networkScores3;
+	/**
+	 *
+	 * @param resultsDirectory directory of the HotNet results
+	 */
+	public ResultsLoader(File resultsDirectory) {
+		this.resultsDirectory = resultsDirectory;
+	}
 
 	public NetworkScore getNetworkScores1() throws IOException {
-		if (networkScores1 == null) {
-			networkScores1 = getNetworkScores(FILE_CLUSTERS_SCORES_1);
-		}
-		return networkScores1;
+		return getNetworkScores(RUN_SCORES_1);
 	}
 
 	public NetworkScore getNetworkScores2() throws IOException {
-		if (networkScores2 == null) {
-			networkScores2 = getNetworkScores(FILE_CLUSTERS_SCORES_2);
-		}
-		return networkScores2;
+		return getNetworkScores(RUN_SCORES_2);
 	}
 
 	public NetworkScore getNetworkScores3() throws IOException {
-		if (networkScores3 == null) {
-			networkScores3 = getNetworkScores(FILE_CLUSTERS_SCORES_3);
+		return getNetworkScores(RUN_SCORES_3);
+	}
+
+	/**
+	 * Return the directory the results are loaded from
+	 *
+	 * @return
+	 * @throws IOException if the directory does not exist
+	 */
+	public File getResultsDirectory() throws IOException {
+		File directory = resultsDirectory;
+		if (directory == null) {
+			URL url = NetworkAnalysis.class.getClassLoader().getResource(RESULTS_DIRECTORY);
+			if (url == null) {
+				throw new IOException("Unable to locate results directory: " + RESULTS_DIRECTORY);
+			}
+			directory = new File(url.getFile());
+		}
+		if (!directory.isDirectory()) {
+			throw new IOException("Unable to locate results directory: " + directory);
+		}
+		return directory;
+	}
+
+	/**
+	 * Return the names of the runs in the results directory, in alphabetical order
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public List<String> getRunNames() throws IOException {
+		File directory = getResultsDirectory();
+		String[] files = directory.list((dir, name) -> name.startsWith(CLUSTERS_PREFIX) && name.endsWith(CLUSTERS_SUFFIX)
+				&& name.length() > CLUSTERS_PREFIX.length() + CLUSTERS_SUFFIX.length());
+		if (files == null) {
+			throw new IOException("Unable to list results directory: " + directory);
+		}
+		List<String> runNames = new ArrayList<>(files.length);
+		for (String file : files) {
+			runNames.add(file.substring(CLUSTERS_PREFIX.length(), file.length() - CLUSTERS_SUFFIX.length()));
+		}
+		Collections.sort(runNames);
+		return runNames;
+	}
+
+	/**
+	 * Return the clusters and statistics of a run
+	 *
+	 * @param runName name of the run, e.g. {@value #RUN_SCORES_1}
+	 * @return
+	 * @throws IOException
+	 */
+	public NetworkScore getNetworkScores(String runName) throws IOException {
+		return getShared(networkScores, runName, () -> loadNetworkScores(runName));
+	}
+
+	/**
+	 * Load every run in the results directory, parsing the files concurrently
+	 *
+	 * @return the runs by name, in alphabetical order
+	 * @throws IOException if any of the files cannot be read
+	 */
+	public Map<String, NetworkScore> getAllNetworkScores() throws IOException {
+		List<String> runNames = getRunNames();
+		List<ForkJoinTask<NetworkScore>> tasks = new ArrayList<>(runNames.size());
+		for (String runName : runNames) {
+			tasks.add(ForkJoinPool.commonPool().submit(() -> getNetworkScores(runName)));
+		}
+
+		Map<String, NetworkScore> runs = new LinkedHashMap<>();
+		for (int i = 0; i < runNames.size(); i++) {
+			try {
+				runs.put(runNames.get(i), tasks.get(i).get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while loading " + runNames.get(i), e);
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+			}
 		}
-		return networkScores3;
+		log.fine("Loaded " + runs.size() + " runs from " + getResultsDirectory());
+		return runs;
+	}
+
+	/**
+	 * Return the index of the clusters each gene belongs to in the three score
+	 * sets, which are numbered 0, 1 and 2 in its bitmasks
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public ClusterMembershipIndex getMembershipIndex() throws IOException {
+		return getMembershipIndex(Arrays.asList(RUN_SCORES_1, RUN_SCORES_2, RUN_SCORES_3));
+	}
+
+	/**
+	 * Return the index of the clusters each gene belongs to in the runs, which are
+	 * numbered in the bitmasks by their position in the list
+	 *
+	 * @param runNames
+	 * @return
+	 * @throws IOException
+	 */
+	public ClusterMembershipIndex getMembershipIndex(List<String> runNames) throws IOException {
+		List<String> key = Collections.unmodifiableList(new ArrayList<>(runNames));
+		return getShared(membershipIndexes, key, () -> {
+			List<NetworkScore> scoreSets = new ArrayList<>(key.size());
+			for (String runName : key) {
+				scoreSets.add(getNetworkScores(runName));
+			}
+			return new ClusterMembershipIndex(scoreSets);
+		});
+	}
+
+	/**
+	 * Return the consensus subnetworks and edges of the runs
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public ConsensusNetwork getConsensus() throws IOException {
+		return getShared(consensus, FILE_CONSENSUS_NODES, this::loadConsensus);
 	}
 
+	private NetworkScore loadNetworkScores(String runName) throws IOException {
+		return load(getResultsFile(CLUSTERS_PREFIX + runName + CLUSTERS_SUFFIX));
+	}
 
 	/**
 	 * Load one of the HotNet cluster result files. The first few lines begin with a
 	 * "#" and have some statistic values. The rest of the file has one cluster per
-	 * line with each gene separated by a tab.
-	 * 
-	 * @param clustersScoresFileName
+	 * line with each gene separated by a tab. The run is named after the file.
+	 *
+	 * @param clustersScoresFile
 	 * @return
 	 * @throws IOException
 	 */
-	private NetworkScore getNetworkScores(String clustersScoresFileName) throws IOException {
-		log.fine("Loading network scores file " + clustersScoresFileName);
-		URL clustersScoresFile = NetworkAnalysis.class.getClassLoader().getResource(clustersScoresFileName);
+	public static NetworkScore load(File clustersScoresFile) throws IOException {
+		log.fine("Loading network scores file " + clustersScoresFile);
 
-		if (clustersScoresFile == null) {
-			throw new IOException("Unable to locate input file: " + clustersScoresFileName);
+		String runName = clustersScoresFile.getName();
+		if (runName.startsWith(CLUSTERS_PREFIX)) {
+			runName = runName.substring(CLUSTERS_PREFIX.length());
 		}
-		File f = new File(clustersScoresFile.getFile());
-		if (!f.exists()) {
-			throw new IOException("Unable to locate input file: " + f);
+		if (runName.endsWith(CLUSTERS_SUFFIX)) {
+			runName = runName.substring(0, runName.length() - CLUSTERS_SUFFIX.length());
 		}
 		NetworkScore networkScore = new NetworkScore();
-		try (Reader in = new FileReader(clustersScoresFile.getFile()); BufferedReader br = new BufferedReader(in)) {
+		networkScore.setName(runName);
+		ClusterStatistics statistics = new ClusterStatistics();
+		boolean hasStatistics = false;
+		try (Reader in = new FileReader(clustersScoresFile); BufferedReader br = new BufferedReader(in)) {
 
 			String line;
+			int lineNumber = 0;
 			while ((line = br.readLine()) != null) {
-				if (!line.startsWith("#")) {
+				lineNumber++;
+				if (line.startsWith("#")) {
+					hasStatistics |= parseStatistic(line, statistics, clustersScoresFile, lineNumber);
+				} else if (!line.isEmpty()) {
 					networkScore.addCluster(line.split("\t"));
 				}
 			}
 		}
 
+		if (hasStatistics) {
+			networkScore.setStatistics(statistics);
+		}
 		return networkScore;
 	}
+
+	/**
+	 * Set the statistic in a header line such as
+	 * <code># Observed cut height: 7.34</code>
+	 *
+	 * @return true if the line had a statistic
+	 * @throws IOException if the value is not a number
+	 */
+	private static boolean parseStatistic(String line, ClusterStatistics statistics, File file, int lineNumber) throws IOException {
+		int colon = line.lastIndexOf(':');
+		if (colon < 0) {
+			return false;
+		}
+		String label = line.substring(1, colon).trim();
+		String value = line.substring(colon + 1).trim();
+		if (value.isEmpty()) {
+			return false;
+		}
+
+		try {
+			switch (label) {
+			case "Observed cut height":
+				statistics.setObservedCutHeight(Double.parseDouble(value));
+				return true;
+			case "Observed size of largest cluster at observed cut height":
+				statistics.setObservedLargestClusterSize(Integer.parseInt(value));
+				return true;
+			case "Expected size of largest cluster at observed cut height":
+				statistics.setExpectedLargestClusterSize(Double.parseDouble(value));
+				return true;
+			case "Observed maximum ratio statistic":
+				statistics.setObservedMaximumRatio(Double.parseDouble(value));
+				return true;
+			case "Expected maximum ratio statistic":
+				statistics.setExpectedMaximumRatio(Double.parseDouble(value));
+				return true;
+			case "p-value":
+				statistics.setPValue(Double.parseDouble(value));
+				return true;
+			default:
+				log.fine("Ignoring line " + lineNumber + " of " + file + ": " + line);
+				return false;
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Line " + lineNumber + " of " + file + " has a non-numeric value: " + line);
+		}
+	}
+
+	/**
+	 * Load the consensus files. Each line of the nodes file is a subnetwork with
+	 * its genes separated by tabs, and each line of the edges file has the two
+	 * genes of an edge in its first two columns.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	private ConsensusNetwork loadConsensus() throws IOException {
+		File nodesFile = getResultsFile(FILE_CONSENSUS_NODES);
+		File edgesFile = getResultsFile(FILE_CONSENSUS_EDGES);
+		ConsensusNetwork network = new ConsensusNetwork();
+
+		try (Reader in = new FileReader(nodesFile); BufferedReader br = new BufferedReader(in)) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					network.addSubnetwork(line.split("\t"));
+				}
+			}
+		}
+
+		try (Reader in = new FileReader(edgesFile); BufferedReader br = new BufferedReader(in)) {
+			String line;
+			int lineNumber = 0;
+			while ((line = br.readLine()) != null) {
+				lineNumber++;
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split("\t");
+				if (fields.length < 2) {
+					throw new IOException("Line " + lineNumber + " of " + edgesFile + " does not have two genes");
+				}
+				network.addEdge(fields[0], fields[1]);
+			}
+		}
+
+		log.fine("Loaded " + network.getSubnetworks().size() + " consensus subnetworks and " + network.getEdges().size() + " edges");
+		return network;
+	}
+
+	private File getResultsFile(String fileName) throws IOException {
+		File file = new File(getResultsDirectory(), fileName);
+		if (!file.exists()) {
+			throw new IOException("Unable to locate input file: " + file);
+		}
+		return file;
+	}
+
+	/**
+	 * Return the cached value, loading it on this thread if no other thread has
+	 * started to. Threads that need a value another thread is loading wait for it.
+	 * A value which failed to load is removed so that it can be tried again.
+	 *
+	 * @param <K>
+	 * @param <T>
+	 * @param cache
+	 * @param key
+	 * @param loader
+	 * @return
+	 * @throws IOException
+	 */
+	private static <K, T> T getShared(Map<K, FutureTask<T>> cache, K key, Callable<T> loader) throws IOException {
+		FutureTask<T> task = new FutureTask<>(loader);
+		FutureTask<T> existing = cache.putIfAbsent(key, task);
+		if (existing == null) {
+			existing = task;
+			task.run();
+		}
+		try {
+			return getResult(existing);
+		} catch (IOException | RuntimeException e) {
+			cache.remove(key, existing);
+			throw e;
+		}
+	}
+
+	private static <T> T getResult(FutureTask<T> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading results", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
 }
@@ -0,0 +1,55 @@
+package io.github.pleyte.gmis.score;
+
+import java.io.IOException;
+
+/**
+ * What to do when a gene is given a second score
+ *
+ * @author pleyte
+ *
+ */
+public enum ConflictPolicy {
+	/**
+	 * Keep the higher score
+	 */
+	MAXIMUM {
+		@Override
+		public double resolve(String gene, double existing, double score) {
+			return Math.max(existing, score);
+		}
+	},
+
+	/**
+	 * A gene may be repeated only with the same score
+	 */
+	FAIL_IF_DIFFERENT {
+		@Override
+		public double resolve(String gene, double existing, double score) throws IOException {
+			if (Double.compare(existing, score) != 0) {
+				throw new IOException("Encountered duplicate gene " + gene + " with differing scores " + existing + " and " + score);
+			}
+			return existing;
+		}
+	},
+
+	/**
+	 * A gene may not be repeated
+	 */
+	FAIL {
+		@Override
+		public double resolve(String gene, double existing, double score) throws IOException {
+			throw new IOException("Encountered duplicate gene " + gene);
+		}
+	};
+
+	/**
+	 * Return the score to keep for a gene which already has one
+	 *
+	 * @param gene     symbol of the gene, for error messages
+	 * @param existing
+	 * @param score
+	 * @return
+	 * @throws IOException if the policy does not allow the conflict
+	 */
+	public abstract double resolve(String gene, double existing, double score) throws IOException;
+}
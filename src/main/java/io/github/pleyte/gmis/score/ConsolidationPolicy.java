@@ -0,0 +1,38 @@
+package io.github.pleyte.gmis.score;
+
+import java.io.IOException;
+
+/**
+ * How a {@link ScoreConsolidator} combines the scores a gene has in several sources. The standard policies are in
+ * {@link StandardConsolidationPolicy}; other policies can be supplied by implementing this interface.
+ *
+ * @author pleyte
+ *
+ */
+public interface ConsolidationPolicy {
+
+	/**
+	 * Combine the score a gene has in the next source with the score combined
+	 * from the sources before it
+	 *
+	 * @param gene           symbol of the gene, for error messages
+	 * @param combined       score combined from the earlier sources
+	 * @param combinedWeight total weight of the earlier sources which score the
+	 *                       gene
+	 * @param score          score in the next source
+	 * @param weight         weight of the next source
+	 * @return the new combined score
+	 * @throws IOException if the policy does not allow the scores to differ
+	 */
+	double combine(String gene, double combined, double combinedWeight, double score, double weight) throws IOException;
+
+	/**
+	 * Return true if the policy uses the weights given to the sources. Sources are
+	 * given a weight of one for policies which do not.
+	 *
+	 * @return
+	 */
+	default boolean usesWeights() {
+		return false;
+	}
+}
@@ -0,0 +1,164 @@
+package io.github.pleyte.gmis.score;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses decimal numbers written in ASCII directly from a byte array, so that reading a numeric column creates no
+ * Strings. Numbers whose significant digits form an integer below 2<sup>53</sup>, which includes every number of up to
+ * 15 significant digits, and whose decimal exponent is within 22 of zero, which covers almost every p-value and score
+ * in the study tables, are converted exactly with a single multiplication or division. Other numbers are passed to
+ * {@link Double#parseDouble(String)}, so the result is always correctly rounded.
+ *
+ * At most 18 significant digits are accumulated, so the mantissa always fits in a long. Longer numbers are marked as
+ * truncated and passed to the JDK.
+ *
+ * @author pleyte
+ *
+ */
+public final class DecimalParser {
+	private static final int MAXIMUM_DIGITS = 18;
+	private static final int MAXIMUM_EXPONENT = 100_000;
+	private static final long MAXIMUM_EXACT_MANTISSA = 1L << 53;
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+			1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private DecimalParser() {
+	}
+
+	/**
+	 * Parse the number in bytes <code>start</code> (inclusive) to
+	 * <code>end</code> (exclusive)
+	 *
+	 * @param bytes
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws NumberFormatException if the bytes are not a number
+	 */
+	public static double parseDouble(byte[] bytes, int start, int end) {
+		return parse(bytes, start, end, false);
+	}
+
+	/**
+	 * Return -log10 of the p-value in bytes <code>start</code> (inclusive) to
+	 * <code>end</code> (exclusive). A p-value too small to be held as a normal
+	 * double, such as <code>1e-400</code>, has its score computed from the decimal
+	 * digits and exponent instead of underflowing, and a p-value of zero has the
+	 * score {@link ScoreTransform#ZERO_P_VALUE_SCORE}. Other p-values give the same
+	 * score as <code>-Math.log10(parseDouble(...))</code>. A negative p-value gives
+	 * NaN.
+	 *
+	 * @param bytes
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws NumberFormatException if the bytes are not a number
+	 */
+	public static double parseNegativeLog10(byte[] bytes, int start, int end) {
+		return parse(bytes, start, end, true);
+	}
+
+	private static double parse(byte[] bytes, int start, int end, boolean negativeLog10) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+			negative = bytes[i] == '-';
+			i++;
+		}
+
+		// The number is mantissa * 10^exponent; digits after the first 18 significant digits are dropped
+		// so that it cannot overflow
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean truncated = false;
+		boolean hasDigits = false;
+
+		for (; i < end; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9) {
+				break;
+			}
+			hasDigits = true;
+			if (mantissa == 0 && digit == 0) {
+				continue;
+			} else if (digits < MAXIMUM_DIGITS) {
+				mantissa = mantissa * 10 + digit;
+				digits++;
+			} else {
+				exponent++;
+				truncated |= digit != 0;
+			}
+		}
+
+		if (i < end && bytes[i] == '.') {
+			for (i++; i < end; i++) {
+				int digit = bytes[i] - '0';
+				if (digit < 0 || digit > 9) {
+					break;
+				}
+				hasDigits = true;
+				if (mantissa == 0 && digit == 0) {
+					exponent--;
+				} else if (digits < MAXIMUM_DIGITS) {
+					mantissa = mantissa * 10 + digit;
+					digits++;
+					exponent--;
+				} else {
+					truncated |= digit != 0;
+				}
+			}
+		}
+
+		if (hasDigits && i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+				negativeExponent = bytes[i] == '-';
+				i++;
+			}
+			int exponentStart = i;
+			int written = 0;
+			for (; i < end; i++) {
+				int digit = bytes[i] - '0';
+				if (digit < 0 || digit > 9) {
+					break;
+				}
+				if (written < MAXIMUM_EXPONENT) {
+					written = written * 10 + digit;
+				}
+			}
+			if (i == exponentStart) {
+				hasDigits = false;
+			}
+			exponent += negativeExponent ? -written : written;
+		}
+
+		if (!hasDigits || i != end) {
+			// Not a plain decimal number; let the JDK parse it or reject it
+			double value = Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+			return negativeLog10 ? ScoreTransform.negativeLog10(value) : value;
+		}
+
+		double value;
+		if (mantissa == 0) {
+			value = 0;
+		} else if (!truncated && mantissa < MAXIMUM_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+			value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		} else {
+			value = Math.abs(Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII)));
+		}
+
+		if (!negativeLog10) {
+			return negative ? -value : value;
+		} else if (negative && mantissa != 0) {
+			return Double.NaN;
+		} else if (value >= Double.MIN_NORMAL) {
+			return -Math.log10(value);
+		} else if (mantissa == 0) {
+			return ScoreTransform.ZERO_P_VALUE_SCORE;
+		} else {
+			return -(Math.log10(mantissa) + exponent);
+		}
+	}
+}
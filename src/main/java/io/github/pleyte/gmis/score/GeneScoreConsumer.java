@@ -0,0 +1,22 @@
+package io.github.pleyte.gmis.score;
+
+import java.io.IOException;
+
+/**
+ * Receives gene scores from a {@link GeneScoreSource}, one gene at a time, with the gene identified by its id in a
+ * {@link io.github.pleyte.gmis.graph.GeneDictionary}
+ *
+ * @author pleyte
+ *
+ */
+@FunctionalInterface
+public interface GeneScoreConsumer {
+
+	/**
+	 *
+	 * @param gene  id of the gene in the dictionary
+	 * @param score
+	 * @throws IOException if the score cannot be accepted
+	 */
+	void accept(int gene, double score) throws IOException;
+}
@@ -0,0 +1,46 @@
+package io.github.pleyte.gmis.score;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+
+import io.github.pleyte.gmis.graph.GeneDictionary;
+
+/**
+ * Reads a HotNet score file (<code>scores_N.tsv</code>), which has a gene symbol and a score on each line separated by
+ * a tab
+ *
+ * @author pleyte
+ *
+ */
+public class GeneScoreFileSource implements GeneScoreSource {
+	private final String scoreFile;
+
+	public GeneScoreFileSource(String scoreFile) {
+		this.scoreFile = scoreFile;
+	}
+
+	@Override
+	public String getName() {
+		return scoreFile;
+	}
+
+	@Override
+	public void read(GeneDictionary genes, GeneScoreConsumer consumer) throws IOException {
+		try (Reader in = new FileReader(scoreFile)) {
+			for (CSVRecord record : CSVFormat.TDF.parse(in)) {
+				if (record.size() != 2) {
+					throw new IOException("Record number " + record.getRecordNumber() + " has an unexpected number of fields: " + record.size());
+				}
+				try {
+					consumer.accept(genes.intern(record.get(0)), Double.parseDouble(record.get(1)));
+				} catch (NumberFormatException e) {
+					throw new IOException("Record number " + record.getRecordNumber() + " has a non-numeric score: " + record.get(1));
+				}
+			}
+		}
+	}
+}
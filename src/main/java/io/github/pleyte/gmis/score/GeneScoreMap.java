@@ -0,0 +1,227 @@
+package io.github.pleyte.gmis.score;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import io.github.pleyte.gmis.graph.GeneDictionary;
+
+/**
+ * Map of gene to score keyed by the gene's id in a {@link GeneDictionary}. Scores are kept in primitive arrays in the
+ * order the genes were first added, and looked up through an open addressing table of positions, so adding a gene
+ * creates no objects. Several maps can share one dictionary so that the same gene has the same id in every study.
+ *
+ * This class is not thread-safe.
+ *
+ * @author pleyte
+ *
+ */
+public class GeneScoreMap {
+	private static final int NOT_FOUND = -1;
+
+	private final GeneDictionary genes;
+
+	// Genes and scores in the order they were added
+	private int[] keys;
+	private double[] scores;
+	private int size;
+
+	// Open addressing table holding position+1, where 0 marks an empty slot
+	private int[] table;
+	private int mask;
+
+	/**
+	 *
+	 * @param genes dictionary the gene ids belong to
+	 */
+	public GeneScoreMap(GeneDictionary genes) {
+		this(genes, 16);
+	}
+
+	/**
+	 *
+	 * @param genes        dictionary the gene ids belong to
+	 * @param expectedSize number of genes the map is expected to hold
+	 */
+	public GeneScoreMap(GeneDictionary genes, int expectedSize) {
+		this.genes = genes;
+		int length = Math.max(expectedSize, 16);
+		keys = new int[length];
+		scores = new double[length];
+		int capacity = Integer.highestOneBit(length * 2 - 1) << 1;
+		table = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Read every score from a source into a new map
+	 *
+	 * @param source
+	 * @param genes  dictionary to intern the source's genes in
+	 * @param policy how to handle a gene the source scores more than once
+	 * @return
+	 * @throws IOException if the source cannot be read or the policy rejects a
+	 *                     repeated gene
+	 */
+	public static GeneScoreMap load(GeneScoreSource source, GeneDictionary genes, ConflictPolicy policy) throws IOException {
+		GeneScoreMap map = new GeneScoreMap(genes);
+		try {
+			source.read(genes, (gene, score) -> map.merge(gene, score, policy));
+		} catch (IOException e) {
+			throw new IOException(source.getName() + ": " + e.getMessage(), e);
+		}
+		return map;
+	}
+
+	public GeneDictionary getDictionary() {
+		return genes;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean containsGene(int gene) {
+		return indexOf(gene) != NOT_FOUND;
+	}
+
+	/**
+	 * Return the score of the gene, or the default if it has none
+	 *
+	 * @param gene
+	 * @param defaultScore
+	 * @return
+	 */
+	public double get(int gene, double defaultScore) {
+		int index = indexOf(gene);
+		return index == NOT_FOUND ? defaultScore : scores[index];
+	}
+
+	/**
+	 * Set the score of the gene, replacing any score it has
+	 *
+	 * @param gene
+	 * @param score
+	 */
+	public void put(int gene, double score) {
+		int slot = findSlot(gene);
+		if (table[slot] != 0) {
+			scores[table[slot] - 1] = score;
+		} else {
+			add(gene, score, slot);
+		}
+	}
+
+	/**
+	 * Set the score of the gene, or combine it with the score the gene already has
+	 *
+	 * @param gene
+	 * @param score
+	 * @param policy
+	 * @throws IOException if the policy rejects the second score
+	 */
+	public void merge(int gene, double score, ConflictPolicy policy) throws IOException {
+		int slot = findSlot(gene);
+		if (table[slot] != 0) {
+			int index = table[slot] - 1;
+			scores[index] = policy.resolve(genes.getSymbol(gene), scores[index], score);
+		} else {
+			add(gene, score, slot);
+		}
+	}
+
+	/**
+	 * Return the id of the gene at a position, in the order genes were added
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getGene(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " is not in a map of " + size + " genes");
+		}
+		return keys[index];
+	}
+
+	/**
+	 * Return the score at a position, in the order genes were added
+	 *
+	 * @param index
+	 * @return
+	 */
+	public double getScore(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " is not in a map of " + size + " genes");
+		}
+		return scores[index];
+	}
+
+	/**
+	 * Pass each gene and score to the consumer in the order they were added
+	 *
+	 * @param consumer
+	 * @throws IOException
+	 */
+	public void forEach(GeneScoreConsumer consumer) throws IOException {
+		for (int i = 0; i < size; i++) {
+			consumer.accept(keys[i], scores[i]);
+		}
+	}
+
+	private int indexOf(int gene) {
+		int entry = table[findSlot(gene)];
+		return entry == 0 ? NOT_FOUND : entry - 1;
+	}
+
+	/**
+	 * Return the slot holding the gene, or the empty slot where it belongs
+	 *
+	 * @param gene
+	 * @return
+	 */
+	private int findSlot(int gene) {
+		int slot = mix(gene) & mask;
+		int entry;
+		while ((entry = table[slot]) != 0 && keys[entry - 1] != gene) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void add(int gene, double score, int slot) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			scores = Arrays.copyOf(scores, size * 2);
+		}
+		keys[size] = gene;
+		scores[size] = score;
+		table[slot] = ++size;
+
+		// Keep the load factor at or below one half
+		if (size * 2 > table.length) {
+			rehash(table.length * 2);
+		}
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		mask = capacity - 1;
+		for (int i = 0; i < size; i++) {
+			int slot = mix(keys[i]) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = i + 1;
+		}
+	}
+
+	/**
+	 * Spread the bits of consecutive gene ids across the table
+	 *
+	 * @param gene
+	 * @return
+	 */
+	private static int mix(int gene) {
+		int h = gene * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
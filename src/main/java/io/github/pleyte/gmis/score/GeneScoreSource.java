@@ -0,0 +1,33 @@
+package io.github.pleyte.gmis.score;
+
+import java.io.IOException;
+
+import io.github.pleyte.gmis.graph.GeneDictionary;
+
+/**
+ * A study or database which provides a score for each of a set of genes. A source parses its files and streams each
+ * gene and score to a consumer, usually a {@link GeneScoreMap}, without building an intermediate map of its own. A
+ * gene may be streamed more than once; the consumer decides how repeated genes are handled.
+ *
+ * @author pleyte
+ *
+ */
+public interface GeneScoreSource {
+
+	/**
+	 * Return the name used for the source in log and error messages
+	 *
+	 * @return
+	 */
+	String getName();
+
+	/**
+	 * Read the source, interning each gene symbol in the dictionary and passing
+	 * its id and score to the consumer
+	 *
+	 * @param genes
+	 * @param consumer
+	 * @throws IOException if the source cannot be read or has an invalid record
+	 */
+	void read(GeneDictionary genes, GeneScoreConsumer consumer) throws IOException;
+}
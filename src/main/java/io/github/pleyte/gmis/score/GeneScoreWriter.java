@@ -0,0 +1,63 @@
+package io.github.pleyte.gmis.score;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import io.github.pleyte.gmis.graph.GeneDictionary;
+
+/**
+ * Writes a {@link GeneScoreMap} as a HotNet score file: one gene per line with the gene symbol and score separated by
+ * a tab, in the order the genes were added to the map. Whole number scores are written without a decimal point.
+ *
+ * @author pleyte
+ *
+ */
+public class GeneScoreWriter {
+	private static final double LARGEST_EXACT_LONG = 1L << 53;
+
+	private GeneScoreWriter() {
+	}
+
+	/**
+	 * Write the scores to a file, replacing it if it exists
+	 *
+	 * @param scores
+	 * @param outFile
+	 * @throws IOException
+	 */
+	public static void save(GeneScoreMap scores, String outFile) throws IOException {
+		try (Writer out = Files.newBufferedWriter(Paths.get(outFile), StandardCharsets.UTF_8)) {
+			write(scores, out);
+		}
+	}
+
+	/**
+	 * Write the scores to a writer
+	 *
+	 * @param scores
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(GeneScoreMap scores, Writer out) throws IOException {
+		GeneDictionary genes = scores.getDictionary();
+		StringBuilder line = new StringBuilder(64);
+		for (int i = 0; i < scores.size(); i++) {
+			line.setLength(0);
+			line.append(genes.getSymbol(scores.getGene(i))).append('\t');
+			appendScore(line, scores.getScore(i));
+			line.append('\n');
+			out.append(line);
+		}
+	}
+
+	private static void appendScore(StringBuilder line, double score) {
+		if (score == Math.rint(score) && Math.abs(score) < LARGEST_EXACT_LONG) {
+			line.append((long) score);
+		} else {
+			line.append(score);
+		}
+	}
+}
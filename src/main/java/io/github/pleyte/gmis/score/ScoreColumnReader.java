@@ -0,0 +1,270 @@
+package io.github.pleyte.gmis.score;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import io.github.pleyte.gmis.graph.GeneDictionary;
+
+/**
+ * Reads a gene column and a numeric column from a comma or tab separated file with a header into primitive arrays,
+ * transforms the whole numeric column and passes the results on as gene scores. The file is read in large blocks and
+ * the values are parsed straight from the bytes with {@link DecimalParser}, so only genes seen for the first time
+ * create objects.
+ *
+ * When the first transform is {@link ScoreTransform#NEGATIVE_LOG10} the p-values are converted while they are parsed,
+ * so p-values too small for a double keep their scores. Empty, <code>NA</code> and <code>.</code> values are skipped.
+ * Fields may be enclosed in double quotes but may not contain the delimiter, and spaces around a gene symbol are
+ * ignored.
+ *
+ * @author pleyte
+ *
+ */
+public class ScoreColumnReader implements GeneScoreSource {
+	private static Logger log;
+
+	static {
+		InputStream stream = ScoreColumnReader.class.getClassLoader().getResourceAsStream("logging.properties");
+		try {
+			LogManager.getLogManager().readConfiguration(stream);
+			log = Logger.getLogger(ScoreColumnReader.class.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	private final String inFile;
+	private final String geneColumn;
+	private final String valueColumn;
+	private ScoreTransform[] transforms = new ScoreTransform[0];
+
+	/**
+	 *
+	 * @param inFile      delimited file with a header
+	 * @param geneColumn  name of the gene symbol column
+	 * @param valueColumn name of the numeric column
+	 */
+	public ScoreColumnReader(String inFile, String geneColumn, String valueColumn) {
+		this.inFile = inFile;
+		this.geneColumn = geneColumn;
+		this.valueColumn = valueColumn;
+	}
+
+	/**
+	 * Set the transforms applied to the numeric column, in order
+	 *
+	 * @param transforms
+	 */
+	public void setTransforms(ScoreTransform... transforms) {
+		this.transforms = transforms.clone();
+	}
+
+	@Override
+	public String getName() {
+		return inFile;
+	}
+
+	@Override
+	public void read(GeneDictionary genes, GeneScoreConsumer consumer) throws IOException {
+		Column column = readColumn(genes);
+		for (int t = column.pValuesConverted ? 1 : 0; t < transforms.length; t++) {
+			transforms[t].apply(column.values, column.size);
+		}
+		for (int i = 0; i < column.size; i++) {
+			consumer.accept(column.genes[i], column.values[i]);
+		}
+	}
+
+	private Column readColumn(GeneDictionary genes) throws IOException {
+		Column column = new Column();
+		column.pValuesConverted = transforms.length > 0 && transforms[0] == ScoreTransform.NEGATIVE_LOG10;
+
+		try (InputStream in = new FileInputStream(inFile)) {
+			byte[] bytes = new byte[BLOCK_SIZE];
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			int length = 0;
+			long line = 0;
+			int geneIndex = -1;
+			int valueIndex = -1;
+			byte delimiter = ',';
+			int skipped = 0;
+			boolean endOfFile = false;
+
+			while (!endOfFile) {
+				int read = in.read(bytes, length, bytes.length - length);
+				if (read < 0) {
+					endOfFile = true;
+				} else {
+					length += read;
+				}
+
+				// Parse the whole lines in the block, and the last line at the end of the file
+				int lineStart = 0;
+				while (true) {
+					int lineEnd = indexOf(bytes, lineStart, length, (byte) '\n');
+					if (lineEnd < 0) {
+						if (!endOfFile || lineStart == length) {
+							break;
+						}
+						lineEnd = length;
+					}
+					int end = lineEnd > lineStart && bytes[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+					line++;
+
+					if (geneIndex < 0) {
+						String header = new String(bytes, lineStart, end - lineStart, StandardCharsets.UTF_8);
+						delimiter = header.indexOf('\t') >= 0 ? (byte) '\t' : (byte) ',';
+						String[] names = header.split(delimiter == '\t' ? "\t" : ",", -1);
+						geneIndex = indexOf(names, geneColumn);
+						valueIndex = indexOf(names, valueColumn);
+					} else if (end > lineStart) {
+						if (!parseLine(bytes, buffer, lineStart, end, delimiter, geneIndex, valueIndex, genes, column, line)) {
+							skipped++;
+						}
+					}
+					lineStart = lineEnd + 1;
+				}
+
+				// Move the partial last line to the start of the block, growing it if one line fills it
+				int remaining = Math.max(length - lineStart, 0);
+				System.arraycopy(bytes, Math.min(lineStart, length), bytes, 0, remaining);
+				length = remaining;
+				if (length == bytes.length) {
+					bytes = Arrays.copyOf(bytes, bytes.length * 2);
+					buffer = ByteBuffer.wrap(bytes);
+				}
+			}
+
+			if (geneIndex < 0) {
+				throw new IOException(inFile + " is empty");
+			}
+			if (skipped > 0) {
+				log.info("Skipped " + skipped + " missing values in " + inFile);
+			}
+		}
+		return column;
+	}
+
+	/**
+	 * Add the gene and value of a line to the column
+	 *
+	 * @return false if the value is missing
+	 * @throws IOException if the line is invalid
+	 */
+	private boolean parseLine(byte[] bytes, ByteBuffer buffer, int start, int end, byte delimiter, int geneIndex, int valueIndex, GeneDictionary genes,
+			Column column, long line) throws IOException {
+		int geneStart = -1;
+		int geneEnd = -1;
+		int valueStart = -1;
+		int valueEnd = -1;
+		int field = 0;
+		int fieldStart = start;
+		for (int i = start; i <= end && (geneStart < 0 || valueStart < 0); i++) {
+			if (i == end || bytes[i] == delimiter) {
+				int fieldEnd = i;
+				if (fieldEnd - fieldStart >= 2 && bytes[fieldStart] == '"' && bytes[fieldEnd - 1] == '"') {
+					fieldStart++;
+					fieldEnd--;
+				}
+				if (field == geneIndex) {
+					geneStart = fieldStart;
+					geneEnd = fieldEnd;
+				}
+				if (field == valueIndex) {
+					valueStart = fieldStart;
+					valueEnd = fieldEnd;
+				}
+				field++;
+				fieldStart = i + 1;
+			}
+		}
+
+		if (geneStart < 0 || valueStart < 0) {
+			throw new IOException("Line " + line + " of " + inFile + " has too few fields");
+		}
+		while (geneStart < geneEnd && bytes[geneStart] == ' ') {
+			geneStart++;
+		}
+		while (geneEnd > geneStart && bytes[geneEnd - 1] == ' ') {
+			geneEnd--;
+		}
+		if (geneStart == geneEnd) {
+			throw new IOException("Line " + line + " of " + inFile + " has a blank gene");
+		} else if (indexOf(bytes, geneStart, geneEnd, (byte) ' ') >= 0) {
+			throw new IOException("Line " + line + " of " + inFile + " has a space in gene named "
+					+ new String(bytes, geneStart, geneEnd - geneStart, StandardCharsets.UTF_8));
+		} else if (isMissing(bytes, valueStart, valueEnd)) {
+			return false;
+		}
+
+		double value;
+		try {
+			value = column.pValuesConverted ? DecimalParser.parseNegativeLog10(bytes, valueStart, valueEnd) : DecimalParser.parseDouble(bytes, valueStart, valueEnd);
+		} catch (NumberFormatException e) {
+			throw new IOException("Line " + line + " of " + inFile + " has a non-numeric value: "
+					+ new String(bytes, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8));
+		}
+		if (column.pValuesConverted && !(value >= 0)) {
+			throw new IOException("Line " + line + " of " + inFile + " has a p-value outside [0, 1]: "
+					+ new String(bytes, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8));
+		}
+
+		column.add(genes.intern(buffer, geneStart, geneEnd), value);
+		return true;
+	}
+
+	private int indexOf(String[] names, String name) throws IOException {
+		for (int i = 0; i < names.length; i++) {
+			String header = names[i].trim();
+			if (header.length() >= 2 && header.startsWith("\"") && header.endsWith("\"")) {
+				header = header.substring(1, header.length() - 1);
+			}
+			if (header.equals(name)) {
+				return i;
+			}
+		}
+		throw new IOException(inFile + " has no column named " + name);
+	}
+
+	private static int indexOf(byte[] bytes, int start, int end, byte value) {
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isMissing(byte[] bytes, int start, int end) {
+		int length = end - start;
+		return length == 0 || (length == 1 && bytes[start] == '.')
+				|| (length == 2 && (bytes[start] == 'N' || bytes[start] == 'n') && (bytes[start + 1] == 'A' || bytes[start + 1] == 'a'));
+	}
+
+	/**
+	 * Genes and values of the lines read so far
+	 */
+	private static class Column {
+		private int[] genes = new int[1024];
+		private double[] values = new double[1024];
+		private int size;
+		private boolean pValuesConverted;
+
+		private void add(int gene, double value) {
+			if (size == genes.length) {
+				genes = Arrays.copyOf(genes, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			genes[size] = gene;
+			values[size] = value;
+			size++;
+		}
+	}
+}
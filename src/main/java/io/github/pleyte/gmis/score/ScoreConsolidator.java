@@ -0,0 +1,226 @@
+package io.github.pleyte.gmis.score;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import io.github.pleyte.gmis.graph.GeneDictionary;
+import io.github.pleyte.gmis.instrumentation.StageTimer;
+
+/**
+ * Merges the gene scores of any number of sources into one set of scores. The sources share a
+ * {@link GeneDictionary}, so each gene's combined score is kept in arrays indexed by its id and the sources are
+ * merged in a single pass over their entries without any lookups or boxing. A gene scored by more than one source has
+ * its scores combined by a {@link ConsolidationPolicy}.
+ *
+ * A source which gives a gene a different score to the first source that scored it is counted as a conflict, so
+ * sources which agree are never counted against a running mean. Only the first few conflicts are logged, so
+ * merging large tables does not flood the log.
+ *
+ * The genes of the consolidated scores are in the order they are first found in the sources.
+ *
+ * @author pleyte
+ *
+ */
+public class ScoreConsolidator {
+	private static Logger log;
+
+	static {
+		InputStream stream = ScoreConsolidator.class.getClassLoader().getResourceAsStream("logging.properties");
+		try {
+			LogManager.getLogManager().readConfiguration(stream);
+			log = Logger.getLogger(ScoreConsolidator.class.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static final int DEFAULT_SAMPLE_SIZE = 10;
+
+	private final ConsolidationPolicy policy;
+	private final int sampleSize;
+
+	private final List<String> names = new ArrayList<>();
+	private final List<GeneScoreMap> sources = new ArrayList<>();
+	private double[] weights = new double[4];
+
+	private long conflictCount;
+	private final List<String> conflictSample = new ArrayList<>();
+
+	/**
+	 *
+	 * @param policy how to combine the scores of a gene scored by several sources
+	 */
+	public ScoreConsolidator(ConsolidationPolicy policy) {
+		this(policy, DEFAULT_SAMPLE_SIZE);
+	}
+
+	/**
+	 *
+	 * @param policy     how to combine the scores of a gene scored by several
+	 *                   sources
+	 * @param sampleSize number of conflicts to log
+	 */
+	public ScoreConsolidator(ConsolidationPolicy policy, int sampleSize) {
+		this.policy = policy;
+		this.sampleSize = sampleSize;
+	}
+
+	/**
+	 * Consolidate the HotNet score files given on the command line and write the
+	 * consolidated scores to a new score file. A score file may be followed by
+	 * <code>=weight</code> for the WEIGHTED_MEAN policy.
+	 *
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			log.severe("Usage: ScoreConsolidator <MAXIMUM|MEAN|WEIGHTED_MEAN|FIRST|FAIL> <output scores file> <scores file>[=weight]...");
+			return;
+		}
+
+		ScoreConsolidator consolidator = new ScoreConsolidator(StandardConsolidationPolicy.valueOf(args[0]));
+		GeneDictionary genes = new GeneDictionary();
+		for (int i = 2; i < args.length; i++) {
+			String scoreFile = args[i];
+			double weight = 1;
+			int separator = scoreFile.lastIndexOf('=');
+			if (separator > 0) {
+				weight = Double.parseDouble(scoreFile.substring(separator + 1));
+				scoreFile = scoreFile.substring(0, separator);
+			}
+			consolidator.add(scoreFile, GeneScoreMap.load(new GeneScoreFileSource(scoreFile), genes, ConflictPolicy.FAIL), weight);
+		}
+
+		GeneScoreMap consolidated = consolidator.consolidate();
+		GeneScoreWriter.save(consolidated, args[1]);
+		log.info("Wrote " + consolidated.size() + " gene scores to " + args[1]);
+	}
+
+	/**
+	 * Add a source with a weight of one
+	 *
+	 * @param name   name of the source, used when logging conflicts
+	 * @param scores
+	 */
+	public void add(String name, GeneScoreMap scores) {
+		add(name, scores, 1);
+	}
+
+	/**
+	 * Add a source
+	 *
+	 * @param name   name of the source, used when logging conflicts
+	 * @param scores
+	 * @param weight weight of the source's scores, which must be positive
+	 */
+	public void add(String name, GeneScoreMap scores, double weight) {
+		if (!(weight > 0) || Double.isInfinite(weight)) {
+			throw new IllegalArgumentException("The weight of " + name + " must be a positive number: " + weight);
+		}
+		if (!sources.isEmpty() && scores.getDictionary() != sources.get(0).getDictionary()) {
+			throw new IllegalArgumentException(name + " does not use the same gene dictionary as " + names.get(0));
+		}
+		if (sources.size() == weights.length) {
+			double[] grown = new double[weights.length * 2];
+			System.arraycopy(weights, 0, grown, 0, weights.length);
+			weights = grown;
+		}
+		weights[sources.size()] = weight;
+		names.add(name);
+		sources.add(scores);
+	}
+
+	/**
+	 * Merge the sources
+	 *
+	 * @return the consolidated scores
+	 * @throws IOException if the policy rejects a conflict
+	 */
+	public GeneScoreMap consolidate() throws IOException {
+		if (sources.isEmpty()) {
+			throw new IllegalStateException("There are no sources to consolidate");
+		}
+		conflictCount = 0;
+		conflictSample.clear();
+
+		try (StageTimer timer = StageTimer.start("ScoreConsolidator.consolidate")) {
+			GeneDictionary genes = sources.get(0).getDictionary();
+			int geneCount = genes.size();
+			double[] first = new double[geneCount];
+			double[] combined = new double[geneCount];
+			double[] combinedWeight = new double[geneCount];
+			int[] order = new int[geneCount];
+			int size = 0;
+
+			for (int s = 0; s < sources.size(); s++) {
+				GeneScoreMap source = sources.get(s);
+				double weight = policy.usesWeights() ? weights[s] : 1;
+				for (int i = 0; i < source.size(); i++) {
+					int gene = source.getGene(i);
+					double score = source.getScore(i);
+					if (combinedWeight[gene] == 0) {
+						first[gene] = score;
+						combined[gene] = score;
+						order[size++] = gene;
+					} else {
+						if (Double.compare(first[gene], score) != 0) {
+							recordConflict(names.get(s), genes.getSymbol(gene), first[gene], score);
+						}
+						try {
+							combined[gene] = policy.combine(genes.getSymbol(gene), combined[gene], combinedWeight[gene], score, weight);
+						} catch (IOException e) {
+							throw new IOException(names.get(s) + ": " + e.getMessage(), e);
+						}
+					}
+					combinedWeight[gene] += weight;
+				}
+			}
+
+			GeneScoreMap consolidated = new GeneScoreMap(genes, size);
+			for (int i = 0; i < size; i++) {
+				consolidated.put(order[i], combined[order[i]]);
+			}
+
+			if (conflictCount > 0) {
+				log.info(conflictCount + " conflicting scores between " + sources.size() + " sources"
+						+ (conflictCount > conflictSample.size() ? ", the first " + conflictSample.size() + " were logged" : ""));
+			}
+			timer.addRecords(size);
+			return consolidated;
+		}
+	}
+
+	private void recordConflict(String name, String gene, double first, double score) {
+		conflictCount++;
+		if (conflictSample.size() < sampleSize) {
+			String conflict = name + " set encountered conflict with " + gene + ": " + first + " vs " + score;
+			conflictSample.add(conflict);
+			log.info(conflict);
+		}
+	}
+
+	/**
+	 * Return the number of times a source gave a gene a different score to the
+	 * first source that scored it in the last consolidation
+	 *
+	 * @return
+	 */
+	public long getConflictCount() {
+		return conflictCount;
+	}
+
+	/**
+	 * Return the conflicts which were logged in the last consolidation
+	 *
+	 * @return
+	 */
+	public List<String> getConflictSample() {
+		return Collections.unmodifiableList(conflictSample);
+	}
+}
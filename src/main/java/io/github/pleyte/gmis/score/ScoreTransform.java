@@ -0,0 +1,152 @@
+package io.github.pleyte.gmis.score;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.special.Erf;
+
+/**
+ * Transformations applied in place to a column of values. Each is a simple loop over a <code>double[]</code> so that
+ * a whole column is transformed without boxing, and the arithmetic loops can be vectorised by the JIT compiler.
+ *
+ * @author pleyte
+ *
+ */
+public enum ScoreTransform {
+	/**
+	 * Convert p-values to -log10(p). A p-value of zero, or one which underflowed
+	 * to zero when it was parsed, has the score {@link #ZERO_P_VALUE_SCORE}.
+	 * {@link DecimalParser#parseNegativeLog10(byte[], int, int)} keeps the
+	 * precision of p-values below 1e-308 by converting them as they are parsed.
+	 */
+	NEGATIVE_LOG10 {
+		@Override
+		public void apply(double[] values, int length) {
+			for (int i = 0; i < length; i++) {
+				values[i] = negativeLog10(values[i]);
+			}
+		}
+	},
+
+	/**
+	 * Standardise the values to a mean of zero and a standard deviation of one
+	 */
+	Z_SCORE {
+		@Override
+		public void apply(double[] values, int length) {
+			if (length == 0) {
+				return;
+			}
+			double sum = 0;
+			for (int i = 0; i < length; i++) {
+				sum += values[i];
+			}
+			double mean = sum / length;
+
+			double sumOfSquares = 0;
+			for (int i = 0; i < length; i++) {
+				double difference = values[i] - mean;
+				sumOfSquares += difference * difference;
+			}
+			double standardDeviation = length > 1 ? Math.sqrt(sumOfSquares / (length - 1)) : 0;
+			double scale = standardDeviation > 0 ? 1 / standardDeviation : 0;
+
+			for (int i = 0; i < length; i++) {
+				values[i] = (values[i] - mean) * scale;
+			}
+		}
+	},
+
+	/**
+	 * Replace the values with their ranks from 1 (lowest) to the number of values.
+	 * Tied values are given the mean of their ranks.
+	 */
+	RANK {
+		@Override
+		public void apply(double[] values, int length) {
+			double[] sorted = Arrays.copyOf(values, length);
+			Arrays.sort(sorted);
+			for (int i = 0; i < length; i++) {
+				int first = lowerBound(sorted, values[i]);
+				int last = upperBound(sorted, values[i], first);
+				values[i] = (first + last + 1) / 2.0;
+			}
+		}
+	},
+
+	/**
+	 * Quantile normalise the values to a standard normal distribution: the value
+	 * with rank <code>r</code> of <code>n</code> is replaced by the normal quantile
+	 * of <code>(r - 0.5) / n</code>
+	 */
+	NORMAL_QUANTILE {
+		@Override
+		public void apply(double[] values, int length) {
+			RANK.apply(values, length);
+			for (int i = 0; i < length; i++) {
+				values[i] = SQRT_2 * Erf.erfInv(2 * (values[i] - 0.5) / length - 1);
+			}
+		}
+	};
+
+	/**
+	 * Score given to a p-value of zero, which is the score of the smallest positive
+	 * double
+	 */
+	public static final double ZERO_P_VALUE_SCORE = -Math.log10(Double.MIN_VALUE);
+
+	private static final double SQRT_2 = Math.sqrt(2);
+
+	/**
+	 * Transform the first <code>length</code> values
+	 *
+	 * @param values
+	 * @param length
+	 */
+	public abstract void apply(double[] values, int length);
+
+	/**
+	 * Return -log10 of a p-value, treating zero as the smallest positive double. A
+	 * negative p-value gives NaN.
+	 *
+	 * @param pValue
+	 * @return
+	 */
+	public static double negativeLog10(double pValue) {
+		return -Math.log10(pValue == 0 ? Double.MIN_VALUE : pValue);
+	}
+
+	/**
+	 * Return the index of the first value >= the key
+	 */
+	private static int lowerBound(double[] sorted, double key) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (Double.compare(sorted[middle], key) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Return the index of the first value > the key, searching from the first
+	 * value equal to it
+	 */
+	private static int upperBound(double[] sorted, double key, int from) {
+		int low = from;
+		int high = sorted.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (Double.compare(sorted[middle], key) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,70 @@
+package io.github.pleyte.gmis.score;
+
+import java.io.IOException;
+
+/**
+ * The standard ways of combining the scores a gene has in several sources
+ *
+ * @author pleyte
+ *
+ */
+public enum StandardConsolidationPolicy implements ConsolidationPolicy {
+	/**
+	 * Keep the highest score
+	 */
+	MAXIMUM {
+		@Override
+		public double combine(String gene, double combined, double combinedWeight, double score, double weight) {
+			return Math.max(combined, score);
+		}
+	},
+
+	/**
+	 * Average the scores of the sources which score the gene
+	 */
+	MEAN {
+		@Override
+		public double combine(String gene, double combined, double combinedWeight, double score, double weight) {
+			return combined + (score - combined) * weight / (combinedWeight + weight);
+		}
+	},
+
+	/**
+	 * Average the scores of the sources which score the gene, weighted by the
+	 * sources' weights
+	 */
+	WEIGHTED_MEAN {
+		@Override
+		public double combine(String gene, double combined, double combinedWeight, double score, double weight) {
+			return combined + (score - combined) * weight / (combinedWeight + weight);
+		}
+
+		@Override
+		public boolean usesWeights() {
+			return true;
+		}
+	},
+
+	/**
+	 * Keep the score from the first source which scores the gene
+	 */
+	FIRST {
+		@Override
+		public double combine(String gene, double combined, double combinedWeight, double score, double weight) {
+			return combined;
+		}
+	},
+
+	/**
+	 * Sources may only give a gene the same score
+	 */
+	FAIL {
+		@Override
+		public double combine(String gene, double combined, double combinedWeight, double score, double weight) throws IOException {
+			if (Double.compare(combined, score) != 0) {
+				throw new IOException("Gene " + gene + " has differing scores " + combined + " and " + score);
+			}
+			return combined;
+		}
+	};
+}
@@ -8,7 +8,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.util.Set;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
@@ -28,6 +27,7 @@ import edu.uci.ics.jung.visualization.VisualizationImageServer;
 import edu.uci.ics.jung.visualization.decorators.ToStringLabeller;
 import io.github.pleyte.gmis.NetworkAnalysis;
 import io.github.pleyte.gmis.intermediate.NetworkLoader;
+import io.github.pleyte.gmis.result.ClusterMembershipIndex;
 import io.github.pleyte.gmis.result.ResultsLoader;
 
 public class GeneNetworkVisualisation {
@@ -116,48 +116,54 @@ public class GeneNetworkVisualisation {
 	}
 
 
-	private Transformer<String, Paint> getVertexTransformer(ResultsLoader results) {
+	/**
+	 * Return the transformer which colours each vertex by the score sets whose
+	 * clusters contain it. Membership is looked up in the results' cluster index,
+	 * so painting a vertex does not scan the clusters.
+	 * 
+	 * @param results
+	 * @return
+	 * @throws IOException
+	 */
+	private Transformer<String, Paint> getVertexTransformer(ResultsLoader results) throws IOException {
+		ClusterMembershipIndex membership = results.getMembershipIndex();
 		return new Transformer<String, Paint>() {
 
 			@Override
 			public Paint transform(String gene) {
-				try {
-					boolean isNetwork1 = results.getNetworkScores1().getClusters().stream().flatMap(Set::stream).anyMatch(gene::equals);
-					boolean isNetwork2 = results.getNetworkScores2().getClusters().stream().flatMap(Set::stream).anyMatch(gene::equals);
-					boolean isNetwork3 = results.getNetworkScores3().getClusters().stream().flatMap(Set::stream).anyMatch(gene::equals);
-
-					// Which of the three sets overlap?
-					//					if(isNetwork1 && isNetwork2 && isNetwork3) {
-					//						log.severe("jDebug: All three overlap");
-					//					} else if (isNetwork1 && isNetwork2) {
-					//						log.severe("jDebug: one and two ");
-					//					} else if (isNetwork1 && isNetwork3) {
-					//						log.severe("jDebug: one and three");
-					//					} else if (isNetwork2 && isNetwork3) {
-					//						log.severe("jDebug: two and three");
-					//					}
-					if (isNetwork1 && isNetwork2 && isNetwork3) {
-						// This scenario is not currently expected
-						return Color.RED;
-					} else if (isNetwork1 && isNetwork3) {
-						return new GradientPaint(0, 0, PALETTE_TWO[1], 1, 2, PALETTE_TWO[3], true);
-					} else if (isNetwork1 && isNetwork2) {
-						return new GradientPaint(0, 0, PALETTE_TWO[1], 1, 2, PALETTE_TWO[2], true);
-					} else if (isNetwork2 && isNetwork3) {
-						return new GradientPaint(0, 0, PALETTE_TWO[2], 1, 2, PALETTE_TWO[3], true);
-					} else if (isNetwork1) {
-						return PALETTE_TWO[1];
-					} else if (isNetwork2) {
-						return PALETTE_TWO[2];
-					} else if (isNetwork3) {
-						return PALETTE_TWO[3];
-					} else {
-						// linker gene
-						return PALETTE_TWO[0];
-					}
-				} catch (IOException e) {
-					log.severe("Exception occurred during transform: " + e.getMessage());
-					throw new RuntimeException("Exception while transforming vertex colour", e);
+				long scoreSets = membership.getScoreSetMask(gene);
+				boolean isNetwork1 = (scoreSets & 1) != 0;
+				boolean isNetwork2 = (scoreSets & 2) != 0;
+				boolean isNetwork3 = (scoreSets & 4) != 0;
+
+				// Which of the three sets overlap?
+				//					if(isNetwork1 && isNetwork2 && isNetwork3) {
+				//						log.severe("jDebug: All three overlap");
+				//					} else if (isNetwork1 && isNetwork2) {
+				//						log.severe("jDebug: one and two ");
+				//					} else if (isNetwork1 && isNetwork3) {
+				//						log.severe("jDebug: one and three");
+				//					} else if (isNetwork2 && isNetwork3) {
+				//						log.severe("jDebug: two and three");
+				//					}
+				if (isNetwork1 && isNetwork2 && isNetwork3) {
+					// This scenario is not currently expected
+					return Color.RED;
+				} else if (isNetwork1 && isNetwork3) {
+					return new GradientPaint(0, 0, PALETTE_TWO[1], 1, 2, PALETTE_TWO[3], true);
+				} else if (isNetwork1 && isNetwork2) {
+					return new GradientPaint(0, 0, PALETTE_TWO[1], 1, 2, PALETTE_TWO[2], true);
+				} else if (isNetwork2 && isNetwork3) {
+					return new GradientPaint(0, 0, PALETTE_TWO[2], 1, 2, PALETTE_TWO[3], true);
+				} else if (isNetwork1) {
+					return PALETTE_TWO[1];
+				} else if (isNetwork2) {
+					return PALETTE_TWO[2];
+				} else if (isNetwork3) {
+					return PALETTE_TWO[3];
+				} else {
+					// linker gene
+					return PALETTE_TWO[0];
 				}
 			}
 		};
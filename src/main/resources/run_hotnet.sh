@@ -0,0 +1,81 @@
+#!/usr/bin/env bash
+#
+# Run Hierarchical HotNet on one score file, following the steps of its example pipeline.
+#
+# Usage: run_hotnet.sh <hotnet dir> <index gene file> <edge list file> <scores file> <output dir> <permutations> <cores> <name>
+#
+# Writes <output dir>/clusters_<name>.tsv and <output dir>/sizes_<name>.pdf
+#
+set -euo pipefail
+
+hotnet=$1
+index_gene=$2
+edge_list=$3
+scores=$4
+output=$5
+permutations=$6
+cores=$7
+name=$8
+
+python=${PYTHON:-python3}
+work=$output/$name
+mkdir -p "$work/permuted"
+
+echo "Constructing similarity matrix"
+"$python" "$hotnet/src/construct_similarity_matrix.py" \
+    -i "$edge_list" \
+    -o "$work/similarity_matrix.h5" \
+    -bof "$work/beta.txt"
+
+echo "Finding permutation bins"
+"$python" "$hotnet/src/find_permutation_bins.py" \
+    -gsf "$scores" \
+    -igf "$index_gene" \
+    -elf "$edge_list" \
+    -ms 1000 \
+    -o "$work/score_bins.tsv"
+
+echo "Permuting scores"
+for i in $(seq "$permutations"); do
+    "$python" "$hotnet/src/permute_scores.py" \
+        -i "$scores" \
+        -bf "$work/score_bins.tsv" \
+        -s "$i" \
+        -o "$work/permuted/scores_$i.tsv"
+done
+
+echo "Constructing hierarchies"
+"$python" "$hotnet/src/construct_hierarchy.py" \
+    -smf "$work/similarity_matrix.h5" \
+    -igf "$index_gene" \
+    -gsf "$scores" \
+    -helf "$work/hierarchy_edge_list_0.tsv" \
+    -higf "$work/hierarchy_index_gene_0.tsv"
+
+for i in $(seq "$permutations"); do
+    echo "Constructing hierarchy $i of $permutations"
+    "$python" "$hotnet/src/construct_hierarchy.py" \
+        -smf "$work/similarity_matrix.h5" \
+        -igf "$index_gene" \
+        -gsf "$work/permuted/scores_$i.tsv" \
+        -helf "$work/hierarchy_edge_list_$i.tsv" \
+        -higf "$work/hierarchy_index_gene_$i.tsv"
+done
+
+echo "Processing hierarchies"
+permuted_edge_lists=()
+permuted_index_genes=()
+for i in $(seq "$permutations"); do
+    permuted_edge_lists+=("$work/hierarchy_edge_list_$i.tsv")
+    permuted_index_genes+=("$work/hierarchy_index_gene_$i.tsv")
+done
+"$python" "$hotnet/src/process_hierarchies.py" \
+    -oelf "$work/hierarchy_edge_list_0.tsv" \
+    -oigf "$work/hierarchy_index_gene_0.tsv" \
+    -pelf "${permuted_edge_lists[@]}" \
+    -pigf "${permuted_index_genes[@]}" \
+    -lsb 1 \
+    -cf "$output/clusters_$name.tsv" \
+    -pl "$name" \
+    -pf "$output/sizes_$name.pdf" \
+    -nc "$cores"